@@ -0,0 +1,76 @@
+package bs0921;
+
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bs0921.AgreementArchive.Aggregation;
+import bs0921.AgreementArchive.Dimension;
+import bs0921.Tool.ToolCode;
+
+/**
+ * Benchmarks for revenue reports over an archive of agreements
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx8g")
+@State(Scope.Benchmark)
+public class AnalyticsBenchmark {
+
+	@Param({ "1000000", "100000000" })
+	public int rows;
+
+	private AgreementArchive archive;
+
+	@Setup
+	public void setup() throws Exception {
+		// price a few thousand distinct rentals and archive them over and over
+		Random random = new Random(42);
+		ToolCode[] codes = ToolCode.values();
+		RentalAgreement[] agreements = new RentalAgreement[4096];
+		for (int i = 0; i < agreements.length; i++) {
+			agreements[i] = ToolPOS.rentTool(codes[random.nextInt(codes.length)], 1 + random.nextInt(14),
+					random.nextInt(101), LocalDate.of(2015, 1, 1).plusDays(random.nextInt(3650)));
+		}
+		archive = new AgreementArchive();
+		for (int i = 0; i < rows; i++) {
+			archive.add(agreements[i & (agreements.length - 1)]);
+		}
+	}
+
+	@Benchmark
+	public Aggregation revenueByTool() {
+		return archive.aggregate(Dimension.TOOL_CODE);
+	}
+
+	@Benchmark
+	public Aggregation revenueByBrandAndMonth() {
+		return archive.aggregate(Dimension.BRAND, Dimension.MONTH);
+	}
+
+	@Benchmark
+	public Aggregation revenueByEverything() {
+		return archive.aggregate(Dimension.TOOL_CODE, Dimension.TOOL_TYPE, Dimension.BRAND, Dimension.MONTH,
+				Dimension.DISCOUNT_BUCKET);
+	}
+
+	@Benchmark
+	public Aggregation revenueIn2020ByDiscount() {
+		return archive.aggregate(LocalDate.of(2020, 1, 1), LocalDate.of(2020, 12, 31), Dimension.DISCOUNT_BUCKET);
+	}
+
+}
@@ -0,0 +1,158 @@
+package bs0921;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the pricing benchmarks with the GC profiler and compares them with a
+ * stored baseline.
+ *
+ * Usage: {@code BenchmarkRunner [--save baseline.properties]
+ * [--baseline baseline.properties] [--tolerance 0.10] [include regex]}
+ *
+ * With --save the throughput and allocation of every benchmark are written to
+ * the file. With --baseline the run fails if any benchmark's throughput drops,
+ * or its allocation per operation grows, by more than the tolerance.
+ *
+ * mvn package in jmh/ builds this into jmh/target/benchmarks.jar, and
+ * jmh/baseline.properties is the stored baseline of the pricing benchmarks.
+ * Throughput varies between machines, so record a baseline on the machine
+ * that compares against it.
+ */
+public class BenchmarkRunner {
+
+	private static final String ALLOCATION_RESULT = "gc.alloc.rate.norm";
+
+	/**
+	 * Allocation changes smaller than this many bytes per operation are noise,
+	 * such as escape analysis removing an object or two in one run but not
+	 * another
+	 */
+	private static final double ALLOCATION_SLACK = 64;
+
+	public static void main(String[] args) throws IOException, RunnerException {
+		Path save = null;
+		Path baseline = null;
+		double tolerance = 0.10;
+		String include = "bs0921\\..*Benchmark";
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "--save":
+				save = Paths.get(args[++i]);
+				break;
+			case "--baseline":
+				baseline = Paths.get(args[++i]);
+				break;
+			case "--tolerance":
+				tolerance = Double.parseDouble(args[++i]);
+				break;
+			default:
+				include = args[i];
+			}
+		}
+
+		Options options = new OptionsBuilder()
+				.include(include)
+				.addProfiler(GCProfiler.class)
+				.build();
+		Map<String, Double> results = toMap(new Runner(options).run());
+
+		if (save != null) {
+			store(results, save);
+		}
+		if (baseline != null && !compare(load(baseline), results, tolerance)) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * @return the throughput and allocation per operation of each benchmark,
+	 *         keyed by benchmark name and parameters
+	 */
+	private static Map<String, Double> toMap(Collection<RunResult> runResults) {
+		Map<String, Double> results = new TreeMap<>();
+		for (RunResult runResult : runResults) {
+			String key = key(runResult.getParams());
+			results.put(key + ".throughput", runResult.getPrimaryResult().getScore());
+			// JMH declares the secondary results with the raw Result type
+			for (String name : runResult.getSecondaryResults().keySet()) {
+				if (name.endsWith(ALLOCATION_RESULT)) {
+					Result<?> allocation = runResult.getSecondaryResults().get(name);
+					results.put(key + ".allocation", allocation.getScore());
+				}
+			}
+		}
+		return results;
+	}
+
+	private static String key(BenchmarkParams params) {
+		StringBuilder key = new StringBuilder(params.getBenchmark());
+		for (String param : params.getParamsKeys()) {
+			key.append('[').append(param).append('=').append(params.getParam(param)).append(']');
+		}
+		return key.toString();
+	}
+
+	/**
+	 * @return true if no benchmark regressed beyond the tolerance
+	 */
+	private static boolean compare(Map<String, Double> baseline, Map<String, Double> results, double tolerance) {
+		boolean passed = true;
+		for (Map.Entry<String, Double> result : results.entrySet()) {
+			Double expected = baseline.get(result.getKey());
+			if (expected == null) {
+				System.out.println("NEW        " + result.getKey() + " = " + result.getValue());
+				continue;
+			}
+			double actual = result.getValue();
+			boolean regressed = result.getKey().endsWith(".throughput")
+					? actual < expected * (1 - tolerance)
+					: actual > expected * (1 + tolerance) + ALLOCATION_SLACK;
+			System.out.printf("%-10s %s = %.3f (baseline %.3f)%n", regressed ? "REGRESSED" : "OK",
+					result.getKey(), actual, expected);
+			passed &= !regressed;
+		}
+		return passed;
+	}
+
+	private static void store(Map<String, Double> results, Path file) throws IOException {
+		Properties properties = new Properties();
+		for (Map.Entry<String, Double> result : results.entrySet()) {
+			properties.setProperty(result.getKey(), Double.toString(result.getValue()));
+		}
+		try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			properties.store(writer, "Pricing benchmark baseline");
+		}
+	}
+
+	private static Map<String, Double> load(Path file) throws IOException {
+		Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		}
+		Map<String, Double> baseline = new TreeMap<>();
+		for (String key : properties.stringPropertyNames()) {
+			baseline.put(key, Double.valueOf(properties.getProperty(key)));
+		}
+		return baseline;
+	}
+
+}
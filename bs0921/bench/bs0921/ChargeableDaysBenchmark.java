@@ -0,0 +1,71 @@
+package bs0921;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bs0921.Tool.ToolCode;
+
+/**
+ * Benchmarks for counting chargeable days across short and very long rentals
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class ChargeableDaysBenchmark {
+
+	@Param({ "3", "30", "365", "3650", "36500" })
+	public int rentalDays;
+
+	private final LocalDate checkoutDate = LocalDate.of(2015, 7, 2);
+
+	@Benchmark
+	public int chargeableDays() {
+		return ChargeableDayCalculator.count(checkoutDate, rentalDays, false, false);
+	}
+
+	@Benchmark
+	public int chargeableDaysAllPolicies() {
+		return ChargeableDayCalculator.count(checkoutDate, rentalDays, false, false)
+				+ ChargeableDayCalculator.count(checkoutDate, rentalDays, true, false)
+				+ ChargeableDayCalculator.count(checkoutDate, rentalDays, false, true)
+				+ ChargeableDayCalculator.count(checkoutDate, rentalDays, true, true);
+	}
+
+	/**
+	 * Ranks a year of checkout dates in one sliding-window pass
+	 */
+	@Benchmark
+	public List<RentalAgreement> cheapestCheckoutInYear() {
+		return CheckoutWindowSearch.findCheapest(ToolCode.CHNS, rentalDays, 10, checkoutDate,
+				checkoutDate.plusDays(364), 10);
+	}
+
+	/**
+	 * The same ranking by pricing every checkout date in the year
+	 */
+	@Benchmark
+	public long cheapestCheckoutInYearByPricing() throws Exception {
+		long cheapest = Long.MAX_VALUE;
+		for (int i = 0; i < 365; i++) {
+			cheapest = Math.min(cheapest,
+					ToolPOS.rentTool(ToolCode.CHNS, rentalDays, 10, checkoutDate.plusDays(i)).getFinalChargeCents());
+		}
+		return cheapest;
+	}
+
+}
@@ -0,0 +1,74 @@
+package bs0921;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bs0921.Tool.ToolCode;
+
+/**
+ * Benchmarks for the binary codec against the text and JSON forms
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+	private RentalAgreement agreement;
+
+	private ByteBuffer buffer;
+
+	private ByteBuffer encoded;
+
+	private StringBuilder text;
+
+	@Setup
+	public void setup() throws Exception {
+		agreement = ToolPOS.rentTool(ToolCode.CHNS, 5, 25, LocalDate.of(2015, 7, 2));
+		buffer = ByteBuffer.allocateDirect(AgreementCodec.MAX_ENCODED_LENGTH);
+		encoded = ByteBuffer.allocateDirect(AgreementCodec.MAX_ENCODED_LENGTH);
+		AgreementCodec.encode(encoded, agreement);
+		encoded.flip();
+		text = new StringBuilder(512);
+	}
+
+	@Benchmark
+	public ByteBuffer encode() {
+		buffer.clear();
+		AgreementCodec.encode(buffer, agreement);
+		return buffer;
+	}
+
+	@Benchmark
+	public RentalAgreement decode() {
+		encoded.rewind();
+		return AgreementCodec.decode(encoded);
+	}
+
+	@Benchmark
+	public StringBuilder renderText() {
+		text.setLength(0);
+		return AgreementRenderer.getDefault().render(agreement, text);
+	}
+
+	@Benchmark
+	public StringBuilder renderJson() {
+		text.setLength(0);
+		return RentalJson.appendAgreement(text, agreement, false);
+	}
+
+}
@@ -0,0 +1,74 @@
+package bs0921;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bs0921.Tool.ToolCode;
+
+/**
+ * Benchmarks for appending agreements to the ledger from several terminals
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class LedgerBenchmark {
+
+	private Path directory;
+
+	private AgreementLedger ledger;
+
+	private RentalAgreement agreement;
+
+	@Setup(Level.Iteration)
+	public void setup() throws Exception {
+		directory = Files.createTempDirectory("ledger-bench");
+		ledger = AgreementLedger.open(directory);
+		agreement = ToolPOS.rentTool(ToolCode.LADW, 5, 10, LocalDate.of(2020, 7, 2));
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() throws IOException {
+		ledger.close();
+		for (File file : directory.toFile().listFiles()) {
+			file.delete();
+		}
+		Files.delete(directory);
+	}
+
+	@Benchmark
+	public long append() throws IOException {
+		return ledger.append(agreement);
+	}
+
+	/**
+	 * Every append waits for its record to be durable, sharing fsyncs with the
+	 * other threads through group commit
+	 */
+	@Benchmark
+	public long commit() throws IOException {
+		return ledger.commit(agreement);
+	}
+
+}
@@ -0,0 +1,424 @@
+package bs0921;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import bs0921.Tool.ToolCode;
+
+/**
+ * Drives {@code ToolPOS.rentTool} and renders every agreement, the whole path
+ * a lane takes, with a realistic traffic mix at a fixed arrival rate, and
+ * reports throughput, latency and allocation.
+ *
+ * Usage: {@code LoadGenerator [--rate 20000] [--threads 4] [--warmup 5]
+ * [--duration 30] [--mix mix.properties] [--seed 42]
+ * [--save report.properties] [--baseline report.properties]
+ * [--tolerance 0.10]}
+ *
+ * The load is open loop: each thread has a schedule of arrivals at its share
+ * of the rate, and each rental's latency is measured from when it was due to
+ * start, not from when the thread got to it. A rental that waits behind a
+ * slow one, a GC pause or a descheduled thread counts the wait, as a customer
+ * in the queue would, so the high percentiles aren't hidden by the generator
+ * slowing down with the system.
+ *
+ * The mix file is a properties file; keys not given keep their defaults:
+ * <ul>
+ * <li>{@code tools}: tool code weights, {@code LADW:30,CHNS:25,JAKR:20,JAKD:25}</li>
+ * <li>{@code discounts}: discount weights, {@code 0:70,10:20,25:8,50:2}</li>
+ * <li>{@code days.scale}, {@code days.alpha}, {@code days.max}: rental days
+ * follow a Pareto distribution, {@code 2}, {@code 1.5} and {@code 365}, so
+ * most rentals are a few days and a few run for months</li>
+ * <li>{@code dates.year}: the year of checkouts, {@code 2020}</li>
+ * <li>{@code dates.peakShare}, {@code dates.peakWindow}: the share of
+ * checkouts within the window of days either side of a holiday of the
+ * default calendar, July 4th and Labor Day, {@code 0.5} and {@code 7}; the
+ * rest are spread over the year</li>
+ * </ul>
+ *
+ * Requests are generated before the run from the seed, so runs with the same
+ * mix and seed replay the same traffic. With --save the report is written to
+ * a file; with --baseline the run fails if throughput drops, or p99 latency or
+ * allocation per rental grows, by more than the tolerance.
+ */
+public class LoadGenerator {
+
+	/**
+	 * Requests generated for each thread, replayed in a loop
+	 */
+	private static final int REQUESTS_PER_THREAD = 1 << 16;
+
+	/**
+	 * Arrivals further away than this are waited for by parking, nearer ones
+	 * by spinning, since parking can oversleep by tens of microseconds
+	 */
+	private static final long SPIN_NANOS = 50_000;
+
+	/**
+	 * Allocation changes smaller than this many bytes per rental are noise
+	 */
+	private static final double ALLOCATION_SLACK = 16;
+
+	private static final String DEFAULT_MIX = "tools=LADW:30,CHNS:25,JAKR:20,JAKD:25\n"
+			+ "discounts=0:70,10:20,25:8,50:2\n"
+			+ "days.scale=2\n"
+			+ "days.alpha=1.5\n"
+			+ "days.max=365\n"
+			+ "dates.year=2020\n"
+			+ "dates.peakShare=0.5\n"
+			+ "dates.peakWindow=7\n";
+
+	public static void main(String[] args) throws Exception {
+		double rate = 20_000;
+		int threads = 4;
+		int warmupSeconds = 5;
+		int durationSeconds = 30;
+		Path mixFile = null;
+		long seed = 42;
+		Path save = null;
+		Path baseline = null;
+		double tolerance = 0.10;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "--rate":
+				rate = Double.parseDouble(args[++i]);
+				break;
+			case "--threads":
+				threads = Integer.parseInt(args[++i]);
+				break;
+			case "--warmup":
+				warmupSeconds = Integer.parseInt(args[++i]);
+				break;
+			case "--duration":
+				durationSeconds = Integer.parseInt(args[++i]);
+				break;
+			case "--mix":
+				mixFile = Paths.get(args[++i]);
+				break;
+			case "--seed":
+				seed = Long.parseLong(args[++i]);
+				break;
+			case "--save":
+				save = Paths.get(args[++i]);
+				break;
+			case "--baseline":
+				baseline = Paths.get(args[++i]);
+				break;
+			case "--tolerance":
+				tolerance = Double.parseDouble(args[++i]);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+		if (rate <= 0 || threads < 1 || warmupSeconds < 0 || durationSeconds < 1) {
+			throw new IllegalArgumentException("Rate, threads and duration must be positive");
+		}
+
+		Properties mix = new Properties();
+		mix.load(new StringReader(DEFAULT_MIX));
+		if (mixFile != null) {
+			try (Reader reader = Files.newBufferedReader(mixFile, StandardCharsets.UTF_8)) {
+				mix.load(reader);
+			}
+		}
+		Workload workload = new Workload(mix);
+
+		Map<String, Double> report = run(workload, seed, rate, threads, warmupSeconds, durationSeconds);
+		for (Map.Entry<String, Double> result : report.entrySet()) {
+			System.out.printf("%-22s %,14.1f%n", result.getKey(), result.getValue());
+		}
+		if (save != null) {
+			store(report, mix, save);
+		}
+		if (baseline != null && !compare(load(baseline), report, tolerance)) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * @return the report, keyed by measurement
+	 */
+	static Map<String, Double> run(Workload workload, long seed, double rate, int threads, int warmupSeconds,
+			int durationSeconds) throws InterruptedException {
+		LatencyHistogram latencies = new LatencyHistogram();
+		AtomicLong errors = new AtomicLong();
+		AtomicLong allocatedBytes = new AtomicLong();
+		long intervalNanos = (long) (1e9 * threads / rate);
+		long start = System.nanoTime() + 100_000_000;
+		long measureStart = start + warmupSeconds * 1_000_000_000L;
+		long end = measureStart + durationSeconds * 1_000_000_000L;
+		CountDownLatch done = new CountDownLatch(threads);
+
+		List<Thread> workers = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			RentalRequest[] requests = workload.generate(new SplittableRandom(seed + t), REQUESTS_PER_THREAD);
+			// threads are staggered so arrivals are evenly spaced overall
+			long first = start + intervalNanos * t / threads;
+			Thread worker = new Thread(() -> {
+				try {
+					drive(requests, first, intervalNanos, measureStart, end, latencies, errors, allocatedBytes);
+				} finally {
+					done.countDown();
+				}
+			}, "load-" + t);
+			worker.setDaemon(true);
+			workers.add(worker);
+		}
+		for (Thread worker : workers) {
+			worker.start();
+		}
+		done.await();
+		// rentals run late when the rate can't be kept up, so the measured ones
+		// may take longer than the duration to finish
+		double elapsedSeconds = Math.max(System.nanoTime() - measureStart, 1) / 1e9;
+
+		LatencyHistogram.Snapshot snapshot = latencies.snapshot();
+		Map<String, Double> report = new TreeMap<>();
+		report.put("rate.target", rate);
+		report.put("throughput", snapshot.getCount() / elapsedSeconds);
+		report.put("latency.p50.us", snapshot.getValueAtPercentile(50) / 1e3);
+		report.put("latency.p99.us", snapshot.getValueAtPercentile(99) / 1e3);
+		report.put("latency.p999.us", snapshot.getValueAtPercentile(99.9) / 1e3);
+		report.put("latency.max.us", snapshot.getMax() / 1e3);
+		report.put("latency.mean.us", snapshot.getMean() / 1e3);
+		report.put("allocation.bytes", allocatedBytes.get() / (double) Math.max(snapshot.getCount(), 1));
+		report.put("errors", (double) errors.get());
+		return report;
+	}
+
+	/**
+	 * Rents tools on one thread's schedule until the end, recording the
+	 * latency and allocation of the rentals due after the warmup
+	 */
+	private static void drive(RentalRequest[] requests, long first, long intervalNanos, long measureStart, long end,
+			LatencyHistogram latencies, AtomicLong errors, AtomicLong allocatedBytes) {
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		long allocatedAtMeasureStart = -1;
+		long sink = 0;
+		long due = first;
+		for (long i = 0; due < end; i++, due = first + i * intervalNanos) {
+			waitUntil(due);
+			if (allocatedAtMeasureStart < 0 && due >= measureStart) {
+				allocatedAtMeasureStart = threadBean.getThreadAllocatedBytes(threadId);
+			}
+			RentalRequest request = requests[(int) (i & (requests.length - 1))];
+			try {
+				sink += ToolPOS.rentTool(request.getCode(), request.getRentalDays(), request.getDiscountPercent(),
+						request.getCheckoutDate()).toString().length();
+			} catch (Exception e) {
+				errors.incrementAndGet();
+			}
+			if (due >= measureStart) {
+				latencies.record(System.nanoTime() - due);
+			}
+		}
+		if (allocatedAtMeasureStart >= 0) {
+			allocatedBytes.addAndGet(threadBean.getThreadAllocatedBytes(threadId) - allocatedAtMeasureStart);
+		}
+		if (sink == 42) {
+			// keeps the rendering from being optimized away
+			System.out.print("");
+		}
+	}
+
+	private static void waitUntil(long due) {
+		for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+			if (wait > SPIN_NANOS) {
+				LockSupport.parkNanos(wait - SPIN_NANOS);
+			} else {
+				Thread.onSpinWait();
+			}
+		}
+	}
+
+	/**
+	 * @return true if nothing regressed beyond the tolerance
+	 */
+	private static boolean compare(Map<String, Double> baseline, Map<String, Double> report, double tolerance) {
+		boolean passed = true;
+		for (String key : new String[] { "throughput", "latency.p99.us", "allocation.bytes" }) {
+			Double expected = baseline.get(key);
+			if (expected == null) {
+				continue;
+			}
+			double actual = report.get(key);
+			boolean regressed;
+			if (key.equals("throughput")) {
+				regressed = actual < expected * (1 - tolerance);
+			} else if (key.equals("allocation.bytes")) {
+				regressed = actual > expected * (1 + tolerance) + ALLOCATION_SLACK;
+			} else {
+				regressed = actual > expected * (1 + tolerance);
+			}
+			System.out.printf("%-10s %s = %.1f (baseline %.1f)%n", regressed ? "REGRESSED" : "OK", key, actual,
+					expected);
+			passed &= !regressed;
+		}
+		return passed;
+	}
+
+	/**
+	 * Writes the report with the mix it was run with, so runs of different
+	 * versions can be checked for using the same traffic
+	 */
+	private static void store(Map<String, Double> report, Properties mix, Path file) throws IOException {
+		Properties properties = new Properties();
+		for (String key : mix.stringPropertyNames()) {
+			properties.setProperty("mix." + key, mix.getProperty(key));
+		}
+		for (Map.Entry<String, Double> result : report.entrySet()) {
+			properties.setProperty(result.getKey(), Double.toString(result.getValue()));
+		}
+		properties.setProperty("java.version", System.getProperty("java.version"));
+		properties.setProperty("processors", Integer.toString(Runtime.getRuntime().availableProcessors()));
+		try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			properties.store(writer, "Tool POS load report");
+		}
+	}
+
+	private static Map<String, Double> load(Path file) throws IOException {
+		Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		}
+		Map<String, Double> report = new TreeMap<>();
+		for (String key : properties.stringPropertyNames()) {
+			if (!key.startsWith("mix.") && !key.equals("java.version")) {
+				report.put(key, Double.valueOf(properties.getProperty(key)));
+			}
+		}
+		return report;
+	}
+
+	/**
+	 * Generates rental requests with the mix of a mix file
+	 */
+	static final class Workload {
+
+		private final ToolCode[] codes;
+
+		private final double[] codeWeights;
+
+		private final int[] discounts;
+
+		private final double[] discountWeights;
+
+		private final double daysScale;
+
+		private final double daysAlpha;
+
+		private final int daysMax;
+
+		private final int year;
+
+		private final double peakShare;
+
+		private final int peakWindow;
+
+		private final long[] peakEpochDays;
+
+		Workload(Properties mix) {
+			String[] tools = weights(mix.getProperty("tools"));
+			codes = new ToolCode[tools.length / 2];
+			codeWeights = new double[codes.length];
+			for (int i = 0; i < codes.length; i++) {
+				codes[i] = ToolCode.valueOf(tools[2 * i].trim().toUpperCase());
+				codeWeights[i] = Double.parseDouble(tools[2 * i + 1]);
+			}
+			String[] discountMix = weights(mix.getProperty("discounts"));
+			discounts = new int[discountMix.length / 2];
+			discountWeights = new double[discounts.length];
+			for (int i = 0; i < discounts.length; i++) {
+				discounts[i] = Integer.parseInt(discountMix[2 * i].trim());
+				discountWeights[i] = Double.parseDouble(discountMix[2 * i + 1]);
+			}
+			daysScale = Double.parseDouble(mix.getProperty("days.scale"));
+			daysAlpha = Double.parseDouble(mix.getProperty("days.alpha"));
+			daysMax = Integer.parseInt(mix.getProperty("days.max"));
+			year = Integer.parseInt(mix.getProperty("dates.year"));
+			peakShare = Double.parseDouble(mix.getProperty("dates.peakShare"));
+			peakWindow = Integer.parseInt(mix.getProperty("dates.peakWindow"));
+			List<HolidayRule> rules = HolidayCalendar.getDefault().getRules();
+			peakEpochDays = new long[rules.size()];
+			for (int i = 0; i < peakEpochDays.length; i++) {
+				peakEpochDays[i] = rules.get(i).getDate(year).toEpochDay();
+			}
+		}
+
+		/**
+		 * @return the code:weight pairs of a list, split into alternating codes
+		 *         and weights
+		 */
+		private static String[] weights(String list) {
+			String[] fields = list.split("[,:]");
+			if (fields.length % 2 != 0) {
+				throw new IllegalArgumentException("Expected value:weight pairs: " + list);
+			}
+			return fields;
+		}
+
+		/**
+		 * @param random The source of randomness
+		 * @param count The number of requests, a power of two
+		 * @return the requests
+		 */
+		RentalRequest[] generate(SplittableRandom random, int count) {
+			RentalRequest[] requests = new RentalRequest[count];
+			long firstDay = LocalDate.of(year, 1, 1).toEpochDay();
+			int daysInYear = LocalDate.of(year, 1, 1).lengthOfYear();
+			for (int i = 0; i < count; i++) {
+				ToolCode code = codes[pick(random, codeWeights)];
+				// Pareto: most rentals near the scale, a heavy tail of long ones
+				double pareto = daysScale / Math.pow(1 - random.nextDouble(), 1 / daysAlpha);
+				int rentalDays = (int) Math.min(daysMax, Math.max(1, Math.ceil(pareto)));
+				int discount = discounts[pick(random, discountWeights)];
+				long checkout;
+				if (peakEpochDays.length > 0 && random.nextDouble() < peakShare) {
+					checkout = peakEpochDays[random.nextInt(peakEpochDays.length)]
+							+ random.nextInt(-peakWindow, peakWindow + 1);
+				} else {
+					checkout = firstDay + random.nextInt(daysInYear);
+				}
+				requests[i] = new RentalRequest(code, rentalDays, discount, LocalDate.ofEpochDay(checkout));
+			}
+			return requests;
+		}
+
+		private static int pick(SplittableRandom random, double[] weights) {
+			double total = 0;
+			for (double weight : weights) {
+				total += weight;
+			}
+			double target = random.nextDouble() * total;
+			for (int i = 0; i < weights.length - 1; i++) {
+				target -= weights[i];
+				if (target < 0) {
+					return i;
+				}
+			}
+			return weights.length - 1;
+		}
+
+	}
+
+}
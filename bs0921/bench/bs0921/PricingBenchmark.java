@@ -0,0 +1,117 @@
+package bs0921;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bs0921.Tool.ToolCode;
+
+/**
+ * Benchmarks for pricing and rendering a single rental
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class PricingBenchmark {
+
+	@Param({ "LADW", "CHNS", "JAKR" })
+	public ToolCode code;
+
+	@Param({ "5", "90" })
+	public int rentalDays;
+
+	private LocalDate checkoutDate;
+
+	private Tool tool;
+
+	private RentalAgreement agreement;
+
+	private QuoteCache quoteCache;
+
+	@Setup
+	public void setup() throws Exception {
+		checkoutDate = LocalDate.of(2015, 7, 2);
+		tool = new Tool(code);
+		agreement = ToolPOS.rentTool(code, rentalDays, 25, checkoutDate);
+		quoteCache = new QuoteCache(1024);
+	}
+
+	@Benchmark
+	public RentalAgreement rentTool() throws Exception {
+		return ToolPOS.rentTool(code, rentalDays, 25, checkoutDate);
+	}
+
+	@Benchmark
+	public RentalResult cachedRentTool() {
+		return quoteCache.tryRentTool(code, rentalDays, 25, checkoutDate);
+	}
+
+	/**
+	 * A rental rejected for its discount, which returns an error code instead
+	 * of throwing
+	 */
+	@Benchmark
+	public RentalResult rejectedRental() {
+		return ToolPOS.tryRentTool(code, rentalDays, 101, checkoutDate);
+	}
+
+	@Benchmark
+	public RentalResult parseAndRentTool() {
+		return ToolPOS.tryRentTool(code.name(), "5", "25", "07/02/15");
+	}
+
+	@Benchmark
+	public double finalCharge() {
+		return RentalAgreement.builder()
+				.tool(tool)
+				.rentalDays(rentalDays)
+				.discountPercentage(25)
+				.checkoutDate(checkoutDate)
+				.build()
+				.getFinalCharge();
+	}
+
+	/**
+	 * A weekly extension, which prices only the added week however long the
+	 * rental already is
+	 */
+	@Benchmark
+	public RentalAgreement extendByAWeek() {
+		return agreement.extend(7);
+	}
+
+	@Benchmark
+	public RentalAgreement rebuildExtendedByAWeek() {
+		return agreement.toBuilder().rentalDays(rentalDays + 7).build();
+	}
+
+	@Benchmark
+	public String render() {
+		return agreement.toString();
+	}
+
+	@Benchmark
+	public Tool newTool() {
+		return new Tool(code);
+	}
+
+	@Benchmark
+	public Tool catalogTool() {
+		return ToolCatalog.getDefault().get(code);
+	}
+
+}
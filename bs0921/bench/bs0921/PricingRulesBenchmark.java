@@ -0,0 +1,69 @@
+package bs0921;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bs0921.Tool.ToolCode;
+
+/**
+ * Benchmarks for pricing a rental while promotions for another tool are
+ * installed, which must not slow pricing down
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class PricingRulesBenchmark {
+
+	@Param({ "0", "100" })
+	public int unrelatedRules;
+
+	private LocalDate checkoutDate;
+
+	private RentalAgreement agreement;
+
+	@Setup
+	public void setup() throws Exception {
+		List<PricingRule> rules = new ArrayList<>();
+		for (int i = 0; i < unrelatedRules; i++) {
+			LocalDate start = LocalDate.of(2015, 1, 1).plusDays(7 * i);
+			rules.add(PricingRule.promotion(start, start.plusDays(6), 10).forTool(ToolCode.JAKD));
+		}
+		PricingRules.setDefault(PricingRules.compile(rules));
+		checkoutDate = LocalDate.of(2015, 7, 2);
+		agreement = ToolPOS.rentTool(ToolCode.JAKR, 5, 25, checkoutDate);
+	}
+
+	@TearDown
+	public void tearDown() {
+		PricingRules.setDefault(PricingRules.NONE);
+	}
+
+	@Benchmark
+	public RentalAgreement rentTool() throws Exception {
+		return ToolPOS.rentTool(ToolCode.JAKR, 5, 25, checkoutDate);
+	}
+
+	@Benchmark
+	public RentalAgreement extendByAWeek() {
+		return agreement.extend(7);
+	}
+
+}
@@ -0,0 +1,123 @@
+package bs0921;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures how long a fresh JVM takes to print its first rental agreement, as
+ * a kiosk that starts one per transaction sees it. JMH forks can't measure
+ * this, since they time code in a JVM that has already started.
+ *
+ * Usage: {@code StartupBenchmark {pos jar} [launches]}
+ *
+ * Each configuration launches {@code ToolPOS LADW 3 10 07/02/20} the given
+ * number of times, 20 by default, and reports the median and slowest time
+ * from starting the process to reading the final charge:
+ * <ul>
+ * <li>default: a plain {@code java -cp}</li>
+ * <li>cds: with a dynamic AppCDS archive of the POS classes</li>
+ * <li>cds+c1: the archive plus the C1 compiler, serial GC and no perf data,
+ * as {@code bin/toolpos} launches it</li>
+ * </ul>
+ * The archive must be built from a jar, such as the target/toolpos.jar that
+ * mvn package builds; directories on the class path can't be archived.
+ */
+public class StartupBenchmark {
+
+	private static final String[] RENTAL = { "bs0921.ToolPOS", "LADW", "3", "10", "07/02/20" };
+
+	private static final String[] FAST_FLAGS = { "-XX:TieredStopAtLevel=1", "-XX:+UseSerialGC",
+			"-XX:-UsePerfData" };
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 1) {
+			System.err.println("Usage: StartupBenchmark {pos jar} [launches]");
+			System.exit(2);
+		}
+		String jar = args[0];
+		int launches = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+
+		Path archive = Files.createTempFile("toolpos", ".jsa");
+		try {
+			Files.delete(archive);
+			launch(command(java, jar, "-XX:ArchiveClassesAtExit=" + archive));
+			if (!Files.exists(archive)) {
+				throw new IllegalStateException("The JVM did not write a class archive for " + jar);
+			}
+			String shared = "-XX:SharedArchiveFile=" + archive;
+
+			long base = report("default", command(java, jar), launches);
+			report("cds", command(java, jar, shared), launches, base);
+			List<String> fast = new ArrayList<>(Arrays.asList(shared));
+			fast.addAll(Arrays.asList(FAST_FLAGS));
+			report("cds+c1", command(java, jar, fast.toArray(new String[0])), launches, base);
+		} finally {
+			Files.deleteIfExists(archive);
+		}
+	}
+
+	private static List<String> command(String java, String jar, String... options) {
+		List<String> command = new ArrayList<>();
+		command.add(java);
+		command.addAll(Arrays.asList(options));
+		command.add("-cp");
+		command.add(jar);
+		command.addAll(Arrays.asList(RENTAL));
+		return command;
+	}
+
+	/**
+	 * @return the median launch time, in nanoseconds
+	 */
+	private static long report(String name, List<String> command, int launches)
+			throws IOException, InterruptedException {
+		// one launch to warm the file system cache
+		launch(command);
+		long[] nanos = new long[launches];
+		for (int i = 0; i < launches; i++) {
+			nanos[i] = launch(command);
+		}
+		Arrays.sort(nanos);
+		long median = nanos[launches / 2];
+		System.out.printf("%-8s median %6.1f ms  max %6.1f ms%n", name, median / 1e6, nanos[launches - 1] / 1e6);
+		return median;
+	}
+
+	private static void report(String name, List<String> command, int launches, long baseNanos)
+			throws IOException, InterruptedException {
+		long median = report(name, command, launches);
+		System.out.printf("%-8s %.0f%% faster than default%n", "", 100.0 * (baseNanos - median) / baseNanos);
+	}
+
+	/**
+	 * @return the nanoseconds from starting the process to reading the final
+	 *         charge of the agreement
+	 */
+	private static long launch(List<String> command) throws IOException, InterruptedException {
+		long start = System.nanoTime();
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		long nanos = -1;
+		try (BufferedReader output = new BufferedReader(
+				new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+			for (String line = output.readLine(); line != null; line = output.readLine()) {
+				if (nanos < 0 && line.startsWith("Final Charge:")) {
+					nanos = System.nanoTime() - start;
+				}
+			}
+		}
+		if (process.waitFor() != 0 || nanos < 0) {
+			throw new IllegalStateException("The rental did not print an agreement: " + command);
+		}
+		return nanos;
+	}
+
+}
@@ -0,0 +1,57 @@
+package bs0921;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for sweeping the catalog over a year of checkout dates
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SweepBenchmark {
+
+	@Param({ "30", "365" })
+	public int maxRentalDays;
+
+	private Path file;
+
+	private PricingSweep sweep;
+
+	@Setup
+	public void setup() throws IOException {
+		file = Files.createTempFile("sweep-bench", ".bin");
+		sweep = new PricingSweep(ToolCatalog.getDefault(), HolidayCalendar.getDefault(), LocalDate.of(2020, 1, 1),
+				365, maxRentalDays, 0, 5, 10, 15, 20, 25, 50, 100);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.delete(file);
+	}
+
+	@Benchmark
+	public long sweepYear() throws IOException {
+		return sweep.writeTo(file);
+	}
+
+}
@@ -0,0 +1,758 @@
+package bs0921;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import bs0921.Tool.Brand;
+import bs0921.Tool.ToolCode;
+import bs0921.Tool.ToolType;
+
+/**
+ * A columnar store of archived agreements for revenue reports.
+ *
+ * Agreements are kept as primitive columns in segments of up to 65536 rows:
+ * checkout dates as short day offsets from the segment's first checkout date,
+ * tool code, type, brand and discount as bytes, and rental days and charges as
+ * ints. A row takes 18 bytes, so hundreds of millions of agreements fit in a
+ * few gigabytes without a single object per agreement.
+ *
+ * {@link #aggregate(LocalDate, LocalDate, Dimension...)} groups by any mix of
+ * {@link Dimension}s and sums counts, rental days, discounts and final charges.
+ * Segments are scanned in parallel on the common fork-join pool, a few tasks
+ * per worker, each summing its run of segments into one set of totals; each
+ * scan computes group ids for the whole segment one column at a time, in loops
+ * the JIT can vectorize, before adding up the charges. Totals are arrays
+ * indexed by group id, or a hash table of the groups seen when a query has
+ * more groups than a segment has rows.
+ *
+ * Appends are serialized. Aggregations may run while agreements are appended,
+ * and see every agreement appended before they started.
+ */
+public final class AgreementArchive {
+
+	/**
+	 * The ways agreements can be grouped
+	 */
+	public enum Dimension {
+
+		TOOL_CODE,
+		TOOL_TYPE,
+		BRAND,
+		/**
+		 * Checkout month, as yyyy-MM
+		 */
+		MONTH,
+		/**
+		 * Discount percent in tens, 0-9% through 90-99% and 100%
+		 */
+		DISCOUNT_BUCKET
+
+	}
+
+	static final int SEGMENT_ROWS = 1 << 16;
+
+	private static final ToolCode[] CODES = ToolCode.values();
+
+	private static final ToolType[] TYPES = ToolType.values();
+
+	private static final Brand[] BRANDS = Brand.values();
+
+	private static final int DISCOUNT_BUCKETS = 11;
+
+	/**
+	 * Queries with up to this many groups sum into arrays indexed by group,
+	 * larger ones into a table of the groups seen
+	 */
+	static final int DENSE_GROUPS = SEGMENT_ROWS;
+
+	private final Object appendLock = new Object();
+
+	private volatile Segment[] segments = new Segment[0];
+
+	/**
+	 * Appends an agreement
+	 *
+	 * @param agreement The agreement
+	 * @throws IllegalArgumentException if a charge is over the int range of
+	 *         cents, or the tool is not a {@link ToolCode}, {@link ToolType}
+	 *         and {@link Brand}, which rows store
+	 */
+	public void add(RentalAgreement agreement) {
+		agreement.getTool().requireCode();
+		long epochDay = agreement.getCheckoutDate().toEpochDay();
+		int finalCents = toIntCents(agreement.getFinalChargeCents());
+		int discountCents = toIntCents(agreement.getDiscountAmountCents());
+		synchronized (appendLock) {
+			Segment[] current = segments;
+			Segment last = current.length == 0 ? null : current[current.length - 1];
+			if (last == null || !last.fits(epochDay)) {
+				last = new Segment(epochDay);
+				current = Arrays.copyOf(current, current.length + 1);
+				current[current.length - 1] = last;
+				segments = current;
+			}
+			last.add(agreement, epochDay, finalCents, discountCents);
+		}
+	}
+
+	/**
+	 * Appends agreements
+	 *
+	 * @param agreements The agreements
+	 */
+	public void addAll(Iterable<RentalAgreement> agreements) {
+		for (RentalAgreement agreement : agreements) {
+			add(agreement);
+		}
+	}
+
+	/**
+	 * @return the number of agreements
+	 */
+	public long size() {
+		long size = 0;
+		for (Segment segment : segments) {
+			size += segment.size;
+		}
+		return size;
+	}
+
+	/**
+	 * Groups every agreement
+	 *
+	 * @see #aggregate(LocalDate, LocalDate, Dimension...)
+	 */
+	public Aggregation aggregate(Dimension... dimensions) {
+		return aggregate(null, null, dimensions);
+	}
+
+	/**
+	 * Groups the agreements checked out in a date range and sums each group
+	 *
+	 * @param from The first checkout date to include, null for no limit
+	 * @param to The last checkout date to include, null for no limit
+	 * @param dimensions The dimensions to group by, none for one group of all
+	 * @return the non-empty groups, ordered by the dimensions
+	 */
+	public Aggregation aggregate(LocalDate from, LocalDate to, Dimension... dimensions) {
+		Segment[] snapshot = segments;
+		int[] sizes = new int[snapshot.length];
+		long minDay = Long.MAX_VALUE;
+		long maxDay = Long.MIN_VALUE;
+		for (int i = 0; i < snapshot.length; i++) {
+			sizes[i] = snapshot[i].size;
+			minDay = Math.min(minDay, snapshot[i].baseDay + snapshot[i].minOffset);
+			maxDay = Math.max(maxDay, snapshot[i].baseDay + snapshot[i].maxOffset);
+		}
+		int firstMonth = snapshot.length == 0 ? 0 : monthIndex(minDay);
+		int months = snapshot.length == 0 ? 1 : monthIndex(maxDay) - firstMonth + 1;
+
+		int[] cardinalities = new int[dimensions.length];
+		long groups = 1;
+		for (int d = 0; d < dimensions.length; d++) {
+			cardinalities[d] = cardinality(dimensions[d], months);
+			groups *= cardinalities[d];
+		}
+		if (groups > 1 << 24) {
+			throw new IllegalArgumentException("Too many groups: " + groups);
+		}
+
+		// a few tasks per worker, each reusing its sums for all its segments
+		int segmentsPerTask = Math.max(1, snapshot.length / (4 * ForkJoinPool.getCommonPoolParallelism()));
+		Query query = new Query(snapshot, sizes, dimensions.clone(), cardinalities, (int) groups, firstMonth,
+				from == null ? Long.MIN_VALUE : from.toEpochDay(), to == null ? Long.MAX_VALUE : to.toEpochDay(),
+				segmentsPerTask);
+		Totals totals = ForkJoinPool.commonPool().invoke(new ScanTask(query, 0, snapshot.length));
+		return totals.toAggregation(query);
+	}
+
+	private static int cardinality(Dimension dimension, int months) {
+		switch (dimension) {
+		case TOOL_CODE:
+			return CODES.length;
+		case TOOL_TYPE:
+			return TYPES.length;
+		case BRAND:
+			return BRANDS.length;
+		case MONTH:
+			return months;
+		case DISCOUNT_BUCKET:
+			return DISCOUNT_BUCKETS;
+		default:
+			throw new IllegalArgumentException(dimension.toString());
+		}
+	}
+
+	/**
+	 * @return months since year 0 of the epoch day
+	 */
+	private static int monthIndex(long epochDay) {
+		LocalDate date = LocalDate.ofEpochDay(epochDay);
+		return date.getYear() * 12 + date.getMonthValue() - 1;
+	}
+
+	private static int toIntCents(long cents) {
+		if (cents != (int) cents) {
+			throw new IllegalArgumentException("Charge of " + Money.toString(cents) + " is too large to archive");
+		}
+		return (int) cents;
+	}
+
+	/**
+	 * Up to {@link #SEGMENT_ROWS} agreements checked out within 32767 days of
+	 * the first one. Rows are written under the archive's append lock and
+	 * published by the volatile size.
+	 */
+	private static final class Segment {
+
+		final long baseDay;
+
+		final short[] dayOffsets = new short[SEGMENT_ROWS];
+
+		final byte[] codes = new byte[SEGMENT_ROWS];
+
+		final byte[] types = new byte[SEGMENT_ROWS];
+
+		final byte[] brands = new byte[SEGMENT_ROWS];
+
+		final byte[] discounts = new byte[SEGMENT_ROWS];
+
+		final int[] rentalDays = new int[SEGMENT_ROWS];
+
+		final int[] finalCents = new int[SEGMENT_ROWS];
+
+		final int[] discountCents = new int[SEGMENT_ROWS];
+
+		volatile int size;
+
+		int minOffset;
+
+		int maxOffset;
+
+		Segment(long baseDay) {
+			this.baseDay = baseDay;
+		}
+
+		boolean fits(long epochDay) {
+			long offset = epochDay - baseDay;
+			return size < SEGMENT_ROWS && offset >= Short.MIN_VALUE && offset <= Short.MAX_VALUE;
+		}
+
+		void add(RentalAgreement agreement, long epochDay, int finalCharge, int discountAmount) {
+			int row = size;
+			int offset = (int) (epochDay - baseDay);
+			Tool tool = agreement.getTool();
+			dayOffsets[row] = (short) offset;
+			codes[row] = (byte) tool.getCode().ordinal();
+			types[row] = (byte) tool.getType().ordinal();
+			brands[row] = (byte) tool.getBrand().ordinal();
+			discounts[row] = (byte) agreement.getDiscountPercentage();
+			rentalDays[row] = agreement.getRentalDays();
+			finalCents[row] = finalCharge;
+			discountCents[row] = discountAmount;
+			minOffset = Math.min(minOffset, offset);
+			maxOffset = Math.max(maxOffset, offset);
+			size = row + 1;
+		}
+
+	}
+
+	private static final class Query {
+
+		final Segment[] segments;
+
+		final int[] sizes;
+
+		final Dimension[] dimensions;
+
+		final int[] cardinalities;
+
+		final int groups;
+
+		final int firstMonth;
+
+		final long fromDay;
+
+		final long toDay;
+
+		final int segmentsPerTask;
+
+		Query(Segment[] segments, int[] sizes, Dimension[] dimensions, int[] cardinalities, int groups,
+				int firstMonth, long fromDay, long toDay, int segmentsPerTask) {
+			this.segments = segments;
+			this.sizes = sizes;
+			this.dimensions = dimensions;
+			this.cardinalities = cardinalities;
+			this.groups = groups;
+			this.firstMonth = firstMonth;
+			this.fromDay = fromDay;
+			this.toDay = toDay;
+			this.segmentsPerTask = segmentsPerTask;
+		}
+
+	}
+
+	/**
+	 * Sums per group id. One is filled by each leaf scan task and reused for
+	 * every segment it scans.
+	 */
+	private abstract static class Totals {
+
+		/**
+		 * Adds the rows of the segment to the sums of their groups, skipping
+		 * rows whose group is -1
+		 */
+		abstract void add(Segment segment, int[] groups, int size);
+
+		/**
+		 * Adds the sums of another of the same kind to these
+		 *
+		 * @return these sums
+		 */
+		abstract Totals add(Totals other);
+
+		/**
+		 * @return the non-empty groups in group id order
+		 */
+		abstract Aggregation toAggregation(Query query);
+
+		static Totals of(Query query) {
+			return query.groups <= DENSE_GROUPS ? new DenseTotals(query.groups) : new SparseTotals();
+		}
+
+	}
+
+	/**
+	 * Sums in arrays indexed by group id, for queries with few enough groups
+	 * that every one can have a slot
+	 */
+	private static final class DenseTotals extends Totals {
+
+		final long[] counts;
+
+		final long[] rentalDays;
+
+		final long[] discountCents;
+
+		final long[] finalCents;
+
+		DenseTotals(int groups) {
+			counts = new long[groups];
+			rentalDays = new long[groups];
+			discountCents = new long[groups];
+			finalCents = new long[groups];
+		}
+
+		@Override
+		void add(Segment segment, int[] groups, int size) {
+			for (int i = 0; i < size; i++) {
+				int group = groups[i];
+				if (group >= 0) {
+					counts[group]++;
+					rentalDays[group] += segment.rentalDays[i];
+					discountCents[group] += segment.discountCents[i];
+					finalCents[group] += segment.finalCents[i];
+				}
+			}
+		}
+
+		@Override
+		Totals add(Totals totals) {
+			DenseTotals other = (DenseTotals) totals;
+			for (int g = 0; g < counts.length; g++) {
+				counts[g] += other.counts[g];
+				rentalDays[g] += other.rentalDays[g];
+				discountCents[g] += other.discountCents[g];
+				finalCents[g] += other.finalCents[g];
+			}
+			return this;
+		}
+
+		@Override
+		Aggregation toAggregation(Query query) {
+			int size = 0;
+			for (long count : counts) {
+				if (count > 0) {
+					size++;
+				}
+			}
+			Aggregation aggregation = new Aggregation(query, size);
+			int row = 0;
+			for (int g = 0; g < counts.length; g++) {
+				if (counts[g] > 0) {
+					aggregation.set(row++, g, counts[g], rentalDays[g], discountCents[g], finalCents[g]);
+				}
+			}
+			return aggregation;
+		}
+
+	}
+
+	/**
+	 * Sums in an open addressing table of the groups seen, for queries with
+	 * more groups than rows in a segment, which leave most groups empty
+	 */
+	private static final class SparseTotals extends Totals {
+
+		private int[] keys = emptyKeys(1024);
+
+		private long[] counts = new long[1024];
+
+		private long[] rentalDays = new long[1024];
+
+		private long[] discountCents = new long[1024];
+
+		private long[] finalCents = new long[1024];
+
+		private int size;
+
+		@Override
+		void add(Segment segment, int[] groups, int size) {
+			for (int i = 0; i < size; i++) {
+				int group = groups[i];
+				if (group >= 0) {
+					int slot = slot(group);
+					counts[slot]++;
+					rentalDays[slot] += segment.rentalDays[i];
+					discountCents[slot] += segment.discountCents[i];
+					finalCents[slot] += segment.finalCents[i];
+				}
+			}
+		}
+
+		@Override
+		Totals add(Totals totals) {
+			SparseTotals other = (SparseTotals) totals;
+			for (int j = 0; j < other.keys.length; j++) {
+				if (other.keys[j] >= 0) {
+					int slot = slot(other.keys[j]);
+					counts[slot] += other.counts[j];
+					rentalDays[slot] += other.rentalDays[j];
+					discountCents[slot] += other.discountCents[j];
+					finalCents[slot] += other.finalCents[j];
+				}
+			}
+			return this;
+		}
+
+		@Override
+		Aggregation toAggregation(Query query) {
+			// group id in the high half, slot in the low half, so sorting orders by group
+			long[] order = new long[size];
+			int n = 0;
+			for (int j = 0; j < keys.length; j++) {
+				if (keys[j] >= 0) {
+					order[n++] = (long) keys[j] << 32 | j;
+				}
+			}
+			Arrays.sort(order);
+			Aggregation aggregation = new Aggregation(query, size);
+			for (int row = 0; row < size; row++) {
+				int j = (int) order[row];
+				aggregation.set(row, keys[j], counts[j], rentalDays[j], discountCents[j], finalCents[j]);
+			}
+			return aggregation;
+		}
+
+		/**
+		 * @return the slot of the group, added if it is not in the table yet
+		 */
+		private int slot(int group) {
+			int mask = keys.length - 1;
+			int hash = group * 0x9E3779B9;
+			int j = (hash ^ hash >>> 16) & mask;
+			while (keys[j] != group) {
+				if (keys[j] < 0) {
+					if (2 * (size + 1) > keys.length) {
+						grow();
+						return slot(group);
+					}
+					keys[j] = group;
+					size++;
+					return j;
+				}
+				j = (j + 1) & mask;
+			}
+			return j;
+		}
+
+		private void grow() {
+			int[] oldKeys = keys;
+			long[] oldCounts = counts;
+			long[] oldRentalDays = rentalDays;
+			long[] oldDiscountCents = discountCents;
+			long[] oldFinalCents = finalCents;
+			int capacity = oldKeys.length * 2;
+			keys = emptyKeys(capacity);
+			counts = new long[capacity];
+			rentalDays = new long[capacity];
+			discountCents = new long[capacity];
+			finalCents = new long[capacity];
+			size = 0;
+			for (int j = 0; j < oldKeys.length; j++) {
+				if (oldKeys[j] >= 0) {
+					int slot = slot(oldKeys[j]);
+					counts[slot] = oldCounts[j];
+					rentalDays[slot] = oldRentalDays[j];
+					discountCents[slot] = oldDiscountCents[j];
+					finalCents[slot] = oldFinalCents[j];
+				}
+			}
+		}
+
+		private static int[] emptyKeys(int capacity) {
+			int[] keys = new int[capacity];
+			Arrays.fill(keys, -1);
+			return keys;
+		}
+
+	}
+
+	/**
+	 * Splits the segments in halves until one is left, then scans it
+	 */
+	private static final class ScanTask extends RecursiveTask<Totals> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Query query;
+
+		private final int from;
+
+		private final int to;
+
+		ScanTask(Query query, int from, int to) {
+			this.query = query;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Totals compute() {
+			if (to - from <= query.segmentsPerTask) {
+				Totals totals = Totals.of(query);
+				int[] groups = new int[SEGMENT_ROWS];
+				for (int i = from; i < to; i++) {
+					scan(query.segments[i], query.sizes[i], totals, groups);
+				}
+				return totals;
+			}
+			int middle = (from + to) >>> 1;
+			ScanTask right = new ScanTask(query, middle, to);
+			right.fork();
+			Totals left = new ScanTask(query, from, middle).compute();
+			return left.add(right.join());
+		}
+
+		/**
+		 * @param groups Scratch space for the group id of each row
+		 */
+		private void scan(Segment segment, int size, Totals totals, int[] groups) {
+			Arrays.fill(groups, 0, size, 0);
+			for (int d = 0; d < query.dimensions.length; d++) {
+				int cardinality = query.cardinalities[d];
+				switch (query.dimensions[d]) {
+				case TOOL_CODE:
+					for (int i = 0; i < size; i++) {
+						groups[i] = groups[i] * cardinality + segment.codes[i];
+					}
+					break;
+				case TOOL_TYPE:
+					for (int i = 0; i < size; i++) {
+						groups[i] = groups[i] * cardinality + segment.types[i];
+					}
+					break;
+				case BRAND:
+					for (int i = 0; i < size; i++) {
+						groups[i] = groups[i] * cardinality + segment.brands[i];
+					}
+					break;
+				case DISCOUNT_BUCKET:
+					for (int i = 0; i < size; i++) {
+						groups[i] = groups[i] * cardinality + segment.discounts[i] / 10;
+					}
+					break;
+				case MONTH:
+					int minOffset = segment.minOffset;
+					int[] months = monthsByOffset(segment, minOffset);
+					for (int i = 0; i < size; i++) {
+						groups[i] = groups[i] * cardinality + months[segment.dayOffsets[i] - minOffset];
+					}
+					break;
+				default:
+					throw new IllegalArgumentException(query.dimensions[d].toString());
+				}
+			}
+
+			if (segment.baseDay + segment.minOffset < query.fromDay || segment.baseDay + segment.maxOffset > query.toDay) {
+				long from = query.fromDay - segment.baseDay;
+				long to = query.toDay - segment.baseDay;
+				for (int i = 0; i < size; i++) {
+					if (segment.dayOffsets[i] < from || segment.dayOffsets[i] > to) {
+						groups[i] = -1;
+					}
+				}
+			}
+
+			totals.add(segment, groups, size);
+		}
+
+		/**
+		 * @return the month number, from the query's first month, of each day
+		 *         offset from the segment's minimum
+		 */
+		private int[] monthsByOffset(Segment segment, int minOffset) {
+			int[] months = new int[segment.maxOffset - minOffset + 1];
+			long day = segment.baseDay + minOffset;
+			LocalDate monthStart = LocalDate.ofEpochDay(day).withDayOfMonth(1);
+			int month = monthIndex(day) - query.firstMonth;
+			long nextMonth = monthStart.plusMonths(1).toEpochDay();
+			for (int k = 0; k < months.length; k++, day++) {
+				if (day == nextMonth) {
+					month++;
+					monthStart = monthStart.plusMonths(1);
+					nextMonth = monthStart.plusMonths(1).toEpochDay();
+				}
+				months[k] = month;
+			}
+			return months;
+		}
+
+	}
+
+	/**
+	 * The non-empty groups of an aggregation and their sums
+	 */
+	public static final class Aggregation {
+
+		private final Dimension[] dimensions;
+
+		private final int[] cardinalities;
+
+		private final int firstMonth;
+
+		private final int[] groups;
+
+		private final long[] counts;
+
+		private final long[] rentalDays;
+
+		private final long[] discountCents;
+
+		private final long[] finalCents;
+
+		Aggregation(Query query, int size) {
+			dimensions = query.dimensions;
+			cardinalities = query.cardinalities;
+			firstMonth = query.firstMonth;
+			groups = new int[size];
+			counts = new long[size];
+			rentalDays = new long[size];
+			discountCents = new long[size];
+			finalCents = new long[size];
+		}
+
+		void set(int row, int group, long count, long rentalDays, long discountCents, long finalCents) {
+			this.groups[row] = group;
+			this.counts[row] = count;
+			this.rentalDays[row] = rentalDays;
+			this.discountCents[row] = discountCents;
+			this.finalCents[row] = finalCents;
+		}
+
+		/**
+		 * @return the number of non-empty groups
+		 */
+		public int size() {
+			return groups.length;
+		}
+
+		/**
+		 * @param row The group, from 0
+		 * @return the group's value of each dimension, in the order grouped by
+		 */
+		public String[] getKey(int row) {
+			String[] key = new String[dimensions.length];
+			int group = groups[row];
+			for (int d = dimensions.length - 1; d >= 0; d--) {
+				int value = group % cardinalities[d];
+				group /= cardinalities[d];
+				key[d] = label(dimensions[d], value);
+			}
+			return key;
+		}
+
+		/**
+		 * @return the number of agreements in the group
+		 */
+		public long getCount(int row) {
+			return counts[row];
+		}
+
+		/**
+		 * @return the sum of rental days in the group
+		 */
+		public long getRentalDays(int row) {
+			return rentalDays[row];
+		}
+
+		/**
+		 * @return the sum of discounts in the group, in cents
+		 */
+		public long getDiscountCents(int row) {
+			return discountCents[row];
+		}
+
+		/**
+		 * @return the revenue of the group, the sum of final charges in cents
+		 */
+		public long getFinalChargeCents(int row) {
+			return finalCents[row];
+		}
+
+		/**
+		 * @return a tab separated table with a header row
+		 */
+		@Override
+		public String toString() {
+			StringBuilder out = new StringBuilder(64 * (groups.length + 1));
+			for (Dimension dimension : dimensions) {
+				out.append(dimension).append('\t');
+			}
+			out.append("count\trental days\tdiscount\trevenue\n");
+			for (int row = 0; row < groups.length; row++) {
+				for (String value : getKey(row)) {
+					out.append(value).append('\t');
+				}
+				out.append(counts[row]).append('\t').append(rentalDays[row]).append('\t');
+				Money.appendTo(out, discountCents[row]);
+				out.append('\t');
+				Money.appendTo(out, finalCents[row]);
+				out.append('\n');
+			}
+			return out.toString();
+		}
+
+		private String label(Dimension dimension, int value) {
+			switch (dimension) {
+			case TOOL_CODE:
+				return CODES[value].name();
+			case TOOL_TYPE:
+				return TYPES[value].toString();
+			case BRAND:
+				return BRANDS[value].toString();
+			case MONTH:
+				int month = firstMonth + value;
+				return String.format("%04d-%02d", month / 12, month % 12 + 1);
+			case DISCOUNT_BUCKET:
+				return value == 10 ? "100%" : value * 10 + "-" + (value * 10 + 9) + "%";
+			default:
+				throw new IllegalArgumentException(dimension.toString());
+			}
+		}
+
+	}
+
+}
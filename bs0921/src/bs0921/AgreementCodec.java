@@ -0,0 +1,281 @@
+package bs0921;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.LocalDate;
+
+import bs0921.Tool.Brand;
+import bs0921.Tool.ToolCode;
+import bs0921.Tool.ToolType;
+
+/**
+ * A compact binary form of agreements and tools for storing and shipping them
+ * between processes.
+ *
+ * Agreements are encoded straight into and decoded straight out of the
+ * caller's buffer, which may be direct or memory-mapped. An encoded agreement
+ * starts with a version byte; an encoded array starts with one version byte
+ * and a count for all of them. Integers are varints, the checkout date is a
+ * zigzag varint epoch day and cents are big-endian longs whatever the buffer's
+ * byte order.
+ *
+ * <pre>
+ * tool      code, type and brand ordinal bytes, flags byte (1 charge
+ *           weekends, 2 charge holidays), daily charge in cents
+ * agreement tool, checkout epoch day, rental days, discount percentage,
+ *           discount percentage the clerk entered, chargeable days,
+ *           pre-discount charge, discount amount and final charge in cents
+ * </pre>
+ *
+ * Version 1, from before the clerk's discount was recorded, is still read,
+ * taking the discount applied as the one entered.
+ *
+ * A typical agreement takes about 45 bytes, against about 300 as text.
+ * Pricing rules are not encoded: an agreement decoded without the rules it
+ * was priced with keeps its charges but can't be
+ * {@link RentalAgreement#extend(int) adjusted}.
+ */
+public final class AgreementCodec {
+
+	/**
+	 * The version written by this codec. Decoding rejects any other but
+	 * {@link #VERSION_1}.
+	 */
+	public static final byte VERSION = 2;
+
+	/**
+	 * The version without the discount the clerk entered
+	 */
+	static final byte VERSION_1 = 1;
+
+	/**
+	 * The most bytes {@link #encode(ByteBuffer, RentalAgreement)} writes
+	 */
+	public static final int MAX_ENCODED_LENGTH = 1 + 12 + 5 * 5 + 3 * 8;
+
+	private static final ToolCode[] CODES = ToolCode.values();
+
+	private static final ToolType[] TYPES = ToolType.values();
+
+	private static final Brand[] BRANDS = Brand.values();
+
+	private static final int WEEKENDS = 1;
+
+	private static final int HOLIDAYS = 2;
+
+	private AgreementCodec() {
+	}
+
+	/**
+	 * Writes the version and the agreement at the buffer's position
+	 *
+	 * @param out The buffer to write to
+	 * @param agreement The agreement
+	 * @throws java.nio.BufferOverflowException if the buffer is too small
+	 * @throws IllegalArgumentException if the tool is not a
+	 *         {@link ToolCode}, {@link ToolType} and {@link Brand}, which
+	 *         tools are encoded by
+	 */
+	public static void encode(ByteBuffer out, RentalAgreement agreement) {
+		out.put(VERSION);
+		putAgreement(out, agreement);
+	}
+
+	/**
+	 * Reads an agreement written by {@link #encode(ByteBuffer, RentalAgreement)}
+	 * from the buffer's position. The agreement keeps the charges it was encoded
+	 * with and gets the default holiday calendar. It can't be adjusted.
+	 *
+	 * @param in The buffer to read from
+	 * @return the agreement
+	 * @throws IllegalArgumentException if the version is not supported or the
+	 *         bytes are not a valid agreement
+	 * @throws java.nio.BufferUnderflowException if the buffer ends early
+	 * @see #decode(ByteBuffer, PricingRules)
+	 */
+	public static RentalAgreement decode(ByteBuffer in) {
+		return decode(in, null);
+	}
+
+	/**
+	 * Reads an agreement that can be adjusted with the rules it was priced with
+	 *
+	 * @param in The buffer to read from
+	 * @param rules The rules the agreement was priced with
+	 * @see #decode(ByteBuffer)
+	 */
+	public static RentalAgreement decode(ByteBuffer in, PricingRules rules) {
+		byte version = checkVersion(in.get());
+		return getAgreement(in, version, HolidayCalendar.getDefault(), rules);
+	}
+
+	/**
+	 * Writes the version, the count and the agreements at the buffer's position
+	 *
+	 * @param out The buffer to write to
+	 * @param agreements The agreements
+	 * @param offset The index of the first agreement to write
+	 * @param length The number of agreements to write
+	 * @throws java.nio.BufferOverflowException if the buffer is too small, which
+	 *         it never is with {@code length * MAX_ENCODED_LENGTH + 6} bytes
+	 *         remaining
+	 */
+	public static void encodeAll(ByteBuffer out, RentalAgreement[] agreements, int offset, int length) {
+		out.put(VERSION);
+		putVarint(out, length);
+		for (int i = offset; i < offset + length; i++) {
+			putAgreement(out, agreements[i]);
+		}
+	}
+
+	/**
+	 * @see #encodeAll(ByteBuffer, RentalAgreement[], int, int)
+	 */
+	public static void encodeAll(ByteBuffer out, RentalAgreement[] agreements) {
+		encodeAll(out, agreements, 0, agreements.length);
+	}
+
+	/**
+	 * Reads agreements written by
+	 * {@link #encodeAll(ByteBuffer, RentalAgreement[], int, int)}
+	 *
+	 * @param in The buffer to read from
+	 * @return the agreements
+	 * @throws IllegalArgumentException if the version is not supported or the
+	 *         bytes are not valid agreements
+	 * @throws java.nio.BufferUnderflowException if the buffer ends early
+	 * @see #decode(ByteBuffer)
+	 */
+	public static RentalAgreement[] decodeAll(ByteBuffer in) {
+		return decodeAll(in, null);
+	}
+
+	/**
+	 * Reads agreements that can be adjusted with the rules they were priced
+	 * with
+	 *
+	 * @param in The buffer to read from
+	 * @param rules The rules the agreements were priced with
+	 * @see #decodeAll(ByteBuffer)
+	 */
+	public static RentalAgreement[] decodeAll(ByteBuffer in, PricingRules rules) {
+		byte version = checkVersion(in.get());
+		int count = getVarint(in);
+		if (count < 0 || count > in.remaining()) {
+			throw new IllegalArgumentException("Invalid agreement count " + count);
+		}
+		HolidayCalendar calendar = HolidayCalendar.getDefault();
+		RentalAgreement[] agreements = new RentalAgreement[count];
+		for (int i = 0; i < count; i++) {
+			agreements[i] = getAgreement(in, version, calendar, rules);
+		}
+		return agreements;
+	}
+
+	/**
+	 * Writes the tool, without a version, at the buffer's position
+	 *
+	 * @param out The buffer to write to
+	 * @param tool The tool
+	 * @throws IllegalArgumentException if the tool is not a
+	 *         {@link ToolCode}, {@link ToolType} and {@link Brand}
+	 */
+	public static void encodeTool(ByteBuffer out, Tool tool) {
+		out.put((byte) tool.requireCode().ordinal())
+				.put((byte) tool.getType().ordinal())
+				.put((byte) tool.getBrand().ordinal())
+				.put((byte) ((tool.chargeWeekends() ? WEEKENDS : 0) | (tool.chargeHolidays() ? HOLIDAYS : 0)));
+		putCents(out, tool.getDailyChargeCents());
+	}
+
+	/**
+	 * @param in The buffer to read from
+	 * @return the tool written by {@link #encodeTool(ByteBuffer, Tool)}
+	 * @throws IllegalArgumentException if the bytes are not a valid tool
+	 */
+	public static Tool decodeTool(ByteBuffer in) {
+		ToolCode code = CODES[ordinal(in.get(), CODES.length)];
+		ToolType type = TYPES[ordinal(in.get(), TYPES.length)];
+		Brand brand = BRANDS[ordinal(in.get(), BRANDS.length)];
+		int flags = in.get();
+		return new Tool(code, type, brand, getCents(in), (flags & WEEKENDS) != 0, (flags & HOLIDAYS) != 0);
+	}
+
+	private static void putAgreement(ByteBuffer out, RentalAgreement agreement) {
+		encodeTool(out, agreement.getTool());
+		int epochDay = Math.toIntExact(agreement.getCheckoutDate().toEpochDay());
+		putVarint(out, (epochDay << 1) ^ (epochDay >> 31));
+		putVarint(out, agreement.getRentalDays());
+		putVarint(out, agreement.getDiscountPercentage());
+		putVarint(out, agreement.getRequestedDiscountPercentage());
+		putVarint(out, agreement.getChargeableDays());
+		putCents(out, agreement.getTotalCostNoDiscountCents());
+		putCents(out, agreement.getDiscountAmountCents());
+		putCents(out, agreement.getFinalChargeCents());
+	}
+
+	private static RentalAgreement getAgreement(ByteBuffer in, byte version, HolidayCalendar calendar,
+			PricingRules rules) {
+		Tool tool = decodeTool(in);
+		int zigzag = getVarint(in);
+		LocalDate checkoutDate = LocalDate.ofEpochDay((zigzag >>> 1) ^ -(zigzag & 1));
+		int rentalDays = getVarint(in);
+		int discountPercentage = getVarint(in);
+		int requestedDiscountPercentage = version == VERSION_1 ? discountPercentage : getVarint(in);
+		int chargeableDays = getVarint(in);
+		if (rentalDays < 1 || discountPercentage < 0 || discountPercentage > 100 || requestedDiscountPercentage < 0
+				|| requestedDiscountPercentage > discountPercentage || chargeableDays < 0
+				|| chargeableDays > rentalDays) {
+			throw new IllegalArgumentException("Invalid encoded agreement");
+		}
+		return new RentalAgreement(tool, rentalDays, discountPercentage, checkoutDate, calendar, chargeableDays,
+				getCents(in), getCents(in), getCents(in), requestedDiscountPercentage, rules);
+	}
+
+	private static byte checkVersion(byte version) {
+		if (version != VERSION && version != VERSION_1) {
+			throw new IllegalArgumentException("Unsupported agreement codec version " + version);
+		}
+		return version;
+	}
+
+	private static int ordinal(byte value, int count) {
+		if (value < 0 || value >= count) {
+			throw new IllegalArgumentException("Invalid encoded ordinal " + value);
+		}
+		return value;
+	}
+
+	/**
+	 * Writes an int as an unsigned LEB128 varint, 1 to 5 bytes
+	 */
+	static void putVarint(ByteBuffer out, int value) {
+		while ((value & ~0x7f) != 0) {
+			out.put((byte) ((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		out.put((byte) value);
+	}
+
+	static int getVarint(ByteBuffer in) {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			byte b = in.get();
+			value |= (b & 0x7f) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Varint is longer than 5 bytes");
+	}
+
+	private static void putCents(ByteBuffer out, long cents) {
+		out.putLong(out.order() == ByteOrder.BIG_ENDIAN ? cents : Long.reverseBytes(cents));
+	}
+
+	private static long getCents(ByteBuffer in) {
+		long cents = in.getLong();
+		return in.order() == ByteOrder.BIG_ENDIAN ? cents : Long.reverseBytes(cents);
+	}
+
+}
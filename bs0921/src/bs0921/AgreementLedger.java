@@ -0,0 +1,524 @@
+package bs0921;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import bs0921.Tool.Brand;
+import bs0921.Tool.ToolCode;
+import bs0921.Tool.ToolType;
+
+/**
+ * An append-only log of rental agreements on disk.
+ *
+ * Each agreement is one fixed size, CRC32 checksummed record appended to a
+ * memory-mapped segment file. When a segment is full the ledger rolls over to
+ * a new one, named by the sequence number of its first record.
+ *
+ * Appending only copies the record into the mapped file. {@link #sync(long)}
+ * makes records durable with group commit: the first caller to sync forces
+ * everything appended so far, and callers waiting behind it find their records
+ * already forced, so one fsync covers a whole batch of terminals.
+ *
+ * When opened, the ledger scans the last segment and truncates it after the
+ * last intact record, dropping any record torn by a crash.
+ *
+ * <pre>
+ * offset  size  field
+ *  0      4     CRC32 of bytes 4-63
+ *  4      1     record version
+ *  5      3     tool code, type and brand ordinals
+ *  8      1     flags, 1 charge weekends, 2 charge holidays
+ *  9      1     discount percentage
+ * 10      1     discount percentage the clerk entered, version 2 on
+ * 11      1     unused
+ * 12      4     rental days
+ * 16      8     sequence number
+ * 24      4     checkout date as epoch day
+ * 28      4     chargeable days
+ * 32      32    daily charge, pre-discount charge, discount amount and final
+ *               charge in cents
+ * </pre>
+ */
+public final class AgreementLedger implements Closeable {
+
+	static final int RECORD_SIZE = 64;
+
+	/**
+	 * 64 MiB segments
+	 */
+	public static final int DEFAULT_RECORDS_PER_SEGMENT = 1 << 20;
+
+	private static final byte VERSION = 2;
+
+	/**
+	 * The version without the discount the clerk entered, still read
+	 */
+	private static final byte VERSION_1 = 1;
+
+	private static final int WEEKENDS = 1;
+
+	private static final int HOLIDAYS = 2;
+
+	private static final String SEGMENT_SUFFIX = ".ledger";
+
+	private final Path directory;
+
+	private final int recordsPerSegment;
+
+	private final Object writeLock = new Object();
+
+	private final Object syncLock = new Object();
+
+	private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+	private final CRC32 crc = new CRC32();
+
+	private final List<Long> segmentSequences = new ArrayList<>();
+
+	private Segment current;
+
+	private long nextSequence;
+
+	private volatile long durableSequence;
+
+	private boolean closed;
+
+	private AgreementLedger(Path directory, int recordsPerSegment) {
+		this.directory = directory;
+		this.recordsPerSegment = recordsPerSegment;
+	}
+
+	/**
+	 * Opens the ledger in a directory with {@link #DEFAULT_RECORDS_PER_SEGMENT},
+	 * creating it if needed and recovering it if it was not closed cleanly
+	 *
+	 * @param directory The directory holding the segment files
+	 * @return the ledger
+	 * @throws IOException if the directory can't be read or written
+	 */
+	public static AgreementLedger open(Path directory) throws IOException {
+		return open(directory, DEFAULT_RECORDS_PER_SEGMENT);
+	}
+
+	/**
+	 * @param directory The directory holding the segment files
+	 * @param recordsPerSegment The number of records in each new segment file
+	 * @return the ledger
+	 * @throws IOException if the directory can't be read or written
+	 * @see #open(Path)
+	 */
+	public static AgreementLedger open(Path directory, int recordsPerSegment) throws IOException {
+		if (recordsPerSegment < 1 || recordsPerSegment > Integer.MAX_VALUE / RECORD_SIZE) {
+			throw new IllegalArgumentException("Records per segment must be 1 to "
+					+ Integer.MAX_VALUE / RECORD_SIZE);
+		}
+		Files.createDirectories(directory);
+		AgreementLedger ledger = new AgreementLedger(directory, recordsPerSegment);
+		ledger.recover();
+		return ledger;
+	}
+
+	private void recover() throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				try {
+					segmentSequences.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+				} catch (NumberFormatException e) {
+					// not a segment
+				}
+			}
+		}
+		Collections.sort(segmentSequences);
+		if (segmentSequences.isEmpty()) {
+			segmentSequences.add(0L);
+		}
+
+		long firstSequence = segmentSequences.get(segmentSequences.size() - 1);
+		Path file = segmentFile(firstSequence);
+		int records;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			records = countValidRecords(channel, firstSequence);
+			if (channel.size() > (long) records * RECORD_SIZE) {
+				channel.truncate((long) records * RECORD_SIZE);
+				channel.force(true);
+			}
+		}
+		current = new Segment(file, firstSequence, Math.max(records, recordsPerSegment), records);
+		nextSequence = firstSequence + records;
+		durableSequence = nextSequence;
+	}
+
+	/**
+	 * @return the number of intact records at the start of the segment
+	 */
+	private static int countValidRecords(FileChannel channel, long firstSequence) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD_SIZE * 1024).order(ByteOrder.LITTLE_ENDIAN);
+		CRC32 checksum = new CRC32();
+		int records = 0;
+		long position = 0;
+		while (channel.read(buffer, position) > 0) {
+			buffer.flip();
+			if (buffer.remaining() < RECORD_SIZE) {
+				break;
+			}
+			while (buffer.remaining() >= RECORD_SIZE) {
+				if (!isValid(buffer, firstSequence + records, checksum)) {
+					return records;
+				}
+				buffer.position(buffer.position() + RECORD_SIZE);
+				position += RECORD_SIZE;
+				records++;
+			}
+			buffer.clear();
+		}
+		return records;
+	}
+
+	/**
+	 * @return whether the record at the buffer's position is intact and has the
+	 *         expected sequence number
+	 */
+	private static boolean isValid(ByteBuffer buffer, long sequence, CRC32 checksum) {
+		int start = buffer.position();
+		byte version = buffer.get(start + 4);
+		if ((version != VERSION && version != VERSION_1) || buffer.getLong(start + 16) != sequence) {
+			return false;
+		}
+		ByteBuffer body = buffer.duplicate();
+		body.position(start + 4).limit(start + RECORD_SIZE);
+		checksum.reset();
+		checksum.update(body);
+		return (int) checksum.getValue() == buffer.getInt(start);
+	}
+
+	/**
+	 * Appends an agreement. The record is durable once {@link #sync(long)}
+	 * returns for its sequence number.
+	 *
+	 * @param agreement The agreement
+	 * @return the sequence number of the record
+	 * @throws IOException if a new segment can't be created
+	 * @throws IllegalArgumentException if the tool is not a {@link ToolCode},
+	 *         {@link ToolType} and {@link Brand}, which records store
+	 */
+	public long append(RentalAgreement agreement) throws IOException {
+		synchronized (writeLock) {
+			return write(agreement);
+		}
+	}
+
+	/**
+	 * Appends agreements under one lock
+	 *
+	 * @param agreements The agreements
+	 * @return the sequence number of the last record, -1 if there were none
+	 * @throws IOException if a new segment can't be created
+	 */
+	public long appendAll(Collection<RentalAgreement> agreements) throws IOException {
+		long sequence = -1;
+		synchronized (writeLock) {
+			for (RentalAgreement agreement : agreements) {
+				sequence = write(agreement);
+			}
+		}
+		return sequence;
+	}
+
+	/**
+	 * Appends an agreement and waits until it is durable
+	 *
+	 * @param agreement The agreement
+	 * @return the sequence number of the record
+	 * @throws IOException if the record can't be written
+	 */
+	public long commit(RentalAgreement agreement) throws IOException {
+		long sequence = append(agreement);
+		sync(sequence);
+		return sequence;
+	}
+
+	/**
+	 * Waits until the record with the sequence number and all records before it
+	 * are durable
+	 *
+	 * @param sequence The sequence number
+	 * @throws IOException if the segment can't be forced to disk
+	 */
+	public void sync(long sequence) throws IOException {
+		if (sequence < durableSequence) {
+			return;
+		}
+		synchronized (syncLock) {
+			if (sequence < durableSequence) {
+				return;
+			}
+			Segment segment;
+			long upTo;
+			synchronized (writeLock) {
+				ensureOpen();
+				segment = current;
+				upTo = nextSequence;
+			}
+			segment.force((int) (upTo - segment.firstSequence));
+			durableSequence = upTo;
+		}
+	}
+
+	/**
+	 * Waits until every record appended so far is durable
+	 *
+	 * @throws IOException if the segment can't be forced to disk
+	 */
+	public void sync() throws IOException {
+		long upTo;
+		synchronized (writeLock) {
+			upTo = nextSequence;
+		}
+		if (upTo > 0) {
+			sync(upTo - 1);
+		}
+	}
+
+	/**
+	 * @return the sequence number the next record will get, which is the number
+	 *         of records in the ledger
+	 */
+	public long getNextSequence() {
+		synchronized (writeLock) {
+			return nextSequence;
+		}
+	}
+
+	/**
+	 * @return the number of records known to be durable
+	 */
+	public long getDurableSequence() {
+		return durableSequence;
+	}
+
+	/**
+	 * Reads back the agreements appended from a sequence number on, with the
+	 * charges they were priced with. Holiday calendars are not recorded, so
+	 * agreements are restored with the default calendar. Pricing rules are not
+	 * recorded either, so the agreements can't be adjusted.
+	 *
+	 * @param fromSequence The sequence number of the first record to read
+	 * @param action Called with each agreement in order
+	 * @return the number of agreements read
+	 * @throws IOException if a segment can't be read
+	 * @see #replay(long, PricingRules, Consumer)
+	 */
+	public long replay(long fromSequence, Consumer<RentalAgreement> action) throws IOException {
+		return replay(fromSequence, null, action);
+	}
+
+	/**
+	 * Reads back agreements that can be adjusted with the rules they were
+	 * priced with
+	 *
+	 * @param fromSequence The sequence number of the first record to read
+	 * @param rules The rules the agreements were priced with
+	 * @param action Called with each agreement in order
+	 * @return the number of agreements read
+	 * @throws IOException if a segment can't be read
+	 * @see #replay(long, Consumer)
+	 */
+	public long replay(long fromSequence, PricingRules rules, Consumer<RentalAgreement> action) throws IOException {
+		List<Long> sequences;
+		long end;
+		synchronized (writeLock) {
+			ensureOpen();
+			sequences = new ArrayList<>(segmentSequences);
+			end = nextSequence;
+		}
+		ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD_SIZE * 1024).order(ByteOrder.LITTLE_ENDIAN);
+		CRC32 checksum = new CRC32();
+		HolidayCalendar calendar = HolidayCalendar.getDefault();
+		long read = 0;
+		for (int i = 0; i < sequences.size(); i++) {
+			long first = sequences.get(i);
+			long last = i + 1 < sequences.size() ? sequences.get(i + 1) : end;
+			if (last <= fromSequence) {
+				continue;
+			}
+			long sequence = Math.max(first, fromSequence);
+			try (FileChannel channel = FileChannel.open(segmentFile(first), StandardOpenOption.READ)) {
+				while (sequence < last) {
+					buffer.clear();
+					buffer.limit((int) Math.min(buffer.capacity(), (last - sequence) * RECORD_SIZE));
+					long position = (sequence - first) * RECORD_SIZE;
+					int count;
+					do {
+						count = channel.read(buffer, position + buffer.position());
+					} while (count > 0 && buffer.hasRemaining());
+					buffer.flip();
+					while (buffer.remaining() >= RECORD_SIZE) {
+						if (!isValid(buffer, sequence, checksum)) {
+							throw new IOException("Ledger record " + sequence + " is corrupt");
+						}
+						action.accept(decode(buffer, calendar, rules));
+						buffer.position(buffer.position() + RECORD_SIZE);
+						sequence++;
+						read++;
+					}
+					if (buffer.position() == 0) {
+						throw new IOException("Ledger segment " + first + " ends before record " + sequence);
+					}
+				}
+			}
+		}
+		return read;
+	}
+
+	/**
+	 * Forces every appended record to disk and closes the ledger
+	 */
+	@Override
+	public void close() throws IOException {
+		sync();
+		synchronized (writeLock) {
+			if (!closed) {
+				closed = true;
+				current.close();
+			}
+		}
+	}
+
+	/**
+	 * Encodes the agreement into the next slot, rolling over to a new segment
+	 * when the current one is full. Must hold writeLock.
+	 */
+	private long write(RentalAgreement agreement) throws IOException {
+		ensureOpen();
+		agreement.getTool().requireCode();
+		if (current.isFull()) {
+			current.force(current.capacity);
+			current.close();
+			current = new Segment(segmentFile(nextSequence), nextSequence, recordsPerSegment, 0);
+			segmentSequences.add(nextSequence);
+		}
+		long sequence = nextSequence;
+		Tool tool = agreement.getTool();
+		record.clear();
+		record.putInt(0)
+				.put(VERSION)
+				.put((byte) tool.getCode().ordinal())
+				.put((byte) tool.getType().ordinal())
+				.put((byte) tool.getBrand().ordinal())
+				.put((byte) ((tool.chargeWeekends() ? WEEKENDS : 0) | (tool.chargeHolidays() ? HOLIDAYS : 0)))
+				.put((byte) agreement.getDiscountPercentage())
+				.put((byte) agreement.getRequestedDiscountPercentage())
+				.put((byte) 0)
+				.putInt(agreement.getRentalDays())
+				.putLong(sequence)
+				.putInt((int) agreement.getCheckoutDate().toEpochDay())
+				.putInt(agreement.getChargeableDays())
+				.putLong(agreement.getDailyChargeCents())
+				.putLong(agreement.getTotalCostNoDiscountCents())
+				.putLong(agreement.getDiscountAmountCents())
+				.putLong(agreement.getFinalChargeCents());
+		crc.reset();
+		crc.update(record.array(), 4, RECORD_SIZE - 4);
+		record.putInt(0, (int) crc.getValue());
+		current.append(record.array());
+		nextSequence++;
+		return sequence;
+	}
+
+	private static RentalAgreement decode(ByteBuffer buffer, HolidayCalendar calendar, PricingRules rules) {
+		int start = buffer.position();
+		int flags = buffer.get(start + 8);
+		Tool tool = new Tool(ToolCode.values()[buffer.get(start + 5)], ToolType.values()[buffer.get(start + 6)],
+				Brand.values()[buffer.get(start + 7)], buffer.getLong(start + 32), (flags & WEEKENDS) != 0,
+				(flags & HOLIDAYS) != 0);
+		byte discountPercentage = buffer.get(start + 9);
+		byte requestedDiscountPercentage = buffer.get(start + 4) == VERSION_1 ? discountPercentage
+				: buffer.get(start + 10);
+		return new RentalAgreement(tool, buffer.getInt(start + 12), discountPercentage,
+				LocalDate.ofEpochDay(buffer.getInt(start + 24)), calendar, buffer.getInt(start + 28),
+				buffer.getLong(start + 40), buffer.getLong(start + 48), buffer.getLong(start + 56),
+				requestedDiscountPercentage, rules);
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed) {
+			throw new IOException("Ledger is closed");
+		}
+	}
+
+	private Path segmentFile(long firstSequence) {
+		return directory.resolve(String.format("%020d%s", firstSequence, SEGMENT_SUFFIX));
+	}
+
+	/**
+	 * One mapped segment file. Appends are guarded by the ledger's writeLock;
+	 * forces happen both on rollover and on sync, so they lock the segment.
+	 */
+	private static final class Segment {
+
+		final long firstSequence;
+
+		final int capacity;
+
+		private final FileChannel channel;
+
+		private final MappedByteBuffer buffer;
+
+		private int size;
+
+		private int forced;
+
+		Segment(Path file, long firstSequence, int capacity, int size) throws IOException {
+			this.firstSequence = firstSequence;
+			this.capacity = capacity;
+			this.size = size;
+			this.forced = size;
+			channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * RECORD_SIZE);
+			buffer.position(size * RECORD_SIZE);
+		}
+
+		boolean isFull() {
+			return size == capacity;
+		}
+
+		void append(byte[] record) {
+			buffer.put(record);
+			size++;
+		}
+
+		/**
+		 * Forces the records before the count to disk, if not already forced
+		 */
+		synchronized void force(int records) {
+			if (records > forced) {
+				buffer.force(forced * RECORD_SIZE, (records - forced) * RECORD_SIZE);
+				forced = records;
+			}
+		}
+
+		void close() throws IOException {
+			channel.close();
+		}
+
+	}
+
+}
@@ -0,0 +1,409 @@
+package bs0921;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.time.LocalDate;
+import java.util.Locale;
+
+import bs0921.Tool.Brand;
+import bs0921.Tool.ToolCode;
+import bs0921.Tool.ToolType;
+
+/**
+ * Renders rental agreements in the format of {@link RentalAgreement#toString()}
+ * into caller-supplied {@link Appendable}s and {@link ByteBuffer}s.
+ *
+ * The currency symbols and separators of the locale are read once when the
+ * renderer is created; those of the US are built in. Amounts, which are
+ * always in cents, are then written digit by digit with two decimal places, as
+ * are MM/dd/yy dates, so rendering creates no formatters or intermediate
+ * Strings. Renderers are
+ * immutable and safe to share across threads.
+ */
+public final class AgreementRenderer {
+
+	private static final long[] POWERS_OF_TEN = new long[19];
+
+	private static final char[] TENS = new char[100];
+
+	private static final char[] ONES = new char[100];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+		for (int i = 0; i < 100; i++) {
+			TENS[i] = (char) ('0' + i / 10);
+			ONES[i] = (char) ('0' + i % 10);
+		}
+	}
+
+	private static final Text TOOL_CODE = new Text("Tool code: ");
+	private static final Text TOOL_TYPE = new Text("\nTool type: ");
+	private static final Text TOOL_BRAND = new Text("\nTool brand: ");
+	private static final Text RENTAL_DAYS = new Text("\nRental days: ");
+	private static final Text CHECKOUT_DATE = new Text("\nCheck out date: ");
+	private static final Text DUE_DATE = new Text("\nDue date: ");
+	private static final Text DAILY_CHARGE = new Text("\nDaily rental charge: ");
+	private static final Text CHARGE_DAYS = new Text("\nCharge days: ");
+	private static final Text PRE_DISCOUNT_CHARGE = new Text("\nPre-discount charge: ");
+	private static final Text DISCOUNT_PERCENTAGE = new Text("\nDiscount percentage: ");
+	private static final Text DISCOUNT_AMOUNT = new Text("%\nDiscount amount: ");
+	private static final Text FINAL_CHARGE = new Text("\nFinal Charge: ");
+	private static final Text END = new Text("\n");
+
+	private static final Text[] CODES = texts(ToolCode.values());
+	private static final Text[] TYPES = texts(ToolType.values());
+	private static final Text[] BRANDS = texts(Brand.values());
+
+	/**
+	 * Bytes used by the labels and the ASCII tool names, and by the rental days,
+	 * charge days, discount percentage and dates at their longest
+	 */
+	private static final int MAX_FIXED_LENGTH = TOOL_CODE.bytes.length + TOOL_TYPE.bytes.length
+			+ TOOL_BRAND.bytes.length + RENTAL_DAYS.bytes.length + CHECKOUT_DATE.bytes.length
+			+ DUE_DATE.bytes.length + DAILY_CHARGE.bytes.length + CHARGE_DAYS.bytes.length
+			+ PRE_DISCOUNT_CHARGE.bytes.length + DISCOUNT_PERCENTAGE.bytes.length + DISCOUNT_AMOUNT.bytes.length
+			+ FINAL_CHARGE.bytes.length + END.bytes.length + 3 * Tool.MAX_NAME_LENGTH + 3 * 11 + 2 * 8;
+
+	private static final class DefaultHolder {
+		static final AgreementRenderer INSTANCE = new AgreementRenderer(Locale.getDefault(Locale.Category.FORMAT));
+	}
+
+	private final Text positivePrefix;
+
+	private final Text positiveSuffix;
+
+	private final Text negativePrefix;
+
+	private final Text negativeSuffix;
+
+	private final Text groupingSeparator;
+
+	private final Text decimalSeparator;
+
+	private final int groupingSize;
+
+	private final int maxRenderedLength;
+
+	/**
+	 * @param locale The locale whose currency format amounts are rendered in
+	 */
+	public AgreementRenderer(Locale locale) {
+		// US symbols are built in below, sparing the locale data lookup at startup
+		NumberFormat format = Locale.US.equals(locale) ? null : NumberFormat.getCurrencyInstance(locale);
+		if (format instanceof DecimalFormat) {
+			DecimalFormat decimalFormat = (DecimalFormat) format;
+			DecimalFormatSymbols symbols = decimalFormat.getDecimalFormatSymbols();
+			positivePrefix = new Text(decimalFormat.getPositivePrefix());
+			positiveSuffix = new Text(decimalFormat.getPositiveSuffix());
+			negativePrefix = new Text(decimalFormat.getNegativePrefix());
+			negativeSuffix = new Text(decimalFormat.getNegativeSuffix());
+			groupingSeparator = new Text(String.valueOf(symbols.getMonetaryGroupingSeparator()));
+			decimalSeparator = new Text(String.valueOf(symbols.getMonetaryDecimalSeparator()));
+			groupingSize = decimalFormat.isGroupingUsed() ? decimalFormat.getGroupingSize() : 0;
+		} else {
+			positivePrefix = new Text("$");
+			positiveSuffix = new Text("");
+			negativePrefix = new Text("-$");
+			negativeSuffix = new Text("");
+			groupingSeparator = new Text(",");
+			decimalSeparator = new Text(".");
+			groupingSize = 3;
+		}
+
+		int maxAmountLength = Math.max(positivePrefix.bytes.length + positiveSuffix.bytes.length,
+				negativePrefix.bytes.length + negativeSuffix.bytes.length)
+				+ 19 + 18 * groupingSeparator.bytes.length + decimalSeparator.bytes.length;
+		maxRenderedLength = MAX_FIXED_LENGTH + 4 * maxAmountLength;
+	}
+
+	/**
+	 * @return the renderer for the default locale, as used by
+	 *         {@link RentalAgreement#toString()}
+	 */
+	public static AgreementRenderer getDefault() {
+		return DefaultHolder.INSTANCE;
+	}
+
+	/**
+	 * @return the most bytes {@link #render(RentalAgreement, ByteBuffer)} writes
+	 *         for one agreement
+	 */
+	public int getMaxRenderedLength() {
+		return maxRenderedLength;
+	}
+
+	/**
+	 * @param agreement The agreement to render
+	 * @param out The builder to append the agreement to
+	 * @return the builder
+	 */
+	public StringBuilder render(RentalAgreement agreement, StringBuilder out) {
+		render(agreement, new AppendableSink(out));
+		return out;
+	}
+
+	/**
+	 * @param agreement The agreement to render
+	 * @param out The destination to append the agreement to
+	 * @throws IOException if the destination can't be written
+	 */
+	public void render(RentalAgreement agreement, Appendable out) throws IOException {
+		try {
+			render(agreement, new AppendableSink(out));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Writes the agreement to the buffer as UTF-8
+	 *
+	 * @param agreement The agreement to render
+	 * @param out The buffer to write to
+	 * @return true if the agreement was written, false if the buffer has less
+	 *         than {@link #getMaxRenderedLength()} bytes remaining, in which case
+	 *         nothing is written
+	 */
+	public boolean render(RentalAgreement agreement, ByteBuffer out) {
+		if (out.remaining() < maxRenderedLength) {
+			return false;
+		}
+		render(agreement, new ByteBufferSink(out));
+		return true;
+	}
+
+	/**
+	 * Writes agreements to a channel, such as a FileChannel, as UTF-8 separated
+	 * by blank lines, using a buffer of 64 KiB
+	 *
+	 * @see #renderAll(Iterable, WritableByteChannel, ByteBuffer)
+	 */
+	public void renderAll(Iterable<RentalAgreement> agreements, WritableByteChannel channel) throws IOException {
+		renderAll(agreements, channel, ByteBuffer.allocateDirect(Math.max(1 << 16, maxRenderedLength + 1)));
+	}
+
+	/**
+	 * Writes agreements to a channel, such as a FileChannel, as UTF-8 separated
+	 * by blank lines
+	 *
+	 * @param agreements The agreements to render
+	 * @param channel The channel to write to
+	 * @param buffer A buffer to render into, with room for at least
+	 *        {@link #getMaxRenderedLength()} + 1 bytes
+	 * @throws IOException if the channel can't be written
+	 */
+	public void renderAll(Iterable<RentalAgreement> agreements, WritableByteChannel channel, ByteBuffer buffer)
+			throws IOException {
+		if (buffer.capacity() <= maxRenderedLength) {
+			throw new IllegalArgumentException("Buffer must hold at least " + (maxRenderedLength + 1) + " bytes");
+		}
+		buffer.clear();
+		boolean first = true;
+		for (RentalAgreement agreement : agreements) {
+			if (buffer.remaining() <= maxRenderedLength) {
+				flush(buffer, channel);
+			}
+			if (!first) {
+				buffer.put((byte) '\n');
+			}
+			render(agreement, new ByteBufferSink(buffer));
+			first = false;
+		}
+		flush(buffer, channel);
+	}
+
+	private void render(RentalAgreement agreement, Sink out) {
+		Tool tool = agreement.getTool();
+		out.text(TOOL_CODE);
+		writeName(out, CODES, tool.getCode(), tool.getCodeName());
+		out.text(TOOL_TYPE);
+		writeName(out, TYPES, tool.getType(), tool.getTypeName());
+		out.text(TOOL_BRAND);
+		writeName(out, BRANDS, tool.getBrand(), tool.getBrandName());
+		out.text(RENTAL_DAYS);
+		writeLong(out, agreement.getRentalDays(), 0);
+		out.text(CHECKOUT_DATE);
+		writeDate(out, agreement.getCheckoutDate());
+		out.text(DUE_DATE);
+		writeDate(out, agreement.getDueDate());
+		out.text(DAILY_CHARGE);
+		writeAmount(out, agreement.getDailyChargeCents());
+		out.text(CHARGE_DAYS);
+		writeLong(out, agreement.getChargeableDays(), 0);
+		out.text(PRE_DISCOUNT_CHARGE);
+		writeAmount(out, agreement.getTotalCostNoDiscountCents());
+		out.text(DISCOUNT_PERCENTAGE);
+		writeLong(out, agreement.getDiscountPercentage(), 0);
+		out.text(DISCOUNT_AMOUNT);
+		writeAmount(out, agreement.getDiscountAmountCents());
+		out.text(FINAL_CHARGE);
+		writeAmount(out, agreement.getFinalChargeCents());
+		out.text(END);
+	}
+
+	private void writeAmount(Sink out, long cents) {
+		boolean negative = cents < 0;
+		// Long.MIN_VALUE cents can't be negated, and is not a real amount
+		long value = negative ? -Math.max(cents, -Long.MAX_VALUE) : cents;
+		out.text(negative ? negativePrefix : positivePrefix);
+		writeLong(out, value / 100, groupingSize);
+		out.text(decimalSeparator);
+		int fraction = (int) (value % 100);
+		out.ascii(TENS[fraction]);
+		out.ascii(ONES[fraction]);
+		out.text(negative ? negativeSuffix : positiveSuffix);
+	}
+
+	/**
+	 * Writes a number, with a grouping separator between every groupingSize
+	 * digits if groupingSize is not 0
+	 */
+	private void writeLong(Sink out, long value, int groupingSize) {
+		if (value < 0) {
+			out.ascii('-');
+			value = -Math.max(value, -Long.MAX_VALUE);
+		}
+		int digits = 1;
+		while (digits < POWERS_OF_TEN.length && value >= POWERS_OF_TEN[digits]) {
+			digits++;
+		}
+		for (int digit = digits - 1; digit >= 0; digit--) {
+			out.ascii((char) ('0' + (value / POWERS_OF_TEN[digit]) % 10));
+			if (groupingSize > 0 && digit > 0 && digit % groupingSize == 0) {
+				out.text(groupingSeparator);
+			}
+		}
+	}
+
+	/**
+	 * Writes a date as MM/dd/yy
+	 */
+	private static void writeDate(Sink out, LocalDate date) {
+		int month = date.getMonthValue();
+		int day = date.getDayOfMonth();
+		int year = Math.floorMod(date.getYear(), 100);
+		out.ascii(TENS[month]);
+		out.ascii(ONES[month]);
+		out.ascii('/');
+		out.ascii(TENS[day]);
+		out.ascii(ONES[day]);
+		out.ascii('/');
+		out.ascii(TENS[year]);
+		out.ascii(ONES[year]);
+	}
+
+	private static void flush(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private static Text[] texts(Enum<?>[] values) {
+		Text[] texts = new Text[values.length];
+		for (Enum<?> value : values) {
+			texts[value.ordinal()] = new Text(value.toString());
+		}
+		return texts;
+	}
+
+	/**
+	 * Writes the text of the enum value, or the name for a tool the enum
+	 * doesn't list
+	 */
+	private static void writeName(Sink out, Text[] texts, Enum<?> value, String name) {
+		if (value != null) {
+			out.text(texts[value.ordinal()]);
+			return;
+		}
+		for (int i = 0; i < name.length(); i++) {
+			out.ascii(name.charAt(i));
+		}
+	}
+
+	/**
+	 * A fixed piece of text with its UTF-8 encoding
+	 */
+	private static final class Text {
+
+		final String chars;
+
+		final byte[] bytes;
+
+		Text(String chars) {
+			this.chars = chars;
+			this.bytes = chars.getBytes(StandardCharsets.UTF_8);
+		}
+
+	}
+
+	/**
+	 * The destination of a rendered agreement
+	 */
+	private interface Sink {
+
+		void text(Text text);
+
+		void ascii(char c);
+
+	}
+
+	private static final class AppendableSink implements Sink {
+
+		private final Appendable out;
+
+		AppendableSink(Appendable out) {
+			this.out = out;
+		}
+
+		@Override
+		public void text(Text text) {
+			try {
+				out.append(text.chars);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		@Override
+		public void ascii(char c) {
+			try {
+				out.append(c);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+	}
+
+	private static final class ByteBufferSink implements Sink {
+
+		private final ByteBuffer out;
+
+		ByteBufferSink(ByteBuffer out) {
+			this.out = out;
+		}
+
+		@Override
+		public void text(Text text) {
+			out.put(text.bytes);
+		}
+
+		@Override
+		public void ascii(char c) {
+			out.put((byte) c);
+		}
+
+	}
+
+}
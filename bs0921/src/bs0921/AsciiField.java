@@ -0,0 +1,54 @@
+package bs0921;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A field of ASCII text read in place from a byte buffer, so the
+ * {@link RentalInput} parsers can read it without copying it to a String.
+ * One instance is reused for field after field.
+ */
+final class AsciiField implements CharSequence {
+
+	private ByteBuffer buffer;
+
+	private int start;
+
+	private int length;
+
+	/**
+	 * Points the field at bytes from start to end of the buffer
+	 *
+	 * @return this field
+	 */
+	AsciiField set(ByteBuffer buffer, int start, int end) {
+		this.buffer = buffer;
+		this.start = start;
+		this.length = end - start;
+		return this;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		return (char) (buffer.get(start + index) & 0xff);
+	}
+
+	@Override
+	public CharSequence subSequence(int from, int to) {
+		return toString().substring(from, to);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			text.append(charAt(i));
+		}
+		return text.toString();
+	}
+
+}
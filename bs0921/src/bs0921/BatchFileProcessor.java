@@ -0,0 +1,489 @@
+package bs0921;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prices a file of rentals in constant memory.
+ *
+ * Each input line is one rental, either as CSV
+ *
+ * <pre>
+ * LADW,3,10,07/02/20
+ * </pre>
+ *
+ * or as a flat NDJSON object
+ *
+ * <pre>
+ * {"code":"LADW","rentalDays":3,"discount":10,"checkoutDate":"07/02/20"}
+ * </pre>
+ *
+ * Blank lines and lines starting with '#' are skipped. The input is read
+ * through a fixed size buffer and its fields are parsed in place with the
+ * {@link RentalInput} parsers the terminals use, rows are priced in
+ * chunks with {@link ToolPOS#rentTools}, and each chunk is written to the
+ * output file as CSV before the next one is read.
+ */
+public final class BatchFileProcessor {
+
+	static final String OUTPUT_HEADER = "code,rental days,discount percentage,check out date,due date,"
+			+ "daily rental charge,charge days,pre-discount charge,discount amount,final charge\n";
+
+	private static final String PARSE_ERROR = "Whoops! Row is not a valid rental. Please try again.";
+
+	/**
+	 * The write buffer is flushed when less than this is left, which is enough
+	 * for any one output row
+	 */
+	private static final int MAX_ROW_LENGTH = 256;
+
+	private static final int MIN_WRITE_BUFFER_SIZE = 4 * MAX_ROW_LENGTH;
+
+	private final int bufferSize;
+
+	private final int chunkRows;
+
+	/**
+	 * Creates a processor with 1 MiB I/O buffers and 64K row chunks
+	 */
+	public BatchFileProcessor() {
+		this(1 << 20, 1 << 16);
+	}
+
+	/**
+	 * @param bufferSize The size of the input and output buffers in bytes, which
+	 *        is also the maximum length of an input line
+	 * @param chunkRows The number of rows priced at a time
+	 */
+	public BatchFileProcessor(int bufferSize, int chunkRows) {
+		this.bufferSize = bufferSize;
+		this.chunkRows = chunkRows;
+	}
+
+	/**
+	 * The number of rows read, priced and rejected by a batch
+	 */
+	public static final class Summary {
+
+		private long rows;
+
+		private long rejected;
+
+		/**
+		 * @return the number of rentals read
+		 */
+		public long getRows() {
+			return rows;
+		}
+
+		/**
+		 * @return the number of rentals priced
+		 */
+		public long getPriced() {
+			return rows - rejected;
+		}
+
+		/**
+		 * @return the number of rentals rejected
+		 */
+		public long getRejected() {
+			return rejected;
+		}
+
+		@Override
+		public String toString() {
+			return "Rows: " + rows + ", priced: " + getPriced() + ", rejected: " + rejected;
+		}
+
+	}
+
+	/**
+	 * Prices every rental in the input file and writes the agreements to the
+	 * output file. Rejected rows are written as
+	 * {@code ERROR,<line number>,<reason>}.
+	 *
+	 * @param input The file of rentals
+	 * @param output The file to write agreements to, replaced if it exists
+	 * @return The number of rows processed
+	 * @throws IOException if a file can't be read or written
+	 */
+	public Summary process(Path input, Path output) throws IOException {
+		Summary summary = new Summary();
+		try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(output, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+						StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer readBuffer = ByteBuffer.allocateDirect(bufferSize);
+			ByteBuffer writeBuffer = ByteBuffer.allocateDirect(Math.max(bufferSize, MIN_WRITE_BUFFER_SIZE));
+			writeBuffer.put(OUTPUT_HEADER.getBytes(StandardCharsets.US_ASCII));
+
+			Chunk chunk = new Chunk(chunkRows);
+			long lineNumber = 0;
+			boolean endOfInput = false;
+			while (!endOfInput) {
+				endOfInput = in.read(readBuffer) < 0;
+				readBuffer.flip();
+
+				int lineStart = readBuffer.position();
+				for (int i = lineStart; i < readBuffer.limit(); i++) {
+					if (readBuffer.get(i) == '\n') {
+						lineNumber++;
+						parseLine(readBuffer, lineStart, i, lineNumber, chunk);
+						lineStart = i + 1;
+						if (chunk.size == chunkRows) {
+							writeChunk(chunk, writeBuffer, out, summary);
+						}
+					}
+				}
+				if (endOfInput && lineStart < readBuffer.limit()) {
+					lineNumber++;
+					parseLine(readBuffer, lineStart, readBuffer.limit(), lineNumber, chunk);
+					lineStart = readBuffer.limit();
+				}
+
+				readBuffer.position(lineStart);
+				readBuffer.compact();
+				if (!endOfInput && readBuffer.position() == readBuffer.capacity()) {
+					throw new IOException("Line " + (lineNumber + 1) + " is longer than " + bufferSize + " bytes");
+				}
+			}
+			writeChunk(chunk, writeBuffer, out, summary);
+			flush(writeBuffer, out);
+		}
+		return summary;
+	}
+
+	/**
+	 * Parses the line in [from, to) of the buffer and adds it to the chunk
+	 */
+	private static void parseLine(ByteBuffer buffer, int from, int to, long lineNumber, Chunk chunk) {
+		while (from < to && isWhitespace(buffer.get(from))) {
+			from++;
+		}
+		while (to > from && isWhitespace(buffer.get(to - 1))) {
+			to--;
+		}
+		if (from == to || buffer.get(from) == '#') {
+			return;
+		}
+
+		boolean parsed = buffer.get(from) == '{' ? parseJson(buffer, from, to, chunk)
+				: parseCsv(buffer, from, to, chunk);
+		chunk.lineNumbers[chunk.size] = lineNumber;
+		chunk.valid[chunk.size] = parsed;
+		chunk.size++;
+	}
+
+	private static boolean parseCsv(ByteBuffer buffer, int from, int to, Chunk chunk) {
+		int row = chunk.size;
+		int field = 0;
+		int fieldStart = from;
+		for (int i = from; i <= to; i++) {
+			if (i < to && buffer.get(i) != ',') {
+				continue;
+			}
+			int start = fieldStart;
+			int end = i;
+			while (start < end && isWhitespace(buffer.get(start))) {
+				start++;
+			}
+			while (end > start && isWhitespace(buffer.get(end - 1))) {
+				end--;
+			}
+			if (!parseField(buffer, start, end, field, row, chunk)) {
+				return false;
+			}
+			field++;
+			fieldStart = i + 1;
+		}
+		return field == 4;
+	}
+
+	private static boolean parseJson(ByteBuffer buffer, int from, int to, Chunk chunk) {
+		int row = chunk.size;
+		int found = 0;
+		int i = from + 1;
+		while (i < to) {
+			byte b = buffer.get(i);
+			if (b == '}') {
+				break;
+			}
+			if (b != '"') {
+				i++;
+				continue;
+			}
+			int keyStart = i + 1;
+			int keyEnd = indexOf(buffer, '"', keyStart, to);
+			if (keyEnd < 0) {
+				return false;
+			}
+			int field = jsonField(buffer, keyStart, keyEnd);
+			i = keyEnd + 1;
+			while (i < to && (isWhitespace(buffer.get(i)) || buffer.get(i) == ':')) {
+				i++;
+			}
+			int valueStart;
+			int valueEnd;
+			if (i < to && buffer.get(i) == '"') {
+				valueStart = i + 1;
+				valueEnd = indexOf(buffer, '"', valueStart, to);
+				if (valueEnd < 0) {
+					return false;
+				}
+				i = valueEnd + 1;
+			} else {
+				valueStart = i;
+				while (i < to && buffer.get(i) != ',' && buffer.get(i) != '}' && !isWhitespace(buffer.get(i))) {
+					i++;
+				}
+				valueEnd = i;
+			}
+			if (field >= 0) {
+				if ((found & (1 << field)) != 0 || !parseField(buffer, valueStart, valueEnd, field, row, chunk)) {
+					return false;
+				}
+				found |= 1 << field;
+			}
+		}
+		return found == 0b1111;
+	}
+
+	/**
+	 * @return the field index of a JSON key, -1 if the key is not a rental field
+	 */
+	private static int jsonField(ByteBuffer buffer, int from, int to) {
+		if (equalsAscii(buffer, from, to, "code") || equalsAscii(buffer, from, to, "toolCode")) {
+			return 0;
+		}
+		if (equalsAscii(buffer, from, to, "rentalDays") || equalsAscii(buffer, from, to, "days")) {
+			return 1;
+		}
+		if (equalsAscii(buffer, from, to, "discount") || equalsAscii(buffer, from, to, "discountPercent")) {
+			return 2;
+		}
+		if (equalsAscii(buffer, from, to, "checkoutDate") || equalsAscii(buffer, from, to, "date")) {
+			return 3;
+		}
+		return -1;
+	}
+
+	private static boolean parseField(ByteBuffer buffer, int from, int to, int field, int row, Chunk chunk) {
+		CharSequence text = chunk.field.set(buffer, from, to);
+		switch (field) {
+		case 0:
+			Tool tool = ToolCatalog.getDefault().get(text);
+			chunk.codes[row] = tool == null ? null : tool.getCodeName();
+			return tool != null;
+		case 1:
+			int rentalDays = RentalInput.parseInt(text);
+			chunk.rentalDays[row] = rentalDays;
+			return rentalDays != RentalInput.INVALID;
+		case 2:
+			int discount = RentalInput.parseInt(text);
+			chunk.discounts[row] = discount;
+			return discount != RentalInput.INVALID;
+		case 3:
+			LocalDate checkoutDate = RentalInput.parseCheckoutDate(text);
+			if (checkoutDate == null) {
+				return false;
+			}
+			chunk.checkoutDays[row] = checkoutDate.toEpochDay();
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Prices the rows of the chunk and writes them to the output
+	 */
+	private static void writeChunk(Chunk chunk, ByteBuffer writeBuffer, FileChannel out, Summary summary)
+			throws IOException {
+		List<RentalRequest> requests = new ArrayList<>(chunk.size);
+		for (int row = 0; row < chunk.size; row++) {
+			if (chunk.valid[row]) {
+				requests.add(new RentalRequest(chunk.codes[row], chunk.rentalDays[row],
+						chunk.discounts[row], LocalDate.ofEpochDay(chunk.checkoutDays[row])));
+			}
+		}
+		List<RentalResult> results = ToolPOS.rentTools(requests);
+
+		int result = 0;
+		for (int row = 0; row < chunk.size; row++) {
+			if (writeBuffer.remaining() < MAX_ROW_LENGTH) {
+				flush(writeBuffer, out);
+			}
+			summary.rows++;
+			if (!chunk.valid[row]) {
+				summary.rejected++;
+				writeError(writeBuffer, chunk.lineNumbers[row], PARSE_ERROR);
+				continue;
+			}
+			RentalResult rentalResult = results.get(result++);
+			if (!rentalResult.isSuccess()) {
+				summary.rejected++;
+				writeError(writeBuffer, chunk.lineNumbers[row], rentalResult.getErrorMessage());
+				continue;
+			}
+			writeAgreement(writeBuffer, rentalResult.getAgreement());
+		}
+		chunk.size = 0;
+	}
+
+	private static void writeAgreement(ByteBuffer out, RentalAgreement agreement) {
+		putAscii(out, agreement.getTool().getCodeName());
+		out.put((byte) ',');
+		putLong(out, agreement.getRentalDays());
+		out.put((byte) ',');
+		putLong(out, agreement.getDiscountPercentage());
+		out.put((byte) ',');
+		putDate(out, agreement.getCheckoutDate());
+		out.put((byte) ',');
+		putDate(out, agreement.getDueDate());
+		out.put((byte) ',');
+		putAmount(out, agreement.getDailyChargeCents());
+		out.put((byte) ',');
+		putLong(out, agreement.getChargeableDays());
+		out.put((byte) ',');
+		putAmount(out, agreement.getTotalCostNoDiscountCents());
+		out.put((byte) ',');
+		putAmount(out, agreement.getDiscountAmountCents());
+		out.put((byte) ',');
+		putAmount(out, agreement.getFinalChargeCents());
+		out.put((byte) '\n');
+	}
+
+	private static void writeError(ByteBuffer out, long lineNumber, String message) {
+		putAscii(out, "ERROR,");
+		putLong(out, lineNumber);
+		out.put((byte) ',');
+		putAscii(out, message);
+		out.put((byte) '\n');
+	}
+
+	private static void flush(ByteBuffer buffer, FileChannel out) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private static void putAscii(ByteBuffer out, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			out.put((byte) value.charAt(i));
+		}
+	}
+
+	private static void putLong(ByteBuffer out, long value) {
+		if (value < 0) {
+			out.put((byte) '-');
+			value = -value;
+		}
+		long divisor = 1;
+		while (divisor <= value / 10) {
+			divisor *= 10;
+		}
+		for (; divisor > 0; divisor /= 10) {
+			out.put((byte) ('0' + (value / divisor) % 10));
+		}
+	}
+
+	/**
+	 * Puts the amount as {@link Money#appendTo(StringBuilder, long)} does
+	 */
+	static void putAmount(ByteBuffer out, long cents) {
+		if (cents < 0) {
+			out.put((byte) '-');
+			cents = -cents;
+		}
+		putLong(out, cents / 100);
+		out.put((byte) '.');
+		long fraction = cents % 100;
+		out.put((byte) ('0' + fraction / 10));
+		out.put((byte) ('0' + fraction % 10));
+	}
+
+	private static void putDate(ByteBuffer out, LocalDate date) {
+		putTwoDigits(out, date.getMonthValue());
+		out.put((byte) '/');
+		putTwoDigits(out, date.getDayOfMonth());
+		out.put((byte) '/');
+		putTwoDigits(out, Math.floorMod(date.getYear(), 100));
+	}
+
+	private static void putTwoDigits(ByteBuffer out, int value) {
+		out.put((byte) ('0' + value / 10));
+		out.put((byte) ('0' + value % 10));
+	}
+
+	private static int indexOf(ByteBuffer buffer, char c, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (buffer.get(i) == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean equalsAscii(ByteBuffer buffer, int from, int to, String value) {
+		if (to - from != value.length()) {
+			return false;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			if (buffer.get(from + i) != value.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r';
+	}
+
+	/**
+	 * Parsed rows waiting to be priced, stored as parallel primitive arrays
+	 */
+	private static final class Chunk {
+
+		/**
+		 * Codes of tools in the default catalog, shared with the catalog
+		 */
+		final String[] codes;
+
+		final int[] rentalDays;
+
+		final int[] discounts;
+
+		final long[] checkoutDays;
+
+		final long[] lineNumbers;
+
+		final boolean[] valid;
+
+		/**
+		 * The field being parsed, reused for every field of the chunk
+		 */
+		final AsciiField field = new AsciiField();
+
+		int size;
+
+		Chunk(int capacity) {
+			codes = new String[capacity];
+			rentalDays = new int[capacity];
+			discounts = new int[capacity];
+			checkoutDays = new long[capacity];
+			lineNumbers = new long[capacity];
+			valid = new boolean[capacity];
+		}
+
+	}
+
+}
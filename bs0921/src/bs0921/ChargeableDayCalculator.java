@@ -0,0 +1,164 @@
+package bs0921;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+
+/**
+ * Computes the number of chargeable days in a rental period in constant time.
+ *
+ * The rental period runs from the day after checkout through and including the
+ * due date. Instead of walking every day in the period, weekend days are
+ * counted from the checkout weekday and the number of full weeks, and holidays
+ * are counted with a range query on a {@link HolidayCalendar}.
+ */
+public final class ChargeableDayCalculator {
+
+	/**
+	 * Weekend days in the first n days (n = 0..6) of a period whose first day
+	 * is the given day of week, indexed as [firstDay.ordinal()][n]
+	 */
+	private static final int[][] PARTIAL_WEEK_WEEKENDS = new int[7][7];
+
+	static {
+		for (DayOfWeek first : DayOfWeek.values()) {
+			int count = 0;
+			for (int n = 1; n < 7; n++) {
+				if (isWeekendDay(first.plus(n - 1))) {
+					count++;
+				}
+				PARTIAL_WEEK_WEEKENDS[first.ordinal()][n] = count;
+			}
+		}
+	}
+
+	private ChargeableDayCalculator() {
+	}
+
+	/**
+	 * Counts chargeable days using the {@link HolidayCalendar#getDefault()
+	 * default} holiday calendar
+	 *
+	 * @see #count(LocalDate, int, boolean, boolean, HolidayCalendar)
+	 */
+	public static int count(LocalDate checkoutDate, int rentalDays, boolean chargeWeekends,
+			boolean chargeHolidays) {
+		return count(checkoutDate, rentalDays, chargeWeekends, chargeHolidays, HolidayCalendar.getDefault());
+	}
+
+	/**
+	 * @param checkoutDate The date the tool was checked out
+	 * @param rentalDays The number of days in the rental period
+	 * @param chargeWeekends Whether weekend days are charged
+	 * @param chargeHolidays Whether holidays are charged
+	 * @param calendar The holidays to apply
+	 * @return Count of chargeable days, from day after checkout through and
+	 *         including due date, excluding "no charge" days
+	 */
+	public static int count(LocalDate checkoutDate, int rentalDays, boolean chargeWeekends,
+			boolean chargeHolidays, HolidayCalendar calendar) {
+		return count(checkoutDate.toEpochDay(), rentalDays, chargeWeekends, chargeHolidays, calendar);
+	}
+
+	/**
+	 * @param checkoutEpochDay The epoch day the tool was checked out
+	 * @see #count(LocalDate, int, boolean, boolean, HolidayCalendar)
+	 */
+	public static int count(long checkoutEpochDay, int rentalDays, boolean chargeWeekends,
+			boolean chargeHolidays, HolidayCalendar calendar) {
+		if (rentalDays <= 0) {
+			return 0;
+		}
+		long firstDay = checkoutEpochDay + 1;
+		long lastDay = checkoutEpochDay + rentalDays;
+
+		int weekendDays = countWeekendDays(dayOfWeek(firstDay), rentalDays);
+		int holidays = calendar.countHolidays(firstDay, lastDay);
+		int weekendHolidays = holidays == 0 ? 0 : calendar.countWeekendHolidays(firstDay, lastDay);
+
+		return count(rentalDays, weekendDays, holidays, weekendHolidays, chargeWeekends, chargeHolidays);
+	}
+
+	/**
+	 * @param fromEpochDay The first day
+	 * @param days The number of days
+	 * @param chargeWeekends Whether weekend days are charged
+	 * @param chargeHolidays Whether holidays are charged
+	 * @param calendar The holidays to apply
+	 * @return a bitmap with bit i set if day fromEpochDay + i is chargeable, by
+	 *         the same rules as {@link #count(int, int, int, int, boolean, boolean)}
+	 */
+	static long[] chargeableDayBits(long fromEpochDay, int days, boolean chargeWeekends, boolean chargeHolidays,
+			HolidayCalendar calendar) {
+		long[] bits = new long[(days + 63) >>> 6];
+		int dayOfWeek = dayOfWeek(fromEpochDay);
+		for (int i = 0; i < days; i++) {
+			boolean weekend = dayOfWeek >= DayOfWeek.SATURDAY.ordinal();
+			boolean chargeable;
+			if (calendar.isHoliday(fromEpochDay + i)) {
+				chargeable = weekend ? chargeWeekends || chargeHolidays : chargeHolidays;
+			} else {
+				chargeable = !weekend || chargeWeekends;
+			}
+			if (chargeable) {
+				bits[i >>> 6] |= 1L << i;
+			}
+			dayOfWeek = dayOfWeek == 6 ? 0 : dayOfWeek + 1;
+		}
+		return bits;
+	}
+
+	/**
+	 * Combines day counts into a chargeable day count. A day is chargeable if it
+	 * is a regular weekday, a weekend day of a tool that charges weekends, or a
+	 * holiday of a tool that charges holidays.
+	 *
+	 * @param totalDays The number of days in the period
+	 * @param weekendDays The number of weekend days in the period
+	 * @param holidays The number of holidays in the period
+	 * @param weekendHolidays The number of holidays that fall on a weekend
+	 * @param chargeWeekends Whether weekend days are charged
+	 * @param chargeHolidays Whether holidays are charged
+	 * @return Count of chargeable days
+	 */
+	static int count(int totalDays, int weekendDays, int holidays, int weekendHolidays,
+			boolean chargeWeekends, boolean chargeHolidays) {
+		int freeDays = 0;
+		if (!chargeWeekends) {
+			freeDays += weekendDays - weekendHolidays;
+		}
+		if (!chargeHolidays) {
+			freeDays += holidays - weekendHolidays;
+		}
+		if (!chargeWeekends && !chargeHolidays) {
+			freeDays += weekendHolidays;
+		}
+		return totalDays - freeDays;
+	}
+
+	/**
+	 * @param firstDayOfWeek The {@link #dayOfWeek(long) day of week} of the first
+	 *        day in the period
+	 * @param days The number of days in the period
+	 * @return The number of Saturdays and Sundays in the period
+	 */
+	static int countWeekendDays(int firstDayOfWeek, int days) {
+		return (days / 7) * 2 + PARTIAL_WEEK_WEEKENDS[firstDayOfWeek][days % 7];
+	}
+
+	/**
+	 * @return the {@link DayOfWeek#ordinal() ordinal} of the day of week of an
+	 *         epoch day, 0 for Monday through 6 for Sunday
+	 */
+	static int dayOfWeek(long epochDay) {
+		// 1970-01-01 was a Thursday
+		return (int) Math.floorMod(epochDay + 3, 7L);
+	}
+
+	/**
+	 * @return true if day is a weekend day, false if not
+	 */
+	static boolean isWeekendDay(DayOfWeek day) {
+		return day == DayOfWeek.SATURDAY || day == DayOfWeek.SUNDAY;
+	}
+
+}
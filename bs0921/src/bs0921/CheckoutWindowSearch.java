@@ -0,0 +1,149 @@
+package bs0921;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import bs0921.Tool.ToolCode;
+
+/**
+ * Finds the checkout dates in a range that make a rental cheapest.
+ *
+ * Every candidate rental period is a window of rental days over the same
+ * stretch of calendar, so instead of pricing each checkout date on its own,
+ * the chargeable days of the whole stretch are marked once in a bitmap and the
+ * window is slid across it, adding the day that enters and dropping the day
+ * that leaves. That is O(range + rental days) for all candidates together.
+ *
+ * The charge only grows with the chargeable day count, so candidates are
+ * ranked with a counting sort on that count, earliest date first among equals.
+ * When {@link PricingRules} apply to the tool that no longer holds, and every
+ * candidate is priced and sorted instead.
+ */
+public final class CheckoutWindowSearch {
+
+	private CheckoutWindowSearch() {
+	}
+
+	/**
+	 * Searches with the default {@link ToolCatalog} and {@link HolidayCalendar}
+	 *
+	 * @see #findCheapest(Tool, int, int, LocalDate, LocalDate, int, HolidayCalendar)
+	 */
+	public static List<RentalAgreement> findCheapest(ToolCode code, int rentalDays, int discountPercent,
+			LocalDate from, LocalDate to, int limit) {
+		return findCheapest(ToolCatalog.getDefault().require(code), rentalDays, discountPercent, from, to, limit,
+				HolidayCalendar.getDefault());
+	}
+
+	/**
+	 * @param tool The tool to rent
+	 * @param rentalDays The number of days in the rental period
+	 * @param discountPercent The discount, 0-100
+	 * @param from The earliest checkout date
+	 * @param to The latest checkout date, inclusive
+	 * @param limit The most agreements to return
+	 * @param calendar The holidays to apply
+	 * @return agreements for the cheapest checkout dates, cheapest first and
+	 *         earliest first among equally cheap dates
+	 * @throws IllegalArgumentException if an argument is out of range
+	 */
+	public static List<RentalAgreement> findCheapest(Tool tool, int rentalDays, int discountPercent,
+			LocalDate from, LocalDate to, int limit, HolidayCalendar calendar) {
+		if (discountPercent < 0 || discountPercent > 100) {
+			throw new IllegalArgumentException("Discount percent is not in the range 0-100: " + discountPercent);
+		}
+		if (limit < 0) {
+			throw new IllegalArgumentException("Limit is negative: " + limit);
+		}
+		PricingRules rules = PricingRules.getDefault();
+		if (rules.appliesTo(tool)) {
+			return findCheapestByPricing(tool, rentalDays, discountPercent, from, to, limit, calendar);
+		}
+		int[] chargeableDays = chargeableDays(tool, rentalDays, from, to, calendar);
+
+		// counting sort of checkout dates by chargeable days, stable by date
+		int[] starts = new int[rentalDays + 2];
+		for (int days : chargeableDays) {
+			starts[days + 1]++;
+		}
+		for (int days = 1; days < starts.length; days++) {
+			starts[days] += starts[days - 1];
+		}
+		int[] ranked = new int[chargeableDays.length];
+		for (int i = 0; i < chargeableDays.length; i++) {
+			ranked[starts[chargeableDays[i]]++] = i;
+		}
+
+		List<RentalAgreement> agreements = new ArrayList<>(Math.min(limit, ranked.length));
+		for (int i = 0; i < ranked.length && agreements.size() < limit; i++) {
+			int days = chargeableDays[ranked[i]];
+			long totalCents = days * tool.getDailyChargeCents();
+			long discountCents = Money.percentOf(totalCents, discountPercent);
+			agreements.add(new RentalAgreement(tool, rentalDays, discountPercent, from.plusDays(ranked[i]), calendar,
+					days, totalCents, discountCents, totalCents - discountCents, discountPercent, rules));
+		}
+		return agreements;
+	}
+
+	private static List<RentalAgreement> findCheapestByPricing(Tool tool, int rentalDays, int discountPercent,
+			LocalDate from, LocalDate to, int limit, HolidayCalendar calendar) {
+		if (rentalDays < 1) {
+			throw new IllegalArgumentException("Rental day count is not 1 or greater: " + rentalDays);
+		}
+		if (to.isBefore(from)) {
+			throw new IllegalArgumentException("Checkout date range is empty or too long: " + from + " to " + to);
+		}
+		List<RentalAgreement> agreements = new ArrayList<>();
+		for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+			agreements.add(new RentalAgreement(tool, rentalDays, discountPercent, date, calendar));
+		}
+		// stable, so equally cheap dates stay in date order
+		agreements.sort(Comparator.comparingLong(RentalAgreement::getFinalChargeCents));
+		return new ArrayList<>(agreements.subList(0, Math.min(limit, agreements.size())));
+	}
+
+	/**
+	 * @param tool The tool to rent
+	 * @param rentalDays The number of days in the rental period
+	 * @param from The earliest checkout date
+	 * @param to The latest checkout date, inclusive
+	 * @param calendar The holidays to apply
+	 * @return the chargeable days of a rental checked out on each date in the
+	 *         range, indexed by days after from
+	 * @throws IllegalArgumentException if rental days is not 1 or greater, or
+	 *         the range is empty or too long
+	 */
+	public static int[] chargeableDays(Tool tool, int rentalDays, LocalDate from, LocalDate to,
+			HolidayCalendar calendar) {
+		if (rentalDays < 1) {
+			throw new IllegalArgumentException("Rental day count is not 1 or greater: " + rentalDays);
+		}
+		long fromDay = from.toEpochDay();
+		long candidates = to.toEpochDay() - fromDay + 1;
+		if (candidates < 1 || candidates + rentalDays > Integer.MAX_VALUE - 64) {
+			throw new IllegalArgumentException("Checkout date range is empty or too long: " + from + " to " + to);
+		}
+
+		// days from the day after the first checkout through the last due date
+		long[] bits = ChargeableDayCalculator.chargeableDayBits(fromDay + 1, (int) candidates + rentalDays - 1,
+				tool.chargeWeekends(), tool.chargeHolidays(), calendar);
+		int[] chargeableDays = new int[(int) candidates];
+		int count = 0;
+		for (int i = 0; i < rentalDays; i++) {
+			count += bit(bits, i);
+		}
+		chargeableDays[0] = count;
+		for (int i = 1; i < chargeableDays.length; i++) {
+			count += bit(bits, i + rentalDays - 1) - bit(bits, i - 1);
+			chargeableDays[i] = count;
+		}
+		return chargeableDays;
+	}
+
+	private static int bit(long[] bits, int index) {
+		return (int) (bits[index >>> 6] >>> index) & 1;
+	}
+
+}
@@ -0,0 +1,238 @@
+package bs0921;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A set of holidays defined by {@link HolidayRule}s.
+ *
+ * Holidays are precomputed into epoch-day bitsets with running bit counts for
+ * {@link #FIRST_INDEXED_YEAR} to {@link #LAST_INDEXED_YEAR}, one 400 year
+ * cycle of the Gregorian calendar, after which every rule repeats. A date
+ * outside those years is looked up at the same place in the cycle, and a range
+ * counts its whole cycles at once, so checking a date and counting the holidays
+ * in a range of any length are both constant time and allocation free.
+ * Instances are immutable and safe to share across threads.
+ */
+public final class HolidayCalendar {
+
+	public static final int FIRST_INDEXED_YEAR = 1900;
+
+	public static final int LAST_INDEXED_YEAR = 2299;
+
+	/**
+	 * The days in 400 Gregorian years
+	 */
+	static final int CYCLE_DAYS = 146097;
+
+	private static final long FIRST_EPOCH_DAY = LocalDate.of(FIRST_INDEXED_YEAR, 1, 1).toEpochDay();
+
+	private static final long LAST_EPOCH_DAY = LocalDate.of(LAST_INDEXED_YEAR, 12, 31).toEpochDay();
+
+	/**
+	 * The observed Fourth of July and Labor Day, the first Monday in September
+	 */
+	public static final HolidayCalendar US = new HolidayCalendar("US", Arrays.asList(
+			HolidayRule.observed(HolidayRule.fixedDate(Month.JULY, 4)),
+			HolidayRule.nthWeekday(Month.SEPTEMBER, DayOfWeek.MONDAY, 1)));
+
+	private static volatile HolidayCalendar defaultCalendar = US;
+
+	private final String name;
+
+	private final List<HolidayRule> rules;
+
+	private final long[] holidays;
+
+	private final long[] weekendHolidays;
+
+	/**
+	 * holidayRanks[i] is the number of holidays in words 0 to i - 1 of holidays
+	 */
+	private final int[] holidayRanks;
+
+	private final int[] weekendHolidayRanks;
+
+	/**
+	 * @param name The name of the calendar
+	 * @param rules The rules, each of which must repeat every 400 years
+	 */
+	public HolidayCalendar(String name, List<HolidayRule> rules) {
+		this.name = name;
+		this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+
+		int words = (int) ((LAST_EPOCH_DAY - FIRST_EPOCH_DAY) / 64) + 1;
+		this.holidays = new long[words];
+		this.weekendHolidays = new long[words];
+		// Observed shifts can move a holiday into the neighbouring year
+		for (int year = FIRST_INDEXED_YEAR - 1; year <= LAST_INDEXED_YEAR + 1; year++) {
+			for (HolidayRule rule : this.rules) {
+				long epochDay = rule.getDate(year).toEpochDay();
+				if (epochDay < FIRST_EPOCH_DAY || epochDay > LAST_EPOCH_DAY) {
+					continue;
+				}
+				int bit = (int) (epochDay - FIRST_EPOCH_DAY);
+				holidays[bit >>> 6] |= 1L << bit;
+				if (isWeekendDay(epochDay)) {
+					weekendHolidays[bit >>> 6] |= 1L << bit;
+				}
+			}
+		}
+		this.holidayRanks = ranks(holidays);
+		this.weekendHolidayRanks = ranks(weekendHolidays);
+	}
+
+	/**
+	 * @return the calendar used by rental agreements that don't specify one
+	 */
+	public static HolidayCalendar getDefault() {
+		return defaultCalendar;
+	}
+
+	/**
+	 * @param calendar the calendar used by rental agreements that don't specify one
+	 */
+	public static void setDefault(HolidayCalendar calendar) {
+		if (calendar == null) {
+			throw new IllegalArgumentException("Holiday calendar must not be null");
+		}
+		defaultCalendar = calendar;
+	}
+
+	/**
+	 * Loads a regional calendar from a file with one {@link HolidayRule#parse
+	 * rule} per line. Blank lines and lines starting with '#' are ignored.
+	 *
+	 * @param name The name of the calendar
+	 * @param file The rule file
+	 * @return The calendar
+	 * @throws IOException if the file can't be read
+	 */
+	public static HolidayCalendar load(String name, Path file) throws IOException {
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			return load(name, reader);
+		}
+	}
+
+	/**
+	 * @see #load(String, Path)
+	 */
+	public static HolidayCalendar load(String name, Reader reader) throws IOException {
+		BufferedReader lines = new BufferedReader(reader);
+		List<HolidayRule> rules = new ArrayList<>();
+		for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+			line = line.trim();
+			if (!line.isEmpty() && !line.startsWith("#")) {
+				rules.add(HolidayRule.parse(line));
+			}
+		}
+		return new HolidayCalendar(name, rules);
+	}
+
+	/**
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the rules defining the holidays
+	 */
+	public List<HolidayRule> getRules() {
+		return rules;
+	}
+
+	/**
+	 * @return true if date is a holiday, false if not
+	 */
+	public boolean isHoliday(LocalDate date) {
+		return isHoliday(date.toEpochDay());
+	}
+
+	/**
+	 * @return true if the epoch day is a holiday, false if not
+	 */
+	public boolean isHoliday(long epochDay) {
+		int bit = Math.floorMod(epochDay - FIRST_EPOCH_DAY, CYCLE_DAYS);
+		return (holidays[bit >>> 6] & (1L << bit)) != 0;
+	}
+
+	/**
+	 * @param fromEpochDay The first day, inclusive
+	 * @param toEpochDay The last day, inclusive
+	 * @return the number of holidays in the range
+	 */
+	public int countHolidays(long fromEpochDay, long toEpochDay) {
+		return count(holidays, holidayRanks, fromEpochDay, toEpochDay);
+	}
+
+	/**
+	 * @param fromEpochDay The first day, inclusive
+	 * @param toEpochDay The last day, inclusive
+	 * @return the number of holidays in the range that fall on a Saturday or Sunday
+	 */
+	public int countWeekendHolidays(long fromEpochDay, long toEpochDay) {
+		return count(weekendHolidays, weekendHolidayRanks, fromEpochDay, toEpochDay);
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	private static int count(long[] bits, int[] ranks, long fromEpochDay, long toEpochDay) {
+		if (fromEpochDay > toEpochDay) {
+			return 0;
+		}
+		long days = toEpochDay - fromEpochDay + 1;
+		int from = Math.floorMod(fromEpochDay - FIRST_EPOCH_DAY, CYCLE_DAYS);
+		int rest = (int) (days % CYCLE_DAYS);
+		long count = days / CYCLE_DAYS * ranks[bits.length];
+		if (from + rest <= CYCLE_DAYS) {
+			count += rank(bits, ranks, from + rest) - rank(bits, ranks, from);
+		} else {
+			// the rest of the range wraps around to the start of the cycle
+			count += ranks[bits.length] - rank(bits, ranks, from) + rank(bits, ranks, from + rest - CYCLE_DAYS);
+		}
+		return Math.toIntExact(count);
+	}
+
+	/**
+	 * @return the number of set bits before the given bit index
+	 */
+	private static int rank(long[] bits, int[] ranks, int bit) {
+		int word = bit >>> 6;
+		if (word == bits.length) {
+			return ranks[word];
+		}
+		return ranks[word] + Long.bitCount(bits[word] & ((1L << bit) - 1));
+	}
+
+	private static int[] ranks(long[] bits) {
+		int[] ranks = new int[bits.length + 1];
+		for (int i = 0; i < bits.length; i++) {
+			ranks[i + 1] = ranks[i] + Long.bitCount(bits[i]);
+		}
+		return ranks;
+	}
+
+	/**
+	 * @return true if the epoch day is a Saturday or Sunday, false if not
+	 */
+	static boolean isWeekendDay(long epochDay) {
+		return ChargeableDayCalculator.dayOfWeek(epochDay) >= DayOfWeek.SATURDAY.ordinal();
+	}
+
+}
@@ -0,0 +1,115 @@
+package bs0921;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * A rule that determines the date a holiday falls on in a given year.
+ * Rules are combined into a {@link HolidayCalendar}, which relies on every
+ * rule repeating with the 400 year Gregorian cycle, as the rules made here do.
+ */
+public interface HolidayRule {
+
+	/**
+	 * @param year The year to get the holiday for
+	 * @return the date of the holiday in the given year
+	 */
+	LocalDate getDate(int year);
+
+	/**
+	 * @param month The month of the holiday
+	 * @param dayOfMonth The day of the month of the holiday
+	 * @return A rule for a holiday on the same date every year, e.g. July 4th
+	 * @throws IllegalArgumentException if the date is not in every year, e.g.
+	 *         February 29th
+	 */
+	static HolidayRule fixedDate(Month month, int dayOfMonth) {
+		if (dayOfMonth < 1 || dayOfMonth > month.minLength()) {
+			throw new IllegalArgumentException("Invalid day of " + month + ": " + dayOfMonth);
+		}
+		return year -> LocalDate.of(year, month, dayOfMonth);
+	}
+
+	/**
+	 * @param month The month of the holiday
+	 * @param dayOfWeek The day of week of the holiday
+	 * @param ordinal The occurrence of the day of week in the month, 1 for the
+	 *        first, 2 for the second, -1 for the last, -2 for the one before
+	 * @return A rule for a holiday on the nth day of week of a month, e.g. the
+	 *         first Monday in September
+	 * @throws IllegalArgumentException if the ordinal is not 1 to 4 or -1 to
+	 *         -4, the occurrences every month has
+	 */
+	static HolidayRule nthWeekday(Month month, DayOfWeek dayOfWeek, int ordinal) {
+		if (ordinal == 0 || ordinal > 4 || ordinal < -4) {
+			throw new IllegalArgumentException("Invalid day of week ordinal: " + ordinal);
+		}
+		return year -> LocalDate.of(year, month, 1)
+				.with(TemporalAdjusters.dayOfWeekInMonth(ordinal, dayOfWeek));
+	}
+
+	/**
+	 * @param rule The rule for the actual holiday
+	 * @return A rule for the observed holiday, which moves a holiday falling on
+	 *         a Saturday to the Friday before and one falling on a Sunday to the
+	 *         Monday after
+	 */
+	static HolidayRule observed(HolidayRule rule) {
+		return year -> {
+			LocalDate date = rule.getDate(year);
+			if (date.getDayOfWeek() == DayOfWeek.SATURDAY) {
+				return date.minusDays(1);
+			}
+			if (date.getDayOfWeek() == DayOfWeek.SUNDAY) {
+				return date.plusDays(1);
+			}
+			return date;
+		};
+	}
+
+	/**
+	 * Parses a rule in the calendar file format, one of:
+	 * <ul>
+	 * <li>{@code fixed <MONTH> <day> [observed]}, e.g. {@code fixed JULY 4 observed}</li>
+	 * <li>{@code nth <MONTH> <DAY_OF_WEEK> <ordinal> [observed]}, e.g.
+	 * {@code nth SEPTEMBER MONDAY 1}</li>
+	 * </ul>
+	 *
+	 * @param line The rule definition
+	 * @return The rule
+	 * @throws IllegalArgumentException if the line is not a valid rule
+	 */
+	static HolidayRule parse(String line) {
+		String[] fields = line.trim().split("\\s+");
+		try {
+			HolidayRule rule;
+			int ruleFields;
+			switch (fields[0].toLowerCase()) {
+			case "fixed":
+				rule = fixedDate(Month.valueOf(fields[1].toUpperCase()), Integer.parseInt(fields[2]));
+				ruleFields = 3;
+				break;
+			case "nth":
+				rule = nthWeekday(Month.valueOf(fields[1].toUpperCase()),
+						DayOfWeek.valueOf(fields[2].toUpperCase()), Integer.parseInt(fields[3]));
+				ruleFields = 4;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown holiday rule type: " + fields[0]);
+			}
+
+			if (fields.length == ruleFields + 1 && fields[ruleFields].equalsIgnoreCase("observed")) {
+				return observed(rule);
+			}
+			if (fields.length != ruleFields) {
+				throw new IllegalArgumentException("Invalid holiday rule: " + line);
+			}
+			return rule;
+		} catch (IndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Invalid holiday rule: " + line, e);
+		}
+	}
+
+}
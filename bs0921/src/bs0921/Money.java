@@ -0,0 +1,98 @@
+package bs0921;
+
+/**
+ * Exact money arithmetic on amounts held as a long number of cents.
+ *
+ * All operations are allocation free. The only rounding step is taking a
+ * percentage, which rounds half up to the nearest cent.
+ */
+public final class Money {
+
+	private Money() {
+	}
+
+	/**
+	 * @param cents The amount
+	 * @param percent The percentage to take
+	 * @return percent % of the amount, rounded half up (away from zero) to
+	 *         the nearest cent
+	 */
+	public static long percentOf(long cents, int percent) {
+		long hundredths = cents * percent;
+		if (hundredths < 0) {
+			return -((-hundredths + 50) / 100);
+		}
+		return (hundredths + 50) / 100;
+	}
+
+	/**
+	 * @param cents The amount
+	 * @return the amount in dollars, the nearest double to the exact value
+	 */
+	public static double toDollars(long cents) {
+		return cents / 100.0;
+	}
+
+	/**
+	 * @param dollars An amount in dollars, e.g. 1.99
+	 * @return the amount in cents, rounded half up to the nearest cent
+	 */
+	public static long toCents(double dollars) {
+		return Math.round(dollars * 100);
+	}
+
+	/**
+	 * Parses a decimal amount in dollars with at most two decimal places, e.g.
+	 * "1.99", "2.5" or "3"
+	 *
+	 * @param dollars The amount
+	 * @return the amount in cents
+	 * @throws NumberFormatException if the amount is not a valid dollar amount
+	 */
+	public static long parseCents(String dollars) {
+		int point = dollars.indexOf('.');
+		String whole = point < 0 ? dollars : dollars.substring(0, point);
+		String fraction = point < 0 ? "" : dollars.substring(point + 1);
+		if (whole.isEmpty() || whole.startsWith("-") || whole.startsWith("+") || fraction.length() > 2
+				|| (point >= 0 && fraction.isEmpty())) {
+			throw new NumberFormatException("Invalid dollar amount: " + dollars);
+		}
+		long cents = Long.parseLong(whole) * 100;
+		if (!fraction.isEmpty()) {
+			for (int i = 0; i < fraction.length(); i++) {
+				if (fraction.charAt(i) < '0' || fraction.charAt(i) > '9') {
+					throw new NumberFormatException("Invalid dollar amount: " + dollars);
+				}
+			}
+			cents += Integer.parseInt(fraction) * (fraction.length() == 1 ? 10 : 1);
+		}
+		return cents;
+	}
+
+	/**
+	 * @param cents The amount
+	 * @return the amount as a plain decimal, e.g. "1234.50"
+	 */
+	public static String toString(long cents) {
+		StringBuilder builder = new StringBuilder(24);
+		appendTo(builder, cents);
+		return builder.toString();
+	}
+
+	/**
+	 * Appends the amount as a plain decimal, e.g. "1234.50"
+	 *
+	 * @param builder The builder to append to
+	 * @param cents The amount
+	 */
+	public static void appendTo(StringBuilder builder, long cents) {
+		if (cents < 0) {
+			builder.append('-');
+			cents = -cents;
+		}
+		builder.append(cents / 100).append('.');
+		long fraction = cents % 100;
+		builder.append((char) ('0' + fraction / 10)).append((char) ('0' + fraction % 10));
+	}
+
+}
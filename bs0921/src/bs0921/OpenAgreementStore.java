@@ -0,0 +1,637 @@
+package bs0921;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+import bs0921.Tool.Brand;
+import bs0921.Tool.ToolCode;
+import bs0921.Tool.ToolType;
+
+/**
+ * The rentals that are out, held off the heap as fixed size records.
+ *
+ * Records live in direct buffers of {@link #CHUNK_RECORDS} records each, added
+ * as the store grows and never copied. Each record is linked into two
+ * intrusive doubly linked lists, one of the rentals due on its due date and
+ * one of the rentals of its tool code, so the only heap the indexes take is
+ * an int list head per due day in the span of due dates and one per tool
+ * code. The heap footprint is the same for ten rentals or a million. Due dates
+ * may span at most {@link #MAX_DUE_SPAN_DAYS}, which bounds the due date
+ * index at under 200 KB.
+ *
+ * A rental is known by the handle {@link #add(RentalAgreement)} returns.
+ * Queries pass handles to an action, and fields are read, and rentals
+ * extended, shortened and returned, through the handle, so none of it
+ * creates a {@link RentalAgreement}, {@link Tool} or {@link LocalDate}. A
+ * returned rental's record is reused; its handle is then rejected.
+ *
+ * Extensions and returns are priced like
+ * {@link RentalAgreement#extend(int)}, over the changed days only, with the
+ * store's holiday calendar and {@link PricingRules}. The store is thread safe;
+ * every operation holds its lock, queries for their whole run.
+ *
+ * <pre>
+ * offset  size  field
+ *  0      4     checkout date as epoch day
+ *  4      4     rental days
+ *  8      3     tool code, type and brand ordinals
+ * 11      1     flags, 1 charge weekends, 2 charge holidays, 4 open
+ * 12      1     discount percentage applied
+ * 13      1     discount percentage the clerk entered
+ * 14      2     unused
+ * 16      4     chargeable days
+ * 20      8     next and previous record due the same day, -1 for none; next
+ *               free record when not open
+ * 28      8     next and previous record of the same tool code
+ * 36      4     generation, counting the times the record was reused
+ * 40      24    daily charge, pre-discount charge and final charge in cents
+ * </pre>
+ */
+public final class OpenAgreementStore {
+
+	static final int RECORD_SIZE = 64;
+
+	/**
+	 * 4 MiB chunks
+	 */
+	static final int CHUNK_RECORDS = 1 << 16;
+
+	private static final int CHUNK_SHIFT = 16;
+
+	/**
+	 * The most days from the earliest to the latest due date, 100 years
+	 */
+	public static final int MAX_DUE_SPAN_DAYS = 36525;
+
+	private static final int CHECKOUT = 0;
+
+	private static final int DAYS = 4;
+
+	private static final int CODE = 8;
+
+	private static final int TYPE = 9;
+
+	private static final int BRAND = 10;
+
+	private static final int FLAGS = 11;
+
+	private static final int DISCOUNT = 12;
+
+	private static final int REQUESTED_DISCOUNT = 13;
+
+	private static final int CHARGEABLE_DAYS = 16;
+
+	private static final int NEXT_DUE = 20;
+
+	private static final int PREVIOUS_DUE = 24;
+
+	private static final int NEXT_TOOL = 28;
+
+	private static final int PREVIOUS_TOOL = 32;
+
+	private static final int GENERATION = 36;
+
+	private static final int DAILY_CHARGE = 40;
+
+	private static final int TOTAL_COST = 48;
+
+	private static final int FINAL_CHARGE = 56;
+
+	private static final int WEEKENDS = 1;
+
+	private static final int HOLIDAYS = 2;
+
+	private static final int OPEN = 4;
+
+	private static final int NONE = -1;
+
+	private static final ToolCode[] CODES = ToolCode.values();
+
+	private static final ToolType[] TYPES = ToolType.values();
+
+	private static final Brand[] BRANDS = Brand.values();
+
+	private final HolidayCalendar calendar;
+
+	private final PricingRules rules;
+
+	private final List<ByteBuffer> chunks = new ArrayList<>();
+
+	/**
+	 * The first record due on each day from firstDueDay, NONE if none is
+	 */
+	private int[] dueHeads = new int[0];
+
+	private long firstDueDay;
+
+	private final int[] toolHeads = new int[CODES.length];
+
+	private final int[] toolCounts = new int[CODES.length];
+
+	private int freeHead = NONE;
+
+	/**
+	 * Records ever used, free or not
+	 */
+	private int used;
+
+	private int size;
+
+	/**
+	 * A store pricing changes with the default {@link HolidayCalendar} and
+	 * {@link PricingRules}
+	 */
+	public OpenAgreementStore() {
+		this(HolidayCalendar.getDefault(), PricingRules.getDefault());
+	}
+
+	/**
+	 * @param calendar The holidays rentals are priced with
+	 * @param rules The rules extensions and returns are priced with
+	 */
+	public OpenAgreementStore(HolidayCalendar calendar, PricingRules rules) {
+		if (calendar == null || rules == null) {
+			throw new IllegalArgumentException("Holiday calendar and pricing rules must not be null");
+		}
+		this.calendar = calendar;
+		this.rules = rules;
+		Arrays.fill(toolHeads, NONE);
+	}
+
+	/**
+	 * @param agreement The rental checked out
+	 * @return The handle of the rental
+	 * @throws IllegalArgumentException if the agreement was priced with
+	 *         another holiday calendar than the store's, is due too far from
+	 *         the other rentals, or its tool is not a {@link ToolCode},
+	 *         {@link ToolType} and {@link Brand}, which records store
+	 */
+	public synchronized long add(RentalAgreement agreement) {
+		if (agreement.getHolidayCalendar() != calendar) {
+			throw new IllegalArgumentException("Agreement was priced with the " + agreement.getHolidayCalendar()
+					+ " calendar, the store uses " + calendar);
+		}
+		agreement.getTool().requireCode();
+		int dueIndex = dueIndex(agreement.getDueDate().toEpochDay());
+		int record = allocate();
+		ByteBuffer chunk = chunk(record);
+		int at = offset(record);
+		Tool tool = agreement.getTool();
+		chunk.putInt(at + CHECKOUT, (int) agreement.getCheckoutDate().toEpochDay());
+		chunk.putInt(at + DAYS, agreement.getRentalDays());
+		chunk.put(at + CODE, (byte) tool.getCode().ordinal());
+		chunk.put(at + TYPE, (byte) tool.getType().ordinal());
+		chunk.put(at + BRAND, (byte) tool.getBrand().ordinal());
+		chunk.put(at + FLAGS, (byte) ((tool.chargeWeekends() ? WEEKENDS : 0) | (tool.chargeHolidays() ? HOLIDAYS : 0)
+				| OPEN));
+		chunk.put(at + DISCOUNT, (byte) agreement.getDiscountPercentage());
+		chunk.put(at + REQUESTED_DISCOUNT, (byte) agreement.getRequestedDiscountPercentage());
+		chunk.putInt(at + CHARGEABLE_DAYS, agreement.getChargeableDays());
+		chunk.putLong(at + DAILY_CHARGE, agreement.getDailyChargeCents());
+		chunk.putLong(at + TOTAL_COST, agreement.getTotalCostNoDiscountCents());
+		chunk.putLong(at + FINAL_CHARGE, agreement.getFinalChargeCents());
+		linkDue(record, dueIndex);
+		linkTool(record, tool.getCode().ordinal());
+		size++;
+		return handle(record, chunk.getInt(at + GENERATION));
+	}
+
+	/**
+	 * @return The rental as an agreement, adjusted with the store's pricing
+	 *         rules
+	 * @throws IllegalArgumentException if the handle is not of an open rental
+	 */
+	public synchronized RentalAgreement get(long handle) {
+		int record = record(handle);
+		ByteBuffer chunk = chunk(record);
+		int at = offset(record);
+		int flags = chunk.get(at + FLAGS);
+		Tool tool = new Tool(CODES[chunk.get(at + CODE)], TYPES[chunk.get(at + TYPE)], BRANDS[chunk.get(at + BRAND)],
+				chunk.getLong(at + DAILY_CHARGE), (flags & WEEKENDS) != 0, (flags & HOLIDAYS) != 0);
+		long totalCents = chunk.getLong(at + TOTAL_COST);
+		long finalCents = chunk.getLong(at + FINAL_CHARGE);
+		return new RentalAgreement(tool, chunk.getInt(at + DAYS), chunk.get(at + DISCOUNT),
+				LocalDate.ofEpochDay(chunk.getInt(at + CHECKOUT)), calendar, chunk.getInt(at + CHARGEABLE_DAYS),
+				totalCents, totalCents - finalCents, finalCents, chunk.get(at + REQUESTED_DISCOUNT), rules);
+	}
+
+	/**
+	 * @param handle The rental
+	 * @param days The days to add to the rental period
+	 * @throws IllegalArgumentException if the handle is not of an open rental,
+	 *         or days is not 1 or greater, or the rental would be due too far
+	 *         from the others
+	 */
+	public synchronized void extend(long handle, int days) {
+		int record = record(handle);
+		int rentalDays = chunk(record).getInt(offset(record) + DAYS);
+		if (days < 1 || days > Integer.MAX_VALUE - rentalDays) {
+			throw new IllegalArgumentException("Extension day count is not 1 or greater: " + days);
+		}
+		reprice(record, rentalDays + days);
+	}
+
+	/**
+	 * @param handle The rental
+	 * @param days The days to remove from the end of the rental period
+	 * @throws IllegalArgumentException if the handle is not of an open rental,
+	 *         or days is not 1 or greater, or leaves no rental days
+	 */
+	public synchronized void shorten(long handle, int days) {
+		int record = record(handle);
+		int rentalDays = chunk(record).getInt(offset(record) + DAYS);
+		if (days < 1 || days >= rentalDays) {
+			throw new IllegalArgumentException(
+					"Shortening day count is not in the range 1-" + (rentalDays - 1) + ": " + days);
+		}
+		reprice(record, rentalDays - days);
+	}
+
+	/**
+	 * Ends the rental on the return date, charging through that date as
+	 * {@link RentalAgreement#returnOn(LocalDate)} does, and removes it
+	 *
+	 * @param handle The rental
+	 * @param returnEpochDay The epoch day the tool was returned
+	 * @return The final charge of the rental in cents
+	 * @throws IllegalArgumentException if the handle is not of an open rental,
+	 *         or the return date is before the checkout date
+	 */
+	public synchronized long returnOn(long handle, long returnEpochDay) {
+		int record = record(handle);
+		ByteBuffer chunk = chunk(record);
+		int at = offset(record);
+		long days = returnEpochDay - chunk.getInt(at + CHECKOUT);
+		if (days < 0 || days > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Return date is before the checkout date: "
+					+ LocalDate.ofEpochDay(returnEpochDay));
+		}
+		reprice(record, Math.max(1, (int) days));
+		long finalCents = chunk.getLong(at + FINAL_CHARGE);
+		free(record);
+		return finalCents;
+	}
+
+	/**
+	 * Removes the rental without repricing it
+	 *
+	 * @return true if the handle was of an open rental
+	 */
+	public synchronized boolean remove(long handle) {
+		int record = find(handle);
+		if (record == NONE) {
+			return false;
+		}
+		free(record);
+		return true;
+	}
+
+	/**
+	 * @return true if the handle is of an open rental
+	 */
+	public synchronized boolean contains(long handle) {
+		return find(handle) != NONE;
+	}
+
+	/**
+	 * Passes the handle of every rental due in a range of days to the action,
+	 * in due date order. The action may remove or return the rental it is
+	 * given.
+	 *
+	 * @param fromEpochDay The first due day
+	 * @param toEpochDay The last due day, inclusive
+	 * @param action The action
+	 */
+	public synchronized void forEachDue(long fromEpochDay, long toEpochDay, LongConsumer action) {
+		long from = Math.max(fromEpochDay, firstDueDay);
+		long to = Math.min(toEpochDay, firstDueDay + dueHeads.length - 1);
+		for (long day = from; day <= to; day++) {
+			forEach(dueHeads[(int) (day - firstDueDay)], NEXT_DUE, action);
+		}
+	}
+
+	/**
+	 * Passes the handle of every rental due on the day to the action
+	 *
+	 * @see #forEachDue(long, long, LongConsumer)
+	 */
+	public void forEachDueOn(LocalDate date, LongConsumer action) {
+		forEachDue(date.toEpochDay(), date.toEpochDay(), action);
+	}
+
+	/**
+	 * Passes the handle of every rental due before the day to the action
+	 *
+	 * @see #forEachDue(long, long, LongConsumer)
+	 */
+	public void forEachOverdue(LocalDate today, LongConsumer action) {
+		forEachDue(Long.MIN_VALUE, today.toEpochDay() - 1, action);
+	}
+
+	/**
+	 * Passes the handle of every open rental of the tool code to the action,
+	 * most recently added first. The action may remove or return the rental
+	 * it is given.
+	 */
+	public synchronized void forEachOpen(ToolCode code, LongConsumer action) {
+		forEach(toolHeads[code.ordinal()], NEXT_TOOL, action);
+	}
+
+	/**
+	 * @return the number of open rentals
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * @return the number of open rentals of the tool code
+	 */
+	public synchronized int count(ToolCode code) {
+		return toolCounts[code.ordinal()];
+	}
+
+	/**
+	 * @return the bytes of direct memory holding records
+	 */
+	public synchronized long getOffHeapBytes() {
+		return (long) chunks.size() * CHUNK_RECORDS * RECORD_SIZE;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the handle is not of an open rental
+	 */
+	public synchronized ToolCode getToolCode(long handle) {
+		int record = record(handle);
+		return CODES[chunk(record).get(offset(record) + CODE)];
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the handle is not of an open rental
+	 */
+	public synchronized long getCheckoutEpochDay(long handle) {
+		int record = record(handle);
+		return chunk(record).getInt(offset(record) + CHECKOUT);
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the handle is not of an open rental
+	 */
+	public synchronized long getDueEpochDay(long handle) {
+		int record = record(handle);
+		return dueDay(chunk(record), offset(record));
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the handle is not of an open rental
+	 */
+	public synchronized int getRentalDays(long handle) {
+		int record = record(handle);
+		return chunk(record).getInt(offset(record) + DAYS);
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the handle is not of an open rental
+	 */
+	public synchronized int getChargeableDays(long handle) {
+		int record = record(handle);
+		return chunk(record).getInt(offset(record) + CHARGEABLE_DAYS);
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the handle is not of an open rental
+	 */
+	public synchronized int getDiscountPercentage(long handle) {
+		int record = record(handle);
+		return chunk(record).get(offset(record) + DISCOUNT);
+	}
+
+	/**
+	 * @return the final charge in cents
+	 * @throws IllegalArgumentException if the handle is not of an open rental
+	 */
+	public synchronized long getFinalChargeCents(long handle) {
+		int record = record(handle);
+		return chunk(record).getLong(offset(record) + FINAL_CHARGE);
+	}
+
+	/**
+	 * Prices the change to the new rental days from the days between the old
+	 * and new due dates alone, as RentalAgreement does, and moves the record to
+	 * its new due day. The record is only changed once nothing can fail.
+	 */
+	private void reprice(int record, int newRentalDays) {
+		ByteBuffer chunk = chunk(record);
+		int at = offset(record);
+		long checkoutEpochDay = chunk.getInt(at + CHECKOUT);
+		int dueIndex = dueIndex(checkoutEpochDay + newRentalDays);
+		int rentalDays = chunk.getInt(at + DAYS);
+		long fromEpochDay = checkoutEpochDay + Math.min(rentalDays, newRentalDays);
+		int days = Math.abs(newRentalDays - rentalDays);
+		int sign = newRentalDays < rentalDays ? -1 : 1;
+		int flags = chunk.get(at + FLAGS);
+		boolean chargeWeekends = (flags & WEEKENDS) != 0;
+		boolean chargeHolidays = (flags & HOLIDAYS) != 0;
+		int key = PricingRules.key(CODES[chunk.get(at + CODE)], TYPES[chunk.get(at + TYPE)],
+				BRANDS[chunk.get(at + BRAND)]);
+
+		int chargeableDays = ChargeableDayCalculator.count(fromEpochDay, days, chargeWeekends, chargeHolidays,
+				calendar);
+		long totalCents = chunk.getLong(at + TOTAL_COST) + sign * rules.preDiscountCents(key,
+				chunk.getLong(at + DAILY_CHARGE), chargeWeekends, chargeHolidays, fromEpochDay, days, chargeableDays,
+				calendar);
+		int discountPercent = rules.discountPercent(key, checkoutEpochDay, newRentalDays,
+				chunk.get(at + REQUESTED_DISCOUNT));
+
+		unlinkDue(record);
+		chunk.putInt(at + DAYS, newRentalDays);
+		chunk.putInt(at + CHARGEABLE_DAYS, chunk.getInt(at + CHARGEABLE_DAYS) + sign * chargeableDays);
+		chunk.put(at + DISCOUNT, (byte) discountPercent);
+		chunk.putLong(at + TOTAL_COST, totalCents);
+		chunk.putLong(at + FINAL_CHARGE, totalCents - Money.percentOf(totalCents, discountPercent));
+		linkDue(record, dueIndex);
+	}
+
+	/**
+	 * Passes every record of a list to the action, reading each next link
+	 * before the action can unlink the record
+	 */
+	private void forEach(int head, int nextField, LongConsumer action) {
+		for (int record = head; record != NONE;) {
+			ByteBuffer chunk = chunk(record);
+			int at = offset(record);
+			int next = chunk.getInt(at + nextField);
+			action.accept(handle(record, chunk.getInt(at + GENERATION)));
+			record = next;
+		}
+	}
+
+	private int allocate() {
+		if (freeHead != NONE) {
+			int record = freeHead;
+			freeHead = chunk(record).getInt(offset(record) + NEXT_DUE);
+			return record;
+		}
+		if (used == Integer.MAX_VALUE) {
+			throw new IllegalStateException("Open agreement store is full");
+		}
+		if ((used & (CHUNK_RECORDS - 1)) == 0) {
+			chunks.add(ByteBuffer.allocateDirect(CHUNK_RECORDS * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN));
+		}
+		return used++;
+	}
+
+	private void free(int record) {
+		unlinkDue(record);
+		unlinkTool(record);
+		ByteBuffer chunk = chunk(record);
+		int at = offset(record);
+		chunk.put(at + FLAGS, (byte) 0);
+		// a handle to the old rental no longer matches
+		chunk.putInt(at + GENERATION, chunk.getInt(at + GENERATION) + 1);
+		chunk.putInt(at + NEXT_DUE, freeHead);
+		freeHead = record;
+		size--;
+	}
+
+	/**
+	 * @param index The {@link #dueIndex(long) index} of the record's due day
+	 */
+	private void linkDue(int record, int index) {
+		int head = dueHeads[index];
+		link(record, head, NEXT_DUE, PREVIOUS_DUE);
+		dueHeads[index] = record;
+	}
+
+	private void unlinkDue(int record) {
+		ByteBuffer chunk = chunk(record);
+		int at = offset(record);
+		int next = chunk.getInt(at + NEXT_DUE);
+		int previous = chunk.getInt(at + PREVIOUS_DUE);
+		if (previous == NONE) {
+			dueHeads[(int) (dueDay(chunk, at) - firstDueDay)] = next;
+		} else {
+			chunk(previous).putInt(offset(previous) + NEXT_DUE, next);
+		}
+		if (next != NONE) {
+			chunk(next).putInt(offset(next) + PREVIOUS_DUE, previous);
+		}
+	}
+
+	private void linkTool(int record, int code) {
+		link(record, toolHeads[code], NEXT_TOOL, PREVIOUS_TOOL);
+		toolHeads[code] = record;
+		toolCounts[code]++;
+	}
+
+	private void unlinkTool(int record) {
+		ByteBuffer chunk = chunk(record);
+		int at = offset(record);
+		int code = chunk.get(at + CODE);
+		int next = chunk.getInt(at + NEXT_TOOL);
+		int previous = chunk.getInt(at + PREVIOUS_TOOL);
+		if (previous == NONE) {
+			toolHeads[code] = next;
+		} else {
+			chunk(previous).putInt(offset(previous) + NEXT_TOOL, next);
+		}
+		if (next != NONE) {
+			chunk(next).putInt(offset(next) + PREVIOUS_TOOL, previous);
+		}
+		toolCounts[code]--;
+	}
+
+	/**
+	 * Makes the record the head of a list
+	 */
+	private void link(int record, int head, int nextField, int previousField) {
+		ByteBuffer chunk = chunk(record);
+		int at = offset(record);
+		chunk.putInt(at + nextField, head);
+		chunk.putInt(at + previousField, NONE);
+		if (head != NONE) {
+			chunk(head).putInt(offset(head) + previousField, record);
+		}
+	}
+
+	/**
+	 * @return the index of the day in dueHeads, growing it to cover the day
+	 * @throws IllegalArgumentException if covering the day would make the span
+	 *         of due dates longer than MAX_DUE_SPAN_DAYS
+	 */
+	private int dueIndex(long dueDay) {
+		long lastDueDay = firstDueDay + dueHeads.length - 1;
+		boolean covered = dueDay >= firstDueDay && dueDay <= lastDueDay;
+		if (dueHeads.length == 0 || (size == 0 && !covered)) {
+			// nothing is due yet, so the span can start afresh
+			firstDueDay = dueDay;
+			dueHeads = new int[64];
+			Arrays.fill(dueHeads, NONE);
+		} else if (!covered) {
+			long from = Math.min(dueDay, firstDueDay);
+			long to = Math.max(dueDay, lastDueDay);
+			if (to - from + 1 > MAX_DUE_SPAN_DAYS) {
+				throw new IllegalArgumentException("Due date " + LocalDate.ofEpochDay(dueDay)
+						+ " is more than " + MAX_DUE_SPAN_DAYS + " days from the other rentals' due dates");
+			}
+			// at least double the span, so growing costs constant time per day
+			long span = Math.min(Math.max(to - from + 1, 2L * dueHeads.length), MAX_DUE_SPAN_DAYS);
+			if (dueDay < firstDueDay) {
+				from = to - span + 1;
+			}
+			int[] heads = new int[(int) span];
+			Arrays.fill(heads, NONE);
+			System.arraycopy(dueHeads, 0, heads, (int) (firstDueDay - from), dueHeads.length);
+			dueHeads = heads;
+			firstDueDay = from;
+		}
+		return (int) (dueDay - firstDueDay);
+	}
+
+
+	/**
+	 * @return the record of the handle, NONE if it is not of an open rental
+	 */
+	private int find(long handle) {
+		int record = (int) handle;
+		if (record < 0 || record >= used) {
+			return NONE;
+		}
+		ByteBuffer chunk = chunk(record);
+		int at = offset(record);
+		if ((chunk.get(at + FLAGS) & OPEN) == 0 || chunk.getInt(at + GENERATION) != (int) (handle >>> 32)) {
+			return NONE;
+		}
+		return record;
+	}
+
+	private int record(long handle) {
+		int record = find(handle);
+		if (record == NONE) {
+			throw new IllegalArgumentException("Not an open rental: " + handle);
+		}
+		return record;
+	}
+
+	private static long handle(int record, int generation) {
+		return (long) generation << 32 | record;
+	}
+
+	private static long dueDay(ByteBuffer chunk, int at) {
+		return (long) chunk.getInt(at + CHECKOUT) + chunk.getInt(at + DAYS);
+	}
+
+	private ByteBuffer chunk(int record) {
+		return chunks.get(record >>> CHUNK_SHIFT);
+	}
+
+	private static int offset(int record) {
+		return (record & (CHUNK_RECORDS - 1)) * RECORD_SIZE;
+	}
+
+}
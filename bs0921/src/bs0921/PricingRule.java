@@ -0,0 +1,248 @@
+package bs0921;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+import bs0921.Tool.Brand;
+import bs0921.Tool.ToolCode;
+import bs0921.Tool.ToolType;
+
+/**
+ * A pricing rule declared in data, one of:
+ * <ul>
+ * <li>a seasonal rate, charging a percent of the tool's daily charge for the
+ * chargeable days in a date range</li>
+ * <li>a length discount for rentals of at least some number of days</li>
+ * <li>a promotion, a discount for checkouts in a date range</li>
+ * </ul>
+ * A rule applies to every tool unless narrowed to a tool code, type or brand.
+ * Rules are immutable and are compiled together into {@link PricingRules}.
+ */
+public final class PricingRule {
+
+	enum Kind {
+		RATE,
+		LENGTH,
+		PROMOTION
+	}
+
+	private final Kind kind;
+
+	private final long fromEpochDay;
+
+	private final long toEpochDay;
+
+	private final int minRentalDays;
+
+	private final int percent;
+
+	private final ToolCode code;
+
+	private final ToolType type;
+
+	private final Brand brand;
+
+	private PricingRule(Kind kind, long fromEpochDay, long toEpochDay, int minRentalDays, int percent, ToolCode code,
+			ToolType type, Brand brand) {
+		this.kind = kind;
+		this.fromEpochDay = fromEpochDay;
+		this.toEpochDay = toEpochDay;
+		this.minRentalDays = minRentalDays;
+		this.percent = percent;
+		this.code = code;
+		this.type = type;
+		this.brand = brand;
+	}
+
+	/**
+	 * @param from The first day of the season
+	 * @param to The last day of the season, inclusive
+	 * @param ratePercent The daily charge in the season as a percent of the
+	 *        tool's daily charge, e.g. 120 for 20% more
+	 * @return A rule charging the rate for chargeable days in the season. Where
+	 *         seasons overlap, the one declared last wins.
+	 */
+	public static PricingRule seasonalRate(LocalDate from, LocalDate to, int ratePercent) {
+		if (ratePercent < 0 || ratePercent > 1000) {
+			throw new IllegalArgumentException("Rate percent is not in the range 0-1000: " + ratePercent);
+		}
+		return new PricingRule(Kind.RATE, from.toEpochDay(), checkRange(from, to), 0, ratePercent, null, null, null);
+	}
+
+	/**
+	 * @param minRentalDays The shortest rental that gets the discount
+	 * @param discountPercent The discount, 0-100
+	 * @return A rule discounting rentals of at least the given length
+	 */
+	public static PricingRule lengthDiscount(int minRentalDays, int discountPercent) {
+		if (minRentalDays < 1 || minRentalDays > 3650) {
+			throw new IllegalArgumentException("Minimum rental days is not in the range 1-3650: " + minRentalDays);
+		}
+		return new PricingRule(Kind.LENGTH, 0, 0, minRentalDays, checkDiscount(discountPercent), null, null, null);
+	}
+
+	/**
+	 * @param from The first checkout date of the promotion
+	 * @param to The last checkout date of the promotion, inclusive
+	 * @param discountPercent The discount, 0-100
+	 * @return A rule discounting rentals checked out in the date range
+	 */
+	public static PricingRule promotion(LocalDate from, LocalDate to, int discountPercent) {
+		return new PricingRule(Kind.PROMOTION, from.toEpochDay(), checkRange(from, to), 0,
+				checkDiscount(discountPercent), null, null, null);
+	}
+
+	/**
+	 * @return A copy of this rule that only applies to the tool code
+	 */
+	public PricingRule forTool(ToolCode code) {
+		return new PricingRule(kind, fromEpochDay, toEpochDay, minRentalDays, percent, code, type, brand);
+	}
+
+	/**
+	 * @return A copy of this rule that only applies to tools of the type
+	 */
+	public PricingRule forType(ToolType type) {
+		return new PricingRule(kind, fromEpochDay, toEpochDay, minRentalDays, percent, code, type, brand);
+	}
+
+	/**
+	 * @return A copy of this rule that only applies to tools of the brand
+	 */
+	public PricingRule forBrand(Brand brand) {
+		return new PricingRule(kind, fromEpochDay, toEpochDay, minRentalDays, percent, code, type, brand);
+	}
+
+	/**
+	 * Parses a rule in the pricing rules file format, one of:
+	 * <ul>
+	 * <li>{@code rate <from> <to> <percent>}, e.g.
+	 * {@code rate 2020-06-01 2020-08-31 120}</li>
+	 * <li>{@code length <min days> <discount>}, e.g. {@code length 7 15}</li>
+	 * <li>{@code promo <from> <to> <discount>}, e.g.
+	 * {@code promo 2020-07-01 2020-07-31 10}</li>
+	 * </ul>
+	 * followed by any of {@code tool=<CODE>}, {@code type=<TYPE>} and
+	 * {@code brand=<BRAND>}, e.g. {@code length 7 15 type=JACKHAMMER}
+	 *
+	 * @param line The rule definition
+	 * @return The rule
+	 * @throws IllegalArgumentException if the line is not a valid rule
+	 */
+	static PricingRule parse(String line) {
+		String[] fields = line.trim().split("\\s+");
+		try {
+			PricingRule rule;
+			int ruleFields;
+			switch (fields[0].toLowerCase()) {
+			case "rate":
+				rule = seasonalRate(LocalDate.parse(fields[1]), LocalDate.parse(fields[2]),
+						Integer.parseInt(fields[3]));
+				ruleFields = 4;
+				break;
+			case "length":
+				rule = lengthDiscount(Integer.parseInt(fields[1]), Integer.parseInt(fields[2]));
+				ruleFields = 3;
+				break;
+			case "promo":
+				rule = promotion(LocalDate.parse(fields[1]), LocalDate.parse(fields[2]), Integer.parseInt(fields[3]));
+				ruleFields = 4;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown pricing rule type: " + fields[0]);
+			}
+
+			for (int i = ruleFields; i < fields.length; i++) {
+				int equals = fields[i].indexOf('=');
+				String value = fields[i].substring(equals + 1).toUpperCase();
+				switch (fields[i].substring(0, Math.max(equals, 0)).toLowerCase()) {
+				case "tool":
+					rule = rule.forTool(ToolCode.valueOf(value));
+					break;
+				case "type":
+					rule = rule.forType(ToolType.valueOf(value));
+					break;
+				case "brand":
+					rule = rule.forBrand(Brand.valueOf(value));
+					break;
+				default:
+					throw new IllegalArgumentException("Invalid pricing rule: " + line);
+				}
+			}
+			return rule;
+		} catch (IndexOutOfBoundsException | DateTimeParseException e) {
+			throw new IllegalArgumentException("Invalid pricing rule: " + line, e);
+		}
+	}
+
+	/**
+	 * @return true if the rule applies to tools with the code, type and brand
+	 */
+	boolean appliesTo(ToolCode code, ToolType type, Brand brand) {
+		return (this.code == null || this.code == code) && (this.type == null || this.type == type)
+				&& (this.brand == null || this.brand == brand);
+	}
+
+	Kind getKind() {
+		return kind;
+	}
+
+	long getFromEpochDay() {
+		return fromEpochDay;
+	}
+
+	long getToEpochDay() {
+		return toEpochDay;
+	}
+
+	int getMinRentalDays() {
+		return minRentalDays;
+	}
+
+	int getPercent() {
+		return percent;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder(64);
+		switch (kind) {
+		case RATE:
+			text.append("rate ").append(LocalDate.ofEpochDay(fromEpochDay)).append(' ')
+					.append(LocalDate.ofEpochDay(toEpochDay)).append(' ').append(percent);
+			break;
+		case LENGTH:
+			text.append("length ").append(minRentalDays).append(' ').append(percent);
+			break;
+		default:
+			text.append("promo ").append(LocalDate.ofEpochDay(fromEpochDay)).append(' ')
+					.append(LocalDate.ofEpochDay(toEpochDay)).append(' ').append(percent);
+			break;
+		}
+		if (code != null) {
+			text.append(" tool=").append(code.name());
+		}
+		if (type != null) {
+			text.append(" type=").append(type.name());
+		}
+		if (brand != null) {
+			text.append(" brand=").append(brand.name());
+		}
+		return text.toString();
+	}
+
+	private static long checkRange(LocalDate from, LocalDate to) {
+		if (to.isBefore(from)) {
+			throw new IllegalArgumentException("Date range ends before it starts: " + from + " to " + to);
+		}
+		return to.toEpochDay();
+	}
+
+	private static int checkDiscount(int discountPercent) {
+		if (discountPercent < 0 || discountPercent > 100) {
+			throw new IllegalArgumentException("Discount percent is not in the range 0-100: " + discountPercent);
+		}
+		return discountPercent;
+	}
+
+}
@@ -0,0 +1,360 @@
+package bs0921;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+import bs0921.Tool.Brand;
+import bs0921.Tool.ToolCode;
+import bs0921.Tool.ToolType;
+
+/**
+ * A set of {@link PricingRule}s compiled for fast pricing.
+ *
+ * Compiling resolves, for every combination of tool code, type and brand, the
+ * rules that apply to it into flat arrays. Rules name tools by the enums, so a
+ * catalog tool the enums don't list is priced with the rules that name none of
+ * its missing code, type or brand:
+ * <ul>
+ * <li>seasonal rates as sorted, non-overlapping date segments, found with a
+ * binary search and priced with one constant time chargeable day count per
+ * segment the rental overlaps</li>
+ * <li>length discounts as the best discount indexed by rental days</li>
+ * <li>promotions as sorted, non-overlapping date segments with the best
+ * discount of each</li>
+ * </ul>
+ * Pricing a rental then costs the same however many rules don't apply to it,
+ * and a tool with no rules at all is priced exactly as without rules. The best
+ * of the clerk's discount, the length discount and the promotion wins.
+ *
+ * Compiled rules are immutable. To change pricing, compile a new set and
+ * {@link #setDefault(PricingRules) install} it; rentals priced from then on
+ * see all of the new rules and none of the old.
+ */
+public final class PricingRules {
+
+	/**
+	 * The enum values, each followed by null for tools the enum doesn't list
+	 */
+	private static final ToolCode[] CODES = Arrays.copyOf(ToolCode.values(), ToolCode.values().length + 1);
+
+	private static final ToolType[] TYPES = Arrays.copyOf(ToolType.values(), ToolType.values().length + 1);
+
+	private static final Brand[] BRANDS = Arrays.copyOf(Brand.values(), Brand.values().length + 1);
+
+	/**
+	 * No rules: tools are charged their daily charge with the clerk's discount
+	 */
+	public static final PricingRules NONE = new PricingRules(Collections.emptyList());
+
+	private static volatile PricingRules defaultRules = NONE;
+
+	private final List<PricingRule> rules;
+
+	/**
+	 * Compiled rules by {@link #key(Tool)}, null where no rule applies
+	 */
+	private final Compiled[] compiled;
+
+	private PricingRules(List<PricingRule> rules) {
+		this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+		this.compiled = new Compiled[CODES.length * TYPES.length * BRANDS.length];
+		for (ToolCode code : CODES) {
+			for (ToolType type : TYPES) {
+				for (Brand brand : BRANDS) {
+					List<PricingRule> applicable = new ArrayList<>();
+					for (PricingRule rule : rules) {
+						if (rule.appliesTo(code, type, brand)) {
+							applicable.add(rule);
+						}
+					}
+					if (!applicable.isEmpty()) {
+						compiled[key(code, type, brand)] = new Compiled(applicable);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param rules The rules, in order of declaration
+	 * @return The compiled rules
+	 */
+	public static PricingRules compile(List<PricingRule> rules) {
+		return rules.isEmpty() ? NONE : new PricingRules(rules);
+	}
+
+	/**
+	 * @return the rules used to price new rentals
+	 */
+	public static PricingRules getDefault() {
+		return defaultRules;
+	}
+
+	/**
+	 * @param rules The rules to use for new rentals, {@link #NONE} for none
+	 */
+	public static void setDefault(PricingRules rules) {
+		if (rules == null) {
+			throw new IllegalArgumentException("Pricing rules must not be null");
+		}
+		defaultRules = rules;
+	}
+
+	/**
+	 * Loads rules from a file with one {@link PricingRule#parse rule} per line.
+	 * Blank lines and lines starting with '#' are ignored.
+	 *
+	 * @param file The rule file
+	 * @return The compiled rules
+	 * @throws IOException if the file can't be read
+	 * @throws IllegalArgumentException if a line is not a valid rule
+	 */
+	public static PricingRules load(Path file) throws IOException {
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			return load(reader);
+		}
+	}
+
+	/**
+	 * @see #load(Path)
+	 */
+	public static PricingRules load(Reader reader) throws IOException {
+		BufferedReader lines = new BufferedReader(reader);
+		List<PricingRule> rules = new ArrayList<>();
+		for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+			line = line.trim();
+			if (!line.isEmpty() && !line.startsWith("#")) {
+				rules.add(PricingRule.parse(line));
+			}
+		}
+		return compile(rules);
+	}
+
+	/**
+	 * @return the rules, in order of declaration
+	 */
+	public List<PricingRule> getRules() {
+		return rules;
+	}
+
+	/**
+	 * @return true if any rule applies to the tool
+	 */
+	public boolean appliesTo(Tool tool) {
+		return compiled[key(tool)] != null;
+	}
+
+	/**
+	 * @param tool The tool rented
+	 * @param checkoutEpochDay The epoch day the tool was checked out
+	 * @param rentalDays The number of days in the rental period
+	 * @param chargeableDays The chargeable days in the rental period
+	 * @param calendar The holidays to apply
+	 * @return the charge before discount, in cents
+	 */
+	long preDiscountCents(Tool tool, long checkoutEpochDay, int rentalDays, int chargeableDays,
+			HolidayCalendar calendar) {
+		return preDiscountCents(key(tool), tool.getDailyChargeCents(), tool.chargeWeekends(), tool.chargeHolidays(),
+				checkoutEpochDay, rentalDays, chargeableDays, calendar);
+	}
+
+	/**
+	 * @param key The {@link #key(ToolCode, ToolType, Brand) key} of the tool
+	 * @see #preDiscountCents(Tool, long, int, int, HolidayCalendar)
+	 */
+	long preDiscountCents(int key, long dailyCents, boolean chargeWeekends, boolean chargeHolidays,
+			long checkoutEpochDay, int rentalDays, int chargeableDays, HolidayCalendar calendar) {
+		long cents = chargeableDays * dailyCents;
+		Compiled rules = compiled[key];
+		if (rules == null || rules.rateStarts.length == 0) {
+			return cents;
+		}
+		long firstDay = checkoutEpochDay + 1;
+		long lastDay = checkoutEpochDay + rentalDays;
+		for (int i = firstEndingOnOrAfter(rules.rateEnds, firstDay); i < rules.rateStarts.length
+				&& rules.rateStarts[i] <= lastDay; i++) {
+			long from = Math.max(firstDay, rules.rateStarts[i]);
+			long to = Math.min(lastDay, rules.rateEnds[i]);
+			int days = ChargeableDayCalculator.count(from - 1, (int) (to - from + 1), chargeWeekends, chargeHolidays,
+					calendar);
+			cents += days * (Money.percentOf(dailyCents, rules.ratePercents[i]) - dailyCents);
+		}
+		return cents;
+	}
+
+	/**
+	 * @param tool The tool rented
+	 * @param checkoutEpochDay The epoch day the tool was checked out
+	 * @param rentalDays The number of days in the rental period
+	 * @param discountPercent The clerk's discount
+	 * @return the best of the clerk's discount and the discounts of the rules
+	 */
+	int discountPercent(Tool tool, long checkoutEpochDay, int rentalDays, int discountPercent) {
+		return discountPercent(key(tool), checkoutEpochDay, rentalDays, discountPercent);
+	}
+
+	/**
+	 * @param key The {@link #key(ToolCode, ToolType, Brand) key} of the tool
+	 * @see #discountPercent(Tool, long, int, int)
+	 */
+	int discountPercent(int key, long checkoutEpochDay, int rentalDays, int discountPercent) {
+		Compiled rules = compiled[key];
+		if (rules == null) {
+			return discountPercent;
+		}
+		int[] lengthDiscounts = rules.lengthDiscounts;
+		int best = Math.max(discountPercent, lengthDiscounts[Math.min(Math.max(rentalDays, 0),
+				lengthDiscounts.length - 1)]);
+		int promotion = firstEndingOnOrAfter(rules.promotionEnds, checkoutEpochDay);
+		if (promotion < rules.promotionStarts.length && rules.promotionStarts[promotion] <= checkoutEpochDay) {
+			best = Math.max(best, rules.promotionDiscounts[promotion]);
+		}
+		return best;
+	}
+
+	@Override
+	public String toString() {
+		return rules.toString();
+	}
+
+	private static int key(Tool tool) {
+		return key(tool.getCode(), tool.getType(), tool.getBrand());
+	}
+
+	/**
+	 * @return the index of the rules compiled for the combination
+	 */
+	static int key(ToolCode code, ToolType type, Brand brand) {
+		return (index(code, CODES) * TYPES.length + index(type, TYPES)) * BRANDS.length + index(brand, BRANDS);
+	}
+
+	/**
+	 * @return the ordinal of the value, the last index for null
+	 */
+	private static int index(Enum<?> value, Enum<?>[] values) {
+		return value == null ? values.length - 1 : value.ordinal();
+	}
+
+	/**
+	 * @return the index of the first segment ending on or after the day, the
+	 *         number of segments if there is none
+	 */
+	private static int firstEndingOnOrAfter(long[] ends, long epochDay) {
+		int index = Arrays.binarySearch(ends, epochDay);
+		return index >= 0 ? index : -index - 1;
+	}
+
+	/**
+	 * The rules that apply to one combination of tool code, type and brand
+	 */
+	private static final class Compiled {
+
+		long[] rateStarts;
+
+		long[] rateEnds;
+
+		int[] ratePercents;
+
+		final int[] lengthDiscounts;
+
+		long[] promotionStarts;
+
+		long[] promotionEnds;
+
+		int[] promotionDiscounts;
+
+		Compiled(List<PricingRule> rules) {
+			int longest = 0;
+			List<PricingRule> rates = new ArrayList<>();
+			List<PricingRule> promotions = new ArrayList<>();
+			for (PricingRule rule : rules) {
+				switch (rule.getKind()) {
+				case RATE:
+					rates.add(rule);
+					break;
+				case PROMOTION:
+					promotions.add(rule);
+					break;
+				default:
+					longest = Math.max(longest, rule.getMinRentalDays());
+					break;
+				}
+			}
+
+			lengthDiscounts = new int[longest + 1];
+			for (PricingRule rule : rules) {
+				if (rule.getKind() == PricingRule.Kind.LENGTH) {
+					lengthDiscounts[rule.getMinRentalDays()] = Math.max(lengthDiscounts[rule.getMinRentalDays()],
+							rule.getPercent());
+				}
+			}
+			for (int days = 1; days < lengthDiscounts.length; days++) {
+				lengthDiscounts[days] = Math.max(lengthDiscounts[days], lengthDiscounts[days - 1]);
+			}
+
+			segment(rates, true);
+			segment(promotions, false);
+		}
+
+		/**
+		 * Splits the date ranges of the rules into non-overlapping segments. A
+		 * rate segment takes the rate of the last rule covering it, a promotion
+		 * segment the best discount of the rules covering it. Adjacent segments
+		 * with the same percent are merged.
+		 */
+		private void segment(List<PricingRule> rules, boolean rates) {
+			TreeSet<Long> boundaries = new TreeSet<>();
+			for (PricingRule rule : rules) {
+				boundaries.add(rule.getFromEpochDay());
+				boundaries.add(rule.getToEpochDay() + 1);
+			}
+			long[] days = new long[boundaries.size()];
+			int index = 0;
+			for (long day : boundaries) {
+				days[index++] = day;
+			}
+			long[] starts = new long[days.length];
+			long[] ends = new long[days.length];
+			int[] percents = new int[days.length];
+			int count = 0;
+			for (int i = 0; i + 1 < days.length; i++) {
+				int percent = -1;
+				for (PricingRule rule : rules) {
+					if (rule.getFromEpochDay() <= days[i] && rule.getToEpochDay() >= days[i]) {
+						percent = rates ? rule.getPercent() : Math.max(percent, rule.getPercent());
+					}
+				}
+				if (percent < 0) {
+					continue;
+				}
+				if (count > 0 && ends[count - 1] == days[i] - 1 && percents[count - 1] == percent) {
+					ends[count - 1] = days[i + 1] - 1;
+				} else {
+					starts[count] = days[i];
+					ends[count] = days[i + 1] - 1;
+					percents[count++] = percent;
+				}
+			}
+			if (rates) {
+				rateStarts = Arrays.copyOf(starts, count);
+				rateEnds = Arrays.copyOf(ends, count);
+				ratePercents = Arrays.copyOf(percents, count);
+			} else {
+				promotionStarts = Arrays.copyOf(starts, count);
+				promotionEnds = Arrays.copyOf(ends, count);
+				promotionDiscounts = Arrays.copyOf(percents, count);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,351 @@
+package bs0921;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import bs0921.Tool.ToolCode;
+
+/**
+ * Prices every rental in a what-if matrix of tool × checkout date × rental
+ * days × discount tier and streams the final charges to a file.
+ *
+ * Tools only differ in daily charge and in which of the four charge policies
+ * (whether weekends and holidays are charged) they follow, so the chargeable
+ * days of every rental come from one prefix-sum table per policy: a rental
+ * checked out on day i for d days has prefix[i + d] - prefix[i] chargeable
+ * days. Rows of the matrix are filled in primitive arrays by fork-join tasks
+ * and written at their own offsets in the file, so memory use stays at a few
+ * blocks however large the matrix is. A row, the charges of one tool and
+ * checkout date, must fit in a block, which limits discount tiers × rental
+ * days to 262,144.
+ *
+ * The sweep prices at catalog rates with each discount tier, before any
+ * {@link PricingRules}, as a baseline to model rate changes against.
+ *
+ * The file is little endian: a header, then the final charge of each rental as
+ * an int number of cents, ordered by tool, checkout date, discount tier and
+ * rental days. {@link #open(Path)} reads it back.
+ */
+public final class PricingSweep {
+
+	private static final int MAGIC = 0x57535342;
+
+	private static final byte VERSION = 1;
+
+	/**
+	 * About how many bytes each task fills before writing
+	 */
+	private static final int BLOCK_SIZE = 1 << 20;
+
+	private final Tool[] tools;
+
+	private final HolidayCalendar calendar;
+
+	private final LocalDate firstCheckoutDate;
+
+	private final int checkoutDays;
+
+	private final int maxRentalDays;
+
+	private final int[] discountTiers;
+
+	/**
+	 * @param catalog The tools to price. The file names tools by
+	 *        {@link ToolCode}, so tools the enum doesn't list are left out.
+	 * @param calendar The holidays to apply
+	 * @param firstCheckoutDate The first checkout date
+	 * @param checkoutDays The number of checkout dates
+	 * @param maxRentalDays Rental days go from 1 to this
+	 * @param discountTiers The discount percents, each 0-100
+	 * @throws IllegalArgumentException if a charge could overflow an int, a
+	 *         dimension is out of range or a row does not fit in a block
+	 */
+	public PricingSweep(ToolCatalog catalog, HolidayCalendar calendar, LocalDate firstCheckoutDate,
+			int checkoutDays, int maxRentalDays, int... discountTiers) {
+		this.tools = catalog.getTools().stream().filter(tool -> tool.getCode() != null).toArray(Tool[]::new);
+		this.calendar = calendar;
+		this.firstCheckoutDate = firstCheckoutDate;
+		this.checkoutDays = checkoutDays;
+		this.maxRentalDays = maxRentalDays;
+		this.discountTiers = discountTiers.clone();
+		if (checkoutDays < 1 || maxRentalDays < 1 || (long) checkoutDays + maxRentalDays > Integer.MAX_VALUE - 64) {
+			throw new IllegalArgumentException("Checkout and rental days must be 1 or greater");
+		}
+		if (discountTiers.length < 1 || discountTiers.length > 101) {
+			throw new IllegalArgumentException("There must be 1 to 101 discount tiers");
+		}
+		for (int tier : discountTiers) {
+			if (tier < 0 || tier > 100) {
+				throw new IllegalArgumentException("Discount percent is not in the range 0-100: " + tier);
+			}
+		}
+		if (rowSize() > BLOCK_SIZE) {
+			throw new IllegalArgumentException(discountTiers.length + " discount tiers of " + maxRentalDays
+					+ " rental days are more than " + BLOCK_SIZE / 4 + " charges per row");
+		}
+		for (Tool tool : tools) {
+			if (tool.getDailyChargeCents() < 0
+					|| tool.getDailyChargeCents() * maxRentalDays > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("Charges of " + tool.getCode() + " do not fit in an int");
+			}
+		}
+	}
+
+	/**
+	 * @return the number of bytes the sweep writes
+	 */
+	public long getFileSize() {
+		return headerSize() + (long) tools.length * checkoutDays * rowSize();
+	}
+
+	/**
+	 * Runs the sweep, replacing the file
+	 *
+	 * @param file The file to write
+	 * @return the number of bytes written
+	 */
+	public long writeTo(Path file) throws IOException {
+		int[][] prefixes = new int[4][];
+		for (Tool tool : tools) {
+			int policy = policy(tool);
+			if (prefixes[policy] == null) {
+				prefixes[policy] = prefixSums(tool.chargeWeekends(), tool.chargeHolidays());
+			}
+		}
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer header = writeHeader();
+			while (header.hasRemaining()) {
+				channel.write(header, header.position());
+			}
+			int rowsPerBlock = (int) Math.min(checkoutDays, BLOCK_SIZE / rowSize());
+			int blocksPerTool = (checkoutDays + rowsPerBlock - 1) / rowsPerBlock;
+			try {
+				ForkJoinPool.commonPool().invoke(new SweepTask(channel, prefixes, rowsPerBlock, blocksPerTool, 0,
+						tools.length * blocksPerTool));
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+		}
+		return getFileSize();
+	}
+
+	/**
+	 * @return prefix[k], the number of chargeable days among the k days after
+	 *         the first checkout date
+	 */
+	private int[] prefixSums(boolean chargeWeekends, boolean chargeHolidays) {
+		int days = checkoutDays - 1 + maxRentalDays;
+		long[] bits = ChargeableDayCalculator.chargeableDayBits(firstCheckoutDate.toEpochDay() + 1, days,
+				chargeWeekends, chargeHolidays, calendar);
+		int[] prefix = new int[days + 1];
+		for (int k = 0; k < days; k++) {
+			prefix[k + 1] = prefix[k] + ((int) (bits[k >>> 6] >>> k) & 1);
+		}
+		return prefix;
+	}
+
+	private ByteBuffer writeHeader() {
+		ByteBuffer header = ByteBuffer.allocate(headerSize()).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).put(VERSION);
+		header.putLong(firstCheckoutDate.toEpochDay()).putInt(checkoutDays).putInt(maxRentalDays);
+		header.put((byte) tools.length);
+		for (Tool tool : tools) {
+			header.put((byte) tool.getCode().ordinal());
+		}
+		header.put((byte) discountTiers.length);
+		for (int tier : discountTiers) {
+			header.put((byte) tier);
+		}
+		header.flip();
+		return header;
+	}
+
+	private int headerSize() {
+		return 4 + 1 + 8 + 4 + 4 + 1 + tools.length + 1 + discountTiers.length;
+	}
+
+	private long rowSize() {
+		return 4L * discountTiers.length * maxRentalDays;
+	}
+
+	private static int policy(Tool tool) {
+		return (tool.chargeWeekends() ? 1 : 0) | (tool.chargeHolidays() ? 2 : 0);
+	}
+
+	/**
+	 * Splits the blocks in halves until one is left, then fills and writes it
+	 */
+	private final class SweepTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final FileChannel channel;
+
+		private final int[][] prefixes;
+
+		private final int rowsPerBlock;
+
+		private final int blocksPerTool;
+
+		private final int from;
+
+		private final int to;
+
+		SweepTask(FileChannel channel, int[][] prefixes, int rowsPerBlock, int blocksPerTool, int from, int to) {
+			this.channel = channel;
+			this.prefixes = prefixes;
+			this.rowsPerBlock = rowsPerBlock;
+			this.blocksPerTool = blocksPerTool;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new SweepTask(channel, prefixes, rowsPerBlock, blocksPerTool, from, middle),
+						new SweepTask(channel, prefixes, rowsPerBlock, blocksPerTool, middle, to));
+				return;
+			}
+			Tool tool = tools[from / blocksPerTool];
+			int firstRow = from % blocksPerTool * rowsPerBlock;
+			int rows = Math.min(rowsPerBlock, checkoutDays - firstRow);
+			ByteBuffer block = ByteBuffer.allocate((int) (rows * rowSize())).order(ByteOrder.LITTLE_ENDIAN);
+			fill(tool, prefixes[policy(tool)], firstRow, rows, block.asIntBuffer());
+			long position = headerSize() + ((long) (from / blocksPerTool) * checkoutDays + firstRow) * rowSize();
+			try {
+				while (block.hasRemaining()) {
+					channel.write(block, position + block.position());
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		private void fill(Tool tool, int[] prefix, int firstRow, int rows, IntBuffer out) {
+			long dailyCents = tool.getDailyChargeCents();
+			int[] totals = new int[maxRentalDays];
+			int[] charges = new int[maxRentalDays];
+			for (int row = firstRow; row < firstRow + rows; row++) {
+				int base = prefix[row];
+				for (int d = 0; d < maxRentalDays; d++) {
+					totals[d] = (int) ((prefix[row + d + 1] - base) * dailyCents);
+				}
+				for (int tier : discountTiers) {
+					// totals are never negative, so Money.percentOf reduces to this
+					for (int d = 0; d < maxRentalDays; d++) {
+						charges[d] = totals[d] - (int) (((long) totals[d] * tier + 50) / 100);
+					}
+					out.put(charges);
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Opens a file written by {@link #writeTo(Path)}
+	 */
+	public static Reader open(Path file) throws IOException {
+		return new Reader(FileChannel.open(file, StandardOpenOption.READ));
+	}
+
+	/**
+	 * Looks up single charges in a sweep file
+	 */
+	public static final class Reader implements Closeable {
+
+		private final FileChannel channel;
+
+		private final long firstEpochDay;
+
+		private final int checkoutDays;
+
+		private final int maxRentalDays;
+
+		private final int[] toolIndexes = new int[ToolCode.values().length];
+
+		private final int[] tierIndexes = new int[101];
+
+		private final int tierCount;
+
+		private final long dataOffset;
+
+		Reader(FileChannel channel) throws IOException {
+			this.channel = channel;
+			ByteBuffer header = ByteBuffer.allocate(4 + 1 + 8 + 4 + 4 + 1 + 255 + 1 + 101)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			int read;
+			do {
+				read = channel.read(header, header.position());
+			} while (read > 0 && header.hasRemaining());
+			header.flip();
+			try {
+				if (header.getInt() != MAGIC || header.get() != VERSION) {
+					throw new IOException("Not a pricing sweep file");
+				}
+				firstEpochDay = header.getLong();
+				checkoutDays = header.getInt();
+				maxRentalDays = header.getInt();
+				Arrays.fill(toolIndexes, -1);
+				int toolCount = header.get() & 0xff;
+				for (int i = 0; i < toolCount; i++) {
+					toolIndexes[header.get()] = i;
+				}
+				Arrays.fill(tierIndexes, -1);
+				tierCount = header.get() & 0xff;
+				for (int i = 0; i < tierCount; i++) {
+					tierIndexes[header.get()] = i;
+				}
+				dataOffset = header.position();
+			} catch (RuntimeException e) {
+				channel.close();
+				throw new IOException("Corrupt pricing sweep header", e);
+			}
+		}
+
+		/**
+		 * @return the final charge in cents of the rental
+		 * @throws IllegalArgumentException if the rental is not in the sweep
+		 */
+		public int getFinalChargeCents(ToolCode code, LocalDate checkoutDate, int rentalDays, int discountPercent)
+				throws IOException {
+			long row = checkoutDate.toEpochDay() - firstEpochDay;
+			int tool = toolIndexes[code.ordinal()];
+			int tier = discountPercent < 0 || discountPercent > 100 ? -1 : tierIndexes[discountPercent];
+			if (tool < 0 || tier < 0 || row < 0 || row >= checkoutDays || rentalDays < 1
+					|| rentalDays > maxRentalDays) {
+				throw new IllegalArgumentException("Rental is not in the sweep");
+			}
+			long cell = (((long) tool * checkoutDays + row) * tierCount + tier) * maxRentalDays + rentalDays - 1;
+			ByteBuffer value = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			while (value.hasRemaining()) {
+				if (channel.read(value, dataOffset + cell * 4 + value.position()) < 0) {
+					throw new IOException("Pricing sweep file is truncated");
+				}
+			}
+			return value.getInt(0);
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+
+	}
+
+}
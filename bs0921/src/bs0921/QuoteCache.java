@@ -0,0 +1,341 @@
+package bs0921;
+
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import bs0921.Tool.ToolCode;
+
+/**
+ * A bounded cache of priced rentals in front of
+ * {@link ToolPOS#tryRentTool(ToolCode, int, int, LocalDate)}.
+ *
+ * Each rental is packed into a long key from its tool code, rental days,
+ * discount percent and checkout date, so a lookup allocates nothing. Keys hash
+ * to a bucket of eight slots that are read and replaced without locks. When a
+ * bucket is full, a new quote only replaces the least frequently used quote in
+ * the bucket if it has been asked for more often, as estimated by a TinyLFU
+ * count-min sketch, so one-off quotes can't flush popular ones.
+ *
+ * The cache empties itself when the default {@link ToolCatalog},
+ * {@link HolidayCalendar} or {@link PricingRules} is replaced. Rejected
+ * rentals are not cached. Keys hold the {@link ToolCode} ordinal, so callers
+ * price catalog tools the enum doesn't list with
+ * {@link ToolPOS#tryRentTool(CharSequence, CharSequence, CharSequence, CharSequence)}.
+ */
+public final class QuoteCache {
+
+	private static final int WAYS = 8;
+
+	/**
+	 * Rentals longer than this are priced without the cache
+	 */
+	private static final int MAX_CACHED_DAYS = (1 << 20) - 1;
+
+	private final int bucketMask;
+
+	private final FrequencySketch sketch;
+
+	private final AtomicReference<Table> table = new AtomicReference<>();
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * @param maximumSize The most quotes to keep, rounded up to a power of two
+	 */
+	public QuoteCache(int maximumSize) {
+		if (maximumSize < 1 || maximumSize > 1 << 30) {
+			throw new IllegalArgumentException("Maximum size must be 1 to 2^30");
+		}
+		int capacity = Math.max(WAYS, Integer.highestOneBit(maximumSize - 1) << 1);
+		bucketMask = capacity / WAYS - 1;
+		sketch = new FrequencySketch(capacity);
+		table.set(new Table(ToolCatalog.getDefault(), HolidayCalendar.getDefault(), PricingRules.getDefault(),
+				capacity));
+	}
+
+	/**
+	 * Prices a rental, returning the cached agreement when the same rental was
+	 * priced before
+	 *
+	 * @return the agreement, or the {@link RentalError} the rental was rejected
+	 *         for
+	 */
+	public RentalResult tryRentTool(ToolCode code, int rentalDays, int discountPercent, LocalDate checkoutDate) {
+		if (code == null || checkoutDate == null || rentalDays < 1 || rentalDays > MAX_CACHED_DAYS
+				|| discountPercent < 0 || discountPercent > 100) {
+			return ToolPOS.tryRentTool(code, rentalDays, discountPercent, checkoutDate);
+		}
+		long epochDay = checkoutDate.toEpochDay();
+		if (epochDay != (int) epochDay) {
+			return ToolPOS.tryRentTool(code, rentalDays, discountPercent, checkoutDate);
+		}
+		long key = epochDay << 32 | (long) rentalDays << 12 | discountPercent << 5 | code.ordinal();
+		int hash = hash(key);
+		Table current = currentTable();
+		int bucket = (hash & bucketMask) * WAYS;
+		sketch.increment(hash);
+		for (int i = bucket; i < bucket + WAYS; i++) {
+			Entry entry = current.slots.get(i);
+			if (entry != null && entry.key == key) {
+				hits.increment();
+				return entry.result;
+			}
+		}
+
+		misses.increment();
+		RentalResult result = ToolPOS.tryRentTool(code, rentalDays, discountPercent, checkoutDate);
+		if (result.isSuccess()) {
+			admit(current, bucket, new Entry(key, hash, result));
+		}
+		return result;
+	}
+
+	/**
+	 * @return the agreement
+	 * @throws Exception with the {@link RentalError} message if the rental is
+	 *         invalid
+	 * @see #tryRentTool(ToolCode, int, int, LocalDate)
+	 */
+	public RentalAgreement rentTool(ToolCode code, int rentalDays, int discountPercent, LocalDate checkoutDate)
+			throws Exception {
+		RentalResult result = tryRentTool(code, rentalDays, discountPercent, checkoutDate);
+		if (!result.isSuccess()) {
+			throw new Exception(result.getErrorMessage());
+		}
+		return result.getAgreement();
+	}
+
+	/**
+	 * Removes every quote
+	 */
+	public void invalidateAll() {
+		Table current = table.get();
+		table.compareAndSet(current, new Table(ToolCatalog.getDefault(), HolidayCalendar.getDefault(),
+				PricingRules.getDefault(), current.slots.length()));
+	}
+
+	/**
+	 * @return the hit and miss counts so far
+	 */
+	public Stats getStats() {
+		return new Stats(hits.sum(), misses.sum(), evictions.sum());
+	}
+
+	/**
+	 * @return the table, replaced with an empty one if the default catalog,
+	 *         holiday calendar or pricing rules have changed since it was
+	 *         created
+	 */
+	private Table currentTable() {
+		Table current = table.get();
+		ToolCatalog catalog = ToolCatalog.getDefault();
+		HolidayCalendar calendar = HolidayCalendar.getDefault();
+		PricingRules rules = PricingRules.getDefault();
+		if (current.catalog == catalog && current.calendar == calendar && current.rules == rules) {
+			return current;
+		}
+		Table replacement = new Table(catalog, calendar, rules, current.slots.length());
+		return table.compareAndSet(current, replacement) ? replacement : table.get();
+	}
+
+	/**
+	 * Stores the entry in a free slot of the bucket, or in place of the bucket's
+	 * least frequently used entry if the new one is used more often
+	 */
+	private void admit(Table current, int bucket, Entry candidate) {
+		Entry victim = null;
+		int victimFrequency = Integer.MAX_VALUE;
+		int victimSlot = -1;
+		for (int i = bucket; i < bucket + WAYS; i++) {
+			Entry entry = current.slots.get(i);
+			if (entry == null) {
+				if (current.slots.compareAndSet(i, null, candidate)) {
+					return;
+				}
+				entry = current.slots.get(i);
+			}
+			if (entry.key == candidate.key) {
+				return;
+			}
+			int frequency = sketch.frequency(entry.hash);
+			if (frequency < victimFrequency) {
+				victim = entry;
+				victimFrequency = frequency;
+				victimSlot = i;
+			}
+		}
+		if (sketch.frequency(candidate.hash) > victimFrequency
+				&& current.slots.compareAndSet(victimSlot, victim, candidate)) {
+			evictions.increment();
+		}
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private static final class Table {
+
+		final ToolCatalog catalog;
+
+		final HolidayCalendar calendar;
+
+		final PricingRules rules;
+
+		final AtomicReferenceArray<Entry> slots;
+
+		Table(ToolCatalog catalog, HolidayCalendar calendar, PricingRules rules, int capacity) {
+			this.catalog = catalog;
+			this.calendar = calendar;
+			this.rules = rules;
+			this.slots = new AtomicReferenceArray<>(capacity);
+		}
+
+	}
+
+	private static final class Entry {
+
+		final long key;
+
+		final int hash;
+
+		final RentalResult result;
+
+		Entry(long key, int hash, RentalResult result) {
+			this.key = key;
+			this.hash = hash;
+			this.result = result;
+		}
+
+	}
+
+	/**
+	 * A count-min sketch of 4 bit counters estimating how often each key was
+	 * asked for. Counters are halved after 10 lookups per table word so old
+	 * popularity fades. Updates are not synchronized; a lost update only makes
+	 * an estimate slightly low.
+	 */
+	static final class FrequencySketch {
+
+		private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+				0xcbf29ce484222325L };
+
+		private static final long RESET_MASK = 0x7777777777777777L;
+
+		private final long[] table;
+
+		private final int sampleSize;
+
+		private int additions;
+
+		FrequencySketch(int capacity) {
+			table = new long[Math.max(64, capacity)];
+			sampleSize = 10 * table.length;
+		}
+
+		/**
+		 * @return the estimated number of recent lookups of the hash, at most 15
+		 */
+		int frequency(int hash) {
+			int start = (hash & 3) << 2;
+			int frequency = Integer.MAX_VALUE;
+			for (int i = 0; i < 4; i++) {
+				long word = table[indexOf(hash, i)];
+				frequency = Math.min(frequency, (int) (word >>> ((start + i) << 2)) & 0xf);
+			}
+			return frequency;
+		}
+
+		void increment(int hash) {
+			int start = (hash & 3) << 2;
+			boolean added = false;
+			for (int i = 0; i < 4; i++) {
+				int index = indexOf(hash, i);
+				int shift = (start + i) << 2;
+				if (((table[index] >>> shift) & 0xf) != 0xf) {
+					table[index] += 1L << shift;
+					added = true;
+				}
+			}
+			if (added && ++additions >= sampleSize) {
+				reset();
+			}
+		}
+
+		private void reset() {
+			additions = 0;
+			for (int i = 0; i < table.length; i++) {
+				table[i] = (table[i] >>> 1) & RESET_MASK;
+			}
+		}
+
+		private int indexOf(int hash, int i) {
+			long h = (hash + SEEDS[i]) * SEEDS[i];
+			h += h >>> 32;
+			return (int) h & (table.length - 1);
+		}
+
+	}
+
+	/**
+	 * Counts of cache lookups
+	 */
+	public static final class Stats {
+
+		private final long hitCount;
+
+		private final long missCount;
+
+		private final long evictionCount;
+
+		Stats(long hitCount, long missCount, long evictionCount) {
+			this.hitCount = hitCount;
+			this.missCount = missCount;
+			this.evictionCount = evictionCount;
+		}
+
+		/**
+		 * @return the number of lookups answered from the cache
+		 */
+		public long getHitCount() {
+			return hitCount;
+		}
+
+		/**
+		 * @return the number of lookups that were priced
+		 */
+		public long getMissCount() {
+			return missCount;
+		}
+
+		/**
+		 * @return the number of quotes replaced by more popular ones
+		 */
+		public long getEvictionCount() {
+			return evictionCount;
+		}
+
+		/**
+		 * @return hits as a fraction of lookups, 1 if there were none
+		 */
+		public double getHitRate() {
+			long lookups = hitCount + missCount;
+			return lookups == 0 ? 1 : (double) hitCount / lookups;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("hits=%d misses=%d evictions=%d hitRate=%.3f", hitCount, missCount, evictionCount,
+					getHitRate());
+		}
+
+	}
+
+}
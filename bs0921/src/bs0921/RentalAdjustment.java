@@ -0,0 +1,144 @@
+package bs0921;
+
+import java.time.LocalDate;
+
+/**
+ * A change to the rental period of a {@link RentalAgreement} after checkout,
+ * with the change in charges it caused.
+ *
+ * Adjustments are immutable. Each links to the one before it, so adjusting an
+ * agreement records its history without copying it.
+ */
+public final class RentalAdjustment {
+
+	/**
+	 * What changed the rental period
+	 */
+	public enum Kind {
+		/**
+		 * The customer kept the tool longer
+		 */
+		EXTENSION,
+		/**
+		 * The rental period was cut short before the tool was returned
+		 */
+		SHORTENING,
+		/**
+		 * The tool was returned, early, on time or late
+		 */
+		RETURN
+	}
+
+	private final Kind kind;
+
+	private final int previousRentalDays;
+
+	private final int rentalDays;
+
+	private final LocalDate dueDate;
+
+	private final int chargeableDaysDelta;
+
+	private final long totalCostNoDiscountDeltaCents;
+
+	private final int discountPercentage;
+
+	private final long finalChargeDeltaCents;
+
+	private final RentalAdjustment previous;
+
+	RentalAdjustment(Kind kind, int previousRentalDays, int rentalDays, LocalDate dueDate, int chargeableDaysDelta,
+			long totalCostNoDiscountDeltaCents, int discountPercentage, long finalChargeDeltaCents,
+			RentalAdjustment previous) {
+		this.kind = kind;
+		this.previousRentalDays = previousRentalDays;
+		this.rentalDays = rentalDays;
+		this.dueDate = dueDate;
+		this.chargeableDaysDelta = chargeableDaysDelta;
+		this.totalCostNoDiscountDeltaCents = totalCostNoDiscountDeltaCents;
+		this.discountPercentage = discountPercentage;
+		this.finalChargeDeltaCents = finalChargeDeltaCents;
+		this.previous = previous;
+	}
+
+	/**
+	 * @return the kind
+	 */
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * @return the rental days before the adjustment
+	 */
+	public int getPreviousRentalDays() {
+		return previousRentalDays;
+	}
+
+	/**
+	 * @return the rental days after the adjustment
+	 */
+	public int getRentalDays() {
+		return rentalDays;
+	}
+
+	/**
+	 * @return the due date after the adjustment
+	 */
+	public LocalDate getDueDate() {
+		return dueDate;
+	}
+
+	/**
+	 * @return the chargeable days added, negative if days were removed
+	 */
+	public int getChargeableDaysDelta() {
+		return chargeableDaysDelta;
+	}
+
+	/**
+	 * @return the change in the pre-discount charge, in cents
+	 */
+	public long getTotalCostNoDiscountDeltaCents() {
+		return totalCostNoDiscountDeltaCents;
+	}
+
+	/**
+	 * @return the discount applied after the adjustment, which may change with
+	 *         the rental length
+	 */
+	public int getDiscountPercentage() {
+		return discountPercentage;
+	}
+
+	/**
+	 * @return the change in the final charge, in cents
+	 */
+	public long getFinalChargeDeltaCents() {
+		return finalChargeDeltaCents;
+	}
+
+	/**
+	 * @return the adjustment before this one, null if this is the first
+	 */
+	RentalAdjustment getPrevious() {
+		return previous;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder(64);
+		text.append(kind).append(' ').append(previousRentalDays).append(" to ").append(rentalDays)
+				.append(" days, due ").append(RentalAgreement.dateFormat.format(dueDate)).append(": ");
+		if (chargeableDaysDelta >= 0) {
+			text.append('+');
+		}
+		text.append(chargeableDaysDelta).append(" chargeable days, ");
+		if (finalChargeDeltaCents >= 0) {
+			text.append('+');
+		}
+		Money.appendTo(text, finalChargeDeltaCents);
+		return text.toString();
+	}
+
+}
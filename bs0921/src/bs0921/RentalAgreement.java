@@ -1,153 +1,328 @@
 package bs0921;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.text.NumberFormat;
-import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * This class represents the rental agreement between 
  * the rental company and its tool renter.
+ * 
+ * Agreements are immutable. All charges are computed once when the agreement
+ * is created, with the default {@link PricingRules}, so instances can be
+ * shared across threads and cached.
+ *
+ * Extending, shortening or returning a rental gives a new agreement, priced by
+ * adding or removing only the days between the old and new due dates, with
+ * the pricing rules the agreement was made with. The cost of an adjustment
+ * depends on the days it changes, not on the length of the rental. Each
+ * agreement carries the history of the {@link RentalAdjustment}s that led to
+ * it; the history is not stored by {@link AgreementCodec} or
+ * {@link AgreementLedger}. Pricing rules can't be stored either, so a stored
+ * agreement can only be adjusted when it is read back with the rules it was
+ * priced with.
  */
-public class RentalAgreement {
+public final class RentalAgreement {
 
 	public static DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("MM/dd/yy");
 
-	private Tool tool;
+	private final Tool tool;
 
-	private int rentalDays;
+	private final int rentalDays;
 
-	private int discountPercentage;
+	private final int discountPercentage;
 
-	private LocalDate checkoutDate;
+	private final LocalDate checkoutDate;
+
+	private final HolidayCalendar holidayCalendar;
+
+	private final long dailyChargeCents;
+
+	private final LocalDate dueDate;
+
+	private final int chargeableDays;
+
+	private final long totalCostNoDiscountCents;
+
+	private final long discountAmountCents;
+
+	private final long finalChargeCents;
+
+	/**
+	 * The discount the clerk entered, which rule discounts are compared with
+	 * again when the rental length changes
+	 */
+	private final int requestedDiscountPercentage;
+
+	private final PricingRules pricingRules;
+
+	private final RentalAdjustment lastAdjustment;
 
 	public RentalAgreement(Tool tool, int rentalDays, int discountPercentage, LocalDate checkoutDate) {
+		this(tool, rentalDays, discountPercentage, checkoutDate, HolidayCalendar.getDefault());
+	}
+
+	public RentalAgreement(Tool tool, int rentalDays, int discountPercentage, LocalDate checkoutDate,
+			HolidayCalendar holidayCalendar) {
 		this.tool = tool;
 		this.rentalDays = rentalDays;
-		this.discountPercentage = discountPercentage;
 		this.checkoutDate = checkoutDate;
+		this.holidayCalendar = holidayCalendar;
+		this.dailyChargeCents = tool.getDailyChargeCents();
+
+		this.dueDate = checkoutDate.plusDays(rentalDays);
+		long start = RentalMetrics.start();
+		long checkoutEpochDay = checkoutDate.toEpochDay();
+		this.chargeableDays = ChargeableDayCalculator.count(checkoutEpochDay, rentalDays, tool.chargeWeekends(),
+				tool.chargeHolidays(), holidayCalendar);
+		RentalMetrics.record(RentalMetrics.Operation.CHARGEABLE_DAYS, start);
+		PricingRules rules = PricingRules.getDefault();
+		this.requestedDiscountPercentage = discountPercentage;
+		this.pricingRules = rules;
+		this.lastAdjustment = null;
+		this.discountPercentage = rules.discountPercent(tool, checkoutEpochDay, rentalDays, discountPercentage);
+		this.totalCostNoDiscountCents = rules.preDiscountCents(tool, checkoutEpochDay, rentalDays, chargeableDays,
+				holidayCalendar);
+		this.discountAmountCents = Money.percentOf(totalCostNoDiscountCents, this.discountPercentage);
+		this.finalChargeCents = totalCostNoDiscountCents - discountAmountCents;
 	}
 
 	/**
-	 * @return the tool
+	 * Restores an agreement with the charges it was priced with, for reading
+	 * back stored agreements without pricing them again. Without the pricing
+	 * rules it was priced with, null, the agreement can't be adjusted.
 	 */
-	public Tool getTool() {
-		return tool;
+	RentalAgreement(Tool tool, int rentalDays, int discountPercentage, LocalDate checkoutDate,
+			HolidayCalendar holidayCalendar, int chargeableDays, long totalCostNoDiscountCents,
+			long discountAmountCents, long finalChargeCents, int requestedDiscountPercentage,
+			PricingRules pricingRules) {
+		this.tool = tool;
+		this.rentalDays = rentalDays;
+		this.discountPercentage = discountPercentage;
+		this.checkoutDate = checkoutDate;
+		this.holidayCalendar = holidayCalendar;
+		this.dailyChargeCents = tool.getDailyChargeCents();
+		this.dueDate = checkoutDate.plusDays(rentalDays);
+		this.chargeableDays = chargeableDays;
+		this.totalCostNoDiscountCents = totalCostNoDiscountCents;
+		this.discountAmountCents = discountAmountCents;
+		this.finalChargeCents = finalChargeCents;
+		this.requestedDiscountPercentage = requestedDiscountPercentage;
+		this.pricingRules = pricingRules;
+		this.lastAdjustment = null;
 	}
 
 	/**
-	 * @param tool the tool to set
+	 * Creates an adjusted copy of an agreement
 	 */
-	public void setTool(Tool tool) {
-		this.tool = tool;
+	private RentalAgreement(RentalAgreement agreement, int rentalDays, int chargeableDays,
+			long totalCostNoDiscountCents, int discountPercentage, RentalAdjustment adjustment) {
+		this.tool = agreement.tool;
+		this.rentalDays = rentalDays;
+		this.discountPercentage = discountPercentage;
+		this.checkoutDate = agreement.checkoutDate;
+		this.holidayCalendar = agreement.holidayCalendar;
+		this.dailyChargeCents = agreement.dailyChargeCents;
+		this.dueDate = adjustment.getDueDate();
+		this.chargeableDays = chargeableDays;
+		this.totalCostNoDiscountCents = totalCostNoDiscountCents;
+		this.discountAmountCents = Money.percentOf(totalCostNoDiscountCents, discountPercentage);
+		this.finalChargeCents = totalCostNoDiscountCents - discountAmountCents;
+		this.requestedDiscountPercentage = agreement.requestedDiscountPercentage;
+		this.pricingRules = agreement.pricingRules;
+		this.lastAdjustment = adjustment;
 	}
 
 	/**
-	 * @return the rentalDays
+	 * @return a builder for a new agreement
 	 */
-	public int getRentalDays() {
-		return rentalDays;
+	public static Builder builder() {
+		return new Builder();
 	}
 
 	/**
-	 * @param rentalDays the rentalDays to set
+	 * @return a builder initialized with the values of this agreement
 	 */
-	public void setRentalDays(int rentalDays) {
-		this.rentalDays = rentalDays;
+	public Builder toBuilder() {
+		return new Builder()
+				.tool(tool)
+				.rentalDays(rentalDays)
+				.discountPercentage(requestedDiscountPercentage)
+				.checkoutDate(checkoutDate)
+				.holidayCalendar(holidayCalendar);
 	}
 
 	/**
-	 * @return the discountPercentage
+	 * @param days The days to add to the rental period
+	 * @return The agreement for the longer rental
+	 * @throws IllegalArgumentException if days is not 1 or greater
+	 * @throws IllegalStateException if the agreement was restored without its
+	 *         pricing rules
 	 */
-	public int getDiscountPercentage() {
-		return discountPercentage;
+	public RentalAgreement extend(int days) {
+		if (days < 1 || days > Integer.MAX_VALUE - rentalDays) {
+			throw new IllegalArgumentException("Extension day count is not 1 or greater: " + days);
+		}
+		return adjust(RentalAdjustment.Kind.EXTENSION, rentalDays + days);
 	}
 
 	/**
-	 * @param discountPercentage the discountPercentage to set
+	 * @param days The days to remove from the end of the rental period
+	 * @return The agreement for the shorter rental
+	 * @throws IllegalArgumentException if days is not 1 or greater, or leaves
+	 *         no rental days
+	 * @throws IllegalStateException if the agreement was restored without its
+	 *         pricing rules
 	 */
-	public void setDiscountPercentage(int discountPercentage) {
-		this.discountPercentage = discountPercentage;
+	public RentalAgreement shorten(int days) {
+		if (days < 1 || days >= rentalDays) {
+			throw new IllegalArgumentException(
+					"Shortening day count is not in the range 1-" + (rentalDays - 1) + ": " + days);
+		}
+		return adjust(RentalAdjustment.Kind.SHORTENING, rentalDays - days);
 	}
 
 	/**
-	 * @return the checkoutDate
+	 * Ends the rental on the return date, charging through that date whether
+	 * it is before, on or after the due date. A return on the checkout date is
+	 * charged as one rental day.
+	 *
+	 * @param returnDate The date the tool was returned
+	 * @return The agreement for the rental as it ended
+	 * @throws IllegalArgumentException if the return date is before the
+	 *         checkout date
+	 * @throws IllegalStateException if the agreement was restored without its
+	 *         pricing rules
 	 */
-	public LocalDate getCheckoutDate() {
-		return checkoutDate;
+	public RentalAgreement returnOn(LocalDate returnDate) {
+		long days = returnDate.toEpochDay() - checkoutDate.toEpochDay();
+		if (days < 0 || days > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Return date is before the checkout date: " + returnDate);
+		}
+		return adjust(RentalAdjustment.Kind.RETURN, Math.max(1, (int) days));
 	}
 
 	/**
-	 * @param checkoutDate the checkoutDate to set
+	 * Prices the change to the new rental days from the days between the old
+	 * and new due dates alone
 	 */
-	public void setCheckoutDate(LocalDate checkoutDate) {
-		this.checkoutDate = checkoutDate;
+	private RentalAgreement adjust(RentalAdjustment.Kind kind, int newRentalDays) {
+		if (pricingRules == null) {
+			throw new IllegalStateException("Agreement was restored without the pricing rules it was priced with");
+		}
+		long checkoutEpochDay = checkoutDate.toEpochDay();
+		long fromEpochDay = checkoutEpochDay + Math.min(rentalDays, newRentalDays);
+		int days = Math.abs(newRentalDays - rentalDays);
+		int sign = newRentalDays < rentalDays ? -1 : 1;
+
+		long start = RentalMetrics.start();
+		int chargeableDaysDelta = sign * ChargeableDayCalculator.count(fromEpochDay, days, tool.chargeWeekends(),
+				tool.chargeHolidays(), holidayCalendar);
+		RentalMetrics.record(RentalMetrics.Operation.CHARGEABLE_DAYS, start);
+		long totalDeltaCents = sign * pricingRules.preDiscountCents(tool, fromEpochDay, days,
+				Math.abs(chargeableDaysDelta), holidayCalendar);
+		int newDiscountPercentage = pricingRules.discountPercent(tool, checkoutEpochDay, newRentalDays,
+				requestedDiscountPercentage);
+
+		long newTotalCents = totalCostNoDiscountCents + totalDeltaCents;
+		long newFinalCents = newTotalCents - Money.percentOf(newTotalCents, newDiscountPercentage);
+		RentalAdjustment adjustment = new RentalAdjustment(kind, rentalDays, newRentalDays,
+				checkoutDate.plusDays(newRentalDays), chargeableDaysDelta, totalDeltaCents, newDiscountPercentage,
+				newFinalCents - finalChargeCents, lastAdjustment);
+		return new RentalAgreement(this, newRentalDays, chargeableDays + chargeableDaysDelta, newTotalCents,
+				newDiscountPercentage, adjustment);
 	}
 
-	@Override
-	public String toString() {
-		NumberFormat formatter = NumberFormat.getCurrencyInstance();
-		
-		StringBuilder agreement = new StringBuilder();
-		agreement.append("Tool code: ");
-		agreement.append(tool.getCode());
-		agreement.append('\n');
-
-		agreement.append("Tool type: ");
-		agreement.append(tool.getType());
-		agreement.append('\n');
-
-		agreement.append("Tool brand: ");
-		agreement.append(tool.getBrand());
-		agreement.append('\n');
-
-		agreement.append("Rental days: ");
-		agreement.append(rentalDays);
-		agreement.append('\n');
+	/**
+	 * @return the adjustments made since checkout, oldest first
+	 */
+	public List<RentalAdjustment> getAdjustments() {
+		if (lastAdjustment == null) {
+			return Collections.emptyList();
+		}
+		List<RentalAdjustment> adjustments = new ArrayList<>();
+		for (RentalAdjustment adjustment = lastAdjustment; adjustment != null; adjustment = adjustment.getPrevious()) {
+			adjustments.add(adjustment);
+		}
+		Collections.reverse(adjustments);
+		return Collections.unmodifiableList(adjustments);
+	}
 
-		agreement.append("Check out date: ");
-		agreement.append(dateFormat.format(checkoutDate));
-		agreement.append('\n');
+	/**
+	 * @return the tool
+	 */
+	public Tool getTool() {
+		return tool;
+	}
 
-		agreement.append("Due date: ");
-		agreement.append(dateFormat.format(getDueDate()));
-		agreement.append('\n');
+	/**
+	 * @return the rentalDays
+	 */
+	public int getRentalDays() {
+		return rentalDays;
+	}
 
-		agreement.append("Daily rental charge: ");
-		agreement.append(formatter.format(tool.getDailyCharge()));
-		agreement.append('\n');
+	/**
+	 * @return the discount applied, the best of the clerk's discount and any
+	 *         {@link PricingRules} discount
+	 */
+	public int getDiscountPercentage() {
+		return discountPercentage;
+	}
 
-		agreement.append("Charge days: ");
-		agreement.append(getChargeableDays());
-		agreement.append('\n');
+	/**
+	 * @return the discount the clerk entered
+	 */
+	int getRequestedDiscountPercentage() {
+		return requestedDiscountPercentage;
+	}
 
-		agreement.append("Pre-discount charge: ");
-		agreement.append(formatter.format(getTotalCostNoDiscount()));
-		agreement.append('\n');
+	/**
+	 * @return the checkoutDate
+	 */
+	public LocalDate getCheckoutDate() {
+		return checkoutDate;
+	}
 
-		agreement.append("Discount percentage: ");
-		agreement.append(discountPercentage);
-		agreement.append("%\n");
+	/**
+	 * @return the holiday calendar the agreement was priced with
+	 */
+	public HolidayCalendar getHolidayCalendar() {
+		return holidayCalendar;
+	}
 
-		agreement.append("Discount amount: ");
-		agreement.append(formatter.format(getDiscountAmount()));
-		agreement.append('\n');
+	/**
+	 * @return the daily charge of the tool when the agreement was created
+	 */
+	public double getDailyCharge() {
+		return Money.toDollars(dailyChargeCents);
+	}
 
-		agreement.append("Final Charge: ");
-		agreement.append(formatter.format(getFinalCharge()));
-		agreement.append('\n');
+	/**
+	 * @return the daily charge of the tool when the agreement was created, in cents
+	 */
+	public long getDailyChargeCents() {
+		return dailyChargeCents;
+	}
 
-		return agreement.toString();
+	/**
+	 * @see AgreementRenderer
+	 */
+	@Override
+	public String toString() {
+		long start = RentalMetrics.start();
+		String text = AgreementRenderer.getDefault().render(this, new StringBuilder(512)).toString();
+		RentalMetrics.record(RentalMetrics.Operation.RENDER, start);
+		return text;
 	}
 
 	/**
 	 * @return Due date calculated from checkout date and rental days
 	 */
 	public LocalDate getDueDate() {
-		return LocalDate.from(checkoutDate).plusDays(rentalDays);
+		return dueDate;
 	}
 
 	/**
@@ -155,18 +330,30 @@ public class RentalAgreement {
 	 *         Resulting amount rounded half up to cents
 	 */
 	public double getDiscountAmount() {
-		double discountDouble = getTotalCostNoDiscount() * ((double) discountPercentage / 100.0);
+		return Money.toDollars(discountAmountCents);
+	}
 
-		return new BigDecimal(discountDouble).setScale(2, RoundingMode.HALF_UP).doubleValue();
+	/**
+	 * @return the discount amount in cents
+	 * @see #getDiscountAmount()
+	 */
+	public long getDiscountAmountCents() {
+		return discountAmountCents;
 	}
 
 	/**
 	 * @return Calculated as pre-discount charge - discount amount
 	 */
 	public double getFinalCharge() {
-		double finalCharge = getTotalCostNoDiscount() - getDiscountAmount();
+		return Money.toDollars(finalChargeCents);
+	}
 
-		return new BigDecimal(finalCharge).setScale(2, RoundingMode.HALF_UP).doubleValue();
+	/**
+	 * @return the final charge in cents
+	 * @see #getFinalCharge()
+	 */
+	public long getFinalChargeCents() {
+		return finalChargeCents;
 	}
 
 	/**
@@ -175,18 +362,6 @@ public class RentalAgreement {
 	 *         tool type
 	 */
 	public int getChargeableDays() {
-		int chargeableDays = 0;
-		for (LocalDate date = checkoutDate.plusDays(1); date
-				.isBefore(getDueDate().plusDays(1)); date = date.plusDays(1)) {
-			boolean isWeekend = isWeekendDay(date);
-			boolean isHoliday = isHoliday(date);
-
-			if ((!isWeekend && !isHoliday) || (isWeekend && tool.chargeWeekends())
-					|| (isHoliday && tool.chargeHolidays())) {
-				chargeableDays++;
-			}
-		}
-
 		return chargeableDays;
 	}
 
@@ -195,42 +370,87 @@ public class RentalAgreement {
 	 * 		   NOTE: Resulting total rounded half up to cents
 	 */
 	public double getTotalCostNoDiscount() {
-		return new BigDecimal(getChargeableDays() * tool.getDailyCharge())
-				.setScale(2, RoundingMode.HALF_UP).doubleValue();
+		return Money.toDollars(totalCostNoDiscountCents);
 	}
 
 	/**
-	 * @return true if date is a weekend day, false if not
+	 * @return the pre-discount charge in cents
+	 * @see #getTotalCostNoDiscount()
 	 */
-	private boolean isWeekendDay(LocalDate date) {
-		return (date.getDayOfWeek() == DayOfWeek.SATURDAY || 
-				date.getDayOfWeek() == DayOfWeek.SUNDAY) ? true : false;
+	public long getTotalCostNoDiscountCents() {
+		return totalCostNoDiscountCents;
 	}
 
 	/**
-	 * @return true if date is an observed holiday, false if not
+	 * Builds {@link RentalAgreement}s
 	 */
-	private boolean isHoliday(LocalDate date) {
-		LocalDate firstMondayInSept = LocalDate.of(date.getYear(), 9, 1);
-		firstMondayInSept = firstMondayInSept.with(TemporalAdjusters.firstInMonth(DayOfWeek.MONDAY));
+	public static final class Builder {
 
-		return (date.equals(getObservedJuly4th(date.getYear())) || 
-				date.equals(firstMondayInSept)) ? true : false;
-	}
+		private Tool tool;
 
-	/**
-	 * @return the date of the observed Fourth of July for given year
-	 */
-	private LocalDate getObservedJuly4th(int year) {
-		LocalDate date = LocalDate.of(year, 7, 4);
+		private int rentalDays;
+
+		private int discountPercentage;
+
+		private LocalDate checkoutDate;
 
-		if (date.getDayOfWeek() == DayOfWeek.SATURDAY) {
-			return date.minusDays(1);
+		private HolidayCalendar holidayCalendar = HolidayCalendar.getDefault();
+
+		private Builder() {
+		}
+
+		/**
+		 * @param tool the tool to set
+		 */
+		public Builder tool(Tool tool) {
+			this.tool = tool;
+			return this;
+		}
+
+		/**
+		 * @param rentalDays the rentalDays to set
+		 */
+		public Builder rentalDays(int rentalDays) {
+			this.rentalDays = rentalDays;
+			return this;
+		}
+
+		/**
+		 * @param discountPercentage the discountPercentage to set
+		 */
+		public Builder discountPercentage(int discountPercentage) {
+			this.discountPercentage = discountPercentage;
+			return this;
 		}
-		if (date.getDayOfWeek() == DayOfWeek.SUNDAY) {
-			return date.plusDays(1);
+
+		/**
+		 * @param checkoutDate the checkoutDate to set
+		 */
+		public Builder checkoutDate(LocalDate checkoutDate) {
+			this.checkoutDate = checkoutDate;
+			return this;
+		}
+
+		/**
+		 * @param holidayCalendar the holiday calendar to price with
+		 */
+		public Builder holidayCalendar(HolidayCalendar holidayCalendar) {
+			this.holidayCalendar = holidayCalendar;
+			return this;
 		}
-		return date;
+
+		/**
+		 * @return the agreement
+		 * @throws IllegalStateException if the tool, checkout date or holiday
+		 *         calendar has not been set
+		 */
+		public RentalAgreement build() {
+			if (tool == null || checkoutDate == null || holidayCalendar == null) {
+				throw new IllegalStateException("Tool, checkout date and holiday calendar are required");
+			}
+			return new RentalAgreement(tool, rentalDays, discountPercentage, checkoutDate, holidayCalendar);
+		}
+
 	}
 
 }
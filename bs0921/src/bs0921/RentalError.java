@@ -0,0 +1,27 @@
+package bs0921;
+
+/**
+ * The reasons a rental can be rejected
+ */
+public enum RentalError {
+
+	MISSING_FIELD("Whoops! Tool code and checkout date are required. Please try again."),
+	UNKNOWN_TOOL("Whoops! Tool code is not in the catalog. Please try again."),
+	INVALID_RENTAL_DAYS("Whoops! Rental day count is not 1 or greater. Please try again."),
+	INVALID_DISCOUNT("Whoops! Discount percent is not in the range 0-100. Please try again."),
+	INVALID_CHECKOUT_DATE("Whoops! Checkout date is not a valid MM/dd/yy date. Please try again.");
+
+	private final String message;
+
+	RentalError(String message) {
+		this.message = message;
+	}
+
+	/**
+	 * @return the message shown to the renter
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+}
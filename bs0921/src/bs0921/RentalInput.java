@@ -0,0 +1,96 @@
+package bs0921;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.Year;
+
+import bs0921.Tool.ToolCode;
+
+/**
+ * Parses the four fields of a rental typed in at a terminal or sent by a
+ * partner. Invalid input gives a sentinel value instead of an exception, so
+ * floods of bad requests cost no stack traces.
+ */
+public final class RentalInput {
+
+	/**
+	 * Returned by {@link #parseInt(CharSequence)} for text that is not an
+	 * integer
+	 */
+	public static final int INVALID = Integer.MIN_VALUE;
+
+	private static final ToolCode[] CODES = ToolCode.values();
+
+	private RentalInput() {
+	}
+
+	/**
+	 * @return the tool code named exactly by the text, null if there is none
+	 */
+	public static ToolCode parseToolCode(CharSequence text) {
+		if (text == null) {
+			return null;
+		}
+		for (ToolCode code : CODES) {
+			if (code.name().contentEquals(text)) {
+				return code;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the decimal integer, optionally negative, {@link #INVALID} if the
+	 *         text is not one or does not fit in an int
+	 */
+	public static int parseInt(CharSequence text) {
+		if (text == null) {
+			return INVALID;
+		}
+		return parseInt(text, 0, text.length());
+	}
+
+	/**
+	 * @return the MM/dd/yy date, in 2000-2099, null if the text is not a valid
+	 *         date
+	 */
+	public static LocalDate parseCheckoutDate(CharSequence text) {
+		if (text == null || text.length() != 8 || text.charAt(2) != '/' || text.charAt(5) != '/') {
+			return null;
+		}
+		int month = parseInt(text, 0, 2);
+		int day = parseInt(text, 3, 5);
+		int year = parseInt(text, 6, 8);
+		if (month < 1 || month > 12 || day < 1 || year < 0) {
+			return null;
+		}
+		int fullYear = 2000 + year;
+		if (day > Month.of(month).length(Year.isLeap(fullYear))) {
+			return null;
+		}
+		return LocalDate.of(fullYear, month, day);
+	}
+
+	private static int parseInt(CharSequence text, int from, int to) {
+		boolean negative = from < to && text.charAt(from) == '-';
+		if (negative) {
+			from++;
+		}
+		if (from == to) {
+			return INVALID;
+		}
+		long value = 0;
+		for (int i = from; i < to; i++) {
+			int digit = text.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return INVALID;
+			}
+			value = value * 10 + digit;
+			if (value > Integer.MAX_VALUE) {
+				return INVALID;
+			}
+		}
+		return (int) (negative ? -value : value);
+	}
+
+}
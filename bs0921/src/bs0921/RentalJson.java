@@ -0,0 +1,222 @@
+package bs0921;
+
+import java.time.LocalDate;
+
+import bs0921.Tool.ToolCode;
+
+/**
+ * Encodes agreements as JSON and decodes rental requests from JSON, by hand
+ * rather than through reflection.
+ *
+ * Requests are flat objects such as
+ *
+ * <pre>
+ * {"code":"LADW","rentalDays":3,"discount":10,"checkoutDate":"07/02/20"}
+ * </pre>
+ */
+final class RentalJson {
+
+	private RentalJson() {
+	}
+
+	/**
+	 * Parses and prices a request. Invalid field values are reported in the
+	 * result rather than thrown.
+	 *
+	 * @param json A flat JSON object with code, rentalDays, discount and
+	 *        checkoutDate fields
+	 * @param cache The cache to price valid requests through, null for none
+	 * @return the agreement, or the {@link RentalError} for the first invalid
+	 *         field
+	 * @throws IllegalArgumentException if the text is not a flat JSON object
+	 * @see ToolPOS#tryRentTool(CharSequence, CharSequence, CharSequence,
+	 *      CharSequence)
+	 */
+	static RentalResult rentTool(CharSequence json, QuoteCache cache) {
+		String code = null;
+		String checkoutDate = null;
+		String rentalDays = null;
+		String discount = null;
+
+		int i = skipWhitespace(json, 0);
+		expect(json, i++, '{');
+		i = skipWhitespace(json, i);
+		if (i < json.length() && json.charAt(i) == '}') {
+			i++;
+		} else {
+			while (true) {
+				expect(json, i, '"');
+				int keyEnd = endOfString(json, i + 1);
+				String key = json.subSequence(i + 1, keyEnd).toString();
+				i = skipWhitespace(json, keyEnd + 1);
+				expect(json, i, ':');
+				i = skipWhitespace(json, i + 1);
+
+				int valueStart = i;
+				String value;
+				if (i < json.length() && json.charAt(i) == '"') {
+					int valueEnd = endOfString(json, i + 1);
+					value = json.subSequence(i + 1, valueEnd).toString();
+					i = valueEnd + 1;
+				} else {
+					while (i < json.length() && ",} \t\r\n".indexOf(json.charAt(i)) < 0) {
+						i++;
+					}
+					value = json.subSequence(valueStart, i).toString();
+				}
+
+				switch (key) {
+				case "code":
+				case "toolCode":
+					code = value;
+					break;
+				case "rentalDays":
+				case "days":
+					rentalDays = value;
+					break;
+				case "discount":
+				case "discountPercent":
+					discount = value;
+					break;
+				case "checkoutDate":
+				case "date":
+					checkoutDate = value;
+					break;
+				default:
+					break;
+				}
+
+				i = skipWhitespace(json, i);
+				if (i < json.length() && json.charAt(i) == ',') {
+					i = skipWhitespace(json, i + 1);
+					continue;
+				}
+				expect(json, i++, '}');
+				break;
+			}
+		}
+		if (skipWhitespace(json, i) != json.length()) {
+			throw new IllegalArgumentException("Unexpected content after JSON object");
+		}
+		if (cache != null) {
+			ToolCode toolCode = RentalInput.parseToolCode(code);
+			LocalDate date = RentalInput.parseCheckoutDate(checkoutDate);
+			if (toolCode != null && date != null) {
+				return cache.tryRentTool(toolCode, RentalInput.parseInt(rentalDays), RentalInput.parseInt(discount),
+						date);
+			}
+		}
+		return ToolPOS.tryRentTool(code, rentalDays, discount, checkoutDate);
+	}
+
+	/**
+	 * Appends the agreement as a JSON object, with amounts as decimal numbers
+	 *
+	 * @param out The builder to append to
+	 * @param agreement The agreement
+	 * @param includeText Whether to include the rendered agreement text
+	 * @return the builder
+	 */
+	static StringBuilder appendAgreement(StringBuilder out, RentalAgreement agreement, boolean includeText) {
+		Tool tool = agreement.getTool();
+		out.append("{\"toolCode\":");
+		appendString(out, tool.getCodeName());
+		out.append(",\"toolType\":");
+		appendString(out, tool.getTypeName());
+		out.append(",\"toolBrand\":");
+		appendString(out, tool.getBrandName());
+		out.append(",\"rentalDays\":").append(agreement.getRentalDays());
+		out.append(",\"checkoutDate\":");
+		appendString(out, RentalAgreement.dateFormat.format(agreement.getCheckoutDate()));
+		out.append(",\"dueDate\":");
+		appendString(out, RentalAgreement.dateFormat.format(agreement.getDueDate()));
+		out.append(",\"dailyRentalCharge\":");
+		Money.appendTo(out, agreement.getDailyChargeCents());
+		out.append(",\"chargeDays\":").append(agreement.getChargeableDays());
+		out.append(",\"preDiscountCharge\":");
+		Money.appendTo(out, agreement.getTotalCostNoDiscountCents());
+		out.append(",\"discountPercent\":").append(agreement.getDiscountPercentage());
+		out.append(",\"discountAmount\":");
+		Money.appendTo(out, agreement.getDiscountAmountCents());
+		out.append(",\"finalCharge\":");
+		Money.appendTo(out, agreement.getFinalChargeCents());
+		if (includeText) {
+			out.append(",\"agreement\":");
+			appendString(out, agreement.toString());
+		}
+		return out.append('}');
+	}
+
+	/**
+	 * @return {"error":"message"}
+	 */
+	static String error(String message) {
+		StringBuilder out = new StringBuilder(message.length() + 16).append("{\"error\":");
+		appendString(out, message);
+		return out.append('}').toString();
+	}
+
+	/**
+	 * Appends a JSON string literal
+	 */
+	static void appendString(StringBuilder out, String value) {
+		out.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				out.append("\\\"");
+				break;
+			case '\\':
+				out.append("\\\\");
+				break;
+			case '\n':
+				out.append("\\n");
+				break;
+			case '\r':
+				out.append("\\r");
+				break;
+			case '\t':
+				out.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					out.append(String.format("\\u%04x", (int) c));
+				} else {
+					out.append(c);
+				}
+			}
+		}
+		out.append('"');
+	}
+
+	/**
+	 * @return the index of the quote closing the string starting at from
+	 */
+	private static int endOfString(CharSequence json, int from) {
+		for (int i = from; i < json.length(); i++) {
+			char c = json.charAt(i);
+			if (c == '\\') {
+				throw new IllegalArgumentException("Escaped characters are not supported");
+			}
+			if (c == '"') {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("Unterminated string");
+	}
+
+	private static int skipWhitespace(CharSequence json, int i) {
+		while (i < json.length() && Character.isWhitespace(json.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	private static void expect(CharSequence json, int i, char expected) {
+		if (i >= json.length() || json.charAt(i) != expected) {
+			throw new IllegalArgumentException("Expected '" + expected + "' at position " + i);
+		}
+	}
+
+}
@@ -0,0 +1,286 @@
+package bs0921;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import bs0921.Tool.ToolCode;
+
+/**
+ * Latency histograms and rejection counters for pricing.
+ *
+ * Metrics are off unless the JVM is started with {@code -Dbs0921.metrics=true}.
+ * The switch is a static final constant, so when it is off the JIT removes
+ * every recording call and nothing is allocated. When it is on, rentals,
+ * chargeable day counts and renders are timed into lock-free
+ * {@link LatencyHistogram}s, rentals also per {@link ToolCode}, rejections are
+ * counted by {@link RentalError}, and rentals slower than
+ * {@code -Dbs0921.metrics.slowMicros} (1000 by default) are emitted as
+ * {@code bs0921.SlowPricing} Flight Recorder events.
+ */
+public final class RentalMetrics {
+
+	/**
+	 * Whether metrics are recorded
+	 */
+	public static final boolean ENABLED = Boolean.getBoolean("bs0921.metrics");
+
+	/**
+	 * Rentals priced slower than this are emitted as Flight Recorder events
+	 */
+	public static final long SLOW_PRICING_NANOS = TimeUnit.MICROSECONDS
+			.toNanos(Long.getLong("bs0921.metrics.slowMicros", 1000));
+
+	/**
+	 * The timed operations
+	 */
+	public enum Operation {
+
+		RENT_TOOL("rentTool"),
+		CHARGEABLE_DAYS("chargeableDays"),
+		RENDER("render");
+
+		private final String label;
+
+		Operation(String label) {
+			this.label = label;
+		}
+
+		@Override
+		public String toString() {
+			return label;
+		}
+
+	}
+
+	private RentalMetrics() {
+	}
+
+	/**
+	 * @return the start time to pass to a record method, 0 when metrics are off
+	 */
+	static long start() {
+		return ENABLED ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Records the time since start for an operation
+	 */
+	static void record(Operation operation, long start) {
+		if (ENABLED) {
+			Recorders.OPERATIONS[operation.ordinal()].record(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Records the time since start for pricing the agreement, and emits a
+	 * {@link SlowPricingEvent} if it was slow
+	 */
+	static void recordRental(RentalAgreement agreement, long start) {
+		if (ENABLED) {
+			long nanos = System.nanoTime() - start;
+			Tool tool = agreement.getTool();
+			Recorders.OPERATIONS[Operation.RENT_TOOL.ordinal()].record(nanos);
+			if (tool.getCode() != null) {
+				Recorders.TOOLS[tool.getCode().ordinal()].record(nanos);
+			}
+			if (nanos >= SLOW_PRICING_NANOS) {
+				SlowPricingEvent event = new SlowPricingEvent();
+				if (event.isEnabled()) {
+					event.toolCode = tool.getCodeName();
+					event.rentalDays = agreement.getRentalDays();
+					event.discountPercent = agreement.getDiscountPercentage();
+					event.checkoutDate = agreement.getCheckoutDate().toString();
+					event.pricingTime = nanos;
+					event.commit();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Counts a rejected rental
+	 */
+	static void reject(RentalError error) {
+		if (ENABLED) {
+			Recorders.REJECTIONS[error.ordinal()].increment();
+		}
+	}
+
+	/**
+	 * @return the metrics recorded so far, all empty when metrics are off
+	 */
+	public static Snapshot snapshot() {
+		LatencyHistogram.Snapshot[] operations = new LatencyHistogram.Snapshot[Operation.values().length];
+		for (int i = 0; i < operations.length; i++) {
+			operations[i] = Recorders.OPERATIONS[i].snapshot();
+		}
+		LatencyHistogram.Snapshot[] tools = new LatencyHistogram.Snapshot[ToolCode.values().length];
+		for (int i = 0; i < tools.length; i++) {
+			tools[i] = Recorders.TOOLS[i].snapshot();
+		}
+		long[] rejections = new long[RentalError.values().length];
+		for (int i = 0; i < rejections.length; i++) {
+			rejections[i] = Recorders.REJECTIONS[i].sum();
+		}
+		return new Snapshot(operations, tools, rejections);
+	}
+
+	/**
+	 * Clears every histogram and counter
+	 */
+	public static void reset() {
+		for (LatencyHistogram histogram : Recorders.OPERATIONS) {
+			histogram.reset();
+		}
+		for (LatencyHistogram histogram : Recorders.TOOLS) {
+			histogram.reset();
+		}
+		for (LongAdder counter : Recorders.REJECTIONS) {
+			counter.reset();
+		}
+	}
+
+	/**
+	 * Holds the recorders so they are only allocated once something is recorded
+	 * or read
+	 */
+	private static final class Recorders {
+
+		static final LatencyHistogram[] OPERATIONS = histograms(Operation.values().length);
+
+		static final LatencyHistogram[] TOOLS = histograms(ToolCode.values().length);
+
+		static final LongAdder[] REJECTIONS = new LongAdder[RentalError.values().length];
+
+		static {
+			for (int i = 0; i < REJECTIONS.length; i++) {
+				REJECTIONS[i] = new LongAdder();
+			}
+		}
+
+		private static LatencyHistogram[] histograms(int count) {
+			LatencyHistogram[] histograms = new LatencyHistogram[count];
+			for (int i = 0; i < count; i++) {
+				histograms[i] = new LatencyHistogram();
+			}
+			return histograms;
+		}
+
+	}
+
+	/**
+	 * The metrics at one moment, as text with {@link #toString()} or as JSON
+	 * with {@link #toJson()}
+	 */
+	public static final class Snapshot {
+
+		private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+		private static final String[] PERCENTILE_NAMES = { "p50", "p90", "p99", "p999" };
+
+		private final LatencyHistogram.Snapshot[] operations;
+
+		private final LatencyHistogram.Snapshot[] tools;
+
+		private final long[] rejections;
+
+		Snapshot(LatencyHistogram.Snapshot[] operations, LatencyHistogram.Snapshot[] tools, long[] rejections) {
+			this.operations = operations;
+			this.tools = tools;
+			this.rejections = rejections;
+		}
+
+		/**
+		 * @return the latencies of the operation
+		 */
+		public LatencyHistogram.Snapshot getOperation(Operation operation) {
+			return operations[operation.ordinal()];
+		}
+
+		/**
+		 * @return the latencies of renting the tool
+		 */
+		public LatencyHistogram.Snapshot getTool(ToolCode code) {
+			return tools[code.ordinal()];
+		}
+
+		/**
+		 * @return the number of rentals rejected for the error
+		 */
+		public long getRejections(RentalError error) {
+			return rejections[error.ordinal()];
+		}
+
+		/**
+		 * @return a table of latencies in microseconds followed by rejection
+		 *         counts
+		 */
+		@Override
+		public String toString() {
+			StringBuilder out = new StringBuilder(1024);
+			out.append(String.format("%-16s %10s %10s %10s %10s %10s %10s %10s%n", "operation (us)", "count", "mean",
+					"p50", "p90", "p99", "p99.9", "max"));
+			for (Operation operation : Operation.values()) {
+				appendRow(out, operation.toString(), getOperation(operation));
+			}
+			for (ToolCode code : ToolCode.values()) {
+				appendRow(out, Operation.RENT_TOOL + "[" + code + "]", getTool(code));
+			}
+			out.append(String.format("%n%-24s %10s%n", "rejection", "count"));
+			for (RentalError error : RentalError.values()) {
+				out.append(String.format("%-24s %10d%n", error, getRejections(error)));
+			}
+			return out.toString();
+		}
+
+		/**
+		 * @return the metrics as a JSON object with latencies in nanoseconds
+		 */
+		public String toJson() {
+			StringBuilder out = new StringBuilder(2048).append("{\"operations\":{");
+			for (Operation operation : Operation.values()) {
+				if (operation.ordinal() > 0) {
+					out.append(',');
+				}
+				appendJson(out, operation.toString(), getOperation(operation));
+			}
+			out.append("},\"tools\":{");
+			for (ToolCode code : ToolCode.values()) {
+				if (code.ordinal() > 0) {
+					out.append(',');
+				}
+				appendJson(out, code.name(), getTool(code));
+			}
+			out.append("},\"rejections\":{");
+			for (RentalError error : RentalError.values()) {
+				if (error.ordinal() > 0) {
+					out.append(',');
+				}
+				RentalJson.appendString(out, error.name());
+				out.append(':').append(getRejections(error));
+			}
+			return out.append("}}").toString();
+		}
+
+		private static void appendRow(StringBuilder out, String name, LatencyHistogram.Snapshot histogram) {
+			out.append(String.format("%-16s %10d %10.1f", name, histogram.getCount(), histogram.getMean() / 1000));
+			for (double percentile : PERCENTILES) {
+				out.append(String.format(" %10.1f", histogram.getValueAtPercentile(percentile) / 1000.0));
+			}
+			out.append(String.format(" %10.1f%n", histogram.getMax() / 1000.0));
+		}
+
+		private static void appendJson(StringBuilder out, String name, LatencyHistogram.Snapshot histogram) {
+			RentalJson.appendString(out, name);
+			out.append(":{\"count\":").append(histogram.getCount());
+			out.append(",\"meanNanos\":").append(Math.round(histogram.getMean()));
+			for (int i = 0; i < PERCENTILES.length; i++) {
+				out.append(",\"").append(PERCENTILE_NAMES[i]).append("Nanos\":")
+						.append(histogram.getValueAtPercentile(PERCENTILES[i]));
+			}
+			out.append(",\"maxNanos\":").append(histogram.getMax()).append('}');
+		}
+
+	}
+
+}
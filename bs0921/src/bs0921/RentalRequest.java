@@ -0,0 +1,82 @@
+package bs0921;
+
+import java.time.LocalDate;
+
+import bs0921.Tool.ToolCode;
+
+/**
+ * The input to price a single tool rental
+ */
+public final class RentalRequest {
+
+	private final String code;
+
+	private final ToolCode toolCode;
+
+	private final int rentalDays;
+
+	private final int discountPercent;
+
+	private final LocalDate checkoutDate;
+
+	public RentalRequest(ToolCode code, int rentalDays, int discountPercent, LocalDate checkoutDate) {
+		this(code == null ? null : code.name(), code, rentalDays, discountPercent, checkoutDate);
+	}
+
+	/**
+	 * @param code The code of a tool in the {@link ToolCatalog}
+	 */
+	public RentalRequest(String code, int rentalDays, int discountPercent, LocalDate checkoutDate) {
+		this(code, RentalInput.parseToolCode(code), rentalDays, discountPercent, checkoutDate);
+	}
+
+	private RentalRequest(String code, ToolCode toolCode, int rentalDays, int discountPercent,
+			LocalDate checkoutDate) {
+		this.code = code;
+		this.toolCode = toolCode;
+		this.rentalDays = rentalDays;
+		this.discountPercent = discountPercent;
+		this.checkoutDate = checkoutDate;
+	}
+
+	/**
+	 * @return the code, null if {@link ToolCode} doesn't list it
+	 */
+	public ToolCode getCode() {
+		return toolCode;
+	}
+
+	/**
+	 * @return the tool code
+	 */
+	public String getCodeName() {
+		return code;
+	}
+
+	/**
+	 * @return the rentalDays
+	 */
+	public int getRentalDays() {
+		return rentalDays;
+	}
+
+	/**
+	 * @return the discountPercent
+	 */
+	public int getDiscountPercent() {
+		return discountPercent;
+	}
+
+	/**
+	 * @return the checkoutDate
+	 */
+	public LocalDate getCheckoutDate() {
+		return checkoutDate;
+	}
+
+	@Override
+	public String toString() {
+		return code + " " + rentalDays + " " + discountPercent + " " + checkoutDate;
+	}
+
+}
@@ -0,0 +1,88 @@
+package bs0921;
+
+/**
+ * The outcome of pricing a {@link RentalRequest}: either an agreement or the
+ * reason the request was rejected
+ */
+public final class RentalResult {
+
+	private final RentalRequest request;
+
+	private final RentalAgreement agreement;
+
+	private final RentalError error;
+
+	private final String errorMessage;
+
+	private RentalResult(RentalRequest request, RentalAgreement agreement, RentalError error,
+			String errorMessage) {
+		this.request = request;
+		this.agreement = agreement;
+		this.error = error;
+		this.errorMessage = errorMessage;
+	}
+
+	/**
+	 * @return A result for a request that was priced
+	 */
+	public static RentalResult success(RentalRequest request, RentalAgreement agreement) {
+		return new RentalResult(request, agreement, null, null);
+	}
+
+	/**
+	 * @return A result for a request that was rejected
+	 */
+	public static RentalResult failure(RentalRequest request, RentalError error) {
+		return new RentalResult(request, null, error, error.getMessage());
+	}
+
+	/**
+	 * @return A result for a request that was rejected for a reason that is not
+	 *         a {@link RentalError}
+	 */
+	public static RentalResult failure(RentalRequest request, String errorMessage) {
+		return new RentalResult(request, null, null, errorMessage);
+	}
+
+	/**
+	 * @return true if the request was priced, false if it was rejected
+	 */
+	public boolean isSuccess() {
+		return agreement != null;
+	}
+
+	/**
+	 * @return the request
+	 */
+	public RentalRequest getRequest() {
+		return request;
+	}
+
+	/**
+	 * @return the agreement, null if the request was rejected
+	 */
+	public RentalAgreement getAgreement() {
+		return agreement;
+	}
+
+	/**
+	 * @return the reason the request was rejected, null if it was priced or was
+	 *         rejected with only a message
+	 */
+	public RentalError getError() {
+		return error;
+	}
+
+	/**
+	 * @return the reason the request was rejected, null if it was priced
+	 */
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+
+	@Override
+	public String toString() {
+		return isSuccess() ? agreement.toString() : errorMessage;
+	}
+
+}
@@ -0,0 +1,37 @@
+package bs0921;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A Flight Recorder event for a rental that took longer than
+ * {@link RentalMetrics#SLOW_PRICING_NANOS} to price
+ */
+@Name("bs0921.SlowPricing")
+@Label("Slow Pricing")
+@Category("Tool POS")
+@Description("A rental that took longer than the slow pricing threshold to price")
+@StackTrace(false)
+final class SlowPricingEvent extends jdk.jfr.Event {
+
+	@Label("Tool Code")
+	String toolCode;
+
+	@Label("Rental Days")
+	int rentalDays;
+
+	@Label("Discount Percent")
+	int discountPercent;
+
+	@Label("Checkout Date")
+	String checkoutDate;
+
+	@Label("Pricing Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long pricingTime;
+
+}
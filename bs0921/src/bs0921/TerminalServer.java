@@ -0,0 +1,362 @@
+package bs0921;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.LocalDate;
+import java.util.Iterator;
+
+import bs0921.Tool.ToolCode;
+
+/**
+ * A TCP server for lane terminals speaking a line protocol, all served by one
+ * selector thread.
+ *
+ * Each request is a line {@code CODE DAYS DISCOUNT MM/dd/yy}, such as
+ * {@code LADW 3 10 07/02/20}, and gets a one line reply in the same order:
+ * <ul>
+ * <li>{@code OK LADW 07/05/20 2 3.98 0.40 3.58}: the tool code, due date,
+ * chargeable days, pre-discount charge, discount and final charge</li>
+ * <li>{@code ERR INVALID_DISCOUNT Whoops! ...}: the {@link RentalError} and its
+ * message, or {@code BAD_REQUEST} for a line without four fields</li>
+ * </ul>
+ * Blank lines are ignored. Lines end with LF or CRLF.
+ *
+ * Terminals may pipeline any number of requests. Fields are parsed in place
+ * from each connection's direct read buffer, rentals are priced through a
+ * shared {@link QuoteCache}, and the replies to every line in a read are sent
+ * in one write. A connection whose replies are not being read stops being
+ * read until its write buffer drains. Each connection holds 5 KB of buffers,
+ * so tens of thousands of terminals fit in a few hundred megabytes.
+ */
+public class TerminalServer {
+
+	private static final int MAX_LINE_BYTES = 1024;
+
+	private static final int WRITE_BUFFER_SIZE = 4096;
+
+	/**
+	 * Longer than any reply, so a line is only handled when its reply fits
+	 */
+	private static final int MAX_REPLY_BYTES = 256;
+
+	private static final int QUOTE_CACHE_SIZE = 16 * 1024;
+
+	private static final String BAD_REQUEST = "ERR BAD_REQUEST Whoops! Expected CODE DAYS DISCOUNT MM/dd/yy."
+			+ " Please try again.";
+
+	private static final byte[] BAD_REQUEST_LINE = bytes(BAD_REQUEST + "\n");
+
+	private final Selector selector;
+
+	private final ServerSocketChannel serverChannel;
+
+	private final Thread thread;
+
+	private final QuoteCache quoteCache = new QuoteCache(QUOTE_CACHE_SIZE);
+
+	/**
+	 * The four fields of the line being handled, reused for every line
+	 */
+	private final AsciiField[] fields = { new AsciiField(), new AsciiField(), new AsciiField(), new AsciiField() };
+
+	private final StringBuilder reply = new StringBuilder(MAX_REPLY_BYTES);
+
+	private volatile boolean running;
+
+	/**
+	 * @param address The address to listen on, port 0 for any free port
+	 * @throws IOException if the address can't be bound
+	 */
+	public TerminalServer(InetSocketAddress address) throws IOException {
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.bind(address, 4096);
+		serverChannel.configureBlocking(false);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		thread = new Thread(this::run, "terminal-server");
+	}
+
+	/**
+	 * @param args {port}, 9090 if not given
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 9090;
+		TerminalServer server = new TerminalServer(new InetSocketAddress(port));
+		server.start();
+		System.out.println("Terminal server listening on port " + server.getPort());
+	}
+
+	public void start() {
+		running = true;
+		thread.start();
+	}
+
+	/**
+	 * Stops the server and closes every connection
+	 */
+	public void stop() {
+		running = false;
+		selector.wakeup();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return the cache rentals are priced through
+	 */
+	public QuoteCache getQuoteCache() {
+		return quoteCache;
+	}
+
+	/**
+	 * @return the port the server is listening on
+	 */
+	public int getPort() {
+		return serverChannel.socket().getLocalPort();
+	}
+
+	private void run() {
+		try {
+			while (running) {
+				selector.select();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					try {
+						if (key.isAcceptable()) {
+							accept();
+						} else {
+							((Connection) key.attachment()).ready(key);
+						}
+					} catch (IOException e) {
+						close(key);
+					}
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Terminal server stopped: " + e);
+		} finally {
+			for (SelectionKey key : selector.keys()) {
+				close(key);
+			}
+			try {
+				selector.close();
+			} catch (IOException e) {
+				// nothing more to release
+			}
+		}
+	}
+
+	/**
+	 * Accepts every pending connection. A failure, such as running out of file
+	 * descriptors, leaves the rest pending rather than closing the listener.
+	 */
+	private void accept() {
+		try {
+			for (SocketChannel channel = serverChannel.accept(); channel != null; channel = serverChannel.accept()) {
+				try {
+					channel.configureBlocking(false);
+					channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+					channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+				} catch (IOException e) {
+					channel.close();
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Terminal server can't accept a connection: " + e);
+		}
+	}
+
+	private static void close(SelectionKey key) {
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (IOException e) {
+			// the connection is gone either way
+		}
+	}
+
+	/**
+	 * Handles one line, the bytes from start up to end, and appends the reply
+	 * to out
+	 */
+	private void handle(ByteBuffer in, int start, int end, ByteBuffer out) {
+		if (end > start && in.get(end - 1) == '\r') {
+			end--;
+		}
+		int count = 0;
+		int i = start;
+		while (i < end) {
+			if (in.get(i) == ' ') {
+				i++;
+				continue;
+			}
+			int fieldStart = i;
+			while (i < end && in.get(i) != ' ') {
+				i++;
+			}
+			if (count == fields.length) {
+				count++;
+				break;
+			}
+			fields[count++].set(in, fieldStart, i);
+		}
+		if (count == 0) {
+			return;
+		}
+
+		reply.setLength(0);
+		if (count != fields.length) {
+			reply.append(BAD_REQUEST);
+		} else {
+			appendReply(rentTool());
+		}
+		reply.append('\n');
+		for (int c = 0; c < reply.length(); c++) {
+			out.put((byte) reply.charAt(c));
+		}
+	}
+
+	private RentalResult rentTool() {
+		ToolCode code = RentalInput.parseToolCode(fields[0]);
+		LocalDate checkoutDate = RentalInput.parseCheckoutDate(fields[3]);
+		if (code != null && checkoutDate != null) {
+			return quoteCache.tryRentTool(code, RentalInput.parseInt(fields[1]), RentalInput.parseInt(fields[2]),
+					checkoutDate);
+		}
+		return ToolPOS.tryRentTool(fields[0], fields[1], fields[2], fields[3]);
+	}
+
+	private void appendReply(RentalResult result) {
+		if (!result.isSuccess()) {
+			reply.append("ERR ").append(result.getError()).append(' ').append(result.getErrorMessage());
+			return;
+		}
+		RentalAgreement agreement = result.getAgreement();
+		LocalDate due = agreement.getDueDate();
+		reply.append("OK ").append(agreement.getTool().getCodeName()).append(' ');
+		appendTwoDigits(due.getMonthValue());
+		reply.append('/');
+		appendTwoDigits(due.getDayOfMonth());
+		reply.append('/');
+		appendTwoDigits(Math.floorMod(due.getYear(), 100));
+		reply.append(' ').append(agreement.getChargeableDays()).append(' ');
+		Money.appendTo(reply, agreement.getTotalCostNoDiscountCents());
+		reply.append(' ');
+		Money.appendTo(reply, agreement.getDiscountAmountCents());
+		reply.append(' ');
+		Money.appendTo(reply, agreement.getFinalChargeCents());
+	}
+
+	private void appendTwoDigits(int value) {
+		reply.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+	}
+
+	/**
+	 * The buffers of one terminal connection. The read buffer is kept in write
+	 * mode between reads, holding any partial line.
+	 */
+	private final class Connection {
+
+		private final SocketChannel channel;
+
+		private final ByteBuffer in = ByteBuffer.allocateDirect(MAX_LINE_BYTES);
+
+		private final ByteBuffer out = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+
+		/**
+		 * Set while skipping the rest of a line too long for the read buffer
+		 */
+		private boolean discarding;
+
+		private boolean endOfInput;
+
+		Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		void ready(SelectionKey key) throws IOException {
+			if (key.isReadable() && channel.read(in) < 0) {
+				endOfInput = true;
+			}
+			if (key.isWritable() || key.isReadable()) {
+				// until every complete line is answered, or the terminal stops
+				// reading and the replies back up
+				do {
+					handleLines();
+					flush();
+				} while (out.remaining() >= MAX_REPLY_BYTES && hasCompleteLine());
+			}
+			if (out.position() > 0) {
+				key.interestOps(SelectionKey.OP_WRITE);
+			} else if (endOfInput) {
+				close(key);
+			} else {
+				key.interestOps(SelectionKey.OP_READ);
+			}
+		}
+
+		/**
+		 * Handles every complete line whose reply fits in the write buffer
+		 */
+		private void handleLines() {
+			in.flip();
+			int start = in.position();
+			for (int i = start; i < in.limit() && out.remaining() >= MAX_REPLY_BYTES; i++) {
+				if (in.get(i) != '\n') {
+					continue;
+				}
+				if (discarding) {
+					discarding = false;
+					out.put(BAD_REQUEST_LINE);
+				} else {
+					handle(in, start, i, out);
+				}
+				start = i + 1;
+			}
+			in.position(start);
+			if (start == 0 && in.limit() == in.capacity() && out.remaining() >= MAX_REPLY_BYTES) {
+				// the whole buffer is one unfinished line
+				discarding = true;
+				in.clear();
+				return;
+			}
+			in.compact();
+		}
+
+		private boolean hasCompleteLine() {
+			for (int i = 0; i < in.position(); i++) {
+				if (in.get(i) == '\n') {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private void flush() throws IOException {
+			out.flip();
+			channel.write(out);
+			out.compact();
+		}
+
+	}
+
+	private static byte[] bytes(String ascii) {
+		byte[] bytes = new byte[ascii.length()];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) ascii.charAt(i);
+		}
+		return bytes;
+	}
+
+}
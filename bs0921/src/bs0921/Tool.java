@@ -5,8 +5,13 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
- * This class represents a rental tool
- *
+ * This class represents a rental tool.
+ * 
+ * Tools are immutable, and the definitions in a {@link ToolCatalog} are shared
+ * by every rental of the tool. A tool is identified by its code, and its type
+ * and brand are shown by name, so a catalog can list tools the enums below
+ * don't. The enums are a view of the tools they do list, for the binary
+ * formats and lookup tables that index by ordinal.
  */
 public class Tool {
 	
@@ -58,107 +63,156 @@ public class Tool {
 		}
 	};
 	
-	private ToolType type;
-	
-	private Brand brand;
-	
-	private ToolCode code;
-	
-	private double dailyCharge;
-	
-	private boolean chargeWeekends;
-	
-	private boolean chargeHolidays;
+	/**
+	 * The most characters in a tool code, type name or brand name
+	 */
+	public static final int MAX_NAME_LENGTH = 64;
 
-	public Tool(ToolCode code) {
-		this.code = code;
-		
-		switch (code) {
-		case CHNS:
-			this.type = ToolType.CHAINSAW;
-			this.brand = Brand.STIHL;
-			this.dailyCharge = 1.49;
-			this.chargeWeekends = false;
-			this.chargeHolidays = true;
-			break;
-		case JAKD:
-			this.type = ToolType.JACKHAMMER;
-			this.brand = Brand.DEWALT;
-			this.dailyCharge = 2.99;
-			this.chargeWeekends = false;
-			this.chargeHolidays = false;
-			break;
-		case JAKR:
-			this.type = ToolType.JACKHAMMER;
-			this.brand = Brand.RIDGID;
-			this.dailyCharge = 2.99;
-			this.chargeWeekends = false;
-			this.chargeHolidays = false;
-			break;
-		case LADW:
-			this.type = ToolType.LADDER;
-			this.brand = Brand.WERNER;
-			this.dailyCharge = 1.99;
-			this.chargeWeekends = true;
-			this.chargeHolidays = false;
-			break;		
+	private final String code;
+
+	private final String typeName;
+
+	private final String brandName;
+
+	private final ToolCode toolCode;
+
+	private final ToolType type;
+
+	private final Brand brand;
+
+	private final long dailyChargeCents;
+
+	private final boolean chargeWeekends;
+
+	private final boolean chargeHolidays;
+
+	public Tool(ToolCode code, ToolType type, Brand brand, long dailyChargeCents, boolean chargeWeekends,
+			boolean chargeHolidays) {
+		this(code.name(), type.name(), brand.name(), dailyChargeCents, chargeWeekends, chargeHolidays);
+	}
+
+	/**
+	 * Names are printable ASCII, as typed at the terminals, of at most
+	 * {@link #MAX_NAME_LENGTH} characters.
+	 * 
+	 * @param code The tool code, without spaces or commas
+	 * @param type The {@link ToolType} name, or the name to show for a type the
+	 *        enum doesn't list
+	 * @param brand The {@link Brand} name, or the name to show for a brand the
+	 *        enum doesn't list
+	 * @throws IllegalArgumentException if a name is not valid
+	 */
+	public Tool(String code, String type, String brand, long dailyChargeCents, boolean chargeWeekends,
+			boolean chargeHolidays) {
+		if (!isName(code) || code.indexOf(' ') >= 0 || code.indexOf(',') >= 0) {
+			throw new IllegalArgumentException("Invalid tool code: " + code);
+		}
+		if (!isName(type) || !isName(brand)) {
+			throw new IllegalArgumentException("Invalid type or brand of tool " + code);
 		}
+		this.code = code;
+		this.toolCode = find(ToolCode.values(), code);
+		this.type = find(ToolType.values(), type);
+		this.brand = find(Brand.values(), brand);
+		this.typeName = this.type == null ? type : this.type.toString();
+		this.brandName = this.brand == null ? brand : this.brand.toString();
+		this.dailyChargeCents = dailyChargeCents;
+		this.chargeWeekends = chargeWeekends;
+		this.chargeHolidays = chargeHolidays;
 	}
 
 	/**
-	 * @return the type of the tool
+	 * Creates a copy of the tool definition for the code in the
+	 * {@link ToolCatalog#getDefault() default catalog}. Prefer looking the tool
+	 * up in the catalog, which returns the shared instance.
+	 * 
+	 * @throws IllegalArgumentException if the code is not in the catalog
 	 */
-	public ToolType getType() {
-		return type;
+	public Tool(ToolCode code) {
+		this(ToolCatalog.getDefault().require(code));
+	}
+
+	private Tool(Tool tool) {
+		this.code = tool.code;
+		this.typeName = tool.typeName;
+		this.brandName = tool.brandName;
+		this.toolCode = tool.toolCode;
+		this.type = tool.type;
+		this.brand = tool.brand;
+		this.dailyChargeCents = tool.dailyChargeCents;
+		this.chargeWeekends = tool.chargeWeekends;
+		this.chargeHolidays = tool.chargeHolidays;
 	}
 
 	/**
-	 * @param type the type of the tool to set
+	 * @return the type of the tool, null if {@link ToolType} doesn't list it
 	 */
-	public void setType(ToolType type) {
-		this.type = type;
+	public ToolType getType() {
+		return type;
 	}
 
 	/**
-	 * @return the brand
+	 * @return the brand, null if {@link Brand} doesn't list it
 	 */
 	public Brand getBrand() {
 		return brand;
 	}
 
 	/**
-	 * @param brand the brand to set
+	 * @return the code, null if {@link ToolCode} doesn't list it
 	 */
-	public void setBrand(Brand brand) {
-		this.brand = brand;
+	public ToolCode getCode() {
+		return toolCode;
 	}
 
 	/**
-	 * @return the code
+	 * @return the tool code, as in the catalog
 	 */
-	public ToolCode getCode() {
+	public String getCodeName() {
 		return code;
 	}
 
 	/**
-	 * @param code the code to set
+	 * @return the name of the type, as shown on agreements
 	 */
-	public void setCode(ToolCode code) {
-		this.code = code;
+	public String getTypeName() {
+		return typeName;
 	}
-	
+
+	/**
+	 * @return the name of the brand, as shown on agreements
+	 */
+	public String getBrandName() {
+		return brandName;
+	}
+
+	/**
+	 * For the formats that store a tool by its enum ordinals
+	 *
+	 * @return the code
+	 * @throws IllegalArgumentException if the enums don't list the tool's code,
+	 *         type or brand
+	 */
+	ToolCode requireCode() {
+		if (toolCode == null || type == null || brand == null) {
+			throw new IllegalArgumentException("Tool " + code + " is not a ToolCode, ToolType and Brand, "
+					+ "so it can't be stored by ordinal");
+		}
+		return toolCode;
+	}
+
 	/**
 	 * @return the dailyCharge
 	 */
 	public double getDailyCharge() {
-		return dailyCharge;
+		return Money.toDollars(dailyChargeCents);
 	}
 
 	/**
-	 * @param dailyCharge the dailyCharge to set
+	 * @return the daily charge in cents
 	 */
-	public void setDailyCharge(double dailyCharge) {
-		this.dailyCharge = dailyCharge;
+	public long getDailyChargeCents() {
+		return dailyChargeCents;
 	}
 
 	/**
@@ -168,13 +222,6 @@ public class Tool {
 		return chargeWeekends;
 	}
 
-	/**
-	 * @param chargeWeekends the chargeWeekends to set
-	 */
-	public void setChargeWeekends(boolean chargeWeekends) {
-		this.chargeWeekends = chargeWeekends;
-	}
-
 	/**
 	 * @return the chargeHolidays
 	 */
@@ -182,11 +229,18 @@ public class Tool {
 		return chargeHolidays;
 	}
 
-	/**
-	 * @param chargeHolidays the chargeHolidays to set
-	 */
-	public void setChargeHolidays(boolean chargeHolidays) {
-		this.chargeHolidays = chargeHolidays;
+	private static boolean isName(String name) {
+		return name != null && !name.isEmpty() && name.length() <= MAX_NAME_LENGTH
+				&& name.chars().allMatch(c -> c >= ' ' && c <= '~');
+	}
+
+	private static <E extends Enum<E>> E find(E[] values, String name) {
+		for (E value : values) {
+			if (value.name().equals(name)) {
+				return value;
+			}
+		}
+		return null;
 	}
 
 }
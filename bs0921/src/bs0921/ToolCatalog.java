@@ -0,0 +1,234 @@
+package bs0921;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import bs0921.Tool.Brand;
+import bs0921.Tool.ToolCode;
+import bs0921.Tool.ToolType;
+
+/**
+ * The set of rentable tools, with one shared, immutable {@link Tool} per tool
+ * code.
+ *
+ * Tools are stored in an open addressing table keyed by tool code, built when
+ * the catalog is, at most half full so a lookup probes a slot or two. Codes
+ * are hashed as {@link String#hashCode()} does, so a code still in an input
+ * buffer is looked up without copying it to a String. Tools with a
+ * {@link ToolCode} are also indexed by its ordinal. Catalogs are immutable; to change pricing, load or derive a
+ * new catalog and {@link #setDefault(ToolCatalog) install} it. Rentals that
+ * already looked up a tool keep pricing with it while new rentals see the new
+ * catalog.
+ */
+public final class ToolCatalog {
+
+	private static volatile ToolCatalog defaultCatalog = new ToolCatalog(new Tool[] {
+			new Tool(ToolCode.LADW, ToolType.LADDER, Brand.WERNER, 199, true, false),
+			new Tool(ToolCode.CHNS, ToolType.CHAINSAW, Brand.STIHL, 149, false, true),
+			new Tool(ToolCode.JAKR, ToolType.JACKHAMMER, Brand.RIDGID, 299, false, false),
+			new Tool(ToolCode.JAKD, ToolType.JACKHAMMER, Brand.DEWALT, 299, false, false) });
+
+	private final List<Tool> tools;
+
+	/**
+	 * Tools by {@link #hash(CharSequence) code hash}, with linear probing
+	 */
+	private final Tool[] slots;
+
+	/**
+	 * Tools by {@link ToolCode} ordinal
+	 */
+	private final Tool[] byCode = new Tool[ToolCode.values().length];
+
+	private ToolCatalog(Tool[] tools) {
+		this.tools = Collections.unmodifiableList(Arrays.asList(tools));
+		this.slots = new Tool[Integer.highestOneBit(Math.max(tools.length, 1)) * 4];
+		int mask = slots.length - 1;
+		for (Tool tool : tools) {
+			int slot = hash(tool.getCodeName()) & mask;
+			while (slots[slot] != null) {
+				if (slots[slot].getCodeName().equals(tool.getCodeName())) {
+					throw new IllegalArgumentException("Duplicate tool code: " + tool.getCodeName());
+				}
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = tool;
+			if (tool.getCode() != null) {
+				byCode[tool.getCode().ordinal()] = tool;
+			}
+		}
+	}
+
+	/**
+	 * @param tools The tools in the catalog
+	 * @return The catalog
+	 * @throws IllegalArgumentException if a tool code appears more than once
+	 */
+	public static ToolCatalog of(List<Tool> tools) {
+		return new ToolCatalog(tools.toArray(new Tool[0]));
+	}
+
+	/**
+	 * @return the catalog used to look up tools for new rentals
+	 */
+	public static ToolCatalog getDefault() {
+		return defaultCatalog;
+	}
+
+	/**
+	 * @param catalog the catalog used to look up tools for new rentals
+	 */
+	public static void setDefault(ToolCatalog catalog) {
+		if (catalog == null) {
+			throw new IllegalArgumentException("Tool catalog must not be null");
+		}
+		defaultCatalog = catalog;
+	}
+
+	/**
+	 * Loads a catalog from a file with one tool per line:
+	 *
+	 * <pre>
+	 * {code},{type},{brand},{daily charge},{charge weekends},{charge holidays}
+	 * LADW,LADDER,WERNER,1.99,true,false
+	 * TSAW,Tile saw,MK Diamond,24.99,true,false
+	 * </pre>
+	 *
+	 * The type and brand are {@link ToolType} and {@link Brand} names, or the
+	 * names to show for types and brands the enums don't list. Blank lines and lines starting with '#' are ignored.
+	 *
+	 * @param file The catalog file
+	 * @return The catalog
+	 * @throws IOException if the file can't be read
+	 * @throws IllegalArgumentException if a line is not a valid tool
+	 */
+	public static ToolCatalog load(Path file) throws IOException {
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			return load(reader);
+		}
+	}
+
+	/**
+	 * @see #load(Path)
+	 */
+	public static ToolCatalog load(Reader reader) throws IOException {
+		BufferedReader lines = new BufferedReader(reader);
+		List<Tool> tools = new ArrayList<>();
+		for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+			line = line.trim();
+			if (!line.isEmpty() && !line.startsWith("#")) {
+				tools.add(parseTool(line));
+			}
+		}
+		return of(tools);
+	}
+
+	/**
+	 * @return the tool for the code, null if the code is not in the catalog
+	 */
+	public Tool get(ToolCode code) {
+		return byCode[code.ordinal()];
+	}
+
+	/**
+	 * @param code The tool code, which may be a view of an input buffer
+	 * @return the tool for the code, null if the code is null or not in the
+	 *         catalog
+	 */
+	public Tool get(CharSequence code) {
+		if (code == null) {
+			return null;
+		}
+		int mask = slots.length - 1;
+		for (int slot = hash(code) & mask;; slot = (slot + 1) & mask) {
+			Tool tool = slots[slot];
+			if (tool == null || tool.getCodeName().contentEquals(code)) {
+				return tool;
+			}
+		}
+	}
+
+	/**
+	 * @return the tool for the code
+	 * @throws IllegalArgumentException if the code is not in the catalog
+	 */
+	public Tool require(ToolCode code) {
+		Tool tool = byCode[code.ordinal()];
+		if (tool == null) {
+			throw new IllegalArgumentException("Tool code is not in the catalog: " + code);
+		}
+		return tool;
+	}
+
+	/**
+	 * @return the tools in the catalog, in the order they were given
+	 */
+	public List<Tool> getTools() {
+		return tools;
+	}
+
+	/**
+	 * @param tool The tool to add or replace
+	 * @return A copy of this catalog with the tool added, replacing any tool
+	 *         with the same code in its place
+	 */
+	public ToolCatalog withTool(Tool tool) {
+		List<Tool> list = new ArrayList<>(tools);
+		int index = list.indexOf(get(tool.getCodeName()));
+		if (index < 0) {
+			list.add(tool);
+		} else {
+			list.set(index, tool);
+		}
+		return of(list);
+	}
+
+	/**
+	 * @return the {@link String#hashCode()} of the code, with the high bits
+	 *         spread to the low ones the table indexes by
+	 */
+	private static int hash(CharSequence code) {
+		int hash;
+		if (code instanceof String) {
+			hash = code.hashCode();
+		} else {
+			hash = 0;
+			for (int i = 0; i < code.length(); i++) {
+				hash = 31 * hash + code.charAt(i);
+			}
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	private static Tool parseTool(String line) {
+		String[] fields = line.split(",");
+		if (fields.length != 6) {
+			throw new IllegalArgumentException("Invalid tool: " + line);
+		}
+		return new Tool(fields[0].trim(),
+				fields[1].trim(),
+				fields[2].trim(),
+				Money.parseCents(fields[3].trim()),
+				parseBoolean(fields[4].trim(), line),
+				parseBoolean(fields[5].trim(), line));
+	}
+
+	private static boolean parseBoolean(String value, String line) {
+		if (value.equalsIgnoreCase("true")) {
+			return true;
+		}
+		if (value.equalsIgnoreCase("false")) {
+			return false;
+		}
+		throw new IllegalArgumentException("Invalid tool: " + line);
+	}
+
+}
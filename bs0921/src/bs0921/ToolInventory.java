@@ -0,0 +1,275 @@
+package bs0921;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import bs0921.Tool.ToolCode;
+
+/**
+ * Tracks the physical units of each tool and their bookings.
+ *
+ * Every unit keeps its own index of booked [checkout date, due date] ranges,
+ * sorted and non-overlapping, so checking a unit for a range is a binary
+ * search. Each unit is locked on its own, so terminals reserving different
+ * units, or different tools, never wait on each other. A reservation claims
+ * the first free unit found, scanning from a rotating start so concurrent
+ * reservations spread across units.
+ */
+public class ToolInventory {
+
+	private final AtomicReferenceArray<Unit[]> units = new AtomicReferenceArray<>(ToolCode.values().length);
+
+	private final AtomicInteger[] nextStart = new AtomicInteger[ToolCode.values().length];
+
+	public ToolInventory() {
+		for (int i = 0; i < nextStart.length; i++) {
+			units.set(i, new Unit[0]);
+			nextStart[i] = new AtomicInteger();
+		}
+	}
+
+	/**
+	 * A booking of one unit of a tool
+	 */
+	public static final class Reservation {
+
+		private final ToolCode code;
+
+		private final int unit;
+
+		private final LocalDate checkoutDate;
+
+		private final LocalDate dueDate;
+
+		private final RentalAgreement agreement;
+
+		Reservation(ToolCode code, int unit, LocalDate checkoutDate, LocalDate dueDate,
+				RentalAgreement agreement) {
+			this.code = code;
+			this.unit = unit;
+			this.checkoutDate = checkoutDate;
+			this.dueDate = dueDate;
+			this.agreement = agreement;
+		}
+
+		/**
+		 * @return the code
+		 */
+		public ToolCode getCode() {
+			return code;
+		}
+
+		/**
+		 * @return the number of the reserved unit, from 0
+		 */
+		public int getUnit() {
+			return unit;
+		}
+
+		/**
+		 * @return the first booked day
+		 */
+		public LocalDate getCheckoutDate() {
+			return checkoutDate;
+		}
+
+		/**
+		 * @return the last booked day
+		 */
+		public LocalDate getDueDate() {
+			return dueDate;
+		}
+
+		/**
+		 * @return the agreement the unit was reserved for, null if reserved
+		 *         without one
+		 */
+		public RentalAgreement getAgreement() {
+			return agreement;
+		}
+
+		@Override
+		public String toString() {
+			return code + " #" + unit + " " + checkoutDate + " to " + dueDate;
+		}
+
+	}
+
+	/**
+	 * Adds units of a tool
+	 *
+	 * @param code The tool code
+	 * @param count The number of units to add
+	 * @return the total number of units of the tool
+	 */
+	public int addUnits(ToolCode code, int count) {
+		if (count < 0) {
+			throw new IllegalArgumentException("Unit count must not be negative");
+		}
+		while (true) {
+			Unit[] current = units.get(code.ordinal());
+			Unit[] updated = Arrays.copyOf(current, current.length + count);
+			for (int i = current.length; i < updated.length; i++) {
+				updated[i] = new Unit();
+			}
+			if (units.compareAndSet(code.ordinal(), current, updated)) {
+				return updated.length;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of units of the tool
+	 */
+	public int getUnitCount(ToolCode code) {
+		return units.get(code.ordinal()).length;
+	}
+
+	/**
+	 * @return the number of units of the tool free for the whole range
+	 */
+	public int countAvailable(ToolCode code, LocalDate checkoutDate, LocalDate dueDate) {
+		long from = checkoutDate.toEpochDay();
+		long to = dueDate.toEpochDay();
+		int available = 0;
+		for (Unit unit : units.get(code.ordinal())) {
+			if (unit.isFree(from, to)) {
+				available++;
+			}
+		}
+		return available;
+	}
+
+	/**
+	 * Books a free unit of the tool
+	 *
+	 * @param code The tool code
+	 * @param checkoutDate The first day to book
+	 * @param dueDate The last day to book
+	 * @return the reservation, null if no unit is free for the whole range
+	 */
+	public Reservation reserve(ToolCode code, LocalDate checkoutDate, LocalDate dueDate) {
+		return reserve(code, checkoutDate, dueDate, null);
+	}
+
+	/**
+	 * Books a free unit of the agreement's tool from its checkout date through
+	 * its due date
+	 *
+	 * @param agreement The agreement to reserve a unit for
+	 * @return the reservation, null if no unit is free for the whole range or
+	 *         the tool is not a {@link ToolCode}, which units are stocked by
+	 */
+	public Reservation reserve(RentalAgreement agreement) {
+		return reserve(agreement.getTool().getCode(), agreement.getCheckoutDate(), agreement.getDueDate(),
+				agreement);
+	}
+
+	private Reservation reserve(ToolCode code, LocalDate checkoutDate, LocalDate dueDate,
+			RentalAgreement agreement) {
+		long from = checkoutDate.toEpochDay();
+		long to = dueDate.toEpochDay();
+		if (from > to) {
+			throw new IllegalArgumentException("Due date is before checkout date");
+		}
+		if (code == null) {
+			return null;
+		}
+		Unit[] codeUnits = units.get(code.ordinal());
+		if (codeUnits.length == 0) {
+			return null;
+		}
+		int start = Math.floorMod(nextStart[code.ordinal()].getAndIncrement(), codeUnits.length);
+		for (int i = 0; i < codeUnits.length; i++) {
+			int unit = (start + i) % codeUnits.length;
+			if (codeUnits[unit].tryBook(from, to)) {
+				return new Reservation(code, unit, checkoutDate, dueDate, agreement);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Cancels a reservation, freeing its unit for the booked range
+	 *
+	 * @param reservation The reservation to cancel
+	 * @return true if the booking was found and removed, false if not
+	 */
+	public boolean release(Reservation reservation) {
+		Unit[] codeUnits = units.get(reservation.getCode().ordinal());
+		if (reservation.getUnit() >= codeUnits.length) {
+			return false;
+		}
+		return codeUnits[reservation.getUnit()].release(reservation.getCheckoutDate().toEpochDay(),
+				reservation.getDueDate().toEpochDay());
+	}
+
+	/**
+	 * The bookings of one physical unit as sorted, non-overlapping closed ranges
+	 * of epoch days
+	 */
+	private static final class Unit {
+
+		private long[] starts = new long[4];
+
+		private long[] ends = new long[4];
+
+		private int size;
+
+		synchronized boolean isFree(long from, long to) {
+			int before = lastStartingBefore(to + 1);
+			return before < 0 || ends[before] < from;
+		}
+
+		synchronized boolean tryBook(long from, long to) {
+			int before = lastStartingBefore(to + 1);
+			if (before >= 0 && ends[before] >= from) {
+				return false;
+			}
+			if (size == starts.length) {
+				starts = Arrays.copyOf(starts, size * 2);
+				ends = Arrays.copyOf(ends, size * 2);
+			}
+			int index = before + 1;
+			System.arraycopy(starts, index, starts, index + 1, size - index);
+			System.arraycopy(ends, index, ends, index + 1, size - index);
+			starts[index] = from;
+			ends[index] = to;
+			size++;
+			return true;
+		}
+
+		synchronized boolean release(long from, long to) {
+			int index = Arrays.binarySearch(starts, 0, size, from);
+			if (index < 0 || ends[index] != to) {
+				return false;
+			}
+			System.arraycopy(starts, index + 1, starts, index, size - index - 1);
+			System.arraycopy(ends, index + 1, ends, index, size - index - 1);
+			size--;
+			return true;
+		}
+
+		/**
+		 * @return the index of the last booking starting before the day, -1 if
+		 *         there is none
+		 */
+		private int lastStartingBefore(long day) {
+			int low = 0;
+			int high = size - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				if (starts[middle] < day) {
+					low = middle + 1;
+				} else {
+					high = middle - 1;
+				}
+			}
+			return high;
+		}
+
+	}
+
+}
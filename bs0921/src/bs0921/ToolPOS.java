@@ -1,9 +1,16 @@
 package bs0921;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import bs0921.Tool.ToolCode;
 
@@ -15,66 +22,248 @@ import bs0921.Tool.ToolCode;
  */
 public class ToolPOS {
 
-	private static Scanner in = new Scanner(System.in);
+	/**
+	 * Holds the console scanner, so only interactive mode pays for creating it
+	 */
+	private static final class Console {
+		static final Scanner IN = new Scanner(System.in);
+	}
 
 	/**
-	 * @param args {tool code} {rental days} {discount percent} {checkout date}
+	 * @param args {tool code} {rental days} {discount percent} {checkout date},
+	 *        or --batch {input file} {output file} to price a file of rentals
+	 *        with {@link BatchFileProcessor}
 	 */
 	public static void main(String[] args) {
-		ToolCode code = null;
-		int rentalDays = 0;
-		int discountPercent = 0;
-		LocalDate checkoutDate = null;
+		if (args.length == 3 && args[0].equals("--batch")) {
+			try {
+				BatchFileProcessor.Summary summary = new BatchFileProcessor()
+						.process(Paths.get(args[1]), Paths.get(args[2]));
+				System.out.println(summary);
+			} catch (IOException e) {
+				System.out.println("Batch failed: " + e.getMessage());
+			}
+			return;
+		}
 
 		System.out.println("Welcome to the Tool POS system!");
-		try {
-			if (args.length == 4) {
-				code = Tool.ToolCode.valueOf(args[0]);
-				rentalDays = Integer.parseInt(args[1]);
-				discountPercent = Integer.parseInt(args[2]);
-				checkoutDate = LocalDate.parse(args[3], RentalAgreement.dateFormat);
-			} else {
-
-				List<String> toolCodeOptions = Tool.ToolCode.getToolCodes();
-				String toolCodeInput = getStringInput("Please enter the code for the tool you would like to rent: ",
-						"Invalid tool code! Valid tool codes are: " + toolCodeOptions, toolCodeOptions);
-				code = Tool.ToolCode.valueOf(toolCodeInput);
-		
-				rentalDays = getIntInput("How many days would you like to rent " + code + "? ",
-						"Invalid number of days. Please enter an integer greater than or equal to 1", 1, null);
-
-				discountPercent = getIntInput("What % discount should be applied? ",
-						"Please enter an integer greater than or equal to 0 and less than or equal to 100", 0, 100);
-
-				checkoutDate = getDateInput("Check out date (mm/dd/yy): ", 
-						"Invalid date format. EX: 09/22/21",
-						RentalAgreement.dateFormat);
-			}
+		RentalResult result;
+		if (args.length == 4) {
+			result = tryRentTool(args[0], args[1], args[2], args[3]);
+		} else {
 
-			RentalAgreement agreement = rentTool(code, rentalDays, discountPercent, checkoutDate);
-			System.out.println("\nHere is your rental agreement:\n" + agreement.toString());
+			ToolCatalog catalog = ToolCatalog.getDefault();
+			List<String> toolCodeOptions = catalog.getTools().stream().map(Tool::getCodeName)
+					.collect(Collectors.toList());
+			String code = getStringInput("Please enter the code for the tool you would like to rent: ",
+					"Invalid tool code! Valid tool codes are: " + toolCodeOptions, toolCodeOptions);
+	
+			int rentalDays = getIntInput("How many days would you like to rent " + code + "? ",
+					"Invalid number of days. Please enter an integer greater than or equal to 1", 1, null);
 
-		} catch (Exception e) {
-			System.out.println("Invalid input provided. Goodbye!");
-		}
+			int discountPercent = getIntInput("What % discount should be applied? ",
+					"Please enter an integer greater than or equal to 0 and less than or equal to 100", 0, 100);
 
-		in.close();
+			LocalDate checkoutDate = getDateInput("Check out date (mm/dd/yy): ", 
+					"Invalid date format. EX: 09/22/21");
+			Console.IN.close();
 
+			result = rentTool(catalog, new RentalRequest(code, rentalDays, discountPercent, checkoutDate),
+					RentalError.MISSING_FIELD);
+		}
+
+		if (result.isSuccess()) {
+			System.out.println("\nHere is your rental agreement:\n" + result.getAgreement().toString());
+		} else {
+			System.out.println(result.getErrorMessage());
+			System.out.println("Invalid input provided. Goodbye!");
+		}
 	}
 
+	/**
+	 * Prices a rental
+	 * 
+	 * @return the agreement
+	 * @throws Exception with the {@link RentalError} message if the rental is
+	 *         invalid
+	 * @see #tryRentTool(ToolCode, int, int, LocalDate)
+	 */
 	public static RentalAgreement rentTool(ToolCode code, int rentalDays, int discountPercent, 
 			LocalDate checkoutDate) throws Exception {
-		if (rentalDays < 1) {
-			throw new Exception("Whoops! Rental day count is not 1 or greater. Please try again.");
+		RentalResult result = tryRentTool(code, rentalDays, discountPercent, checkoutDate);
+		if (!result.isSuccess()) {
+			throw new Exception(result.getErrorMessage());
 		}
+		return result.getAgreement();
+	}
+
+	/**
+	 * Prices a rental without throwing for invalid input
+	 * 
+	 * @return the agreement, or the {@link RentalError} the rental was rejected
+	 *         for
+	 */
+	public static RentalResult tryRentTool(ToolCode code, int rentalDays, int discountPercent,
+			LocalDate checkoutDate) {
+		return rentTool(ToolCatalog.getDefault(), new RentalRequest(code, rentalDays, discountPercent, checkoutDate),
+				RentalError.MISSING_FIELD);
+	}
 
-		if (discountPercent < 0 || discountPercent > 100) {
-			throw new Exception("Whoops! Discount percent is not in the range 0-100. Please try again.");
+	/**
+	 * Parses and prices a rental given as text, without throwing for invalid
+	 * input
+	 * 
+	 * @param code The tool code
+	 * @param rentalDays The rental days
+	 * @param discountPercent The discount percent
+	 * @param checkoutDate The checkout date as MM/dd/yy
+	 * @return the agreement, or the {@link RentalError} for the first invalid
+	 *         field
+	 * @see RentalInput
+	 */
+	public static RentalResult tryRentTool(CharSequence code, CharSequence rentalDays,
+			CharSequence discountPercent, CharSequence checkoutDate) {
+		ToolCatalog catalog = ToolCatalog.getDefault();
+		Tool tool = catalog.get(code);
+		String toolCode = tool != null ? tool.getCodeName() : code == null ? null : code.toString();
+		RentalRequest request = new RentalRequest(toolCode, RentalInput.parseInt(rentalDays),
+				RentalInput.parseInt(discountPercent), RentalInput.parseCheckoutDate(checkoutDate));
+		if (tool == null && code != null) {
+			return reject(request, RentalError.UNKNOWN_TOOL);
 		}
+		return rentTool(catalog, request,
+				checkoutDate == null ? RentalError.MISSING_FIELD : RentalError.INVALID_CHECKOUT_DATE);
+	}
 
-		Tool tool = new Tool(code);
+	/**
+	 * Prices a rental and reserves a unit of the tool for it
+	 * 
+	 * @param inventory The inventory to reserve the unit in
+	 * @return the reservation, which holds the agreement
+	 * @throws Exception if the rental is invalid or no unit of the tool is free
+	 *         from the checkout date through the due date
+	 */
+	public static ToolInventory.Reservation rentTool(ToolInventory inventory, ToolCode code, int rentalDays,
+			int discountPercent, LocalDate checkoutDate) throws Exception {
+		RentalAgreement agreement = rentTool(code, rentalDays, discountPercent, checkoutDate);
+		ToolInventory.Reservation reservation = inventory.reserve(agreement);
+		if (reservation == null) {
+			throw new Exception("Whoops! No " + code + " is available for those dates. Please try again.");
+		}
+		return reservation;
+	}
+
+	/**
+	 * Prices a batch of rentals in parallel on the common fork-join pool.
+	 * Requests that fail validation are reported in their result instead of
+	 * aborting the batch.
+	 * 
+	 * @param requests The rentals to price
+	 * @return One result per request, in the same order as the requests
+	 */
+	public static List<RentalResult> rentTools(Collection<RentalRequest> requests) {
+		RentalRequest[] batch = requests.toArray(new RentalRequest[0]);
+		RentalResult[] results = new RentalResult[batch.length];
+		ForkJoinPool.commonPool().invoke(
+				new RentToolsTask(ToolCatalog.getDefault(), batch, results, 0, batch.length));
+		return Arrays.asList(results);
+	}
+
+	/**
+	 * Prices a batch of rentals as a parallel stream. Requests that fail
+	 * validation are reported in their result instead of aborting the batch.
+	 * 
+	 * @param requests The rentals to price
+	 * @return An ordered stream with one result per request
+	 */
+	public static Stream<RentalResult> rentToolsStream(Collection<RentalRequest> requests) {
+		ToolCatalog catalog = ToolCatalog.getDefault();
+		return requests.parallelStream().map(request -> rentTool(catalog, request));
+	}
+
+	private static RentalResult rentTool(ToolCatalog catalog, RentalRequest request) {
+		return rentTool(catalog, request, RentalError.MISSING_FIELD);
+	}
+
+	/**
+	 * Validates and prices a request, checking the fields in order
+	 * 
+	 * @param dateError The error for a request without a checkout date
+	 */
+	private static RentalResult rentTool(ToolCatalog catalog, RentalRequest request, RentalError dateError) {
+		long start = RentalMetrics.start();
+		if (request.getCodeName() == null) {
+			return reject(request, RentalError.MISSING_FIELD);
+		}
+		Tool tool = request.getCode() != null ? catalog.get(request.getCode()) : catalog.get(request.getCodeName());
+		if (tool == null) {
+			return reject(request, RentalError.UNKNOWN_TOOL);
+		}
+		if (request.getRentalDays() < 1) {
+			return reject(request, RentalError.INVALID_RENTAL_DAYS);
+		}
+		if (request.getDiscountPercent() < 0 || request.getDiscountPercent() > 100) {
+			return reject(request, RentalError.INVALID_DISCOUNT);
+		}
+		if (request.getCheckoutDate() == null) {
+			return reject(request, dateError);
+		}
+
+		RentalAgreement agreement = RentalAgreement.builder()
+				.tool(tool)
+				.rentalDays(request.getRentalDays())
+				.discountPercentage(request.getDiscountPercent())
+				.checkoutDate(request.getCheckoutDate())
+				.build();
+		RentalMetrics.recordRental(agreement, start);
+		return RentalResult.success(request, agreement);
+	}
+
+	private static RentalResult reject(RentalRequest request, RentalError error) {
+		RentalMetrics.reject(error);
+		return RentalResult.failure(request, error);
+	}
+
+	/**
+	 * Splits a batch in halves until it is small enough to price on one thread
+	 */
+	private static class RentToolsTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private static final int THRESHOLD = 1024;
+
+		private final ToolCatalog catalog;
+
+		private final RentalRequest[] requests;
+
+		private final RentalResult[] results;
+
+		private final int from;
+
+		private final int to;
+
+		RentToolsTask(ToolCatalog catalog, RentalRequest[] requests, RentalResult[] results, int from, int to) {
+			this.catalog = catalog;
+			this.requests = requests;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= THRESHOLD) {
+				for (int i = from; i < to; i++) {
+					results[i] = rentTool(catalog, requests[i]);
+				}
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new RentToolsTask(catalog, requests, results, from, middle),
+					new RentToolsTask(catalog, requests, results, middle, to));
+		}
 
-		return new RentalAgreement(tool, rentalDays, discountPercent, checkoutDate);
 	}
 
 	/**
@@ -91,7 +280,7 @@ public class ToolPOS {
 		while (tryAgain) {
 			try {
 				System.out.print("\n" + inputMessage);
-				userInput = in.nextLine();
+				userInput = Console.IN.nextLine();
 				if (constraints != null && !constraints.contains(userInput)) {
 					System.out.println(errorMessage);
 					tryAgain = true;
@@ -122,8 +311,8 @@ public class ToolPOS {
 		while (tryAgain) {
 			try {
 				System.out.print("\n" + inputMessage);
-				userInput = Integer.parseInt(in.nextLine());
-				if ((minimum != null && userInput < minimum) || 
+				userInput = RentalInput.parseInt(Console.IN.nextLine());
+				if (userInput == RentalInput.INVALID || (minimum != null && userInput < minimum) || 
 						maximum != null && userInput > maximum) {
 					System.out.println(errorMessage);
 					tryAgain = true;
@@ -143,18 +332,19 @@ public class ToolPOS {
 	 * 
 	 * @param inputMessage The initial message to the user
 	 * @param errorMessage The error message shown if input is invalid
-	 * @param dateFormat The expected format of the date
-	 * @return The date the user entered
+	 * @return The MM/dd/yy date the user entered
 	 */
-	private static LocalDate getDateInput(String inputMessage, String errorMessage, 
-			DateTimeFormatter dateFormat) {
+	private static LocalDate getDateInput(String inputMessage, String errorMessage) {
 		boolean tryAgain = true;
 		LocalDate date = null;
 		while (tryAgain) {
 			try {
 				System.out.print("\n" + inputMessage);
-				String userInput = in.nextLine();
-				date = LocalDate.parse(userInput, RentalAgreement.dateFormat);
+				date = RentalInput.parseCheckoutDate(Console.IN.nextLine());
+				if (date == null) {
+					System.out.println(errorMessage);
+					continue;
+				}
 				tryAgain = false;
 			} catch (Exception e) {
 				System.out.println(errorMessage);
@@ -0,0 +1,211 @@
+package bs0921;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An HTTP service that lets many POS terminals share one process.
+ *
+ * <ul>
+ * <li>POST /quote prices a rental and returns the charges as JSON</li>
+ * <li>POST /checkout also returns the rendered rental agreement</li>
+ * </ul>
+ *
+ * Both take a JSON body such as
+ * {@code {"code":"LADW","rentalDays":3,"discount":10,"checkoutDate":"07/02/20"}}
+ * and answer invalid requests with status 400 and {@code {"error":"..."}}.
+ * Rentals are priced through a shared {@link QuoteCache}.
+ * GET /metrics returns {@link RentalMetrics} as JSON.
+ * When the server has a {@link ToolInventory}, checkout also reserves a unit
+ * of the tool and answers with status 409 when none is free.
+ * Each request runs on its own virtual thread when the JVM supports them, and
+ * on a cached thread pool otherwise.
+ */
+public class ToolPOSServer {
+
+	private static final int MAX_BODY_BYTES = 16 * 1024;
+
+	private static final int QUOTE_CACHE_SIZE = 16 * 1024;
+
+	private final HttpServer server;
+
+	private final ExecutorService executor;
+
+	private final QuoteCache quoteCache = new QuoteCache(QUOTE_CACHE_SIZE);
+
+	/**
+	 * @param address The address to listen on, port 0 for any free port
+	 * @throws IOException if the address can't be bound
+	 */
+	public ToolPOSServer(InetSocketAddress address) throws IOException {
+		this(address, null);
+	}
+
+	/**
+	 * @param address The address to listen on, port 0 for any free port
+	 * @param inventory The inventory checkouts reserve units in, null to not
+	 *        track units
+	 * @throws IOException if the address can't be bound
+	 */
+	public ToolPOSServer(InetSocketAddress address, ToolInventory inventory) throws IOException {
+		server = HttpServer.create(address, 1024);
+		executor = newRequestExecutor();
+		server.setExecutor(executor);
+		server.createContext("/quote", new RentalHandler(false, null, quoteCache));
+		server.createContext("/checkout", new RentalHandler(true, inventory, quoteCache));
+		server.createContext("/metrics", exchange -> {
+			try {
+				RentalHandler.respond(exchange, 200, RentalMetrics.snapshot().toJson());
+			} finally {
+				exchange.close();
+			}
+		});
+	}
+
+	/**
+	 * @param args {port}, 8080 if not given
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+		ToolPOSServer server = new ToolPOSServer(new InetSocketAddress(port));
+		server.start();
+		System.out.println("Tool POS server listening on port " + server.getPort());
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops accepting requests and waits up to the delay for in-flight
+	 * requests to finish
+	 *
+	 * @param delaySeconds The most seconds to wait
+	 */
+	public void stop(int delaySeconds) {
+		server.stop(delaySeconds);
+		executor.shutdown();
+		try {
+			executor.awaitTermination(delaySeconds, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return the cache quotes and checkouts are priced through
+	 */
+	public QuoteCache getQuoteCache() {
+		return quoteCache;
+	}
+
+	/**
+	 * @return the port the server is listening on
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * @return a virtual-thread-per-task executor on JDK 21 and later, otherwise
+	 *         a cached thread pool
+	 */
+	static ExecutorService newRequestExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	private static class RentalHandler implements HttpHandler {
+
+		private final boolean checkout;
+
+		private final ToolInventory inventory;
+
+		private final QuoteCache quoteCache;
+
+		RentalHandler(boolean checkout, ToolInventory inventory, QuoteCache quoteCache) {
+			this.checkout = checkout;
+			this.inventory = inventory;
+			this.quoteCache = quoteCache;
+		}
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				if (!exchange.getRequestMethod().equals("POST")) {
+					exchange.getResponseHeaders().set("Allow", "POST");
+					respond(exchange, 405, RentalJson.error("Use POST"));
+					return;
+				}
+				String body = readBody(exchange.getRequestBody());
+				if (body == null) {
+					respond(exchange, 413, RentalJson.error("Request body is too large"));
+					return;
+				}
+
+				RentalResult result;
+				try {
+					result = RentalJson.rentTool(body, quoteCache);
+				} catch (IllegalArgumentException e) {
+					respond(exchange, 400, RentalJson.error(e.getMessage()));
+					return;
+				}
+				if (!result.isSuccess()) {
+					respond(exchange, 400, RentalJson.error(result.getErrorMessage()));
+					return;
+				}
+
+				RentalAgreement agreement = result.getAgreement();
+				if (inventory != null && inventory.reserve(agreement) == null) {
+					respond(exchange, 409, RentalJson.error("Whoops! No " + agreement.getTool().getCodeName()
+							+ " is available for those dates. Please try again."));
+					return;
+				}
+				respond(exchange, 200,
+						RentalJson.appendAgreement(new StringBuilder(512), agreement, checkout).toString());
+			} finally {
+				exchange.close();
+			}
+		}
+
+		/**
+		 * @return the body, null if it is longer than MAX_BODY_BYTES
+		 */
+		private static String readBody(InputStream in) throws IOException {
+			ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+			byte[] buffer = new byte[1024];
+			for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+				if (body.size() + read > MAX_BODY_BYTES) {
+					return null;
+				}
+				body.write(buffer, 0, read);
+			}
+			return new String(body.toByteArray(), StandardCharsets.UTF_8);
+		}
+
+		private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+			byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+			exchange.sendResponseHeaders(status, bytes.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(bytes);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,137 @@
+package bs0921;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import bs0921.AgreementArchive.Aggregation;
+import bs0921.AgreementArchive.Dimension;
+import bs0921.Tool.ToolCode;
+
+/**
+ * Test suite for the {@link AgreementArchive} class
+ */
+public class AgreementArchiveTest {
+
+	@Test
+	public void testGroupByToolAndDiscount() throws Exception {
+		AgreementArchive archive = new AgreementArchive();
+		archive.add(ToolPOS.rentTool(ToolCode.LADW, 3, 10, LocalDate.of(2020, 7, 2)));
+		archive.add(ToolPOS.rentTool(ToolCode.LADW, 5, 15, LocalDate.of(2020, 8, 2)));
+		archive.add(ToolPOS.rentTool(ToolCode.JAKR, 4, 100, LocalDate.of(2020, 7, 2)));
+
+		Aggregation aggregation = archive.aggregate(Dimension.TOOL_CODE, Dimension.DISCOUNT_BUCKET);
+		assertEquals(2, aggregation.size());
+		assertArrayEquals(new String[] { "LADW", "10-19%" }, aggregation.getKey(0));
+		assertEquals(2, aggregation.getCount(0));
+		assertEquals(8, aggregation.getRentalDays(0));
+		assertArrayEquals(new String[] { "JAKR", "100%" }, aggregation.getKey(1));
+		assertEquals(0, aggregation.getFinalChargeCents(1));
+
+		Aggregation all = archive.aggregate();
+		assertEquals(1, all.size());
+		assertEquals(3, all.getCount(0));
+		assertEquals("count\trental days\tdiscount\trevenue\n3\t12\t" + Money.toString(all.getDiscountCents(0))
+				+ "\t" + Money.toString(all.getFinalChargeCents(0)) + "\n", all.toString());
+
+		Aggregation byType = archive.aggregate(Dimension.TOOL_TYPE, Dimension.BRAND);
+		assertArrayEquals(new String[] { "Ladder", "Werner" }, byType.getKey(0));
+	}
+
+	@Test
+	public void testMatchesRowByRowTotals() throws Exception {
+		AgreementArchive archive = new AgreementArchive();
+		Map<String, long[]> expected = new TreeMap<>();
+		Random random = new Random(17);
+		ToolCode[] codes = ToolCode.values();
+		LocalDate first = LocalDate.of(2015, 1, 1);
+		int rows = AgreementArchive.SEGMENT_ROWS + 5000;
+		for (int i = 0; i < rows; i++) {
+			// every 1000th agreement is 100 years out, so segments are split by date
+			LocalDate checkout = first.plusDays(random.nextInt(730) + (i % 1000 == 0 ? 36500 : 0));
+			RentalAgreement agreement = ToolPOS.rentTool(codes[random.nextInt(codes.length)],
+					1 + random.nextInt(20), random.nextInt(101), checkout);
+			archive.add(agreement);
+			if (checkout.getYear() == 2016) {
+				String key = agreement.getTool().getCode() + " " + checkout.toString().substring(0, 7);
+				long[] totals = expected.computeIfAbsent(key, k -> new long[2]);
+				totals[0]++;
+				totals[1] += agreement.getFinalChargeCents();
+			}
+		}
+		assertEquals(rows, archive.size());
+
+		Aggregation aggregation = archive.aggregate(LocalDate.of(2016, 1, 1), LocalDate.of(2016, 12, 31),
+				Dimension.TOOL_CODE, Dimension.MONTH);
+		Map<String, long[]> actual = new TreeMap<>();
+		for (int row = 0; row < aggregation.size(); row++) {
+			String[] key = aggregation.getKey(row);
+			actual.put(key[0] + " " + key[1],
+					new long[] { aggregation.getCount(row), aggregation.getFinalChargeCents(row) });
+		}
+		assertEquals(expected.keySet(), actual.keySet());
+		for (String key : expected.keySet()) {
+			assertArrayEquals(expected.get(key), actual.get(key));
+		}
+	}
+
+	@Test
+	public void testManyGroups() throws Exception {
+		AgreementArchive archive = new AgreementArchive();
+		Map<String, long[]> expected = new TreeMap<>();
+		Random random = new Random(23);
+		ToolCode[] codes = ToolCode.values();
+		LocalDate first = LocalDate.of(1950, 1, 1);
+		int rows = 3 * AgreementArchive.SEGMENT_ROWS;
+		// in checkout order, as an archive is filled
+		int[] days = random.ints(rows, 0, 36500).sorted().toArray();
+		for (int i = 0; i < rows; i++) {
+			LocalDate checkout = first.plusDays(days[i]);
+			RentalAgreement agreement = ToolPOS.rentTool(codes[random.nextInt(codes.length)],
+					1 + random.nextInt(20), random.nextInt(101), checkout);
+			archive.add(agreement);
+			Tool tool = agreement.getTool();
+			int bucket = agreement.getDiscountPercentage() / 10;
+			String key = tool.getCode() + " " + tool.getType() + " " + tool.getBrand() + " "
+					+ checkout.toString().substring(0, 7) + " "
+					+ (bucket == 10 ? "100%" : bucket * 10 + "-" + (bucket * 10 + 9) + "%");
+			long[] totals = expected.computeIfAbsent(key, k -> new long[3]);
+			totals[0]++;
+			totals[1] += agreement.getRentalDays();
+			totals[2] += agreement.getFinalChargeCents();
+		}
+
+		// about 600,000 groups over a century of months, most of them empty
+		Aggregation aggregation = archive.aggregate(Dimension.TOOL_CODE, Dimension.TOOL_TYPE, Dimension.BRAND,
+				Dimension.MONTH, Dimension.DISCOUNT_BUCKET);
+		assertEquals(expected.size(), aggregation.size());
+		String[] previous = null;
+		for (int row = 0; row < aggregation.size(); row++) {
+			String[] key = aggregation.getKey(row);
+			long[] totals = expected.get(String.join(" ", key));
+			assertEquals(totals[0], aggregation.getCount(row));
+			assertEquals(totals[1], aggregation.getRentalDays(row));
+			assertEquals(totals[2], aggregation.getFinalChargeCents(row));
+			// ordered by the dimensions, so months run in order within a tool
+			if (previous != null && key[0].equals(previous[0])) {
+				assertTrue(key[3].compareTo(previous[3]) >= 0);
+			}
+			previous = key;
+		}
+	}
+
+	@Test
+	public void testEmpty() {
+		AgreementArchive archive = new AgreementArchive();
+		assertEquals(0, archive.size());
+		assertEquals(0, archive.aggregate(Dimension.MONTH).size());
+	}
+
+}
@@ -0,0 +1,107 @@
+package bs0921;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import bs0921.Tool.ToolCode;
+
+/**
+ * Test suite for the {@link AgreementCodec} class
+ */
+public class AgreementCodecTest {
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		RentalAgreement agreement = ToolPOS.rentTool(ToolCode.JAKR, 9, 0, LocalDate.of(2015, 7, 2));
+		ByteBuffer buffer = ByteBuffer.allocateDirect(AgreementCodec.MAX_ENCODED_LENGTH);
+		AgreementCodec.encode(buffer, agreement);
+		assertTrue(buffer.position() < 64);
+		buffer.flip();
+
+		RentalAgreement decoded = AgreementCodec.decode(buffer);
+		assertFalse(buffer.hasRemaining());
+		assertEquals(agreement.toString(), decoded.toString());
+		assertEquals(agreement.getFinalChargeCents(), decoded.getFinalChargeCents());
+	}
+
+	@Test
+	public void testRoundTripAll() throws Exception {
+		RentalAgreement[] agreements = new RentalAgreement[] {
+				ToolPOS.rentTool(ToolCode.LADW, 3, 10, LocalDate.of(2020, 7, 2)),
+				ToolPOS.rentTool(ToolCode.CHNS, 5, 25, LocalDate.of(2015, 7, 2)),
+				ToolPOS.rentTool(ToolCode.JAKD, 600, 100, LocalDate.of(1969, 12, 25)) };
+		for (ByteOrder order : new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+			ByteBuffer buffer = ByteBuffer.allocate(3 * AgreementCodec.MAX_ENCODED_LENGTH + 6).order(order);
+			AgreementCodec.encodeAll(buffer, agreements);
+			buffer.flip();
+
+			RentalAgreement[] decoded = AgreementCodec.decodeAll(buffer);
+			assertEquals(agreements.length, decoded.length);
+			for (int i = 0; i < agreements.length; i++) {
+				assertEquals(agreements[i].toString(), decoded[i].toString());
+			}
+		}
+	}
+
+	@Test
+	public void testFormat() throws Exception {
+		ByteBuffer buffer = ByteBuffer.allocate(AgreementCodec.MAX_ENCODED_LENGTH);
+		AgreementCodec.encode(buffer, ToolPOS.rentTool(ToolCode.LADW, 3, 10, LocalDate.of(2020, 7, 2)));
+		byte[] expected = new byte[] { 2, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, (byte) 199, (byte) 0x9a, (byte) 0xa0,
+				2, 3, 10, 10, 2, 0, 0, 0, 0, 0, 0, 1, (byte) 142, 0, 0, 0, 0, 0, 0, 0, 40, 0, 0, 0, 0, 0, 0, 1, 102 };
+		byte[] actual = new byte[buffer.position()];
+		buffer.flip();
+		buffer.get(actual);
+		assertArrayEquals(expected, actual);
+	}
+
+	@Test
+	public void testDecodeVersion1() {
+		byte[] version1 = new byte[] { 1, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, (byte) 199, (byte) 0x9a, (byte) 0xa0,
+				2, 3, 10, 2, 0, 0, 0, 0, 0, 0, 1, (byte) 142, 0, 0, 0, 0, 0, 0, 0, 40, 0, 0, 0, 0, 0, 0, 1, 102 };
+		RentalAgreement decoded = AgreementCodec.decode(ByteBuffer.wrap(version1), PricingRules.NONE);
+		assertEquals(358, decoded.getFinalChargeCents());
+		assertEquals(10, decoded.extend(1).getDiscountPercentage());
+	}
+
+	@Test
+	public void testAdjustDecoded() throws Exception {
+		PricingRules rules = PricingRules.compile(Arrays.asList(PricingRule.lengthDiscount(7, 15)));
+		RentalAgreement agreement;
+		try {
+			PricingRules.setDefault(rules);
+			agreement = ToolPOS.rentTool(ToolCode.LADW, 7, 0, LocalDate.of(2020, 7, 2));
+		} finally {
+			PricingRules.setDefault(PricingRules.NONE);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(AgreementCodec.MAX_ENCODED_LENGTH);
+		AgreementCodec.encode(buffer, agreement);
+		buffer.flip();
+
+		RentalAgreement shortened = AgreementCodec.decode(buffer.duplicate(), rules).shorten(3);
+		assertEquals(0, shortened.getDiscountPercentage());
+		assertEquals(agreement.shorten(3).getFinalChargeCents(), shortened.getFinalChargeCents());
+		try {
+			AgreementCodec.decode(buffer).shorten(3);
+			fail("Adjusting without pricing rules not detected.");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupportedVersion() {
+		AgreementCodec.decode(ByteBuffer.wrap(new byte[] { 3, 0, 0, 0, 0 }));
+	}
+
+}
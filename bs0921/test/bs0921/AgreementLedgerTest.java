@@ -0,0 +1,157 @@
+package bs0921;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import bs0921.Tool.ToolCode;
+
+/**
+ * Test suite for the {@link AgreementLedger} class
+ */
+public class AgreementLedgerTest {
+
+	private Path directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("ledger");
+	}
+
+	@After
+	public void deleteDirectory() throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Test
+	public void testAppendAndReplay() throws Exception {
+		List<RentalAgreement> agreements = agreements(10);
+		try (AgreementLedger ledger = AgreementLedger.open(directory, 4)) {
+			assertEquals(0, ledger.commit(agreements.get(0)));
+			assertEquals(9, ledger.appendAll(agreements.subList(1, 10)));
+		}
+
+		try (AgreementLedger ledger = AgreementLedger.open(directory, 4)) {
+			assertEquals(10, ledger.getNextSequence());
+			List<RentalAgreement> read = new ArrayList<>();
+			assertEquals(10, ledger.replay(0, read::add));
+			for (int i = 0; i < agreements.size(); i++) {
+				assertSameCharges(agreements.get(i), read.get(i));
+			}
+			read.clear();
+			assertEquals(3, ledger.replay(7, read::add));
+			assertSameCharges(agreements.get(7), read.get(0));
+		}
+		try (Stream<Path> files = Files.list(directory)) {
+			assertEquals(3, files.count());
+		}
+	}
+
+	@Test
+	public void testAdjustReplayed() throws Exception {
+		PricingRules rules = PricingRules.compile(Arrays.asList(PricingRule.lengthDiscount(7, 15)));
+		RentalAgreement agreement;
+		try {
+			PricingRules.setDefault(rules);
+			agreement = ToolPOS.rentTool(ToolCode.LADW, 7, 0, LocalDate.of(2020, 7, 2));
+		} finally {
+			PricingRules.setDefault(PricingRules.NONE);
+		}
+		try (AgreementLedger ledger = AgreementLedger.open(directory)) {
+			ledger.commit(agreement);
+			List<RentalAgreement> read = new ArrayList<>();
+			ledger.replay(0, rules, read::add);
+			RentalAgreement shortened = read.get(0).shorten(3);
+			assertEquals(0, shortened.getDiscountPercentage());
+			assertEquals(agreement.shorten(3).getFinalChargeCents(), shortened.getFinalChargeCents());
+		}
+	}
+
+	@Test
+	public void testTornTailIsTruncated() throws Exception {
+		List<RentalAgreement> agreements = agreements(3);
+		try (AgreementLedger ledger = AgreementLedger.open(directory, 16)) {
+			ledger.appendAll(agreements);
+			ledger.sync();
+		}
+		Path segment = directory.resolve(String.format("%020d.ledger", 0));
+		try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+			file.seek(2 * AgreementLedger.RECORD_SIZE + 40);
+			file.write(0x7f);
+		}
+
+		try (AgreementLedger ledger = AgreementLedger.open(directory, 16)) {
+			assertEquals(2, ledger.getNextSequence());
+			assertEquals(2, ledger.commit(agreements.get(0)));
+			assertEquals(3, ledger.replay(0, agreement -> {
+			}));
+		}
+	}
+
+	@Test
+	public void testConcurrentCommits() throws Exception {
+		RentalAgreement agreement = agreements(1).get(0);
+		try (AgreementLedger ledger = AgreementLedger.open(directory, 64)) {
+			Thread[] threads = new Thread[4];
+			for (int t = 0; t < threads.length; t++) {
+				threads[t] = new Thread(() -> {
+					try {
+						for (int i = 0; i < 100; i++) {
+							ledger.commit(agreement);
+						}
+					} catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+				});
+				threads[t].start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			assertEquals(400, ledger.getNextSequence());
+			assertEquals(400, ledger.getDurableSequence());
+			assertEquals(400, ledger.replay(0, read -> assertSameCharges(agreement, read)));
+		}
+	}
+
+	private static List<RentalAgreement> agreements(int count) throws Exception {
+		List<RentalAgreement> agreements = new ArrayList<>();
+		ToolCode[] codes = ToolCode.values();
+		LocalDate checkout = LocalDate.of(2015, 7, 2);
+		for (int i = 0; i < count; i++) {
+			agreements.add(ToolPOS.rentTool(codes[i % codes.length], 1 + i, i % 50, checkout.plusDays(i)));
+		}
+		return agreements;
+	}
+
+	private static void assertSameCharges(RentalAgreement expected, RentalAgreement actual) {
+		assertEquals(expected.getTool().getCode(), actual.getTool().getCode());
+		assertEquals(expected.getTool().getType(), actual.getTool().getType());
+		assertEquals(expected.getRentalDays(), actual.getRentalDays());
+		assertEquals(expected.getDiscountPercentage(), actual.getDiscountPercentage());
+		assertEquals(expected.getCheckoutDate(), actual.getCheckoutDate());
+		assertEquals(expected.getDueDate(), actual.getDueDate());
+		assertEquals(expected.getChargeableDays(), actual.getChargeableDays());
+		assertEquals(expected.getDailyChargeCents(), actual.getDailyChargeCents());
+		assertEquals(expected.getTotalCostNoDiscountCents(), actual.getTotalCostNoDiscountCents());
+		assertEquals(expected.getDiscountAmountCents(), actual.getDiscountAmountCents());
+		assertEquals(expected.getFinalChargeCents(), actual.getFinalChargeCents());
+		assertEquals(expected.toString(), actual.toString());
+	}
+
+}
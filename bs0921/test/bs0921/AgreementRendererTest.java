@@ -0,0 +1,118 @@
+package bs0921;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.NumberFormat;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.Test;
+
+import bs0921.Tool.Brand;
+import bs0921.Tool.ToolCode;
+import bs0921.Tool.ToolType;
+
+/**
+ * Test suite for the {@link AgreementRenderer} class
+ */
+public class AgreementRendererTest {
+
+	private static final Tool EXPENSIVE_TOOL = new Tool(ToolCode.JAKD, ToolType.JACKHAMMER, Brand.DEWALT,
+			123456789, true, true);
+
+	@Test
+	public void testMatchesFormatters() throws Exception {
+		List<RentalAgreement> agreements = agreements();
+		for (Locale locale : new Locale[] { Locale.US, Locale.GERMANY, Locale.FRANCE, Locale.UK }) {
+			AgreementRenderer renderer = new AgreementRenderer(locale);
+			for (RentalAgreement agreement : agreements) {
+				assertEquals(format(agreement, locale), renderer.render(agreement, new StringBuilder()).toString());
+			}
+		}
+	}
+
+	@Test
+	public void testToString() throws Exception {
+		RentalAgreement agreement = ToolPOS.rentTool(ToolCode.LADW, 3, 10, LocalDate.of(2020, 7, 2));
+		assertEquals(format(agreement, Locale.getDefault(Locale.Category.FORMAT)), agreement.toString());
+	}
+
+	@Test
+	public void testRenderToByteBuffer() throws Exception {
+		AgreementRenderer renderer = new AgreementRenderer(Locale.FRANCE);
+		RentalAgreement agreement = agreements().get(1);
+		ByteBuffer buffer = ByteBuffer.allocate(renderer.getMaxRenderedLength());
+		assertEquals(true, renderer.render(agreement, buffer));
+		buffer.flip();
+		assertEquals(format(agreement, Locale.FRANCE), StandardCharsets.UTF_8.decode(buffer).toString());
+
+		assertFalse(renderer.render(agreement, ByteBuffer.allocate(renderer.getMaxRenderedLength() - 1)));
+	}
+
+	@Test
+	public void testRenderAll() throws Exception {
+		AgreementRenderer renderer = new AgreementRenderer(Locale.US);
+		List<RentalAgreement> agreements = agreements();
+		Path file = Files.createTempFile("agreements", ".txt");
+		try {
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+				renderer.renderAll(agreements, channel, ByteBuffer.allocate(renderer.getMaxRenderedLength() + 1));
+			}
+			StringBuilder expected = new StringBuilder();
+			for (RentalAgreement agreement : agreements) {
+				if (expected.length() > 0) {
+					expected.append('\n');
+				}
+				expected.append(format(agreement, Locale.US));
+			}
+			assertEquals(expected.toString(), new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	private static List<RentalAgreement> agreements() throws Exception {
+		return Arrays.asList(
+				ToolPOS.rentTool(ToolCode.LADW, 3, 10, LocalDate.of(2020, 7, 2)),
+				RentalAgreement.builder()
+						.tool(EXPENSIVE_TOOL)
+						.rentalDays(3650)
+						.discountPercentage(7)
+						.checkoutDate(LocalDate.of(1999, 12, 31))
+						.build(),
+				ToolPOS.rentTool(ToolCode.JAKR, 9, 0, LocalDate.of(2015, 7, 2)));
+	}
+
+	/**
+	 * @return the agreement formatted with NumberFormat and DateTimeFormatter
+	 */
+	private static String format(RentalAgreement agreement, Locale locale) {
+		NumberFormat currency = NumberFormat.getCurrencyInstance(locale);
+		DateTimeFormatter date = DateTimeFormatter.ofPattern("MM/dd/yy");
+		return "Tool code: " + agreement.getTool().getCode() + "\n"
+				+ "Tool type: " + agreement.getTool().getType() + "\n"
+				+ "Tool brand: " + agreement.getTool().getBrand() + "\n"
+				+ "Rental days: " + agreement.getRentalDays() + "\n"
+				+ "Check out date: " + date.format(agreement.getCheckoutDate()) + "\n"
+				+ "Due date: " + date.format(agreement.getDueDate()) + "\n"
+				+ "Daily rental charge: " + currency.format(BigDecimal.valueOf(agreement.getDailyChargeCents(), 2)) + "\n"
+				+ "Charge days: " + agreement.getChargeableDays() + "\n"
+				+ "Pre-discount charge: "
+				+ currency.format(BigDecimal.valueOf(agreement.getTotalCostNoDiscountCents(), 2)) + "\n"
+				+ "Discount percentage: " + agreement.getDiscountPercentage() + "%\n"
+				+ "Discount amount: " + currency.format(BigDecimal.valueOf(agreement.getDiscountAmountCents(), 2)) + "\n"
+				+ "Final Charge: " + currency.format(BigDecimal.valueOf(agreement.getFinalChargeCents(), 2)) + "\n";
+	}
+
+}
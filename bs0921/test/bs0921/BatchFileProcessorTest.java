@@ -0,0 +1,75 @@
+package bs0921;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Test suite for the {@link BatchFileProcessor} class
+ */
+public class BatchFileProcessorTest {
+
+	private static final String INPUT = "LADW,3,10,07/02/20\n"
+			+ "# comment\n"
+			+ "\n"
+			+ "{\"code\":\"CHNS\",\"rentalDays\":5,\"discount\":25,\"checkoutDate\":\"07/02/15\"}\r\n"
+			+ "JAKR,5,101,09/03/15\n"
+			+ "XXXX,1,1,01/01/20\n"
+			+ "JAKR, 9 ,0,07/02/15\n"
+			+ "JAKD,6,0,02/30/15\n"
+			+ "{\"days\":4,\"toolCode\":\"JAKR\",\"discount\":50,\"date\":\"07/02/20\"}";
+
+	private static final List<String> OUTPUT = Arrays.asList(
+			BatchFileProcessor.OUTPUT_HEADER.trim(),
+			"LADW,3,10,07/02/20,07/05/20,1.99,2,3.98,0.40,3.58",
+			"CHNS,5,25,07/02/15,07/07/15,1.49,3,4.47,1.12,3.35",
+			"ERROR,5,Whoops! Discount percent is not in the range 0-100. Please try again.",
+			"ERROR,6,Whoops! Row is not a valid rental. Please try again.",
+			"JAKR,9,0,07/02/15,07/11/15,2.99,5,14.95,0.00,14.95",
+			"ERROR,8,Whoops! Row is not a valid rental. Please try again.",
+			"JAKR,4,50,07/02/20,07/06/20,2.99,1,2.99,1.50,1.49");
+
+	@Test
+	public void testProcess() throws IOException {
+		assertOutput(new BatchFileProcessor());
+	}
+
+	@Test
+	public void testProcessSmallBuffers() throws IOException {
+		assertOutput(new BatchFileProcessor(80, 2));
+	}
+
+	@Test
+	public void testAmounts() {
+		ByteBuffer out = ByteBuffer.allocate(32);
+		for (long cents : new long[] { 0, 5, 50, 199, 123456, -5, -50, -150, -123456 }) {
+			out.clear();
+			BatchFileProcessor.putAmount(out, cents);
+			assertEquals(Money.toString(cents), new String(out.array(), 0, out.position(), StandardCharsets.US_ASCII));
+		}
+	}
+
+	private void assertOutput(BatchFileProcessor processor) throws IOException {
+		Path input = Files.createTempFile("rentals", ".csv");
+		Path output = Files.createTempFile("agreements", ".csv");
+		try {
+			Files.write(input, INPUT.getBytes(StandardCharsets.US_ASCII));
+			BatchFileProcessor.Summary summary = processor.process(input, output);
+			assertEquals(7, summary.getRows());
+			assertEquals(3, summary.getRejected());
+			assertEquals(OUTPUT, Files.readAllLines(output, StandardCharsets.US_ASCII));
+		} finally {
+			Files.delete(input);
+			Files.delete(output);
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+package bs0921;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+import org.junit.Test;
+
+/**
+ * Test suite for the {@link ChargeableDayCalculator} class
+ */
+public class ChargeableDayCalculatorTest {
+
+	@Test
+	public void testMatchesDayByDayCount() {
+		for (LocalDate checkoutDate = LocalDate.of(2014, 12, 20); checkoutDate
+				.isBefore(LocalDate.of(2016, 1, 10)); checkoutDate = checkoutDate.plusDays(1)) {
+			for (int rentalDays = 1; rentalDays <= 400; rentalDays += 3) {
+				assertAllPolicies(checkoutDate, rentalDays);
+			}
+		}
+	}
+
+	@Test
+	public void testLongRentals() {
+		LocalDate checkoutDate = LocalDate.of(2015, 7, 2);
+		for (int rentalDays = 3650; rentalDays <= 3660; rentalDays++) {
+			assertAllPolicies(checkoutDate, rentalDays);
+		}
+	}
+
+	@Test
+	public void testNoRentalDays() {
+		assertEquals(0, ChargeableDayCalculator.count(LocalDate.of(2015, 7, 2), 0, true, true));
+	}
+
+	private void assertAllPolicies(LocalDate checkoutDate, int rentalDays) {
+		for (int policy = 0; policy < 4; policy++) {
+			boolean chargeWeekends = (policy & 1) != 0;
+			boolean chargeHolidays = (policy & 2) != 0;
+			assertEquals(checkoutDate + " + " + rentalDays,
+					countDayByDay(checkoutDate, rentalDays, chargeWeekends, chargeHolidays),
+					ChargeableDayCalculator.count(checkoutDate, rentalDays, chargeWeekends, chargeHolidays));
+		}
+	}
+
+	private static int countDayByDay(LocalDate checkoutDate, int rentalDays, boolean chargeWeekends,
+			boolean chargeHolidays) {
+		int chargeableDays = 0;
+		for (int i = 1; i <= rentalDays; i++) {
+			LocalDate date = checkoutDate.plusDays(i);
+			boolean isWeekend = date.getDayOfWeek() == DayOfWeek.SATURDAY
+					|| date.getDayOfWeek() == DayOfWeek.SUNDAY;
+			boolean isHoliday = isHoliday(date);
+
+			if ((!isWeekend && !isHoliday) || (isWeekend && chargeWeekends) || (isHoliday && chargeHolidays)) {
+				chargeableDays++;
+			}
+		}
+		return chargeableDays;
+	}
+
+	private static boolean isHoliday(LocalDate date) {
+		LocalDate laborDay = LocalDate.of(date.getYear(), 9, 1)
+				.with(TemporalAdjusters.firstInMonth(DayOfWeek.MONDAY));
+		LocalDate july4th = LocalDate.of(date.getYear(), 7, 4);
+		if (july4th.getDayOfWeek() == DayOfWeek.SATURDAY) {
+			july4th = july4th.minusDays(1);
+		} else if (july4th.getDayOfWeek() == DayOfWeek.SUNDAY) {
+			july4th = july4th.plusDays(1);
+		}
+		return date.equals(laborDay) || date.equals(july4th);
+	}
+
+}
@@ -0,0 +1,69 @@
+package bs0921;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.Test;
+
+import bs0921.Tool.ToolCode;
+
+/**
+ * Test suite for the {@link CheckoutWindowSearch} class
+ */
+public class CheckoutWindowSearchTest {
+
+	@Test
+	public void testMatchesPricingEachDate() throws Exception {
+		LocalDate from = LocalDate.of(2020, 6, 1);
+		LocalDate to = LocalDate.of(2020, 9, 30);
+		for (Tool tool : ToolCatalog.getDefault().getTools()) {
+			for (int rentalDays : new int[] { 1, 5, 9, 40 }) {
+				int[] chargeableDays = CheckoutWindowSearch.chargeableDays(tool, rentalDays, from, to,
+						HolidayCalendar.getDefault());
+				assertEquals(122, chargeableDays.length);
+				for (int i = 0; i < chargeableDays.length; i++) {
+					assertEquals(tool.getCode() + " " + rentalDays + " " + from.plusDays(i),
+							ToolPOS.rentTool(tool.getCode(), rentalDays, 0, from.plusDays(i)).getChargeableDays(),
+							chargeableDays[i]);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testFindCheapest() throws Exception {
+		LocalDate from = LocalDate.of(2020, 6, 29);
+		LocalDate to = LocalDate.of(2020, 7, 5);
+		List<RentalAgreement> cheapest = CheckoutWindowSearch.findCheapest(ToolCode.CHNS, 5, 10, from, to, 3);
+		assertEquals(3, cheapest.size());
+		// chainsaws are free on weekends, so the earliest 3 day rental wins
+		assertEquals(LocalDate.of(2020, 6, 30), cheapest.get(0).getCheckoutDate());
+		assertEquals(3, cheapest.get(0).getChargeableDays());
+		for (int i = 0; i < cheapest.size(); i++) {
+			RentalAgreement agreement = cheapest.get(i);
+			RentalAgreement priced = ToolPOS.rentTool(ToolCode.CHNS, 5, 10, agreement.getCheckoutDate());
+			assertEquals(priced.getFinalChargeCents(), agreement.getFinalChargeCents());
+			assertEquals(priced.toString(), agreement.toString());
+			if (i > 0) {
+				RentalAgreement previous = cheapest.get(i - 1);
+				assertTrue(previous.getFinalChargeCents() < agreement.getFinalChargeCents()
+						|| previous.getFinalChargeCents() == agreement.getFinalChargeCents()
+								&& previous.getCheckoutDate().isBefore(agreement.getCheckoutDate()));
+			}
+		}
+		for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+			assertTrue(ToolPOS.rentTool(ToolCode.CHNS, 5, 10, date).getFinalChargeCents() >= cheapest.get(0)
+					.getFinalChargeCents());
+		}
+		assertEquals(7, CheckoutWindowSearch.findCheapest(ToolCode.CHNS, 5, 10, from, to, 100).size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEmptyRange() {
+		CheckoutWindowSearch.findCheapest(ToolCode.CHNS, 5, 10, LocalDate.of(2020, 7, 5), LocalDate.of(2020, 7, 4), 3);
+	}
+
+}
@@ -0,0 +1,140 @@
+package bs0921;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Test suite for the {@link HolidayCalendar} class
+ */
+public class HolidayCalendarTest {
+
+	@Test
+	public void testUSHolidays() {
+		HolidayCalendar calendar = HolidayCalendar.US;
+		assertTrue(calendar.isHoliday(LocalDate.of(2015, 7, 3)));
+		assertFalse(calendar.isHoliday(LocalDate.of(2015, 7, 4)));
+		assertTrue(calendar.isHoliday(LocalDate.of(2021, 7, 5)));
+		assertTrue(calendar.isHoliday(LocalDate.of(2020, 7, 3)));
+		assertTrue(calendar.isHoliday(LocalDate.of(2015, 9, 7)));
+		assertFalse(calendar.isHoliday(LocalDate.of(2015, 9, 1)));
+		assertTrue(calendar.isHoliday(LocalDate.of(2250, 7, 4)));
+		assertTrue(calendar.isHoliday(LocalDate.of(1850, 9, 2)));
+	}
+
+	@Test
+	public void testCountHolidays() {
+		HolidayCalendar calendar = HolidayCalendar.US;
+		assertEquals(2, calendar.countHolidays(day(2015, 1, 1), day(2015, 12, 31)));
+		assertEquals(1, calendar.countHolidays(day(2015, 7, 3), day(2015, 7, 3)));
+		assertEquals(0, calendar.countHolidays(day(2015, 7, 4), day(2015, 9, 6)));
+		assertEquals(600, calendar.countHolidays(day(1900, 1, 1), day(2199, 12, 31)));
+		assertEquals(800, calendar.countHolidays(day(1850, 1, 1), day(2249, 12, 31)));
+		assertEquals(0, calendar.countWeekendHolidays(day(1850, 1, 1), day(2249, 12, 31)));
+	}
+
+	@Test
+	public void testCountMatchesIsHoliday() throws IOException {
+		HolidayCalendar calendar = HolidayCalendar.load("Test", new StringReader(
+				"# Test calendar\n"
+				+ "fixed JANUARY 1\n"
+				+ "fixed DECEMBER 25 observed\n"
+				+ "\n"
+				+ "nth MAY MONDAY -1\n"
+				+ "nth NOVEMBER thursday 4\n"));
+		long from = day(2195, 12, 1);
+		int count = 0;
+		int weekendCount = 0;
+		for (long day = from; day <= day(2205, 1, 31); day++) {
+			if (calendar.isHoliday(day)) {
+				count++;
+				if (HolidayCalendar.isWeekendDay(day)) {
+					weekendCount++;
+				}
+			}
+			assertEquals(count, calendar.countHolidays(from, day));
+			assertEquals(weekendCount, calendar.countWeekendHolidays(from, day));
+		}
+		assertTrue(calendar.isHoliday(LocalDate.of(2021, 5, 31)));
+		assertTrue(calendar.isHoliday(LocalDate.of(2021, 11, 25)));
+		assertTrue(calendar.isHoliday(LocalDate.of(2021, 12, 24)));
+		assertTrue(calendar.isHoliday(LocalDate.of(2022, 1, 1)));
+		assertTrue(weekendCount > 0);
+	}
+
+	@Test
+	public void testCountLongRanges() throws IOException {
+		HolidayCalendar calendar = HolidayCalendar.load("Test", new StringReader(
+				"fixed JANUARY 1 observed\n"
+				+ "fixed DECEMBER 31\n"
+				+ "nth MAY MONDAY -1\n"
+				+ "nth FEBRUARY SATURDAY 3\n"));
+		Random random = new Random(42);
+		for (int sample = 0; sample < 20; sample++) {
+			long from = day(2020, 1, 1) + random.nextInt(4_000_000) - 2_000_000;
+			long to = from + random.nextInt(5_000_000);
+			// every rule's date in every year the range touches, from the rules themselves
+			Set<Long> dates = new HashSet<>();
+			for (int year = LocalDate.ofEpochDay(from).getYear() - 1; year <= LocalDate.ofEpochDay(to).getYear()
+					+ 1; year++) {
+				for (HolidayRule rule : calendar.getRules()) {
+					long date = rule.getDate(year).toEpochDay();
+					if (date >= from && date <= to) {
+						dates.add(date);
+					}
+				}
+			}
+			long weekendDates = dates.stream().filter(HolidayCalendar::isWeekendDay).count();
+			assertEquals(dates.size(), calendar.countHolidays(from, to));
+			assertEquals(weekendDates, calendar.countWeekendHolidays(from, to));
+			assertEquals(dates.contains(from), calendar.isHoliday(from));
+		}
+		assertEquals(0, calendar.countHolidays(day(2020, 1, 2), day(2020, 1, 1)));
+	}
+
+	@Test
+	public void testInvalidRule() {
+		try {
+			HolidayRule.parse("nth MAY MONDAY");
+			fail("Invalid rule not detected.");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			HolidayRule.parse("fixed JULY 4 weekly");
+			fail("Invalid rule not detected.");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		// dates that some years don't have
+		for (String rule : new String[] { "fixed FEBRUARY 29", "fixed APRIL 31", "fixed JULY 0",
+				"nth MARCH MONDAY 5", "nth MARCH MONDAY -5" }) {
+			try {
+				HolidayRule.parse(rule);
+				fail("Invalid rule not detected: " + rule);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		assertEquals(LocalDate.of(2021, 2, 28), HolidayRule.fixedDate(Month.FEBRUARY, 28).getDate(2021));
+		assertEquals(LocalDate.of(2015, 3, 23), HolidayRule.nthWeekday(Month.MARCH, DayOfWeek.MONDAY, 4).getDate(2015));
+		assertEquals(LocalDate.of(2015, 3, 23), HolidayRule.nthWeekday(Month.MARCH, DayOfWeek.MONDAY, -2).getDate(2015));
+	}
+
+	private static long day(int year, int month, int dayOfMonth) {
+		return LocalDate.of(year, month, dayOfMonth).toEpochDay();
+	}
+
+}
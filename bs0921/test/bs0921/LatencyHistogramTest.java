@@ -0,0 +1,65 @@
+package bs0921;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test suite for the {@link LatencyHistogram} class
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBuckets() {
+		for (long value : new long[] { 0, 1, 31, 32, 63, 64, 65, 1000, 123_456_789, Long.MAX_VALUE }) {
+			int bucket = LatencyHistogram.bucket(value);
+			long highest = LatencyHistogram.highestValue(bucket);
+			assertTrue(value + " > " + highest, value <= highest);
+			assertTrue(value + " < " + highest, highest - value <= value / 32);
+			if (bucket > 0) {
+				assertEquals(bucket - 1, LatencyHistogram.bucket(LatencyHistogram.highestValue(bucket - 1)));
+				assertEquals(bucket, LatencyHistogram.bucket(LatencyHistogram.highestValue(bucket - 1) + 1));
+			}
+		}
+	}
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L);
+		}
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(1000, snapshot.getCount());
+		assertEquals(500_500, snapshot.getMean(), 0.001);
+		assertEquals(1_000_000, snapshot.getMax());
+		assertEquals(500_000, snapshot.getValueAtPercentile(50), 500_000 / 32);
+		assertEquals(990_000, snapshot.getValueAtPercentile(99), 990_000 / 32);
+		assertEquals(1_000_000, snapshot.getValueAtPercentile(100));
+
+		histogram.reset();
+		assertEquals(0, histogram.snapshot().getCount());
+		assertEquals(0, histogram.snapshot().getValueAtPercentile(99));
+	}
+
+	@Test
+	public void testConcurrentRecording() throws InterruptedException {
+		LatencyHistogram histogram = new LatencyHistogram();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 100_000; i++) {
+					histogram.record(i);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(400_000, histogram.snapshot().getCount());
+		assertEquals(99_999, histogram.snapshot().getMax());
+	}
+
+}
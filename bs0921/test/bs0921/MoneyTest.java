@@ -0,0 +1,61 @@
+package bs0921;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.time.LocalDate;
+
+import org.junit.Test;
+
+import bs0921.Tool.ToolCode;
+
+/**
+ * Test suite for the {@link Money} class
+ */
+public class MoneyTest {
+
+	@Test
+	public void testPercentOfRoundsHalfUp() {
+		assertEquals(150, Money.percentOf(299, 50));
+		assertEquals(112, Money.percentOf(447, 25));
+		assertEquals(40, Money.percentOf(398, 10));
+		assertEquals(100, Money.percentOf(199, 50));
+		assertEquals(0, Money.percentOf(0, 100));
+		assertEquals(1495, Money.percentOf(1495, 100));
+		assertEquals(-150, Money.percentOf(-299, 50));
+	}
+
+	@Test
+	public void testPercentOfExactDiscount() throws Exception {
+		// 1.99 * 0.5 is 0.995 exactly, which binary doubles round down to 0.99
+		RentalAgreement agreement = ToolPOS.rentTool(ToolCode.LADW, 1, 50, LocalDate.of(2015, 9, 3));
+		assertEquals(199, agreement.getTotalCostNoDiscountCents());
+		assertEquals(100, agreement.getDiscountAmountCents());
+		assertEquals(99, agreement.getFinalChargeCents());
+	}
+
+	@Test
+	public void testParseCents() {
+		assertEquals(199, Money.parseCents("1.99"));
+		assertEquals(250, Money.parseCents("2.5"));
+		assertEquals(300, Money.parseCents("3"));
+		assertEquals(5, Money.parseCents("0.05"));
+		for (String invalid : new String[] { "", ".5", "1.", "1.999", "-1.00", "1.-5", "a.bc" }) {
+			try {
+				Money.parseCents(invalid);
+				fail("Invalid amount not detected: " + invalid);
+			} catch (NumberFormatException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void testToString() {
+		assertEquals("3.58", Money.toString(358));
+		assertEquals("0.05", Money.toString(5));
+		assertEquals("1234.50", Money.toString(123450));
+		assertEquals("-0.40", Money.toString(-40));
+	}
+
+}
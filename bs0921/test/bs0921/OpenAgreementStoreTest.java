@@ -0,0 +1,202 @@
+package bs0921;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import bs0921.Tool.ToolCode;
+import bs0921.Tool.ToolType;
+
+/**
+ * Test suite for the {@link OpenAgreementStore} class
+ */
+public class OpenAgreementStoreTest {
+
+	private static final LocalDate JULY_2 = LocalDate.of(2020, 7, 2);
+
+	@Test
+	public void testAddAndGet() {
+		OpenAgreementStore store = new OpenAgreementStore();
+		RentalAgreement agreement = new RentalAgreement(new Tool(ToolCode.LADW), 3, 10, JULY_2);
+		long handle = store.add(agreement);
+
+		assertEquals(1, store.size());
+		assertEquals(ToolCode.LADW, store.getToolCode(handle));
+		assertEquals(JULY_2.plusDays(3).toEpochDay(), store.getDueEpochDay(handle));
+		assertEquals(2, store.getChargeableDays(handle));
+		assertEquals(358, store.getFinalChargeCents(handle));
+		assertEquals(agreement.toString(), store.get(handle).toString());
+	}
+
+	@Test
+	public void testDueQueries() {
+		OpenAgreementStore store = new OpenAgreementStore();
+		long dueJuly5 = store.add(new RentalAgreement(new Tool(ToolCode.LADW), 3, 10, JULY_2));
+		long dueJuly3 = store.add(new RentalAgreement(new Tool(ToolCode.JAKR), 1, 0, JULY_2));
+		long dueJune1 = store.add(new RentalAgreement(new Tool(ToolCode.CHNS), 1, 0, LocalDate.of(2020, 5, 31)));
+		long dueJuly5Too = store.add(new RentalAgreement(new Tool(ToolCode.CHNS), 5, 0, LocalDate.of(2020, 6, 30)));
+		long dueAugust = store.add(new RentalAgreement(new Tool(ToolCode.JAKD), 40, 0, JULY_2));
+
+		assertEquals(Arrays.asList(dueJune1, dueJuly3), handles(store, "overdue", LocalDate.of(2020, 7, 5)));
+		assertEquals(Arrays.asList(dueJuly5Too, dueJuly5), handles(store, "due", LocalDate.of(2020, 7, 5)));
+		assertEquals(Arrays.asList(dueAugust), handles(store, "due", LocalDate.of(2020, 8, 11)));
+		assertEquals(Arrays.asList(dueJuly5Too, dueJune1), handles(store, "tool", ToolCode.CHNS));
+		assertEquals(2, store.count(ToolCode.CHNS));
+
+		// returning everything overdue from within the query
+		store.forEachOverdue(LocalDate.of(2020, 7, 6), store::remove);
+		assertEquals(Arrays.asList(dueAugust), handles(store, "overdue", LocalDate.of(2021, 1, 1)));
+		assertEquals(0, store.count(ToolCode.CHNS));
+	}
+
+	@Test
+	public void testUpdatesMatchAgreements() {
+		PricingRules rules = PricingRules.compile(Arrays.asList(
+				PricingRule.seasonalRate(LocalDate.of(2020, 7, 10), LocalDate.of(2020, 7, 20), 150),
+				PricingRule.lengthDiscount(14, 30).forType(ToolType.JACKHAMMER)));
+		OpenAgreementStore store = new OpenAgreementStore(HolidayCalendar.getDefault(), rules);
+		RentalAgreement agreement;
+		try {
+			PricingRules.setDefault(rules);
+			agreement = new RentalAgreement(new Tool(ToolCode.JAKD), 5, 10, JULY_2);
+		} finally {
+			PricingRules.setDefault(PricingRules.NONE);
+		}
+		long handle = store.add(agreement);
+
+		store.extend(handle, 15);
+		assertSameAgreement(agreement.extend(15), store.get(handle));
+		assertEquals(30, store.getDiscountPercentage(handle));
+		assertEquals(Arrays.asList(handle), handles(store, "due", JULY_2.plusDays(20)));
+		store.shorten(handle, 10);
+		assertSameAgreement(agreement.extend(15).shorten(10), store.get(handle));
+		assertTrue(handles(store, "due", JULY_2.plusDays(20)).isEmpty());
+
+		long finalCents = store.returnOn(handle, JULY_2.plusDays(3).toEpochDay());
+		assertEquals(agreement.returnOn(JULY_2.plusDays(3)).getFinalChargeCents(), finalCents);
+		assertEquals(0, store.size());
+		assertFalse(store.contains(handle));
+	}
+
+	@Test
+	public void testGetAdjustsLikeStore() {
+		PricingRules rules = PricingRules.compile(Arrays.asList(PricingRule.lengthDiscount(7, 15)));
+		OpenAgreementStore store = new OpenAgreementStore(HolidayCalendar.getDefault(), rules);
+		RentalAgreement agreement;
+		try {
+			PricingRules.setDefault(rules);
+			agreement = new RentalAgreement(new Tool(ToolCode.LADW), 7, 0, JULY_2);
+		} finally {
+			PricingRules.setDefault(PricingRules.NONE);
+		}
+		long handle = store.add(agreement);
+
+		RentalAgreement shortened = store.get(handle).shorten(3);
+		store.shorten(handle, 3);
+		assertEquals(0, shortened.getDiscountPercentage());
+		assertSameAgreement(shortened, store.get(handle));
+	}
+
+	@Test
+	public void testFarDueDatesAreRejected() {
+		OpenAgreementStore store = new OpenAgreementStore();
+		long handle = store.add(new RentalAgreement(new Tool(ToolCode.LADW), 3, 10, JULY_2));
+		for (int days : new int[] { Integer.MAX_VALUE - 7, 2_000_000_000, OpenAgreementStore.MAX_DUE_SPAN_DAYS }) {
+			try {
+				store.extend(handle, days);
+				fail("Due date too far away not detected.");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		try {
+			store.add(new RentalAgreement(new Tool(ToolCode.LADW), 3, 10, JULY_2.minusYears(101)));
+			fail("Due date too far away not detected.");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+
+		// the rental is unchanged and still indexed
+		assertEquals(1, store.size());
+		assertEquals(3, store.getRentalDays(handle));
+		assertEquals(358, store.getFinalChargeCents(handle));
+		assertEquals(Arrays.asList(handle), handles(store, "due", JULY_2.plusDays(3)));
+		store.extend(handle, 365);
+		assertEquals(Arrays.asList(handle), handles(store, "due", JULY_2.plusDays(368)));
+	}
+
+	@Test
+	public void testReturnedHandlesAreRejected() {
+		OpenAgreementStore store = new OpenAgreementStore();
+		long handle = store.add(new RentalAgreement(new Tool(ToolCode.LADW), 3, 10, JULY_2));
+		assertTrue(store.remove(handle));
+		assertFalse(store.remove(handle));
+
+		// the record is reused under a new handle
+		long reused = store.add(new RentalAgreement(new Tool(ToolCode.CHNS), 5, 25, JULY_2));
+		assertEquals((int) handle, (int) reused);
+		assertEquals(ToolCode.CHNS, store.getToolCode(reused));
+		try {
+			store.extend(handle, 1);
+			fail("Returned handle not detected.");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testGrowsPastOneChunk() {
+		OpenAgreementStore store = new OpenAgreementStore();
+		int count = OpenAgreementStore.CHUNK_RECORDS + 100;
+		Tool tool = new Tool(ToolCode.JAKR);
+		for (int i = 0; i < count; i++) {
+			// due dates spread over years in both directions from the first
+			store.add(new RentalAgreement(tool, 1 + i % 30, 0, JULY_2.plusDays(i % 2 == 0 ? i % 1000 : -(i % 1000))));
+		}
+		assertEquals(count, store.size());
+		assertEquals(2L * OpenAgreementStore.CHUNK_RECORDS * OpenAgreementStore.RECORD_SIZE, store.getOffHeapBytes());
+		long[] seen = new long[2];
+		store.forEachDue(Long.MIN_VALUE, Long.MAX_VALUE, handle -> {
+			long due = store.getDueEpochDay(handle);
+			assertTrue(due >= seen[1]);
+			seen[0]++;
+			seen[1] = due;
+		});
+		assertEquals(count, seen[0]);
+	}
+
+	private static List<Long> handles(OpenAgreementStore store, String query, Object argument) {
+		List<Long> handles = new ArrayList<>();
+		switch (query) {
+		case "overdue":
+			store.forEachOverdue((LocalDate) argument, handles::add);
+			break;
+		case "due":
+			store.forEachDueOn((LocalDate) argument, handles::add);
+			break;
+		default:
+			store.forEachOpen((ToolCode) argument, handles::add);
+			break;
+		}
+		return handles;
+	}
+
+	private static void assertSameAgreement(RentalAgreement expected, RentalAgreement actual) {
+		assertEquals(expected.getRentalDays(), actual.getRentalDays());
+		assertEquals(expected.getDueDate(), actual.getDueDate());
+		assertEquals(expected.getChargeableDays(), actual.getChargeableDays());
+		assertEquals(expected.getDiscountPercentage(), actual.getDiscountPercentage());
+		assertEquals(expected.getTotalCostNoDiscountCents(), actual.getTotalCostNoDiscountCents());
+		assertEquals(expected.getDiscountAmountCents(), actual.getDiscountAmountCents());
+		assertEquals(expected.getFinalChargeCents(), actual.getFinalChargeCents());
+	}
+
+}
@@ -0,0 +1,145 @@
+package bs0921;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import bs0921.Tool.Brand;
+import bs0921.Tool.ToolCode;
+import bs0921.Tool.ToolType;
+
+/**
+ * Test suite for the {@link PricingRules} class
+ */
+public class PricingRulesTest {
+
+	private static final LocalDate JULY_2 = LocalDate.of(2020, 7, 2);
+
+	@Test
+	public void testLoad() throws Exception {
+		PricingRules rules = PricingRules.load(new StringReader("# summer\n"
+				+ "rate 2020-06-01 2020-08-31 120 type=LADDER\n\n"
+				+ "length 7 15\n"
+				+ "promo 2020-07-01 2020-07-31 25 brand=DEWALT tool=JAKD\n"));
+		assertEquals(3, rules.getRules().size());
+		assertEquals("rate 2020-06-01 2020-08-31 120 type=LADDER", rules.getRules().get(0).toString());
+		assertEquals("promo 2020-07-01 2020-07-31 25 tool=JAKD brand=DEWALT", rules.getRules().get(2).toString());
+		assertSame(PricingRules.NONE, PricingRules.load(new StringReader("# nothing\n")));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidRule() throws Exception {
+		PricingRules.load(new StringReader("rate 2020-06-01 120\n"));
+	}
+
+	@Test
+	public void testBestDiscountWins() throws Exception {
+		PricingRules rules = PricingRules.compile(Arrays.asList(
+				PricingRule.lengthDiscount(7, 15),
+				PricingRule.lengthDiscount(14, 20).forType(ToolType.JACKHAMMER),
+				PricingRule.promotion(LocalDate.of(2020, 7, 1), LocalDate.of(2020, 7, 31), 25).forBrand(Brand.DEWALT)));
+		try {
+			PricingRules.setDefault(rules);
+			assertEquals(10, ToolPOS.rentTool(ToolCode.LADW, 6, 10, JULY_2).getDiscountPercentage());
+			assertEquals(15, ToolPOS.rentTool(ToolCode.LADW, 7, 10, JULY_2).getDiscountPercentage());
+			assertEquals(15, ToolPOS.rentTool(ToolCode.LADW, 30, 10, JULY_2).getDiscountPercentage());
+			assertEquals(20, ToolPOS.rentTool(ToolCode.JAKR, 30, 10, JULY_2).getDiscountPercentage());
+			assertEquals(25, ToolPOS.rentTool(ToolCode.JAKD, 30, 10, JULY_2).getDiscountPercentage());
+			assertEquals(20, ToolPOS.rentTool(ToolCode.JAKD, 30, 10, LocalDate.of(2020, 8, 1)).getDiscountPercentage());
+			assertEquals(50, ToolPOS.rentTool(ToolCode.JAKD, 3, 50, JULY_2).getDiscountPercentage());
+
+			RentalAgreement agreement = ToolPOS.rentTool(ToolCode.JAKD, 30, 10, JULY_2);
+			assertEquals(Money.percentOf(agreement.getTotalCostNoDiscountCents(), 25),
+					agreement.getDiscountAmountCents());
+		} finally {
+			PricingRules.setDefault(PricingRules.NONE);
+		}
+	}
+
+	@Test
+	public void testCatalogOnlyTools() throws Exception {
+		PricingRules rules = PricingRules.compile(Arrays.asList(
+				PricingRule.lengthDiscount(1, 15).forType(ToolType.LADDER),
+				PricingRule.lengthDiscount(1, 20).forTool(ToolCode.LADW),
+				PricingRule.lengthDiscount(1, 25).forBrand(Brand.WERNER)));
+		// a ladder sold under a code and brand the enums don't list
+		Tool ladder = new Tool("LADL", "LADDER", "Little Giant", 249, true, false);
+		Tool saw = new Tool("TSAW", "Tile saw", "MK Diamond", 2499, true, false);
+		assertTrue(rules.appliesTo(ladder));
+		assertEquals(15, rules.discountPercent(ladder, JULY_2.toEpochDay(), 3, 10));
+		assertFalse(rules.appliesTo(saw));
+		assertEquals(10, rules.discountPercent(saw, JULY_2.toEpochDay(), 3, 10));
+		assertEquals(25, rules.discountPercent(ToolCatalog.getDefault().get(ToolCode.LADW), JULY_2.toEpochDay(), 3,
+				10));
+	}
+
+	@Test
+	public void testSeasonalRatesMatchDayByDayPricing() throws Exception {
+		List<PricingRule> list = Arrays.asList(
+				PricingRule.seasonalRate(LocalDate.of(2020, 6, 1), LocalDate.of(2020, 8, 31), 120),
+				PricingRule.seasonalRate(LocalDate.of(2020, 7, 1), LocalDate.of(2020, 7, 10), 200).forTool(ToolCode.CHNS),
+				PricingRule.seasonalRate(LocalDate.of(2020, 12, 20), LocalDate.of(2021, 1, 3), 50));
+		PricingRules rules = PricingRules.compile(list);
+		for (Tool tool : ToolCatalog.getDefault().getTools()) {
+			for (int day = 0; day < 250; day += 3) {
+				LocalDate checkout = LocalDate.of(2020, 5, 20).plusDays(day);
+				for (int rentalDays : new int[] { 1, 4, 12, 45 }) {
+					long expected = 0;
+					for (int i = 1; i <= rentalDays; i++) {
+						LocalDate date = checkout.plusDays(i);
+						if (ChargeableDayCalculator.count(date.minusDays(1), 1, tool.chargeWeekends(),
+								tool.chargeHolidays()) == 1) {
+							expected += dailyCents(tool, date, list);
+						}
+					}
+					int chargeableDays = ChargeableDayCalculator.count(checkout, rentalDays, tool.chargeWeekends(),
+							tool.chargeHolidays());
+					assertEquals(tool.getCode() + " " + checkout + " " + rentalDays, expected, rules.preDiscountCents(
+							tool, checkout.toEpochDay(), rentalDays, chargeableDays, HolidayCalendar.getDefault()));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testInstallInvalidatesQuoteCache() throws Exception {
+		QuoteCache cache = new QuoteCache(64);
+		RentalAgreement before = cache.rentTool(ToolCode.LADW, 3, 0, JULY_2);
+		try {
+			PricingRules.setDefault(PricingRules.compile(Arrays.asList(
+					PricingRule.seasonalRate(JULY_2, JULY_2.plusDays(10), 200))));
+			RentalAgreement after = cache.rentTool(ToolCode.LADW, 3, 0, JULY_2);
+			assertNotSame(before, after);
+			assertEquals(2 * before.getTotalCostNoDiscountCents(), after.getTotalCostNoDiscountCents());
+			assertTrue(PricingRules.getDefault().appliesTo(ToolCatalog.getDefault().get(ToolCode.CHNS)));
+		} finally {
+			PricingRules.setDefault(PricingRules.NONE);
+		}
+		assertFalse(PricingRules.getDefault().appliesTo(ToolCatalog.getDefault().get(ToolCode.CHNS)));
+	}
+
+	/**
+	 * @return the daily charge on the date, by the last rate rule covering it
+	 */
+	private static long dailyCents(Tool tool, LocalDate date, List<PricingRule> rules) {
+		long cents = tool.getDailyChargeCents();
+		for (PricingRule rule : rules) {
+			if (rule.getKind() == PricingRule.Kind.RATE
+					&& rule.appliesTo(tool.getCode(), tool.getType(), tool.getBrand())
+					&& rule.getFromEpochDay() <= date.toEpochDay() && rule.getToEpochDay() >= date.toEpochDay()) {
+				cents = Money.percentOf(tool.getDailyChargeCents(), rule.getPercent());
+			}
+		}
+		return cents;
+	}
+
+}
@@ -0,0 +1,81 @@
+package bs0921;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import org.junit.Test;
+
+import bs0921.Tool.ToolCode;
+
+/**
+ * Test suite for the {@link PricingSweep} class
+ */
+public class PricingSweepTest {
+
+	@Test
+	public void testMatchesRentTool() throws Exception {
+		LocalDate first = LocalDate.of(2020, 6, 15);
+		int[] tiers = { 0, 10, 15, 33, 100 };
+		PricingSweep sweep = new PricingSweep(ToolCatalog.getDefault(), HolidayCalendar.getDefault(), first, 120, 45,
+				tiers);
+		Path file = Files.createTempFile("sweep", ".bin");
+		try {
+			assertEquals(sweep.getFileSize(), sweep.writeTo(file));
+			assertEquals(sweep.getFileSize(), Files.size(file));
+			try (PricingSweep.Reader reader = PricingSweep.open(file)) {
+				for (ToolCode code : ToolCode.values()) {
+					for (int day = 0; day < 120; day += 7) {
+						for (int rentalDays = 1; rentalDays <= 45; rentalDays += 4) {
+							for (int tier : tiers) {
+								LocalDate checkout = first.plusDays(day);
+								assertEquals(code + " " + checkout + " " + rentalDays + " " + tier,
+										ToolPOS.rentTool(code, rentalDays, tier, checkout).getFinalChargeCents(),
+										reader.getFinalChargeCents(code, checkout, rentalDays, tier));
+							}
+						}
+					}
+				}
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testRowsMustFitInABlock() {
+		new PricingSweep(ToolCatalog.getDefault(), HolidayCalendar.getDefault(), LocalDate.of(2020, 1, 1), 10,
+				262144, 0);
+		try {
+			new PricingSweep(ToolCatalog.getDefault(), HolidayCalendar.getDefault(), LocalDate.of(2020, 1, 1), 10,
+					131073, 0, 50);
+			fail("Row larger than a block not detected.");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			new PricingSweep(ToolCatalog.getDefault(), HolidayCalendar.getDefault(), LocalDate.of(2020, 1, 1), 10,
+					Integer.MAX_VALUE - 100, 0);
+			fail("Row larger than a block not detected.");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRentalOutsideSweep() throws Exception {
+		PricingSweep sweep = new PricingSweep(ToolCatalog.getDefault(), HolidayCalendar.getDefault(),
+				LocalDate.of(2020, 1, 1), 10, 5, 0);
+		Path file = Files.createTempFile("sweep", ".bin");
+		sweep.writeTo(file);
+		try (PricingSweep.Reader reader = PricingSweep.open(file)) {
+			reader.getFinalChargeCents(ToolCode.LADW, LocalDate.of(2020, 1, 1), 6, 0);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+}
@@ -0,0 +1,106 @@
+package bs0921;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import bs0921.Tool.Brand;
+import bs0921.Tool.ToolCode;
+import bs0921.Tool.ToolType;
+
+/**
+ * Test suite for the {@link QuoteCache} class
+ */
+public class QuoteCacheTest {
+
+	private static final LocalDate JULY_2 = LocalDate.of(2020, 7, 2);
+
+	@Test
+	public void testHitsAndMisses() throws Exception {
+		QuoteCache cache = new QuoteCache(64);
+		RentalAgreement first = cache.rentTool(ToolCode.LADW, 3, 10, JULY_2);
+		assertSame(first, cache.rentTool(ToolCode.LADW, 3, 10, JULY_2));
+		assertNotSame(first, cache.rentTool(ToolCode.LADW, 3, 11, JULY_2));
+		assertEquals(3.58, first.getFinalCharge(), 0);
+
+		RentalResult rejected = cache.tryRentTool(ToolCode.LADW, 3, 101, JULY_2);
+		assertEquals(RentalError.INVALID_DISCOUNT, rejected.getError());
+
+		QuoteCache.Stats stats = cache.getStats();
+		assertEquals(1, stats.getHitCount());
+		assertEquals(2, stats.getMissCount());
+		assertEquals(1.0 / 3, stats.getHitRate(), 1e-9);
+	}
+
+	@Test
+	public void testInvalidatedWhenCatalogChanges() throws Exception {
+		QuoteCache cache = new QuoteCache(64);
+		ToolCatalog catalog = ToolCatalog.getDefault();
+		RentalAgreement before = cache.rentTool(ToolCode.LADW, 3, 0, JULY_2);
+		try {
+			ToolCatalog.setDefault(catalog.withTool(
+					new Tool(ToolCode.LADW, ToolType.LADDER, Brand.WERNER, 249, true, false)));
+			RentalAgreement after = cache.rentTool(ToolCode.LADW, 3, 0, JULY_2);
+			assertEquals(249, after.getDailyChargeCents());
+			assertSame(after, cache.rentTool(ToolCode.LADW, 3, 0, JULY_2));
+		} finally {
+			ToolCatalog.setDefault(catalog);
+		}
+		assertEquals(before.getFinalChargeCents(), cache.rentTool(ToolCode.LADW, 3, 0, JULY_2).getFinalChargeCents());
+
+		cache.invalidateAll();
+		assertNotSame(before, cache.rentTool(ToolCode.LADW, 3, 0, JULY_2));
+	}
+
+	@Test
+	public void testPopularQuotesSurvive() throws Exception {
+		QuoteCache cache = new QuoteCache(64);
+		RentalAgreement popular = cache.rentTool(ToolCode.CHNS, 5, 25, JULY_2);
+		for (int i = 0; i < 10_000; i++) {
+			cache.rentTool(ToolCode.JAKR, 1 + i, 0, JULY_2);
+			if (i % 10 == 0) {
+				assertSame(popular, cache.rentTool(ToolCode.CHNS, 5, 25, JULY_2));
+			}
+		}
+		assertTrue(cache.getStats().getEvictionCount() < 10_000);
+	}
+
+	@Test
+	public void testConcurrentLookups() throws Exception {
+		QuoteCache cache = new QuoteCache(256);
+		List<Thread> threads = new ArrayList<>();
+		List<Throwable> failures = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			Thread thread = new Thread(() -> {
+				try {
+					for (int i = 0; i < 20_000; i++) {
+						int days = 1 + i % 100;
+						RentalAgreement agreement = cache.rentTool(ToolCode.values()[i % 4], days, i % 50, JULY_2);
+						assertEquals(days, agreement.getRentalDays());
+						assertEquals(i % 50, agreement.getDiscountPercentage());
+					}
+				} catch (Throwable e) {
+					synchronized (failures) {
+						failures.add(e);
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertTrue(failures.toString(), failures.isEmpty());
+		assertFalse(cache.getStats().getHitCount() == 0);
+	}
+
+}
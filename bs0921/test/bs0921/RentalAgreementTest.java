@@ -0,0 +1,163 @@
+package bs0921;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import bs0921.Tool.ToolCode;
+import bs0921.Tool.ToolType;
+
+/**
+ * Test suite for the {@link RentalAgreement} class
+ */
+public class RentalAgreementTest {
+
+	@Test
+	public void testBuilder() {
+		RentalAgreement agreement = RentalAgreement.builder()
+				.tool(new Tool(ToolCode.CHNS))
+				.rentalDays(5)
+				.discountPercentage(25)
+				.checkoutDate(LocalDate.of(2015, 7, 2))
+				.build();
+
+		assertEquals(LocalDate.of(2015, 7, 7), agreement.getDueDate());
+		assertEquals(3, agreement.getChargeableDays());
+		assertEquals(4.47, agreement.getTotalCostNoDiscount(), 0);
+		assertEquals(1.12, agreement.getDiscountAmount(), 0);
+		assertEquals(3.35, agreement.getFinalCharge(), 0);
+
+		RentalAgreement extended = agreement.toBuilder().rentalDays(9).build();
+		assertEquals(5, agreement.getRentalDays());
+		assertEquals(9, extended.getRentalDays());
+		assertEquals(LocalDate.of(2015, 7, 11), extended.getDueDate());
+		assertEquals(6, extended.getChargeableDays());
+	}
+
+	@Test
+	public void testBuilderRequiresTool() {
+		try {
+			RentalAgreement.builder().rentalDays(3).checkoutDate(LocalDate.of(2015, 7, 2)).build();
+			fail("Missing tool not detected.");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testExtendAndShortenMatchFreshPricing() {
+		RentalAgreement agreement = new RentalAgreement(new Tool(ToolCode.JAKR), 4, 20, LocalDate.of(2020, 7, 2));
+		RentalAgreement extended = agreement.extend(7).extend(30);
+		assertSamePricing(new RentalAgreement(new Tool(ToolCode.JAKR), 41, 20, LocalDate.of(2020, 7, 2)), extended);
+		RentalAgreement shortened = extended.shorten(38);
+		assertSamePricing(new RentalAgreement(new Tool(ToolCode.JAKR), 3, 20, LocalDate.of(2020, 7, 2)), shortened);
+		assertEquals(4, agreement.getRentalDays());
+	}
+
+	@Test
+	public void testReturnOn() {
+		RentalAgreement agreement = new RentalAgreement(new Tool(ToolCode.LADW), 10, 10, LocalDate.of(2020, 7, 2));
+		assertSamePricing(new RentalAgreement(new Tool(ToolCode.LADW), 3, 10, LocalDate.of(2020, 7, 2)),
+				agreement.returnOn(LocalDate.of(2020, 7, 5)));
+		assertSamePricing(new RentalAgreement(new Tool(ToolCode.LADW), 12, 10, LocalDate.of(2020, 7, 2)),
+				agreement.returnOn(LocalDate.of(2020, 7, 14)));
+		assertEquals(1, agreement.returnOn(LocalDate.of(2020, 7, 2)).getRentalDays());
+		try {
+			agreement.returnOn(LocalDate.of(2020, 7, 1));
+			fail("Return before checkout not detected.");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testAdjustmentHistory() {
+		RentalAgreement agreement = new RentalAgreement(new Tool(ToolCode.CHNS), 5, 25, LocalDate.of(2015, 7, 2));
+		RentalAgreement returned = agreement.extend(4).shorten(1).returnOn(LocalDate.of(2015, 7, 9));
+
+		List<RentalAdjustment> adjustments = returned.getAdjustments();
+		assertEquals(3, adjustments.size());
+		assertTrue(agreement.getAdjustments().isEmpty());
+
+		RentalAdjustment extension = adjustments.get(0);
+		assertEquals(RentalAdjustment.Kind.EXTENSION, extension.getKind());
+		assertEquals(5, extension.getPreviousRentalDays());
+		assertEquals(9, extension.getRentalDays());
+		assertEquals(LocalDate.of(2015, 7, 11), extension.getDueDate());
+		assertEquals(3, extension.getChargeableDaysDelta());
+		assertEquals(3 * 149, extension.getTotalCostNoDiscountDeltaCents());
+		assertEquals("EXTENSION 5 to 9 days, due 07/11/15: +3 chargeable days, +3.35", extension.toString());
+
+		assertEquals(RentalAdjustment.Kind.SHORTENING, adjustments.get(1).getKind());
+		assertEquals(RentalAdjustment.Kind.RETURN, adjustments.get(2).getKind());
+		assertEquals(-1, adjustments.get(2).getChargeableDaysDelta());
+		long finalChargeDelta = 0;
+		for (RentalAdjustment adjustment : adjustments) {
+			finalChargeDelta += adjustment.getFinalChargeDeltaCents();
+		}
+		assertEquals(returned.getFinalChargeCents() - agreement.getFinalChargeCents(), finalChargeDelta);
+		assertSamePricing(new RentalAgreement(new Tool(ToolCode.CHNS), 7, 25, LocalDate.of(2015, 7, 2)), returned);
+	}
+
+	@Test
+	public void testAdjustmentsKeepPricingRules() {
+		PricingRules rules = PricingRules.compile(Arrays.asList(
+				PricingRule.seasonalRate(LocalDate.of(2020, 7, 10), LocalDate.of(2020, 7, 20), 150),
+				PricingRule.lengthDiscount(14, 30).forType(ToolType.JACKHAMMER)));
+		RentalAgreement agreement;
+		RentalAgreement priced;
+		try {
+			PricingRules.setDefault(rules);
+			agreement = new RentalAgreement(new Tool(ToolCode.JAKD), 5, 10, LocalDate.of(2020, 7, 2));
+			priced = new RentalAgreement(new Tool(ToolCode.JAKD), 20, 10, LocalDate.of(2020, 7, 2));
+		} finally {
+			PricingRules.setDefault(PricingRules.NONE);
+		}
+
+		RentalAgreement extended = agreement.extend(15);
+		assertSamePricing(priced, extended);
+		assertEquals(30, extended.getDiscountPercentage());
+		RentalAgreement shortened = extended.shorten(10);
+		assertEquals(10, shortened.getDiscountPercentage());
+		// rebuilding prices from the clerk's discount, not the rule discount
+		assertEquals(10, extended.toBuilder().build().getDiscountPercentage());
+	}
+
+	@Test
+	public void testInvalidAdjustments() {
+		RentalAgreement agreement = new RentalAgreement(new Tool(ToolCode.LADW), 3, 10, LocalDate.of(2020, 7, 2));
+		for (int days : new int[] { 0, -1 }) {
+			try {
+				agreement.extend(days);
+				fail("Invalid extension not detected.");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		for (int days : new int[] { 0, 3 }) {
+			try {
+				agreement.shorten(days);
+				fail("Invalid shortening not detected.");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	private static void assertSamePricing(RentalAgreement expected, RentalAgreement actual) {
+		assertEquals(expected.getRentalDays(), actual.getRentalDays());
+		assertEquals(expected.getDueDate(), actual.getDueDate());
+		assertEquals(expected.getChargeableDays(), actual.getChargeableDays());
+		assertEquals(expected.getDiscountPercentage(), actual.getDiscountPercentage());
+		assertEquals(expected.getTotalCostNoDiscountCents(), actual.getTotalCostNoDiscountCents());
+		assertEquals(expected.getDiscountAmountCents(), actual.getDiscountAmountCents());
+		assertEquals(expected.getFinalChargeCents(), actual.getFinalChargeCents());
+	}
+
+}
@@ -0,0 +1,52 @@
+package bs0921;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.time.LocalDate;
+
+import org.junit.Test;
+
+import bs0921.Tool.ToolCode;
+
+/**
+ * Test suite for the {@link RentalInput} class
+ */
+public class RentalInputTest {
+
+	@Test
+	public void testParseToolCode() {
+		assertEquals(ToolCode.JAKD, RentalInput.parseToolCode("JAKD"));
+		assertNull(RentalInput.parseToolCode("jakd"));
+		assertNull(RentalInput.parseToolCode("JAK"));
+		assertNull(RentalInput.parseToolCode(""));
+		assertNull(RentalInput.parseToolCode(null));
+	}
+
+	@Test
+	public void testParseInt() {
+		assertEquals(0, RentalInput.parseInt("0"));
+		assertEquals(-5, RentalInput.parseInt("-5"));
+		assertEquals(Integer.MAX_VALUE, RentalInput.parseInt("2147483647"));
+		assertEquals(RentalInput.INVALID, RentalInput.parseInt("2147483648"));
+		assertEquals(RentalInput.INVALID, RentalInput.parseInt("99999999999999999999"));
+		assertEquals(RentalInput.INVALID, RentalInput.parseInt("1.5"));
+		assertEquals(RentalInput.INVALID, RentalInput.parseInt("-"));
+		assertEquals(RentalInput.INVALID, RentalInput.parseInt(""));
+		assertEquals(RentalInput.INVALID, RentalInput.parseInt(null));
+	}
+
+	@Test
+	public void testParseCheckoutDate() {
+		assertEquals(LocalDate.of(2015, 9, 3), RentalInput.parseCheckoutDate("09/03/15"));
+		assertEquals(LocalDate.of(2020, 2, 29), RentalInput.parseCheckoutDate("02/29/20"));
+		assertNull(RentalInput.parseCheckoutDate("02/29/21"));
+		assertNull(RentalInput.parseCheckoutDate("13/01/20"));
+		assertNull(RentalInput.parseCheckoutDate("00/01/20"));
+		assertNull(RentalInput.parseCheckoutDate("9/3/15"));
+		assertNull(RentalInput.parseCheckoutDate("09-03-15"));
+		assertNull(RentalInput.parseCheckoutDate("09/03/2015"));
+		assertNull(RentalInput.parseCheckoutDate(null));
+	}
+
+}
@@ -0,0 +1,132 @@
+package bs0921;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import bs0921.Tool.ToolCode;
+
+/**
+ * Test suite for the {@link RentalMetrics} class
+ */
+public class RentalMetricsTest {
+
+	private static final LocalDate JULY_2 = LocalDate.of(2020, 7, 2);
+
+	@Test
+	public void testRecording() throws Exception {
+		RentalMetrics.Snapshot before = RentalMetrics.snapshot();
+		ToolPOS.rentTool(ToolCode.LADW, 3, 10, LocalDate.of(2020, 7, 2));
+		try {
+			ToolPOS.rentTool(ToolCode.LADW, 0, 10, LocalDate.of(2020, 7, 2));
+			fail("Invalid rental days not detected.");
+		} catch (Exception e) {
+			assertEquals(RentalError.INVALID_RENTAL_DAYS.getMessage(), e.getMessage());
+		}
+		RentalMetrics.Snapshot after = RentalMetrics.snapshot();
+
+		// nothing is recorded unless metrics are switched on with -Dbs0921.metrics=true
+		long recorded = RentalMetrics.ENABLED ? 1 : 0;
+		assertEquals(recorded, after.getTool(ToolCode.LADW).getCount() - before.getTool(ToolCode.LADW).getCount());
+		assertEquals(recorded, after.getRejections(RentalError.INVALID_RENTAL_DAYS)
+				- before.getRejections(RentalError.INVALID_RENTAL_DAYS));
+		assertEquals(0, after.getTool(ToolCode.CHNS).getCount() - before.getTool(ToolCode.CHNS).getCount());
+	}
+
+	@Test
+	public void testHistogramsAndCounters() {
+		assumeTrue("Needs -Dbs0921.metrics=true", RentalMetrics.ENABLED);
+		RentalMetrics.reset();
+		for (int i = 0; i < 3; i++) {
+			ToolPOS.tryRentTool(ToolCode.LADW, 3, 10, JULY_2).getAgreement().toString();
+		}
+		ToolPOS.tryRentTool(ToolCode.CHNS, 5, 25, JULY_2);
+		ToolPOS.tryRentTool(ToolCode.JAKR, 0, 0, JULY_2);
+		ToolPOS.tryRentTool(ToolCode.JAKR, -1, 0, JULY_2);
+		ToolPOS.tryRentTool(ToolCode.JAKR, 4, 101, JULY_2);
+		RentalMetrics.Snapshot snapshot = RentalMetrics.snapshot();
+
+		assertEquals(3, snapshot.getTool(ToolCode.LADW).getCount());
+		assertEquals(1, snapshot.getTool(ToolCode.CHNS).getCount());
+		assertEquals(0, snapshot.getTool(ToolCode.JAKR).getCount());
+		assertEquals(0, snapshot.getTool(ToolCode.JAKD).getCount());
+		assertEquals(4, snapshot.getOperation(RentalMetrics.Operation.RENT_TOOL).getCount());
+		assertEquals(4, snapshot.getOperation(RentalMetrics.Operation.CHARGEABLE_DAYS).getCount());
+		assertEquals(3, snapshot.getOperation(RentalMetrics.Operation.RENDER).getCount());
+		assertEquals(2, snapshot.getRejections(RentalError.INVALID_RENTAL_DAYS));
+		assertEquals(1, snapshot.getRejections(RentalError.INVALID_DISCOUNT));
+		assertEquals(0, snapshot.getRejections(RentalError.UNKNOWN_TOOL));
+
+		LatencyHistogram.Snapshot ladders = snapshot.getTool(ToolCode.LADW);
+		assertTrue(ladders.getValueAtPercentile(50) > 0);
+		assertTrue(ladders.getValueAtPercentile(99.9) >= ladders.getValueAtPercentile(50));
+		assertTrue(ladders.getMax() > 0);
+		String json = snapshot.toJson();
+		assertTrue(json, json.contains("\"LADW\":{\"count\":3,"));
+		assertTrue(json, json.contains("\"INVALID_RENTAL_DAYS\":2"));
+
+		RentalMetrics.reset();
+		assertEquals(0, RentalMetrics.snapshot().getTool(ToolCode.LADW).getCount());
+	}
+
+	@Test
+	public void testSlowPricingEvents() throws Exception {
+		assumeTrue("Needs -Dbs0921.metrics=true -Dbs0921.metrics.slowMicros=0",
+				RentalMetrics.ENABLED && RentalMetrics.SLOW_PRICING_NANOS == 0);
+		Path file = Files.createTempFile("metrics", ".jfr");
+		try {
+			try (Recording recording = new Recording()) {
+				recording.enable("bs0921.SlowPricing");
+				recording.start();
+				ToolPOS.tryRentTool(ToolCode.LADW, 3, 10, JULY_2);
+				ToolPOS.tryRentTool(ToolCode.JAKR, 0, 0, JULY_2);
+				ToolPOS.tryRentTool(ToolCode.CHNS, 5, 25, JULY_2);
+				recording.stop();
+				recording.dump(file);
+			}
+
+			// every rental is slow with a zero threshold, and rejections are not rentals
+			List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+			assertEquals(2, events.size());
+			RecordedEvent event = events.get(0);
+			assertEquals("bs0921.SlowPricing", event.getEventType().getName());
+			assertEquals("LADW", event.getString("toolCode"));
+			assertEquals(3, event.getInt("rentalDays"));
+			assertEquals(10, event.getInt("discountPercent"));
+			assertEquals("2020-07-02", event.getString("checkoutDate"));
+			assertTrue(event.getDuration("pricingTime").toNanos() >= RentalMetrics.SLOW_PRICING_NANOS);
+			assertEquals("CHNS", events.get(1).getString("toolCode"));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testExport() {
+		RentalMetrics.Snapshot snapshot = RentalMetrics.snapshot();
+		String json = snapshot.toJson();
+		assertTrue(json, json.startsWith("{\"operations\":{\"rentTool\":{\"count\":"));
+		assertTrue(json, json.contains(",\"p999Nanos\":"));
+		assertTrue(json, json.contains("\"tools\":{\"LADW\":{"));
+		assertTrue(json, json.endsWith(",\"INVALID_CHECKOUT_DATE\":"
+				+ snapshot.getRejections(RentalError.INVALID_CHECKOUT_DATE) + "}}"));
+
+		String text = snapshot.toString();
+		assertTrue(text, text.startsWith("operation (us)"));
+		assertTrue(text, text.contains("rentTool[JAKR]"));
+		assertTrue(text, text.contains("UNKNOWN_TOOL"));
+	}
+
+}
@@ -0,0 +1,164 @@
+package bs0921;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test suite for the {@link TerminalServer} class
+ */
+public class TerminalServerTest {
+
+	private TerminalServer server;
+
+	@Before
+	public void startServer() throws IOException {
+		server = new TerminalServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		server.start();
+	}
+
+	@After
+	public void stopServer() {
+		server.stop();
+	}
+
+	@Test
+	public void testPipelinedRequests() throws IOException {
+		try (Socket socket = connect()) {
+			OutputStream out = socket.getOutputStream();
+			out.write(("LADW 3 10 07/02/20\r\nCHNS 5 25 07/02/15\n\nJAKR 5 101 09/03/15\nLADW 3 10\n"
+					+ "XXXX 3 10 07/02/20\nJAKR 4 50 13/40/20\n").getBytes(StandardCharsets.US_ASCII));
+			BufferedReader in = reader(socket);
+			assertEquals("OK LADW 07/05/20 2 3.98 0.40 3.58", in.readLine());
+			assertEquals("OK CHNS 07/07/15 3 4.47 1.12 3.35", in.readLine());
+			assertEquals("ERR INVALID_DISCOUNT " + RentalError.INVALID_DISCOUNT.getMessage(), in.readLine());
+			assertEquals("ERR BAD_REQUEST Whoops! Expected CODE DAYS DISCOUNT MM/dd/yy. Please try again.",
+					in.readLine());
+			assertEquals("ERR UNKNOWN_TOOL " + RentalError.UNKNOWN_TOOL.getMessage(), in.readLine());
+			assertEquals("ERR INVALID_CHECKOUT_DATE " + RentalError.INVALID_CHECKOUT_DATE.getMessage(), in.readLine());
+
+			socket.shutdownOutput();
+			assertNull(in.readLine());
+		}
+	}
+
+	@Test
+	public void testLinesSplitAcrossWrites() throws Exception {
+		try (Socket socket = connect()) {
+			OutputStream out = socket.getOutputStream();
+			out.write("LADW 3 1".getBytes(StandardCharsets.US_ASCII));
+			out.flush();
+			Thread.sleep(50);
+			out.write("0 07/02/20\n".getBytes(StandardCharsets.US_ASCII));
+			assertEquals("OK LADW 07/05/20 2 3.98 0.40 3.58", reader(socket).readLine());
+		}
+	}
+
+	@Test
+	public void testLongLineAndManyReplies() throws Exception {
+		try (Socket socket = connect()) {
+			StringBuilder requests = new StringBuilder();
+			for (int i = 0; i < 3000; i++) {
+				requests.append('x');
+			}
+			requests.append('\n');
+			// far more replies than fit in the server's write buffer at once
+			for (int i = 0; i < 5000; i++) {
+				requests.append("JAKR ").append(1 + i % 30).append(" 0 09/03/15\n");
+			}
+			// written from another thread, as the server stops reading while its replies back up
+			Thread writer = new Thread(() -> {
+				try {
+					socket.getOutputStream().write(requests.toString().getBytes(StandardCharsets.US_ASCII));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			writer.start();
+			BufferedReader in = reader(socket);
+			assertEquals("ERR BAD_REQUEST Whoops! Expected CODE DAYS DISCOUNT MM/dd/yy. Please try again.",
+					in.readLine());
+			for (int i = 0; i < 5000; i++) {
+				String reply = in.readLine();
+				int rentalDays = 1 + i % 30;
+				assertEquals("OK JAKR " + RentalAgreement.dateFormat.format(LocalDate.of(2015, 9, 3).plusDays(rentalDays)),
+						reply.substring(0, 16));
+			}
+			writer.join();
+		}
+	}
+
+	@Test
+	public void testPipelinedRepliesBeyondWriteBuffer() throws IOException {
+		String error = "ERR UNKNOWN_TOOL " + RentalError.UNKNOWN_TOOL.getMessage();
+		StringBuilder requests = new StringBuilder();
+		// error replies are long, so these fill the 4 KB write buffer several times
+		for (int i = 0; i < 120; i++) {
+			requests.append("X 1 1 1\n");
+		}
+		byte[] bytes = requests.toString().getBytes(StandardCharsets.US_ASCII);
+		try (Socket socket = connect()) {
+			socket.setSoTimeout(5000);
+			BufferedReader in = reader(socket);
+			socket.getOutputStream().write(bytes);
+			for (int i = 0; i < 120; i++) {
+				assertEquals(error, in.readLine());
+			}
+
+			// and answered in full before the connection is closed
+			socket.getOutputStream().write(bytes);
+			socket.shutdownOutput();
+			for (int i = 0; i < 120; i++) {
+				assertEquals(error, in.readLine());
+			}
+			assertNull(in.readLine());
+		}
+	}
+
+	@Test
+	public void testManyConnections() throws IOException {
+		List<Socket> sockets = new ArrayList<>();
+		try {
+			for (int i = 0; i < 200; i++) {
+				Socket socket = connect();
+				sockets.add(socket);
+				socket.getOutputStream().write(("LADW " + (1 + i % 9) + " 0 07/02/20\n")
+						.getBytes(StandardCharsets.US_ASCII));
+			}
+			for (int i = 0; i < sockets.size(); i++) {
+				String reply = reader(sockets.get(i)).readLine();
+				assertEquals("OK LADW " + RentalAgreement.dateFormat.format(LocalDate.of(2020, 7, 2).plusDays(1 + i % 9)),
+						reply.substring(0, 16));
+			}
+		} finally {
+			for (Socket socket : sockets) {
+				socket.close();
+			}
+		}
+	}
+
+	private Socket connect() throws IOException {
+		return new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+	}
+
+	private static BufferedReader reader(Socket socket) throws IOException {
+		return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+	}
+
+}
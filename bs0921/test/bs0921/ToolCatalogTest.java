@@ -0,0 +1,154 @@
+package bs0921;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import bs0921.Tool.Brand;
+import bs0921.Tool.ToolCode;
+import bs0921.Tool.ToolType;
+
+/**
+ * Test suite for the {@link ToolCatalog} class
+ */
+public class ToolCatalogTest {
+
+	@Test
+	public void testLoad() throws IOException {
+		ToolCatalog catalog = ToolCatalog.load(new StringReader(
+				"# code,type,brand,daily charge,charge weekends,charge holidays\n"
+				+ "LADW,LADDER,WERNER,2.49,true,true\n"
+				+ "\n"
+				+ "JAKD, JACKHAMMER, DEWALT, 3.99, false, false\n"));
+
+		Tool ladder = catalog.get(ToolCode.LADW);
+		assertEquals(ToolType.LADDER, ladder.getType());
+		assertEquals(Brand.WERNER, ladder.getBrand());
+		assertEquals(2.49, ladder.getDailyCharge(), 0);
+		assertEquals(true, ladder.chargeHolidays());
+		assertEquals(3.99, catalog.get(ToolCode.JAKD).getDailyCharge(), 0);
+		assertNull(catalog.get(ToolCode.CHNS));
+		assertSame(ladder, catalog.get(ToolCode.LADW));
+		assertEquals(2, catalog.getTools().size());
+	}
+
+	@Test
+	public void testThousandsOfCodes() throws IOException {
+		StringBuilder file = new StringBuilder("LADW,LADDER,WERNER,1.99,true,false\n");
+		for (int i = 0; i < 5000; i++) {
+			file.append(String.format("S%05d,%s,MK Diamond,%d.99,true,false%n", i, i % 2 == 0 ? "Tile saw" : "LADDER",
+					i % 50));
+		}
+		ToolCatalog catalog = ToolCatalog.load(new StringReader(file.toString()));
+		assertEquals(5001, catalog.getTools().size());
+		assertSame(catalog.get(ToolCode.LADW), catalog.get("LADW"));
+		assertSame(catalog.getTools().get(0), catalog.get(new StringBuilder("LADW")));
+
+		for (int i = 0; i < 5000; i++) {
+			String code = String.format("S%05d", i);
+			Tool tool = catalog.get(code);
+			assertEquals(code, tool.getCodeName());
+			assertSame(catalog.getTools().get(i + 1), tool);
+			assertSame(tool, catalog.get(new StringBuilder(code)));
+			assertEquals(i % 50 * 100 + 99, tool.getDailyChargeCents());
+			assertNull(tool.getCode());
+			assertEquals("MK Diamond", tool.getBrandName());
+			assertNull(tool.getBrand());
+		}
+		assertNull(catalog.get("S05000"));
+		assertNull(catalog.get("S0000"));
+		assertNull(catalog.get(""));
+		assertNull(catalog.get((CharSequence) null));
+
+		// enum names still map to the enums, other names are shown as given
+		assertEquals("Tile saw", catalog.get("S00000").getTypeName());
+		assertNull(catalog.get("S00000").getType());
+		assertEquals("Ladder", catalog.get("S00001").getTypeName());
+		assertSame(ToolType.LADDER, catalog.get("S00001").getType());
+	}
+
+	@Test
+	public void testRentCatalogOnlyTool() throws Exception {
+		ToolCatalog original = ToolCatalog.getDefault();
+		try {
+			ToolCatalog.setDefault(original.withTool(new Tool("TSAW", "Tile saw", "MK Diamond", 2499, true, false)));
+
+			RentalResult result = ToolPOS.tryRentTool("TSAW", "3", "10", "07/02/20");
+			assertTrue(result.isSuccess());
+			RentalAgreement agreement = result.getAgreement();
+			assertSame(ToolCatalog.getDefault().get("TSAW"), agreement.getTool());
+			// the July 4th holiday is observed on Friday, then the weekend is charged
+			assertEquals(2 * 2499, agreement.getTotalCostNoDiscountCents());
+			assertTrue(agreement.toString().startsWith("Tool code: TSAW\nTool type: Tile saw\nTool brand: MK Diamond\n"));
+			assertTrue(RentalJson.appendAgreement(new StringBuilder(), agreement, false).toString()
+					.startsWith("{\"toolCode\":\"TSAW\",\"toolType\":\"Tile saw\",\"toolBrand\":\"MK Diamond\","));
+			assertEquals(4998, ToolPOS.rentTools(Arrays.asList(new RentalRequest("TSAW", 3, 0, LocalDate.of(2020, 7, 2))))
+					.get(0).getAgreement().getFinalChargeCents());
+			assertEquals(RentalError.UNKNOWN_TOOL, ToolPOS.tryRentTool("TSAX", "3", "10", "07/02/20").getError());
+
+			// formats that store tools by ordinal refuse it
+			try {
+				new AgreementArchive().add(agreement);
+				fail("Tool without a ToolCode stored.");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+			assertNull(new ToolInventory().reserve(agreement));
+		} finally {
+			ToolCatalog.setDefault(original);
+		}
+	}
+
+	@Test
+	public void testInvalidTool() throws IOException {
+		try {
+			ToolCatalog.load(new StringReader("LADW,LADDER,WERNER,2.49,true,sometimes\n"));
+			fail("Invalid tool not detected.");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			ToolCatalog.load(new StringReader("LADW,LADDER,WERNER,2.49,true,true\nLADW,LADDER,WERNER,2.49,true,true\n"));
+			fail("Duplicate tool not detected.");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		for (String line : new String[] { "LAD W,LADDER,WERNER,2.49,true,true", "LADW,,WERNER,2.49,true,true",
+				"LADW,LADDER,W\u00e9rner,2.49,true,true", "LADW,LADDER," + "W".repeat(Tool.MAX_NAME_LENGTH + 1)
+						+ ",2.49,true,true" }) {
+			try {
+				ToolCatalog.load(new StringReader(line));
+				fail("Invalid tool not detected: " + line);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void testSetDefault() throws Exception {
+		ToolCatalog original = ToolCatalog.getDefault();
+		try {
+			ToolCatalog.setDefault(original.withTool(
+					new Tool(ToolCode.LADW, ToolType.LADDER, Brand.WERNER, 299, true, false)));
+
+			RentalAgreement agreement = ToolPOS.rentTool(ToolCode.LADW, 3, 10, LocalDate.of(2020, 7, 2));
+			assertEquals(5.98, agreement.getTotalCostNoDiscount(), 0);
+			assertSame(ToolCatalog.getDefault().get(ToolCode.LADW), agreement.getTool());
+			assertSame(original.get(ToolCode.CHNS), ToolCatalog.getDefault().get(ToolCode.CHNS));
+			assertEquals(1.99, original.get(ToolCode.LADW).getDailyCharge(), 0);
+		} finally {
+			ToolCatalog.setDefault(original);
+		}
+	}
+
+}
@@ -0,0 +1,95 @@
+package bs0921;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import bs0921.Tool.ToolCode;
+
+/**
+ * Test suite for the {@link ToolInventory} class
+ */
+public class ToolInventoryTest {
+
+	@Test
+	public void testOverlappingReservations() {
+		ToolInventory inventory = new ToolInventory();
+		inventory.addUnits(ToolCode.LADW, 1);
+		LocalDate july2 = LocalDate.of(2020, 7, 2);
+
+		assertNotNull(inventory.reserve(ToolCode.LADW, july2, july2.plusDays(3)));
+		assertNull(inventory.reserve(ToolCode.LADW, july2.plusDays(3), july2.plusDays(5)));
+		assertNull(inventory.reserve(ToolCode.LADW, july2.minusDays(2), july2));
+		assertNotNull(inventory.reserve(ToolCode.LADW, july2.plusDays(4), july2.plusDays(5)));
+		assertNotNull(inventory.reserve(ToolCode.LADW, july2.minusDays(2), july2.minusDays(1)));
+		assertNull(inventory.reserve(ToolCode.CHNS, july2, july2));
+		assertEquals(0, inventory.countAvailable(ToolCode.LADW, july2.minusDays(2), july2.plusDays(5)));
+	}
+
+	@Test
+	public void testRelease() throws Exception {
+		ToolInventory inventory = new ToolInventory();
+		inventory.addUnits(ToolCode.JAKR, 2);
+		LocalDate checkout = LocalDate.of(2015, 9, 3);
+
+		ToolInventory.Reservation first = ToolPOS.rentTool(inventory, ToolCode.JAKR, 5, 0, checkout);
+		ToolInventory.Reservation second = ToolPOS.rentTool(inventory, ToolCode.JAKR, 5, 0, checkout);
+		assertEquals(checkout.plusDays(5), first.getDueDate());
+		assertEquals(first.getAgreement().getDueDate(), first.getDueDate());
+		assertTrue(first.getUnit() != second.getUnit());
+		assertEquals(0, inventory.countAvailable(ToolCode.JAKR, checkout, checkout.plusDays(5)));
+
+		try {
+			ToolPOS.rentTool(inventory, ToolCode.JAKR, 1, 0, checkout.plusDays(1));
+			assertTrue(false);
+		} catch (Exception e) {
+			assertEquals("Whoops! No JAKR is available for those dates. Please try again.", e.getMessage());
+		}
+
+		assertTrue(inventory.release(first));
+		assertFalse(inventory.release(first));
+		assertEquals(1, inventory.countAvailable(ToolCode.JAKR, checkout, checkout.plusDays(5)));
+		assertEquals(first.getUnit(), ToolPOS.rentTool(inventory, ToolCode.JAKR, 1, 0, checkout.plusDays(1)).getUnit());
+	}
+
+	@Test
+	public void testConcurrentReservations() throws Exception {
+		ToolInventory inventory = new ToolInventory();
+		inventory.addUnits(ToolCode.CHNS, 8);
+		LocalDate checkout = LocalDate.of(2020, 7, 2);
+
+		List<Callable<ToolInventory.Reservation>> tasks = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			tasks.add(() -> inventory.reserve(ToolCode.CHNS, checkout, checkout.plusDays(4)));
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			boolean[] reserved = new boolean[8];
+			int succeeded = 0;
+			for (Future<ToolInventory.Reservation> future : executor.invokeAll(tasks)) {
+				ToolInventory.Reservation reservation = future.get();
+				if (reservation != null) {
+					assertFalse(reserved[reservation.getUnit()]);
+					reserved[reservation.getUnit()] = true;
+					succeeded++;
+				}
+			}
+			assertEquals(8, succeeded);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,109 @@
+package bs0921;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test suite for the {@link ToolPOSServer} class
+ */
+public class ToolPOSServerTest {
+
+	private ToolPOSServer server;
+
+	@Before
+	public void startServer() throws IOException {
+		server = new ToolPOSServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		server.start();
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testQuote() throws IOException {
+		Response response = post("/quote",
+				"{\"code\":\"LADW\", \"rentalDays\":3, \"discount\":10, \"checkoutDate\":\"07/02/20\"}");
+		assertEquals(200, response.status);
+		assertEquals("{\"toolCode\":\"LADW\",\"toolType\":\"Ladder\",\"toolBrand\":\"Werner\",\"rentalDays\":3,"
+				+ "\"checkoutDate\":\"07/02/20\",\"dueDate\":\"07/05/20\",\"dailyRentalCharge\":1.99,"
+				+ "\"chargeDays\":2,\"preDiscountCharge\":3.98,\"discountPercent\":10,\"discountAmount\":0.40,"
+				+ "\"finalCharge\":3.58}", response.body);
+	}
+
+	@Test
+	public void testCheckout() throws IOException {
+		Response response = post("/checkout",
+				"{\"code\":\"CHNS\",\"rentalDays\":5,\"discount\":25,\"checkoutDate\":\"07/02/15\"}");
+		assertEquals(200, response.status);
+		assertTrue(response.body, response.body.contains("\"finalCharge\":3.35"));
+		assertTrue(response.body, response.body.contains("\"agreement\":\"Tool code: CHNS\\nTool type: Chainsaw\\n"));
+	}
+
+	@Test
+	public void testInvalidRequests() throws IOException {
+		Response response = post("/quote",
+				"{\"code\":\"JAKR\",\"rentalDays\":5,\"discount\":101,\"checkoutDate\":\"09/03/15\"}");
+		assertEquals(400, response.status);
+		assertEquals("{\"error\":\"Whoops! Discount percent is not in the range 0-100. Please try again.\"}",
+				response.body);
+
+		assertEquals(400, post("/quote", "{\"code\":\"XXXX\",\"rentalDays\":5,\"discount\":0,"
+				+ "\"checkoutDate\":\"09/03/15\"}").status);
+		assertEquals(400, post("/quote", "{\"code\":\"JAKR\",\"rentalDays\":5}").status);
+		assertEquals(400, post("/quote", "not json").status);
+		assertEquals(404, post("/refund", "{}").status);
+	}
+
+	private Response post(String path, String body) throws IOException {
+		URL url = new URL("http", InetAddress.getLoopbackAddress().getHostAddress(), server.getPort(), path);
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		try {
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(body.getBytes(StandardCharsets.UTF_8));
+			}
+			Response response = new Response();
+			response.status = connection.getResponseCode();
+			InputStream in = response.status < 400 ? connection.getInputStream() : connection.getErrorStream();
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			if (in != null) {
+				try (InputStream stream = in) {
+					byte[] buffer = new byte[1024];
+					for (int read = stream.read(buffer); read >= 0; read = stream.read(buffer)) {
+						bytes.write(buffer, 0, read);
+					}
+				}
+			}
+			response.body = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+			return response;
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	private static class Response {
+
+		int status;
+
+		String body;
+
+	}
+
+}
@@ -1,10 +1,16 @@
 package bs0921;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import org.junit.Test;
 
@@ -167,4 +173,66 @@ public class ToolPOSTest {
 		assertEquals(1.49, agreement.getFinalCharge(), 0);
 	}
 
+	@Test
+	public void testRentTools() {
+		List<RentalRequest> requests = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			requests.add(new RentalRequest(ToolCode.values()[i % 4], i % 30, i % 120, LocalDate.of(2015, 7, 2)));
+		}
+
+		List<RentalResult> results = ToolPOS.rentTools(requests);
+		assertEquals(requests.size(), results.size());
+		for (int i = 0; i < results.size(); i++) {
+			RentalResult result = results.get(i);
+			RentalRequest request = requests.get(i);
+			assertSame(request, result.getRequest());
+			if (request.getRentalDays() < 1) {
+				assertEquals("Whoops! Rental day count is not 1 or greater. Please try again.",
+						result.getErrorMessage());
+			} else if (request.getDiscountPercent() > 100) {
+				assertEquals("Whoops! Discount percent is not in the range 0-100. Please try again.",
+						result.getErrorMessage());
+			} else {
+				assertTrue(result.isSuccess());
+				assertEquals(request.getCode(), result.getAgreement().getTool().getCode());
+				assertEquals(request.getRentalDays(), result.getAgreement().getRentalDays());
+			}
+		}
+	}
+
+	@Test
+	public void testRentToolsStream() throws Exception {
+		List<RentalRequest> requests = new ArrayList<>();
+		requests.add(new RentalRequest(ToolCode.LADW, 3, 10, LocalDate.of(2020, 7, 2)));
+		requests.add(new RentalRequest(ToolCode.JAKR, 5, 101, LocalDate.of(2015, 9, 3)));
+		requests.add(new RentalRequest(ToolCode.CHNS, 5, 25, LocalDate.of(2015, 7, 2)));
+
+		List<RentalResult> results = ToolPOS.rentToolsStream(requests).collect(Collectors.toList());
+		assertEquals(3.58, results.get(0).getAgreement().getFinalCharge(), 0);
+		assertFalse(results.get(1).isSuccess());
+		assertEquals(3.35, results.get(2).getAgreement().getFinalCharge(), 0);
+	}
+
+	@Test
+	public void testTryRentTool() {
+		RentalResult result = ToolPOS.tryRentTool("LADW", "3", "10", "07/02/20");
+		assertTrue(result.isSuccess());
+		assertEquals(3.58, result.getAgreement().getFinalCharge(), 0);
+		assertEquals(null, result.getError());
+
+		assertEquals(RentalError.UNKNOWN_TOOL, ToolPOS.tryRentTool("XXXX", "3", "10", "07/02/20").getError());
+		assertEquals(RentalError.INVALID_RENTAL_DAYS, ToolPOS.tryRentTool("LADW", "0", "10", "07/02/20").getError());
+		assertEquals(RentalError.INVALID_RENTAL_DAYS, ToolPOS.tryRentTool("LADW", "three", "10", "07/02/20").getError());
+		assertEquals(RentalError.INVALID_DISCOUNT, ToolPOS.tryRentTool("LADW", "3", "101", "07/02/20").getError());
+		assertEquals(RentalError.INVALID_CHECKOUT_DATE, ToolPOS.tryRentTool("LADW", "3", "10", "02/30/20").getError());
+		assertEquals(RentalError.MISSING_FIELD, ToolPOS.tryRentTool(null, "3", "10", "07/02/20").getError());
+		assertEquals(RentalError.MISSING_FIELD, ToolPOS.tryRentTool(ToolCode.LADW, 3, 10, null).getError());
+
+		RentalResult rejected = ToolPOS.tryRentTool(ToolCode.JAKR, 5, 101, LocalDate.of(2015, 9, 3));
+		assertFalse(rejected.isSuccess());
+		assertEquals(RentalError.INVALID_DISCOUNT, rejected.getError());
+		assertEquals("Whoops! Discount percent is not in the range 0-100. Please try again.",
+				rejected.getErrorMessage());
+	}
+
 }